@@ -0,0 +1,76 @@
+package sim;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CarQueueBench: the ring-buffer CarQueue against the old linked list (LinkedCarQueue).
+ * "insertAndTake" holds the queue at a steady length; "fill" builds a queue of queueLength
+ * cars from nothing. Run with "-prof gc" to see memory per waiting car: the linked list allocates
+ * 64 bytes per car (a 24-byte QueueItem and a 40-byte Car, with compressed oops) and the ring
+ * holds 28 bytes per slot (three doubles and an int); ringFill's allocation also counts the smaller
+ * buffers it outgrew.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CarQueueBench {
+
+    @Param({"1", "100", "10000"})
+    public int queueLength;
+
+    private Simulation sim;
+    private CarQueue ring;
+    private LinkedCarQueue linked;
+    private Car spare;
+
+    @Setup(Level.Trial)
+    public void fillQueues() {
+        sim = new Simulation(new Parameters(), 1, 2, 3, 4, null);
+        ring = new CarQueue(sim);
+        linked = new LinkedCarQueue();
+        for (int i = 0; i < queueLength; i++) {
+            Car car = new Car(sim);
+            ring.insert(car);
+            linked.insert(car);
+        }
+        spare = new Car(sim);
+    }
+
+    @Benchmark
+    public Car ringInsertAndTake() {
+        ring.insert(spare);
+        return ring.takeFirstCar(spare);
+    }
+
+    @Benchmark
+    public Car linkedInsertAndTake() {
+        // as the old model did: a new Car per arrival, a new QueueItem per insert
+        Car car = new Car();
+        car.set(spare.getArrivalTime(), spare.getLitresNeeded());
+        linked.insert(car);
+        return linked.takeFirstCar();
+    }
+
+    @Benchmark
+    public CarQueue ringFill() {
+        CarQueue q = new CarQueue(sim);
+        for (int i = 0; i < queueLength; i++) q.insert(i, spare.getLitresNeeded());
+        return q;
+    }
+
+    @Benchmark
+    public LinkedCarQueue linkedFill() {
+        LinkedCarQueue q = new LinkedCarQueue();
+        for (int i = 0; i < queueLength; i++) {
+            Car car = new Car();
+            car.set(i, spare.getLitresNeeded());
+            q.insert(car);
+        }
+        return q;
+    }
+}
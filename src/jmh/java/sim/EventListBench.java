@@ -0,0 +1,77 @@
+package sim;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EventListBench: insert/take costs of each EventList backend at a given number of pending events.
+ * "hold" is one take followed by one reschedule, the event list's steady-state workload in Sim.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EventListBench {
+    private static final int BATCH = 1024;
+    private static final int INCREMENTS = 1 << 16;
+
+    @Param({"SORTED_LIST", "HEAP", "CALENDAR", "LADDER"})
+    public EventList.Backend backend;
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int pending;
+
+    private EventList list;
+    private final double[] increments = new double[INCREMENTS];
+    private final Event[] batch = new Event[BATCH];
+    private int next = 0;
+
+    /** a do-nothing event */
+    private static class HoldEvent extends Event {
+        public HoldEvent(double time) { super(time); }
+        public void makeItHappen() {}
+    }
+
+    @Setup(Level.Trial)
+    public void fill() {
+        SplittableRandom random = new SplittableRandom(270);
+        for (int i = 0; i < INCREMENTS; i++) increments[i] = -pending * Math.log(1.0 - random.nextDouble());
+        list = new EventList(backend);
+        for (int i = 0; i < pending; i++) list.insert(new HoldEvent(increment()));
+        for (int i = 0; i < BATCH; i++) batch[i] = new HoldEvent(0.0);
+    }
+
+    private double increment() {
+        double d = increments[next];
+        next = (next + 1) & (INCREMENTS - 1);
+        return d;
+    }
+
+    @Benchmark
+    public Event hold() {
+        Event e = list.takeNextEvent();
+        e.setTime(e.getTime() + increment());
+        list.insert(e);
+        return e;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Event insertThenTake() {
+        // a burst of BATCH inserts on top of the pending events, then the same number of takes
+        Event last = null;
+        for (Event e : batch) {
+            e.setTime(increment());
+            list.insert(e);
+        }
+        for (int i = 0; i < BATCH; i++) {
+            last = list.takeNextEvent();
+            batch[i] = last;
+        }
+        return last;
+    }
+}
@@ -0,0 +1,45 @@
+package sim;
+
+/**
+ * LinkedCarQueue: the car queue as it was before the ring buffer, a linked list of QueueItem
+ * wrappers around Car objects. Kept only as the baseline for CarQueueBench.
+ */
+class LinkedCarQueue {
+
+    /** QueueItem: the class for objects stored in the car queue. */
+    private static class QueueItem {
+        public Car data;
+        public QueueItem next;
+    }
+
+    private QueueItem firstWaitingCar = null;
+    private QueueItem lastWaitingCar = null;
+    private int queueSize = 0;
+
+    /** return the number of cars in the car queue. */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /** insert: put a newly-arrived car into the car queue. */
+    public void insert(Car newestCar) {
+        QueueItem item = new QueueItem();
+        item.data = newestCar;
+        if (lastWaitingCar == null) {
+            firstWaitingCar = item;
+        } else {
+            lastWaitingCar.next = item;
+        }
+        lastWaitingCar = item;
+        queueSize += 1;
+    }
+
+    /** takeFirstCar: remove first car from car queue and return it. */
+    public Car takeFirstCar() {
+        Car carToReturn = firstWaitingCar.data;
+        queueSize--;
+        firstWaitingCar = firstWaitingCar.next;
+        if (firstWaitingCar == null) lastWaitingCar = null;
+        return carToReturn;
+    }
+}
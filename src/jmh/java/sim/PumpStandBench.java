@@ -0,0 +1,34 @@
+package sim;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PumpStandBench: taking a free pump and releasing it again.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PumpStandBench {
+
+    @Param({"1", "16", "1024"})
+    public int numPumps;
+
+    private PumpStand pumpStand;
+
+    @Setup(Level.Trial)
+    public void build() {
+        pumpStand = new PumpStand(new Simulation(new Parameters(), 1, 2, 3, 4, null), numPumps);
+    }
+
+    @Benchmark
+    public Pump takeAndRelease() {
+        Pump p = pumpStand.takeAvailablePump();
+        pumpStand.releasePump(p);
+        return p;
+    }
+}
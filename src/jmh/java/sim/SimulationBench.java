@@ -0,0 +1,52 @@
+package sim;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SimulationBench: end-to-end throughput of the Sim clock-driver loop.
+ * Each invocation runs one complete simulation; the "events" counter gives events/sec.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SimulationBench {
+
+    @Param({"1", "4", "16", "64", "256"})
+    public int numPumps;
+
+    @Param({"50.0", "5.0", "0.5"})
+    public double meanInterarrivalTime;
+
+    @Param({"100000", "1000000"})
+    public double endingTime;
+
+    private Parameters params;
+
+    /** EventCounter: reported by JMH as events processed per second. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class EventCounter {
+        public long events;
+    }
+
+    @Setup(Level.Trial)
+    public void scenario() {
+        params = new Parameters();
+        params.numPumps = numPumps;
+        params.meaninterarrivalTime = meanInterarrivalTime;
+        params.endingTime = endingTime;
+    }
+
+    @Benchmark
+    public double run(EventCounter counter) {
+        // a silent run: no reports are printed
+        Simulation sim = new Simulation(params, 1, 2, 3, 4, null);
+        counter.events += sim.run();
+        return sim.getSimulationTime();
+    }
+}
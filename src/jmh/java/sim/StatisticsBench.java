@@ -0,0 +1,61 @@
+package sim;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StatisticsBench: the per-car accumulator updates and the cost of reporting one snapshot,
+ * per report format, written directly or through the background writer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StatisticsBench {
+
+    @Param({"TEXT", "CSV", "BINARY"})
+    public String format;
+
+    @Param({"false", "true"})
+    public boolean async;
+
+    private ReportSink report;
+    private Statistics stats;
+    private double litres = 10.0;
+
+    @Setup(Level.Trial)
+    public void build() {
+        report = ReportSink.open(ReportSink.Format.parse(format), OutputStream.nullOutputStream(), async);
+        Parameters params = new Parameters();
+        params.numPumps = 4;
+        Simulation sim = new Simulation(params, 1, 2, 3, 4, report);
+        sim.simulationTime = 123456.0;
+        stats = sim.stats;
+    }
+
+    @TearDown(Level.Trial)
+    public void closeReport() {
+        report.close();
+    }
+
+    @Benchmark
+    public Statistics recordCar() {
+        // the updates made for one served car
+        litres = (litres > 60.0) ? 10.0 : litres + 0.5;
+        stats.countArrival();
+        stats.accumWaitingTime(litres);
+        stats.accumServiceTime(150.0 + litres);
+        stats.accumSale(litres);
+        return stats;
+    }
+
+    @Benchmark
+    public Statistics snapshot() {
+        stats.snapshot();
+        return stats;
+    }
+}
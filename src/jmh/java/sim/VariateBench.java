@@ -0,0 +1,57 @@
+package sim;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGeneratorFactory;
+
+/**
+ * VariateBench: one variate at a time straight from the stream, as the events used to draw them,
+ * against the same variates taken from a VariateBuffer, per distribution and generator.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VariateBench {
+
+    @Param({"Random", "L64X128MixRandom"})
+    public String algorithm;
+
+    @Param({"UNIFORM", "EXPONENTIAL", "NORMAL"})
+    public String distribution;
+
+    private VariateBuffer.Kind kind;
+
+    private RandomGenerator direct;
+    private VariateBuffer buffered;
+
+    @Setup(Level.Trial)
+    public void build() {
+        kind = VariateBuffer.Kind.valueOf(distribution);
+        direct = stream();
+        buffered = new VariateBuffer(stream(), kind, new Parameters().variateBlock);
+    }
+
+    private RandomGenerator stream() {
+        return Seeding.LEGACY.equals(algorithm) ? new Random(42) : RandomGeneratorFactory.of(algorithm).create(42);
+    }
+
+    @Benchmark
+    public double unbuffered() {
+        switch (kind) {
+            case UNIFORM:     return direct.nextDouble();
+            case EXPONENTIAL: return -Math.log(Math.max(1e-12, direct.nextDouble()));
+            default:          return direct.nextGaussian();
+        }
+    }
+
+    @Benchmark
+    public double buffered() {
+        return buffered.next();
+    }
+}
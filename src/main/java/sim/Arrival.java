@@ -4,9 +4,12 @@ package sim;
  * Arrival: the class representing arrival events.
  */
 class Arrival extends Event {
+    private final Simulation sim;
+    private final Car arrivingCar = new Car(); // reused; pumps and the queue copy what they keep
 
-    public Arrival(double time) {
+    public Arrival(Simulation sim, double time) {
         super(time);
+        this.sim = sim;
     }
 
     /**
@@ -15,42 +18,92 @@ class Arrival extends Event {
      * queue length gets larger, and grows smaller when the car requires a greater number of litres of gas.
      * (1) there is no balking if the queue length is zero, and
      * (2) otherwise, the probability of NOT balking is (40 + litres) / (25 * (3 + queueLength))
+     * With synchronized streams every car draws its balking variate, even when it cannot balk, so
+     * that car k uses the same variates whatever happened to the cars before it.
      */
-    private boolean doesCarBalk(double litres, int queueLength) {
+    private static boolean doesCarBalk(Simulation sim, double litres, int queueLength) {
+        if (sim.params.synchronizedStreams) {
+            double u = sim.balkingDraws.next();
+            return queueLength > 0 && u > notBalkingProbability(sim, litres, queueLength);
+        }
         if (queueLength == 0) return false;
-        double pNotBalk = (Sim.balkA + litres) / (Sim.balkB * (Sim.balkC + queueLength));
+        return sim.balkingDraws.next() > notBalkingProbability(sim, litres, queueLength);
+    }
+
+    /** notBalkingProbability: the probability that a car with the given demand joins a queue of the given length. */
+    private static double notBalkingProbability(Simulation sim, double litres, int queueLength) {
+        double pNotBalk = (sim.params.balkA + litres) / (sim.params.balkB * (sim.params.balkC + queueLength));
         if (pNotBalk < 0.0) pNotBalk = 0.0;
         if (pNotBalk > 1.0) pNotBalk = 1.0;
-        return Sim.balkingStream.nextDouble() > pNotBalk;
+        return pNotBalk;
     }
 
-    /** interarrivalTime: the time until the next arrival, from an exponential distribution. */
-    private double interarrivalTime() {
-        double u = Math.max(1e-12, Sim.arrivalStream.nextDouble());
-        return -Sim.meaninterarrivalTime * Math.log(u);
+    /**
+     * nextArrivalTime: the time of the next arrival, an exponential interarrival time later, or with
+     * an arrival profile the time given by inverting the profile's cumulative rate (see ArrivalProfile).
+     */
+    static double nextArrivalTime(Simulation sim) {
+        if (sim.arrivalProfile == null) return sim.simulationTime + sim.params.meaninterarrivalTime * sim.interarrivals.next();
+        return sim.arrivalProfile.next(sim.simulationTime, sim.interarrivals.next());
     }
 
-    /** arrival event routine. */
-    public void makeItHappen() {
-        // Create and initialize a new auto record.
-        Car arrivingCar = new Car();
-        Sim.stats.countArrival();
-        final double litres = arrivingCar.getLitresNeeded();
+    /**
+     * admit: a car arrives at the station, new or (in a network) driven on from another station
+     * after the given number of hops. It balks, or joins a free pump or the queue.
+     */
+    static void admit(Simulation sim, Car car, int hops) {
+        if (sim.params.synchronizedStreams) car.setServiceNoise(sim.serviceNoise.next());
+        // a car driven on from another station still needs the fuel it needed there
+        if (hops == 0) car.setFuel(sim.pumpStand.usesFuels() ? sim.pumpStand.drawFuel(sim.fuelDraws.next()) : -1);
+        sim.stats.countArrival();
+        final double litres = car.getLitresNeeded();
 
-        if (doesCarBalk(litres, Sim.carQueue.getQueueSize())) {
-            Sim.stats.accumBalk(litres);
+        final int queueLength = sim.carQueue.getQueueSize();
+        final boolean balks = doesCarBalk(sim, litres, queueLength);
+        if (sim.trace != null) {
+            sim.trace.record(sim.simulationTime, balks ? EventTrace.BALK : EventTrace.ARRIVAL, -1, queueLength,
+                    litres, Double.NaN);
+        }
+        if (balks) {
+            sim.stats.accumBalk(litres);
+            // in a network the car drives on to another station
+            if (sim.station != null) sim.station.balked(litres, car.getFuel(), hops);
         } else {
-            arrivingCar.setArrivalTime(Sim.simulationTime);
-            if (Sim.pumpStand.aPumpIsAvailable()) {
-                Pump p = Sim.pumpStand.takeAvailablePump();
-                if (p != null) p.startService(arrivingCar);
+            car.setArrivalTime(sim.simulationTime);
+            Pump p = sim.pumpStand.aPumpIsAvailable() ? sim.pumpStand.takeAvailablePump(car.getFuel()) : null;
+            if (p != null) {
+                p.startService(car);
             } else {
-                Sim.carQueue.insert(arrivingCar);
+                sim.carQueue.insert(car);
             }
         }
+    }
+
+    /**
+     * replay: the arrival of the current car of the arrival log; then the log moves on to the next
+     * car, whose arrival is scheduled (at this time, if the log goes back in time).
+     */
+    private void replay() {
+        ArrivalLog log = sim.arrivalLog;
+        arrivingCar.set(sim.simulationTime, log.getLitres());
+        admit(sim, arrivingCar, 0);
+        if (!log.next()) return; // the log is over: no more cars
+        setTime(Math.max(sim.simulationTime, log.getTime()));
+        sim.eventList.insert(this);
+    }
+
+    /** arrival event routine. */
+    public void makeItHappen() {
+        if (sim.arrivalLog != null) {
+            replay();
+            return;
+        }
+        // Initialize the auto record for the new arrival.
+        arrivingCar.drawLitresNeeded(sim);
+        admit(sim, arrivingCar, 0);
 
         // Schedule the next arrival, reusing the current event object.
-        setTime(Sim.simulationTime + interarrivalTime());
-        Sim.eventList.insert(this);
+        setTime(nextArrivalTime(sim));
+        sim.eventList.insert(this);
     }
 }
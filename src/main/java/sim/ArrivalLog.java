@@ -0,0 +1,319 @@
+package sim;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * ArrivalLog: a log of real arrivals (time and litres of every car) replayed through the model in
+ * place of the random arrival times and demands. The log is read lazily, one record ahead of the
+ * run, so a run of a log of any size holds only the mapped window of the file in memory, and its
+ * time grows linearly with the length of the log.
+ *
+ * Two formats are read, told apart by their first bytes:
+ *   CSV: one car per line, "time,litres" (more fields are ignored); blank lines, lines starting with
+ *   # and lines whose first field is not a number (a header) are skipped. Times are in seconds.
+ *   Binary: the magic bytes "SIMA", the version (int) and 8 bytes of padding, then RECORD_SIZE-byte
+ *   records of time and litres (little-endian doubles). convert writes it from a CSV log.
+ * The file is mapped a window at a time and the numbers are parsed straight from the mapped bytes,
+ * without making a String per line. Times must not go backwards; a record that does is replayed at
+ * the time of the one before.
+ *
+ * The times of the log are shifted back by whole days so that the first record falls on day 0 of
+ * the run; epoch timestamps keep their time of day (UTC), for TimeOfDay.
+ *
+ * Usage: java sim.ArrivalLog file                   prints the number, span and mean demand of the records
+ *        java sim.ArrivalLog convert log.csv log.bin  writes the binary form of a CSV log
+ * Sim replays a log with -Dsim.arrivalLog=file.
+ */
+public final class ArrivalLog implements Closeable {
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 16;
+    static final int DEFAULT_WINDOW = 64 << 20;
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    private final long size;
+    private final boolean binary;
+    private final int window;       // bytes per mapping
+    private MappedByteBuffer mapped;
+    private long base;              // file position of the mapped window
+    private int limit;              // bytes mapped
+    private long position;          // file position of the next record
+    private long recordStart;       // file position of the current record
+    private long records = 0;       // records read so far
+    private final double rebase;    // the whole days taken off every time
+    private double time;
+    private double litres;
+    private int end;                // where the number being parsed ended, relative to the window
+    private final char[] digits = new char[64]; // for the rare number that needs Double.parseDouble
+
+    private ArrivalLog(Path file, int window) throws IOException {
+        this.file = file;
+        this.window = window;
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        size = channel.size();
+        byte[] magic = new byte[4];
+        if (size >= HEADER_SIZE) {
+            map(0L);
+            for (int i = 0; i < 4; i++) magic[i] = mapped.get(i);
+        }
+        binary = "SIMA".equals(new String(magic, StandardCharsets.US_ASCII));
+        if (binary) {
+            int version = mapped.getInt(4);
+            if (version != VERSION) throw new IOException("unknown arrival log version " + version);
+            position = HEADER_SIZE;
+        }
+        double first = next() ? time : 0.0;
+        rebase = Math.floor(first / ArrivalProfile.DAY) * ArrivalProfile.DAY;
+        seek(binary ? HEADER_SIZE : 0L, 0L);
+    }
+
+    /** open: a log, to be read from its first record. */
+    public static ArrivalLog open(Path file) throws IOException {
+        return open(file, DEFAULT_WINDOW);
+    }
+
+    /** open: a log mapped a window of the given size at a time (at least the longest line of a CSV log). */
+    public static ArrivalLog open(Path file, int window) throws IOException {
+        if (window < 64) throw new IllegalArgumentException("arrival log window too small: " + window);
+        return new ArrivalLog(file, window - window % RECORD_SIZE);
+    }
+
+    private void map(long from) throws IOException {
+        base = from;
+        limit = (int) Math.min(window, size - from);
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, from, limit);
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /** next: read the next record; false at the end of the log. */
+    public boolean next() {
+        try {
+            return binary ? nextBinary() : nextCsv();
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot read arrival log " + file, e);
+        }
+    }
+
+    private boolean nextBinary() throws IOException {
+        if (position + RECORD_SIZE > size) return false;
+        if (position < base || position + RECORD_SIZE > base + limit) map(position);
+        int at = (int) (position - base);
+        time = mapped.getDouble(at);
+        litres = mapped.getDouble(at + 8);
+        recordStart = position;
+        position += RECORD_SIZE;
+        records++;
+        return true;
+    }
+
+    private boolean nextCsv() throws IOException {
+        while (position < size) {
+            if (position < base || position >= base + limit) map(position);
+            int lineEnd = indexOfNewline((int) (position - base));
+            if (lineEnd < 0) {
+                // the line runs past the window: map a window from its start, or take it to the end of the file
+                if (base + limit < size) {
+                    if (position == base) throw new IOException("line longer than " + window + " bytes at " + position);
+                    map(position);
+                    continue;
+                }
+                lineEnd = limit;
+            }
+            int from = (int) (position - base);
+            long lineStart = position;
+            position = base + lineEnd + 1;
+            if (parseLine(from, lineEnd)) {
+                recordStart = lineStart;
+                records++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int indexOfNewline(int from) {
+        for (int i = from; i < limit; i++) {
+            if (mapped.get(i) == '\n') return i;
+        }
+        return -1;
+    }
+
+    /** parseLine: read the time and litres of the line in [from, to) of the window; false for a line to skip. */
+    private boolean parseLine(int from, int to) {
+        int i = skipBlanks(from, to);
+        if (i >= to || mapped.get(i) == '#' || !startsNumber(mapped.get(i))) return false;
+        double t = parseNumber(i, to);
+        i = skipBlanks(end, to);
+        if (i >= to || (mapped.get(i) != ',' && mapped.get(i) != ';' && mapped.get(i) != '\t')) {
+            throw new IllegalArgumentException("arrival log " + file + " record " + (records + 1) + ": expected time,litres");
+        }
+        i = skipBlanks(i + 1, to);
+        if (i >= to || !startsNumber(mapped.get(i))) {
+            throw new IllegalArgumentException("arrival log " + file + " record " + (records + 1) + ": no litres");
+        }
+        double l = parseNumber(i, to);
+        time = t;
+        litres = l;
+        return true;
+    }
+
+    private int skipBlanks(int i, int to) {
+        while (i < to && (mapped.get(i) == ' ' || mapped.get(i) == '\r')) i++;
+        return i;
+    }
+
+    private static boolean startsNumber(byte b) {
+        return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.';
+    }
+
+    /**
+     * parseNumber: the decimal number starting at i of the window, leaving its end in the field end.
+     * Numbers of up to 15 significant digits and 22 decimals (all real logs) are exact as one integer
+     * divided by a power of ten, so they come out correctly rounded with no allocation; others go
+     * through Double.parseDouble.
+     */
+    private double parseNumber(int i, int to) {
+        int start = i;
+        boolean negative = false;
+        byte b = mapped.get(i);
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int significant = 0;
+        int decimals = 0;
+        boolean point = false;
+        boolean simple = true;
+        for (; i < to; i++) {
+            b = mapped.get(i);
+            if (b >= '0' && b <= '9') {
+                if (mantissa != 0 || b != '0') significant++;
+                mantissa = mantissa * 10 + (b - '0');
+                if (point) decimals++;
+                if (significant > 15) simple = false;
+            } else if (b == '.' && !point) {
+                point = true;
+            } else if (b == 'e' || b == 'E') {
+                simple = false;
+                i++;
+                if (i < to && (mapped.get(i) == '-' || mapped.get(i) == '+')) i++;
+                while (i < to && mapped.get(i) >= '0' && mapped.get(i) <= '9') i++;
+                break;
+            } else {
+                break;
+            }
+        }
+        end = i;
+        if (simple && decimals < POWERS_OF_TEN.length) {
+            double v = mantissa / POWERS_OF_TEN[decimals];
+            return negative ? -v : v;
+        }
+        int n = Math.min(i - start, digits.length);
+        for (int k = 0; k < n; k++) digits[k] = (char) mapped.get(start + k);
+        return Double.parseDouble(new String(digits, 0, n));
+    }
+
+    /** return the time of the current record, less the whole days before the first record. */
+    public double getTime() {
+        return time - rebase;
+    }
+
+    /** return the litres of the current record. */
+    public double getLitres() {
+        return litres;
+    }
+
+    /** return the number of records read so far. */
+    public long getRecords() {
+        return records;
+    }
+
+    /** return the whole days taken off the times of the log, in seconds. */
+    public double getRebase() {
+        return rebase;
+    }
+
+    /** return the file position of the current record, for a checkpoint (see seek). */
+    long getRecordStart() {
+        return recordStart;
+    }
+
+    /** seek: carry on reading from the record at the given file position, the given number of records in. */
+    void seek(long recordPosition, long recordsBefore) {
+        position = recordPosition;
+        records = recordsBefore;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mapped = null;
+        channel.close();
+    }
+
+    /** convert: write the binary form of a CSV log. */
+    public static long convert(Path csv, Path out) throws IOException {
+        long n = 0;
+        try (ArrivalLog log = open(csv);
+             OutputStream os = Files.newOutputStream(out);
+             DataOutputStream data = new DataOutputStream(new BufferedOutputStream(os, 1 << 16))) {
+            data.write("SIMA".getBytes(StandardCharsets.US_ASCII));
+            data.writeInt(Integer.reverseBytes(VERSION));
+            data.writeLong(0L);
+            while (log.next()) {
+                data.writeLong(Long.reverseBytes(Double.doubleToRawLongBits(log.time)));
+                data.writeLong(Long.reverseBytes(Double.doubleToRawLongBits(log.litres)));
+                n++;
+            }
+        }
+        return n;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("convert")) {
+            long n = convert(Paths.get(args[1]), Paths.get(args[2]));
+            System.out.println("Wrote " + n + " records to " + args[2]);
+            return;
+        }
+        if (args.length != 1) {
+            System.out.println("Usage: java sim.ArrivalLog file | java sim.ArrivalLog convert log.csv log.bin");
+            return;
+        }
+        long start = System.nanoTime();
+        try (ArrivalLog log = open(Paths.get(args[0]))) {
+            double first = Double.NaN, last = Double.NaN, litres = 0.0;
+            while (log.next()) {
+                if (log.getRecords() == 1) first = log.getTime();
+                last = log.getTime();
+                litres += log.getLitres();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long n = log.getRecords();
+            System.out.println(String.format(Locale.ROOT, "%d records (%s) from %.1f to %.1f s after day %d; "
+                    + "mean demand %.2f litres; read in %.2f s (%.1f MB/s)", n, log.binary ? "binary" : "CSV",
+                    first, last, (long) (log.rebase / ArrivalProfile.DAY), (n > 0) ? litres / n : 0.0, seconds,
+                    log.size / 1e6 / seconds));
+        }
+    }
+}
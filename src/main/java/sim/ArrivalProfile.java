@@ -0,0 +1,186 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ArrivalProfile: an arrival rate that changes over the day (rush hours), for a non-homogeneous
+ * Poisson arrival process. The profile is given as the rate at some hours of the day, relative to
+ * the base rate 1 / meaninterarrivalTime, and repeats every day (simulated time 0 is midnight):
+ *   step:0=0.3,6=1,7=2.5,9=1.2,16=2,19=1,22=0.5     piecewise constant: each rate holds until the next hour
+ *   linear:0=0.3,7=2.5,12=1.2,17=2,23=0.5           piecewise linear between the hours given
+ * The last rate of the day runs on to (step) or towards (linear) the first one of the next day.
+ *
+ * Arrival times are drawn by inverting the cumulative rate: the next arrival after time t is the
+ * time at which the expected number of arrivals since t reaches a unit exponential variate. Each
+ * piece has a closed-form inverse (a division for a constant rate, a quadratic for a linear one),
+ * and a cursor remembers the piece of the last arrival, so a draw costs O(1) amortized whatever the
+ * shape of the profile: unlike thinning no candidate is ever thrown away, and one exponential
+ * variate per arrival is drawn, as in the stationary model. Whole days of a quiet profile are skipped
+ * at once.
+ */
+public final class ArrivalProfile {
+    static final double DAY = 86400.0;
+
+    private final String spec;
+    private final double[] start;    // the pieces of one day, from the first hour of the profile
+    private final double[] rate;     // arrivals per second at the start of each piece
+    private final double[] slope;    // change of the rate per second along each piece
+    private final double[] area;     // expected arrivals in each piece
+    private final double dayArea;    // expected arrivals in a day
+    private final double origin;     // the time of day at which the pieces start
+    private int piece = 0;           // the cursor: the piece of the last arrival
+    private double dayStart;         // and the start of its day (origin plus a multiple of DAY)
+
+    private ArrivalProfile(String spec, double[] hours, double[] rates, boolean linear) {
+        this.spec = spec;
+        int n = hours.length;
+        origin = hours[0] * 3600.0;
+        start = new double[n];
+        rate = new double[n];
+        slope = new double[n];
+        area = new double[n];
+        double total = 0.0;
+        for (int i = 0; i < n; i++) {
+            start[i] = hours[i] * 3600.0 - origin;
+            double end = (i + 1 < n) ? hours[i + 1] * 3600.0 - origin : DAY;
+            double length = end - start[i];
+            double next = (i + 1 < n) ? rates[i + 1] : rates[0];
+            rate[i] = rates[i];
+            slope[i] = linear ? (next - rates[i]) / length : 0.0;
+            area[i] = (linear ? (rates[i] + next) / 2.0 : rates[i]) * length;
+            total += area[i];
+        }
+        if (!(total > 0.0)) throw new IllegalArgumentException("arrival profile has no arrivals: " + spec);
+        dayArea = total;
+        dayStart = Double.POSITIVE_INFINITY; // placed by the first draw
+    }
+
+    /**
+     * parse: read a profile ("step:hour=rate,..." or "linear:hour=rate,...", hours rising within
+     * [0, 24)), scaling its relative rates by the base rate of the given mean interarrival time.
+     */
+    public static ArrivalProfile parse(String spec, double meanInterarrivalTime) {
+        int colon = spec.indexOf(':');
+        if (colon < 0) throw new IllegalArgumentException("expected step:... or linear:..., not " + spec);
+        String kind = spec.substring(0, colon).trim();
+        boolean linear;
+        if (kind.equalsIgnoreCase("step")) linear = false;
+        else if (kind.equalsIgnoreCase("linear")) linear = true;
+        else throw new IllegalArgumentException("unknown arrival profile " + kind + " (step or linear)");
+        List<double[]> points = new ArrayList<>();
+        for (String part : spec.substring(colon + 1).split(",")) {
+            int eq = part.indexOf('=');
+            if (eq < 0) throw new IllegalArgumentException("expected hour=rate, not " + part.trim());
+            double hour = Double.parseDouble(part.substring(0, eq).trim());
+            double relative = Double.parseDouble(part.substring(eq + 1).trim());
+            if (hour < 0.0 || hour >= 24.0) throw new IllegalArgumentException("hour out of [0, 24): " + hour);
+            if (!points.isEmpty() && hour <= points.get(points.size() - 1)[0]) {
+                throw new IllegalArgumentException("the hours of an arrival profile must rise: " + spec);
+            }
+            if (!(relative >= 0.0)) throw new IllegalArgumentException("negative arrival rate: " + relative);
+            points.add(new double[]{hour, relative});
+        }
+        double[] hours = new double[points.size()];
+        double[] rates = new double[points.size()];
+        for (int i = 0; i < hours.length; i++) {
+            hours[i] = points.get(i)[0];
+            rates[i] = points.get(i)[1] / meanInterarrivalTime;
+        }
+        return new ArrivalProfile(spec, hours, rates, linear);
+    }
+
+    /** rate: the arrival rate, per second, at the given time. */
+    public double rate(double time) {
+        double t = dayTime(time);
+        int i = pieceAt(t);
+        return rate[i] + slope[i] * (t - start[i]);
+    }
+
+    /** expected: the expected number of arrivals between two times. */
+    public double expected(double from, double to) {
+        return cumulative(to) - cumulative(from);
+    }
+
+    /** cumulative: the expected number of arrivals from the start of the profile's day before time 0. */
+    private double cumulative(double time) {
+        double days = Math.floor((time - origin) / DAY);
+        double t = time - origin - days * DAY;
+        int i = pieceAt(t);
+        double total = days * dayArea;
+        for (int k = 0; k < i; k++) total += area[k];
+        double x = t - start[i];
+        return total + rate[i] * x + slope[i] * x * x / 2.0;
+    }
+
+    /**
+     * next: the time of the next arrival after the given time, for a unit exponential variate.
+     * Successive calls should come with rising times, as in a run; any time is right, but one
+     * before the last arrival costs a search for its piece.
+     */
+    public double next(double time, double exponential) {
+        double remaining = exponential;
+        // bring the cursor to the piece holding the time
+        if (time < dayStart + start[piece]) {
+            dayStart = origin + Math.floor((time - origin) / DAY) * DAY;
+            piece = 0;
+        }
+        while (true) {
+            double pieceEnd = dayStart + ((piece + 1 < start.length) ? start[piece + 1] : DAY);
+            if (time >= pieceEnd) {
+                advance();
+                continue;
+            }
+            // the expected arrivals from the time to the end of the piece
+            double x = time - (dayStart + start[piece]);
+            double r = rate[piece] + slope[piece] * x;
+            double length = pieceEnd - time;
+            double left = (r + slope[piece] * length / 2.0) * length;
+            if (remaining <= left) {
+                // solve r * y + slope * y^2 / 2 = remaining, in the form that is stable for any slope
+                double root = Math.sqrt(Math.max(0.0, r * r + 2.0 * slope[piece] * remaining));
+                double y = (r + root > 0.0) ? 2.0 * remaining / (r + root) : 0.0;
+                return time + Math.min(y, length);
+            }
+            remaining -= left;
+            time = pieceEnd;
+            advance();
+            // skip whole days at once
+            if (piece == 0 && remaining > dayArea) {
+                double days = Math.floor(remaining / dayArea);
+                remaining -= days * dayArea;
+                dayStart += days * DAY;
+                time = dayStart;
+            }
+        }
+    }
+
+    private void advance() {
+        if (++piece == start.length) {
+            piece = 0;
+            dayStart += DAY;
+        }
+    }
+
+    /** dayTime: the time since the start of the profile's day. */
+    private double dayTime(double time) {
+        double t = (time - origin) % DAY;
+        return (t < 0.0) ? t + DAY : t;
+    }
+
+    private int pieceAt(double t) {
+        int i = start.length - 1;
+        while (i > 0 && start[i] > t) i--;
+        return i;
+    }
+
+    /** return the mean arrival rate over a day, per second. */
+    public double getMeanRate() {
+        return dayArea / DAY;
+    }
+
+    @Override
+    public String toString() {
+        return spec;
+    }
+}
@@ -0,0 +1,116 @@
+package sim;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * AsyncOutput: an output stream whose bytes are written to another stream by a background thread.
+ * Bytes are collected in fixed chunks that travel to the writer thread and back for reuse, so
+ * writing allocates nothing; a writer falls behind by at most CHUNKS chunks before write() waits.
+ */
+final class AsyncOutput extends OutputStream {
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final int CHUNKS = 4;
+
+    /** Chunk: a buffer of bytes on its way to the writer. */
+    private static final class Chunk {
+        final byte[] data = new byte[CHUNK_SIZE];
+        int length = 0;
+        boolean last = false;
+        boolean flush = false; // flush the target after writing it
+    }
+
+    private final OutputStream target;
+    private final BlockingQueue<Chunk> full = new ArrayBlockingQueue<>(CHUNKS);
+    private final BlockingQueue<Chunk> empty = new ArrayBlockingQueue<>(CHUNKS);
+    private final Thread writer;
+    private Chunk current;
+    private boolean closed = false;
+
+    AsyncOutput(OutputStream target) {
+        this.target = target;
+        for (int i = 0; i < CHUNKS - 1; i++) empty.add(new Chunk());
+        current = new Chunk();
+        writer = new Thread(this::drain, "report-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void write(int b) {
+        if (current.length == CHUNK_SIZE) send(false, false);
+        current.data[current.length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        while (len > 0) {
+            if (current.length == CHUNK_SIZE) send(false, false);
+            int n = Math.min(len, CHUNK_SIZE - current.length);
+            System.arraycopy(b, off, current.data, current.length, n);
+            current.length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /** flush: pass the bytes so far on to the writer, which flushes the target after them (without waiting). */
+    @Override
+    public void flush() {
+        if (current.length > 0) send(false, true);
+    }
+
+    /** close: pass on the rest, wait for the writer to finish, and flush the target. */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        send(true, false);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void send(boolean last, boolean flush) {
+        try {
+            current.last = last;
+            current.flush = flush;
+            full.put(current);
+            current = last ? null : empty.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while writing a report", e);
+        }
+    }
+
+    /** drain: the writer thread; write each chunk to the target and hand it back. */
+    private void drain() {
+        boolean failed = false;
+        try {
+            while (true) {
+                Chunk chunk = full.take();
+                if (!failed && chunk.length > 0) {
+                    try {
+                        target.write(chunk.data, 0, chunk.length);
+                        if (chunk.flush) target.flush();
+                    } catch (IOException e) {
+                        System.out.println("Error! report output failed: " + e.getMessage());
+                        failed = true;
+                    }
+                }
+                chunk.length = 0;
+                if (chunk.last) break;
+                empty.put(chunk);
+            }
+            if (!failed) target.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.out.println("Error! report output failed: " + e.getMessage());
+        }
+    }
+}
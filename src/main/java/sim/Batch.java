@@ -0,0 +1,238 @@
+package sim;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Batch: runs a whole file of scenarios in one JVM, so that the start-up and the compilation of the
+ * event loop are paid once rather than once per scenario, and the later scenarios run in fully
+ * compiled code. Results are streamed to one report as each scenario finishes.
+ *
+ * The scenario file has one "name = value" setting per line; # starts a comment. A line "[name]"
+ * starts a scenario, and the settings before the first one are the defaults of every scenario.
+ * A setting is any Parameters field (see Parameters.set), or one of
+ *   seeds = a,b,c,d       the four stream seeds, as read by Sim
+ *   rng = algorithm       a java.util.random algorithm for the streams instead of java.util.Random
+ *   replications = n      replications to run and merge (default 1)
+ * For example:
+ *   endingTime = 100000
+ *   seeds = 1,2,3,4
+ *   [two pumps]
+ *   numPumps = 2
+ *   [three pumps, dearer]
+ *   numPumps = 3
+ *   pumpCost = 30
+ *
+ * Usage: java sim.Batch [--threads=n] [scenario files ...]   (standard input if no file is named)
+ * A scenario of one replication prints its progress reports like Sim; one of several replications
+ * prints the merged summary. All scenarios share one report header, so if any scenario (or
+ * -Dsim.detail) asks for detailed reports, every report is detailed. -Dsim.report picks the report
+ * format, as for Sim; java sim.Sim --batch file ... is the same as java sim.Batch file ....
+ */
+public class Batch {
+
+    /** Scenario: one named scenario of a batch. */
+    public static final class Scenario {
+        private final String name;
+        private final Parameters params;
+        private final Seeding seeding;
+        private final int replications;
+
+        public Scenario(String name, Parameters params, Seeding seeding, int replications) {
+            if (replications < 1) throw new IllegalArgumentException("scenario " + name + " needs at least one replication");
+            this.name = name;
+            this.params = params.copy();
+            this.seeding = seeding;
+            this.replications = replications;
+        }
+
+        /** return the name of the scenario. */
+        public String getName() {
+            return name;
+        }
+
+        /** return the parameters of the scenario. */
+        public Parameters getParameters() {
+            return params.copy();
+        }
+
+        /** return the seeding of the scenario's streams. */
+        public Seeding getSeeding() {
+            return seeding;
+        }
+
+        /** return the number of replications. */
+        public int getReplications() {
+            return replications;
+        }
+    }
+
+    /** Settings: the settings of a scenario (or of the defaults) as they are read. */
+    private static final class Settings {
+        final Parameters params;
+        long[] seeds;
+        String rng;
+        int replications;
+
+        Settings(Parameters params, long[] seeds, String rng, int replications) {
+            this.params = params;
+            this.seeds = seeds;
+            this.rng = rng;
+            this.replications = replications;
+        }
+
+        Settings copy() {
+            return new Settings(params.copy(), seeds, rng, replications);
+        }
+
+        void set(String name, String value) {
+            switch (name) {
+                case "seeds":
+                    String[] parts = value.split(",");
+                    if (parts.length != 4) throw new IllegalArgumentException("seeds needs four numbers: " + value);
+                    seeds = new long[4];
+                    for (int i = 0; i < 4; i++) seeds[i] = Integer.parseInt(parts[i].trim());
+                    break;
+                case "rng":          rng = value.trim(); break;
+                case "replications": replications = Integer.parseInt(value.trim()); break;
+                default:             params.set(name, value); break;
+            }
+        }
+
+        Scenario toScenario(String name) {
+            if (seeds == null) throw new IllegalArgumentException("scenario " + name + " has no seeds");
+            Seeding seeding = Seeding.LEGACY.equals(rng)
+                    ? Seeding.legacy(seeds[0], seeds[1], seeds[2], seeds[3])
+                    : Seeding.of(rng, Seeding.combine(seeds[0], seeds[1], seeds[2], seeds[3]));
+            return new Scenario(name, params, seeding, replications);
+        }
+    }
+
+    /**
+     * parse: read the scenarios of a scenario file, in file order. The defaults are applied to
+     * the given base parameters; a bad line is reported with its line number.
+     */
+    public static List<Scenario> parse(Reader input, Parameters base) throws IOException {
+        BufferedReader in = new BufferedReader(input);
+        Settings defaults = new Settings(base.copy(), null, System.getProperty("sim.rng", Seeding.LEGACY), 1);
+        Settings current = defaults;
+        String currentName = null;
+        List<Scenario> scenarios = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            lineNumber++;
+            int hash = line.indexOf('#');
+            String text = (hash >= 0 ? line.substring(0, hash) : line).trim();
+            if (text.isEmpty()) continue;
+            try {
+                if (text.startsWith("[") && text.endsWith("]")) {
+                    if (currentName != null) scenarios.add(current.toScenario(currentName));
+                    currentName = text.substring(1, text.length() - 1).trim();
+                    current = defaults.copy();
+                    continue;
+                }
+                int eq = text.indexOf('=');
+                if (eq < 0) throw new IllegalArgumentException("expected name = value");
+                current.set(text.substring(0, eq).trim(), text.substring(eq + 1).trim());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        if (currentName != null) scenarios.add(current.toScenario(currentName));
+        return scenarios;
+    }
+
+    /**
+     * run: run the scenarios in order, streaming their reports to one sink under one header.
+     * Replications of a scenario run on the given number of threads.
+     */
+    public static void run(List<Scenario> scenarios, ReportSink report, boolean detailed, int threads) {
+        report.header(detailed);
+        ReportSink section = new Section(report, detailed);
+        for (Scenario scenario : scenarios) {
+            Parameters params = scenario.params.copy();
+            params.detailedReport = detailed;
+            report.message("Scenario " + scenario.name + ": " + PumpType.count(params) + " pumps, "
+                    + scenario.replications + (scenario.replications == 1 ? " replication" : " replications")
+                    + ", streams " + scenario.seeding);
+            if (scenario.replications == 1) {
+                new Simulation(params, scenario.seeding, 0, section).run();
+            } else {
+                report.row(Replications.merge(Replications.run(params, scenario.seeding, scenario.replications, threads)),
+                        detailed);
+            }
+            // each scenario's reports reach the output as soon as it is done, not when a chunk fills
+            report.flush();
+        }
+    }
+
+    /** Section: passes a scenario's reports on to the batch report, which already has its header. */
+    private static final class Section implements ReportSink {
+        private final ReportSink report;
+        private final boolean detailed;
+
+        Section(ReportSink report, boolean detailed) {
+            this.report = report;
+            this.detailed = detailed;
+        }
+
+        public void header(boolean detailed) {
+            // one header for the whole batch
+        }
+
+        public void row(Summary s, boolean detailed) {
+            report.row(s, this.detailed);
+        }
+
+        public void message(String text) {
+            report.message(text);
+        }
+
+        public void flush() {
+            report.flush();
+        }
+
+        public void close() {
+            // the batch closes its report
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<String> files = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--threads=")) threads = Integer.parseInt(arg.substring("--threads=".length()));
+            else files.add(arg);
+        }
+        Parameters base = new Parameters();
+        base.detailedReport = Boolean.getBoolean("sim.detail");
+
+        List<Scenario> scenarios = new ArrayList<>();
+        if (files.isEmpty()) {
+            scenarios.addAll(parse(new InputStreamReader(System.in), base));
+        } else {
+            for (String file : files) {
+                try (Reader in = Files.newBufferedReader(Paths.get(file))) {
+                    scenarios.addAll(parse(in, base));
+                }
+            }
+        }
+        boolean detailed = false;
+        for (Scenario scenario : scenarios) detailed |= scenario.params.detailedReport;
+
+        long start = System.nanoTime();
+        ReportSink report = ReportSink.open(ReportSink.Format.parse(System.getProperty("sim.report", "text")),
+                System.out, true);
+        run(scenarios, report, detailed, threads);
+        report.message(scenarios.size() + " scenarios in "
+                + String.format(Locale.ROOT, "%.1f", (System.nanoTime() - start) / 1e9) + " s");
+        report.close();
+    }
+}
@@ -0,0 +1,204 @@
+package sim;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * BatchMeans: the batch-means method for the precision of steady-state averages from one long run.
+ * Simulated time is cut into equal batches and each metric is estimated per batch; batch estimates
+ * are nearly independent once batches are long, so their spread gives a confidence interval.
+ * Between MIN_BATCHES and MAX_BATCHES batches are kept: when MAX_BATCHES are full, neighbours are
+ * merged pairwise and the batch length doubles, so the batches keep getting longer as the run goes on.
+ * Each batch keeps the numerator and denominator of each metric, so merging is exact.
+ */
+public final class BatchMeans {
+    static final int MIN_BATCHES = 16;
+    static final int MAX_BATCHES = 2 * MIN_BATCHES;
+
+    /** Metric: the steady-state averages that can decide when to stop. */
+    public enum Metric {
+        WAIT,        // average wait per car served
+        PROFIT_RATE, // profit from sales per unit of simulated time
+        BALK_RATE;   // fraction of arrivals that balk
+
+        /** parse: look a metric up by name, e.g. "wait", "profit" or "balk". */
+        public static Metric parse(String name) {
+            switch (name.trim().toLowerCase()) {
+                case "wait": return WAIT;
+                case "profit": case "profit_rate": return PROFIT_RATE;
+                case "balk": case "balk_rate": return BALK_RATE;
+                default: throw new IllegalArgumentException("unknown metric: " + name);
+            }
+        }
+
+        /** parseList: read a comma-separated list of metrics. */
+        public static Metric[] parseList(String names) {
+            String[] parts = names.split(",");
+            Metric[] metrics = new Metric[parts.length];
+            for (int i = 0; i < parts.length; i++) metrics[i] = parse(parts[i]);
+            return metrics;
+        }
+    }
+
+    private final Simulation sim;
+    private final Metric[] targets;
+    private final double[][] numerators = new double[Metric.values().length][MAX_BATCHES];
+    private final double[][] denominators = new double[Metric.values().length][MAX_BATCHES];
+    private int batches = 0;
+    private double batchLength;
+    private double batchStart;
+
+    // the statistics totals at the start of the current batch
+    private double startWaiting, startServed, startSales, startBalked, startArrivals;
+
+    BatchMeans(Simulation sim, Metric[] targets, double start, double batchLength) {
+        this.sim = sim;
+        this.targets = targets.clone();
+        this.batchStart = start;
+        this.batchLength = batchLength;
+    }
+
+    /** restart: drop all batches and start the first one at the given time (after a warm-up reset). */
+    void restart(double time) {
+        batches = 0;
+        batchStart = time;
+        batchLength = sim.params.batchLength;
+        startWaiting = startServed = startSales = startBalked = startArrivals = 0.0;
+    }
+
+    /** save: write the completed batches and the current one to a checkpoint (see Checkpoint). */
+    void save(DataOutput out) throws IOException {
+        out.writeInt(batches);
+        out.writeDouble(batchLength);
+        out.writeDouble(batchStart);
+        out.writeDouble(startWaiting);
+        out.writeDouble(startServed);
+        out.writeDouble(startSales);
+        out.writeDouble(startBalked);
+        out.writeDouble(startArrivals);
+        for (int m = 0; m < numerators.length; m++) {
+            for (int b = 0; b < batches; b++) {
+                out.writeDouble(numerators[m][b]);
+                out.writeDouble(denominators[m][b]);
+            }
+        }
+    }
+
+    /** restore: read the state written by save. */
+    void restore(DataInput in) throws IOException {
+        batches = in.readInt();
+        if (batches < 0 || batches >= MAX_BATCHES) throw new IOException("bad batch count " + batches);
+        batchLength = in.readDouble();
+        batchStart = in.readDouble();
+        startWaiting = in.readDouble();
+        startServed = in.readDouble();
+        startSales = in.readDouble();
+        startBalked = in.readDouble();
+        startArrivals = in.readDouble();
+        for (int m = 0; m < numerators.length; m++) {
+            for (int b = 0; b < batches; b++) {
+                numerators[m][b] = in.readDouble();
+                denominators[m][b] = in.readDouble();
+            }
+        }
+    }
+
+    /** return true while the statistics may still be cleared by warm-up detection. */
+    boolean waitingForWarmUp() {
+        return sim.warmUp != null && !sim.warmUp.isDone();
+    }
+
+    /** return the current batch length in simulated time. */
+    public double getBatchLength() {
+        return batchLength;
+    }
+
+    /** return the number of completed batches. */
+    public int getBatches() {
+        return batches;
+    }
+
+    /** return the time at which the current batch ends. */
+    double batchEnd() {
+        return batchStart + batchLength;
+    }
+
+    /**
+     * closeBatch: record the batch that ends now (the current time must be batchEnd()),
+     * doubling the batch length when the batch store is full.
+     */
+    void closeBatch() {
+        Statistics stats = sim.stats;
+        double waiting = stats.getTotalWaitingTime();
+        double served = stats.getCustomersServed();
+        double sales = stats.getTotalLitresSold() * sim.params.profit;
+        double balked = stats.getBalkingCustomers();
+        double arrivals = stats.getTotalArrivals();
+        double now = sim.simulationTime;
+
+        store(Metric.WAIT, waiting - startWaiting, served - startServed);
+        store(Metric.PROFIT_RATE, sales - startSales, now - batchStart);
+        store(Metric.BALK_RATE, balked - startBalked, arrivals - startArrivals);
+        batches++;
+        startWaiting = waiting;
+        startServed = served;
+        startSales = sales;
+        startBalked = balked;
+        startArrivals = arrivals;
+        batchStart = now;
+
+        if (batches == MAX_BATCHES) {
+            for (double[] column : numerators) pairUp(column);
+            for (double[] column : denominators) pairUp(column);
+            batches = MAX_BATCHES / 2;
+            batchLength *= 2.0;
+        }
+    }
+
+    private void store(Metric m, double numerator, double denominator) {
+        numerators[m.ordinal()][batches] = numerator;
+        denominators[m.ordinal()][batches] = denominator;
+    }
+
+    private static void pairUp(double[] column) {
+        for (int i = 0; i < MAX_BATCHES / 2; i++) column[i] = column[2 * i] + column[2 * i + 1];
+    }
+
+    /** batchValues: the metric per completed batch; NaN marks a batch where it is undefined. */
+    public Welford batchValues(Metric m) {
+        Welford w = new Welford();
+        for (int b = 0; b < batches; b++) {
+            double d = denominators[m.ordinal()][b];
+            w.add((d > 0.0) ? numerators[m.ordinal()][b] / d : Double.NaN);
+        }
+        return w;
+    }
+
+    /** mean: the overall estimate of a metric from the completed batches, or NaN if it is undefined. */
+    public double mean(Metric m) {
+        double num = 0.0;
+        double den = 0.0;
+        for (int b = 0; b < batches; b++) {
+            num += numerators[m.ordinal()][b];
+            den += denominators[m.ordinal()][b];
+        }
+        return (den > 0.0) ? num / den : Double.NaN;
+    }
+
+    /** halfWidth: the confidence half-width of a metric at the given level, or NaN with too few batches. */
+    public double halfWidth(Metric m, double level) {
+        if (batches < MIN_BATCHES) return Double.NaN;
+        return Confidence.halfWidth(batchValues(m), level);
+    }
+
+    /** precise: true if every target metric is estimated within the given relative half-width. */
+    public boolean precise(double relativePrecision, double level) {
+        if (batches < MIN_BATCHES) return false;
+        for (Metric m : targets) {
+            double hw = halfWidth(m, level);
+            if (Double.isNaN(hw) || hw > relativePrecision * Math.abs(mean(m))) return false;
+        }
+        return true;
+    }
+}
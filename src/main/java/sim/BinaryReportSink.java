@@ -0,0 +1,131 @@
+package sim;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BinaryReportSink: a compact report of fixed-size big-endian records.
+ * The stream starts with the magic bytes "SIMR", a version byte and a flag byte (1 if detailed).
+ * Each report is the byte 'R' followed by the ten columns of the text report as doubles, plus the
+ * ten detail columns of the CSV report if detailed (NaN where unknown); a message is the byte 'M',
+ * a two-byte length and that many bytes of UTF-8. Messages reported before the header follow it,
+ * so the stream always starts with the magic bytes.
+ */
+public final class BinaryReportSink implements ReportSink {
+    static final int VERSION = 1;
+    static final int COLUMNS = 10;
+
+    private final OutputStream out;
+    private final ByteBuffer record = ByteBuffer.allocate(1 + 2 * COLUMNS * Double.BYTES);
+    private final List<String> early = new ArrayList<>(); // messages waiting for the header
+    private boolean started;
+
+    BinaryReportSink(OutputStream out) {
+        this.out = out;
+    }
+
+    public void header(boolean detailed) {
+        record.clear();
+        record.put((byte) 'S').put((byte) 'I').put((byte) 'M').put((byte) 'R');
+        record.put((byte) VERSION).put((byte) (detailed ? 1 : 0));
+        write();
+        started = true;
+        for (String text : early) message(text);
+        early.clear();
+    }
+
+    public void row(Summary s, boolean detailed) {
+        record.clear();
+        record.put((byte) 'R');
+        record.putDouble(s.getSimulationTime()).putDouble(s.getArrivals()).putDouble(s.getNoQueueFraction())
+                .putDouble(s.getCarToCarTime()).putDouble(s.getAverageLitres()).putDouble(s.getBalkingCustomers())
+                .putDouble(s.getAverageWait()).putDouble(s.getPumpUsage()).putDouble(s.getTotalProfit())
+                .putDouble(s.getLostProfit());
+        if (detailed) {
+            record.putDouble(s.getWaitStdDev()).putDouble(s.getWaitPercentile(50.0))
+                    .putDouble(s.getWaitPercentile(95.0)).putDouble(s.getWaitPercentile(99.0))
+                    .putDouble(s.getAverageQueueLength()).putDouble(s.getServiceStdDev())
+                    .putDouble(s.getServicePercentile(50.0)).putDouble(s.getServicePercentile(95.0))
+                    .putDouble(s.getServicePercentile(99.0)).putDouble(s.getPumpOccupancy());
+        }
+        write();
+    }
+
+    public void message(String text) {
+        if (!started) {
+            early.add(text);
+            return;
+        }
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        int n = Math.min(utf8.length, 0xFFFF);
+        try {
+            out.write('M');
+            out.write(n >>> 8);
+            out.write(n);
+            out.write(utf8, 0, n);
+        } catch (IOException e) {
+            System.out.println("Error! report output failed: " + e.getMessage());
+        }
+    }
+
+    public void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            System.out.println("Error! report output failed: " + e.getMessage());
+        }
+    }
+
+    public void close() {
+        try {
+            if (out instanceof AsyncOutput) out.close();
+            else out.flush();
+        } catch (IOException e) {
+            System.out.println("Error! report output failed: " + e.getMessage());
+        }
+    }
+
+    private void write() {
+        try {
+            out.write(record.array(), 0, record.position());
+        } catch (IOException e) {
+            System.out.println("Error! report output failed: " + e.getMessage());
+        }
+    }
+
+    /** readRows: the report records of a binary report, each 10 or 20 columns long; messages are skipped. */
+    public static List<double[]> readRows(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        byte[] magic = new byte[4];
+        data.readFully(magic);
+        if (!"SIMR".equals(new String(magic, StandardCharsets.US_ASCII))) throw new IOException("not a binary report");
+        int version = data.readUnsignedByte();
+        if (version != VERSION) throw new IOException("unknown binary report version " + version);
+        int columns = (data.readUnsignedByte() == 1) ? 2 * COLUMNS : COLUMNS;
+        List<double[]> rows = new ArrayList<>();
+        while (true) {
+            int tag;
+            try {
+                tag = data.readUnsignedByte();
+            } catch (EOFException e) {
+                return rows;
+            }
+            if (tag == 'R') {
+                double[] row = new double[columns];
+                for (int c = 0; c < columns; c++) row[c] = data.readDouble();
+                rows.add(row);
+            } else if (tag == 'M') {
+                data.skipNBytes(data.readUnsignedShort());
+            } else {
+                throw new IOException("bad record tag " + tag);
+            }
+        }
+    }
+}
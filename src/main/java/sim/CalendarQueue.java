@@ -0,0 +1,152 @@
+package sim;
+
+import java.util.Arrays;
+
+/**
+ * CalendarQueue: Brown's calendar queue (CACM 31(10), 1988).
+ * Pending events are hashed by time into an array of "day" buckets, each a short sorted list;
+ * one pass over the buckets is a "year". The number of buckets doubles or halves with the
+ * number of pending events and the bucket width is re-estimated from the event spacing,
+ * which keeps insert and remove O(1) on average for the usual event-time distributions.
+ */
+class CalendarQueue implements FutureEventList {
+    private static final int MIN_BUCKETS = 2;
+    private static final int WIDTH_SAMPLE = 25;
+
+    /** Node: the class for objects stored in a bucket. */
+    private static class Node {
+        public Event data;
+        public double time;
+        public long sequence;
+        public long day; // virtual bucket number, floor(time / width)
+        public Node next;
+    }
+
+    private Node[] buckets;
+    private Node freeNodes = null; // nodes no longer in the calendar, for reuse
+    private Node[] scratch = new Node[0]; // for sorting the events on a resize
+    private double width = 1.0;
+    private int size = 0;
+    private int currentBucket = 0;
+    private long currentDay = 0;
+
+    public CalendarQueue() {
+        buckets = new Node[MIN_BUCKETS];
+    }
+
+    /** insert: put an event into its day's bucket, in (time, sequence) order. */
+    public void insert(Event e) {
+        Node node = freeNodes;
+        if (node != null) freeNodes = node.next;
+        else node = new Node();
+        node.data = e;
+        node.time = e.getTime();
+        node.sequence = e.sequence;
+        link(node);
+        size++;
+        if (node.day < currentDay) {
+            // scheduled before the current position of the calendar; move back to it
+            currentDay = node.day;
+            currentBucket = bucketOf(node.day);
+        }
+        if (size > 2 * buckets.length) resize(buckets.length * 2);
+    }
+
+    /** removeFirst: scan forward from the current day for the earliest event of this year. */
+    public Event removeFirst() {
+        if (size == 0) return null;
+        for (int scanned = 0; scanned < buckets.length; scanned++) {
+            Node head = buckets[currentBucket];
+            if (head != null && head.day <= currentDay) return unlinkHead(currentBucket);
+            currentBucket = (currentBucket + 1) % buckets.length;
+            currentDay++;
+        }
+        // Nothing due within a whole year: jump straight to the earliest event.
+        int earliest = -1;
+        for (int b = 0; b < buckets.length; b++) {
+            Node head = buckets[b];
+            if (head == null) continue;
+            if (earliest < 0 || FutureEventList.before(head.time, head.sequence,
+                    buckets[earliest].time, buckets[earliest].sequence)) earliest = b;
+        }
+        currentBucket = earliest;
+        currentDay = buckets[earliest].day;
+        return unlinkHead(earliest);
+    }
+
+    /** return the number of pending events. */
+    public int size() {
+        return size;
+    }
+
+    private Event unlinkHead(int b) {
+        Node head = buckets[b];
+        buckets[b] = head.next;
+        size--;
+        Event e = head.data;
+        head.data = null;
+        head.next = freeNodes;
+        freeNodes = head;
+        // Brown's hysteresis keeps a queue whose size hovers near a threshold from resizing back and forth
+        if (buckets.length > MIN_BUCKETS && size < buckets.length / 2 - 2) resize(buckets.length / 2);
+        return e;
+    }
+
+    private int bucketOf(long day) {
+        return (int) Math.floorMod(day, (long) buckets.length);
+    }
+
+    private void link(Node node) {
+        node.day = (long) Math.floor(node.time / width);
+        int b = bucketOf(node.day);
+        Node head = buckets[b];
+        if (head == null || FutureEventList.before(node.time, node.sequence, head.time, head.sequence)) {
+            node.next = head;
+            buckets[b] = node;
+            return;
+        }
+        Node behind = head;
+        while (behind.next != null
+                && FutureEventList.before(behind.next.time, behind.next.sequence, node.time, node.sequence)) {
+            behind = behind.next;
+        }
+        node.next = behind.next;
+        behind.next = node;
+    }
+
+    /**
+     * resize: rebuild the calendar with a new number of buckets.
+     * The width is three times the mean separation of the earliest events, Brown's rule of thumb.
+     */
+    private void resize(int newBuckets) {
+        if (scratch.length < size) scratch = new Node[2 * size];
+        Node[] all = scratch;
+        int n = 0;
+        for (Node head : buckets) {
+            for (Node node = head; node != null; node = node.next) all[n++] = node;
+        }
+        Arrays.sort(all, 0, n, (a, b) -> a.time != b.time ? Double.compare(a.time, b.time)
+                : Long.compare(a.sequence, b.sequence));
+
+        int sample = Math.min(n, WIDTH_SAMPLE);
+        if (sample > 1) {
+            double separation = (all[sample - 1].time - all[0].time) / (sample - 1);
+            if (separation > 0.0) width = 3.0 * separation;
+        }
+
+        buckets = new Node[newBuckets];
+        // Insert latest first so that each bucket list is built by pushing onto its head.
+        for (int i = n - 1; i >= 0; i--) {
+            Node node = all[i];
+            node.day = (long) Math.floor(node.time / width);
+            int b = bucketOf(node.day);
+            node.next = buckets[b];
+            buckets[b] = node;
+        }
+        if (n > 0) {
+            currentDay = all[0].day;
+            currentBucket = bucketOf(currentDay);
+        }
+        Arrays.fill(all, 0, n, null);
+    }
+}
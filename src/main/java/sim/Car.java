@@ -2,18 +2,31 @@ package sim;
 
 /**
  * Car: the class representing cars.
+ * Inside the model a car is a small record that gets reused: the arrival event and each pump own
+ * one, and the car queue keeps only the numbers. Car objects are what the queue hands in and out.
  */
 public class Car {
     private double arrivalTime;
-    private final double litresNeeded;
+    private double litresNeeded;
+    private double serviceNoise = Double.NaN; // drawn on arrival with synchronized streams (see Pump.serviceTime)
+    private int fuel = -1; // the fuel the car needs, with a fuel mix (see PumpStand); -1 = any
+
+    /** Constructor for a reusable car record, filled in by drawLitresNeeded or set. */
+    Car() {
+    }
 
     /**
      * The number of litres required is a property of a car, so it belongs in this class.
      * It is also something the car "knows" when it arrives, so it should be calculated in the constructor.
      * The distribution of litres required is uniform between 10 and 60.
      */
-    public Car() {
-        this.litresNeeded = Sim.litresNeededMin + Sim.litreStream.nextDouble() * Sim.litresNeededRange;
+    public Car(Simulation sim) {
+        drawLitresNeeded(sim);
+    }
+
+    /** drawLitresNeeded: give a newly-arrived (possibly reused) car its demand for gas. */
+    final void drawLitresNeeded(Simulation sim) {
+        this.litresNeeded = sim.params.litresNeededMin + sim.litreDraws.next() * sim.params.litresNeededRange;
     }
 
     /** return the car's arrival time. */
@@ -26,8 +39,46 @@ public class Car {
         return litresNeeded;
     }
 
+    /** return the standard normal deviate of the car's service time, or NaN if it is drawn at the pump. */
+    double getServiceNoise() {
+        return serviceNoise;
+    }
+
+    /** set the standard normal deviate of the car's service time. */
+    void setServiceNoise(double noise) {
+        this.serviceNoise = noise;
+    }
+
+    /** return the fuel the car needs, or -1 if any pump will do. */
+    int getFuel() {
+        return fuel;
+    }
+
+    /** set the fuel the car needs (-1 for any). */
+    void setFuel(int fuel) {
+        this.fuel = fuel;
+    }
+
     /** set the car's arrival time. */
     public void setArrivalTime(double time) {
         this.arrivalTime = time;
     }
+
+    /** set: make this car record a copy of another car's arrival time and litres. */
+    void set(double arrivalTime, double litresNeeded) {
+        set(arrivalTime, litresNeeded, Double.NaN);
+    }
+
+    /** set: make this car record a copy of another car, including its service-time deviate. */
+    void set(double arrivalTime, double litresNeeded, double serviceNoise) {
+        set(arrivalTime, litresNeeded, serviceNoise, -1);
+    }
+
+    /** set: make this car record a copy of another car, including its service-time deviate and fuel. */
+    void set(double arrivalTime, double litresNeeded, double serviceNoise, int fuel) {
+        this.arrivalTime = arrivalTime;
+        this.litresNeeded = litresNeeded;
+        this.serviceNoise = serviceNoise;
+        this.fuel = fuel;
+    }
 }
@@ -1,21 +1,31 @@
 package sim;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * CarQueue: the class representing the lineup of cars at the gas station.
+ * The waiting cars are kept in a growable circular buffer as parallel arrays, their arrival
+ * times, the litres they need, (with synchronized streams) their service-time deviates and (with
+ * a fuel mix) the fuels they need; no object exists per waiting car. Car objects only appear at
+ * the edges: insert copies a car in, and takeFirstCar copies the first one out.
  */
 public class CarQueue {
+    private static final int INITIAL_CAPACITY = 16; // a power of two, as every capacity is
 
-    /** QueueItem: the class for objects stored in the car queue. */
-    private static class QueueItem {
-        public Car data;
-        public QueueItem next;
-    }
-
-    private QueueItem firstWaitingCar = null;
-    private QueueItem lastWaitingCar = null;
+    private final Simulation sim;
+    private double[] arrivalTimes = new double[INITIAL_CAPACITY];
+    private double[] litresNeeded = new double[INITIAL_CAPACITY];
+    private double[] serviceNoise = new double[INITIAL_CAPACITY];
+    private int[] fuels = new int[INITIAL_CAPACITY];
+    private int firstWaitingCar = 0; // index of the first car in the buffer
     private int queueSize = 0;
     private double totalEmptyQueueTime = 0.0;
-    private boolean countingEmptySinceStart = true; // queue starts empty
+
+    public CarQueue(Simulation sim) {
+        this.sim = sim;
+    }
 
     /** return the total time the car queue has been empty. */
     public double getEmptyTime() {
@@ -23,51 +33,149 @@ public class CarQueue {
             return totalEmptyQueueTime;
         } else {
             // empty from last time we became empty up to now
-            return totalEmptyQueueTime + Sim.simulationTime;
+            return totalEmptyQueueTime + sim.simulationTime;
         }
     }
 
+    /** resetEmptyTime: count the empty time from now on only (the end of a warm-up period). */
+    void resetEmptyTime() {
+        // same bookkeeping as takeFirstCar: while the queue is empty, the current time is added back
+        totalEmptyQueueTime = (queueSize > 0) ? 0.0 : -sim.simulationTime;
+    }
+
     /** return the number of cars in the car queue. */
     public int getQueueSize() {
         return queueSize;
     }
 
-    /** insert: put a newly-arrived car into the car queue. */
+    /** insert: put a newly-arrived car into the car queue (the queue keeps a copy of it). */
     public void insert(Car newestCar) {
-        QueueItem item = new QueueItem();
-        item.data = newestCar;
-        item.next = null;
-
-        if (lastWaitingCar == null) {
-            // the queue is empty
-            firstWaitingCar = item;
-            lastWaitingCar = item;
-            // we stop counting empty time now; since we counted from 0,
-            // correct the initial overcount by not adding more here.
-        } else {
-            // the queue already had at least one car in it
-            lastWaitingCar.next = item;
-            lastWaitingCar = item;
-        }
+        insert(newestCar.getArrivalTime(), newestCar.getLitresNeeded(), newestCar.getServiceNoise(), newestCar.getFuel());
+    }
+
+    /** insert: put a newly-arrived car, given by its arrival time and litres, at the end of the queue. */
+    public void insert(double arrivalTime, double litres) {
+        insert(arrivalTime, litres, Double.NaN, -1);
+    }
+
+    private void insert(double arrivalTime, double litres, double noise, int fuel) {
+        if (queueSize == arrivalTimes.length) grow();
+        int last = (firstWaitingCar + queueSize) & (arrivalTimes.length - 1);
+        arrivalTimes[last] = arrivalTime;
+        litresNeeded[last] = litres;
+        serviceNoise[last] = noise;
+        fuels[last] = fuel;
+        // If the queue was empty we stop counting empty time now; since we counted from 0,
+        // correct the initial overcount by not adding more here.
         queueSize += 1;
+        sim.stats.trackQueueLength(queueSize);
     }
 
-    /** takeFirstCar: remove first car from car queue and return it. */
+    /** takeFirstCar: remove first car from car queue and return it, as a new Car. */
     public Car takeFirstCar() {
-        if (queueSize <= 0 || firstWaitingCar == null) {
+        return takeFirstCar(new Car());
+    }
+
+    /** takeFirstCar: remove first car from car queue, copy it into the given car and return that car. */
+    public Car takeFirstCar(Car into) {
+        if (queueSize <= 0) {
             System.out.println("Error! car queue unexpectedly empty");
             return null;
         }
-        Car carToReturn = firstWaitingCar.data;
+        into.set(arrivalTimes[firstWaitingCar], litresNeeded[firstWaitingCar], serviceNoise[firstWaitingCar],
+                fuels[firstWaitingCar]);
         queueSize--;
-        firstWaitingCar = firstWaitingCar.next;
-        if (firstWaitingCar == null) {
-            // empty queue; update the end of the queue
-            lastWaitingCar = null;
+        firstWaitingCar = (firstWaitingCar + 1) & (arrivalTimes.length - 1);
+        sim.stats.trackQueueLength(queueSize);
+        if (queueSize == 0) {
             // start counting empty queue time
-            totalEmptyQueueTime -= Sim.simulationTime; // see original intent
-            // We will add Sim.simulationTime in getEmptyTime(), net effect tracks emptiness.
+            totalEmptyQueueTime -= sim.simulationTime; // see original intent
+            // We will add sim.simulationTime in getEmptyTime(), net effect tracks emptiness.
         }
-        return carToReturn;
+        return into;
+    }
+
+    /**
+     * takeFirstCarFor: remove the first car that a pump can serve, given the fuels it dispenses (the
+     * pump's PumpType.fuels), copy it into the given car and return that car; null if no car waiting
+     * can use the pump. The cars behind it move up one place, so the queue keeps its order.
+     */
+    Car takeFirstCarFor(Car into, int fuelMask) {
+        int mask = arrivalTimes.length - 1;
+        for (int i = 0; i < queueSize; i++) {
+            int index = (firstWaitingCar + i) & mask;
+            int fuel = fuels[index];
+            if (fuel >= 0 && (fuelMask & (1 << fuel)) == 0) continue;
+            if (i == 0) return takeFirstCar(into);
+            into.set(arrivalTimes[index], litresNeeded[index], serviceNoise[index], fuel);
+            for (int k = i; k < queueSize - 1; k++) {
+                int to = (firstWaitingCar + k) & mask;
+                int from = (to + 1) & mask;
+                arrivalTimes[to] = arrivalTimes[from];
+                litresNeeded[to] = litresNeeded[from];
+                serviceNoise[to] = serviceNoise[from];
+                fuels[to] = fuels[from];
+            }
+            queueSize--;
+            sim.stats.trackQueueLength(queueSize);
+            return into;
+        }
+        return null;
+    }
+
+    /** save: write the waiting cars, first to last, and the empty-time bookkeeping to a checkpoint. */
+    void save(DataOutput out) throws IOException {
+        out.writeInt(queueSize);
+        for (int i = 0; i < queueSize; i++) {
+            int index = (firstWaitingCar + i) & (arrivalTimes.length - 1);
+            out.writeDouble(arrivalTimes[index]);
+            out.writeDouble(litresNeeded[index]);
+            out.writeDouble(serviceNoise[index]);
+            out.writeInt(fuels[index]);
+        }
+        out.writeDouble(totalEmptyQueueTime);
+    }
+
+    /** restore: read the state written by save (the statistics are restored separately). */
+    void restore(DataInput in) throws IOException {
+        int cars = in.readInt();
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < cars) capacity *= 2;
+        arrivalTimes = new double[capacity];
+        litresNeeded = new double[capacity];
+        serviceNoise = new double[capacity];
+        fuels = new int[capacity];
+        for (int i = 0; i < cars; i++) {
+            arrivalTimes[i] = in.readDouble();
+            litresNeeded[i] = in.readDouble();
+            serviceNoise[i] = in.readDouble();
+            fuels[i] = in.readInt();
+        }
+        firstWaitingCar = 0;
+        queueSize = cars;
+        totalEmptyQueueTime = in.readDouble();
+    }
+
+    /** grow: double the buffer, unwrapping the cars so the first one is at index 0. */
+    private void grow() {
+        int capacity = arrivalTimes.length;
+        double[] times = new double[capacity * 2];
+        double[] litres = new double[capacity * 2];
+        double[] noise = new double[capacity * 2];
+        int[] fuel = new int[capacity * 2];
+        int head = capacity - firstWaitingCar; // cars from firstWaitingCar to the end of the array
+        System.arraycopy(arrivalTimes, firstWaitingCar, times, 0, head);
+        System.arraycopy(arrivalTimes, 0, times, head, firstWaitingCar);
+        System.arraycopy(litresNeeded, firstWaitingCar, litres, 0, head);
+        System.arraycopy(litresNeeded, 0, litres, head, firstWaitingCar);
+        System.arraycopy(serviceNoise, firstWaitingCar, noise, 0, head);
+        System.arraycopy(serviceNoise, 0, noise, head, firstWaitingCar);
+        System.arraycopy(fuels, firstWaitingCar, fuel, 0, head);
+        System.arraycopy(fuels, 0, fuel, head, firstWaitingCar);
+        arrivalTimes = times;
+        litresNeeded = litres;
+        serviceNoise = noise;
+        fuels = fuel;
+        firstWaitingCar = 0;
     }
 }
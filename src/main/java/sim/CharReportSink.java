@@ -0,0 +1,53 @@
+package sim;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * CharReportSink: the common part of the text-based sinks; a line is built in a reused
+ * StringBuilder, copied into a reused byte buffer (reports are plain ASCII) and written out.
+ */
+abstract class CharReportSink implements ReportSink {
+    private static final String NEWLINE = System.lineSeparator();
+
+    private final OutputStream out;
+    protected final StringBuilder line = new StringBuilder(256);
+    private byte[] bytes = new byte[256];
+
+    CharReportSink(OutputStream out) {
+        this.out = out;
+    }
+
+    /** endLine: finish the line being built and write it out. */
+    protected void endLine() {
+        line.append(NEWLINE);
+        int n = line.length();
+        if (bytes.length < n) bytes = new byte[2 * n];
+        for (int i = 0; i < n; i++) bytes[i] = (byte) line.charAt(i);
+        line.setLength(0);
+        try {
+            out.write(bytes, 0, n);
+        } catch (IOException e) {
+            System.out.println("Error! report output failed: " + e.getMessage());
+        }
+    }
+
+    /** flush: pass the lines so far on to the stream (or the background writer). */
+    public void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            System.out.println("Error! report output failed: " + e.getMessage());
+        }
+    }
+
+    /** close: write out everything; the stream itself stays open, only a background writer is stopped. */
+    public void close() {
+        try {
+            if (out instanceof AsyncOutput) out.close();
+            else out.flush();
+        } catch (IOException e) {
+            System.out.println("Error! report output failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package sim;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Checkpoint: saves the complete state of a run, so that it can be resumed later or forked into
+ * several runs from one (e.g. warmed-up) state.
+ *
+ * A checkpoint is a small binary file: the magic bytes "SIMC" and a version byte, the parameters
+ * (as names and values), the seeding, replication and branch, then the clock, the position of each random
+ * stream, the car queue, the pumps with their cars, the statistics (with the batch means and warm-up
+ * detector of runs that have them) and the pending events in the order they will happen.
+ *
+ * restore continues the run exactly: the streams are regenerated from the seeding and brought to
+ * their saved positions, so the rest of the run is identical, to the last bit, to the run that was
+ * saved. fork continues from the same state on fresh streams, those of a branch of the saved
+ * replication (see Seeding.streams), so branches differ from each other only in their futures and
+ * share no stream with any replication of the study.
+ *
+ * Usage: java sim.Checkpoint checkpoint [endingTime]
+ * resumes a checkpoint written by Sim (-Dsim.checkpoint=file -Dsim.checkpointAt=time) and prints
+ * the remaining reports; the ending time may be changed. A resumed run writes an event trace only
+ * if asked to (-Dsim.trace), so the trace of the saved run is kept.
+ */
+public final class Checkpoint {
+    static final int VERSION = 3;
+
+    private Checkpoint() {
+    }
+
+    /** write: save the state of a run, which is not changed by it, to a stream. */
+    public static void write(Simulation sim, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.write("SIMC".getBytes(StandardCharsets.US_ASCII));
+        data.writeByte(VERSION);
+        sim.params.save(data);
+        data.writeUTF(sim.seeding.toString());
+        data.writeInt(sim.replication);
+        data.writeInt(sim.branch);
+        sim.save(data);
+        data.flush();
+    }
+
+    /** save: write a checkpoint of a run to a file. */
+    public static void save(Simulation sim, Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            write(sim, out);
+        }
+    }
+
+    /** restore: the run saved in a checkpoint, ready to carry on exactly as it would have. */
+    public static Simulation restore(InputStream in, ReportSink report) throws IOException {
+        return read(in, null, report, -1);
+    }
+
+    /**
+     * restore: the run saved in a checkpoint, on its own streams but with other parameters (e.g. other
+     * prices, or a later ending time), for what-if runs with common random numbers. The parameters
+     * that shape the state (the number of pumps, the variate block, and whether the run stops on
+     * precision or detects its warm-up) must be those of the saved run.
+     */
+    public static Simulation restore(InputStream in, Parameters params, ReportSink report) throws IOException {
+        return read(in, params, report, -1);
+    }
+
+    /**
+     * fork: branch k of the run saved in a checkpoint. The branch starts from the saved state with
+     * the parameters given (null for the saved ones), and continues on the streams of branch k of the
+     * saved replication, which no other branch and no replication of the saved seeding uses. A branch
+     * cannot be forked again; fork the checkpoint it came from with other branch numbers.
+     */
+    public static Simulation fork(InputStream in, int branch, Parameters params, ReportSink report) throws IOException {
+        if (branch < 0) throw new IllegalArgumentException("negative branch " + branch);
+        return read(in, params, report, branch);
+    }
+
+    private static Simulation read(InputStream in, Parameters params, ReportSink report, int branch) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        Parameters saved = readHeader(data);
+        Seeding seeding = Seeding.parse(data.readUTF());
+        int replication = data.readInt();
+        int savedBranch = data.readInt();
+
+        boolean sameStreams = branch < 0;
+        if (!sameStreams && savedBranch >= 0) {
+            throw new IllegalArgumentException("a branch (" + savedBranch + ") cannot be forked again");
+        }
+        // a resumed run must not overwrite the event trace of the saved one; ask for a new trace if wanted
+        if (params == null) saved.traceFile = null;
+        Parameters p = (params == null) ? saved : params;
+        checkCompatible(saved, p, sameStreams);
+        Simulation sim = new Simulation(p, seeding, replication, sameStreams ? savedBranch : branch, report, false);
+        sim.restore(data, sameStreams);
+        return sim;
+    }
+
+    /** parameters: the parameters saved in a checkpoint. */
+    public static Parameters parameters(InputStream in) throws IOException {
+        return readHeader(new DataInputStream(new BufferedInputStream(in)));
+    }
+
+    private static Parameters readHeader(DataInputStream data) throws IOException {
+        byte[] magic = new byte[4];
+        data.readFully(magic);
+        if (!"SIMC".equals(new String(magic, StandardCharsets.US_ASCII))) throw new IOException("not a checkpoint");
+        int version = data.readUnsignedByte();
+        if (version != VERSION) throw new IOException("unknown checkpoint version " + version);
+        Parameters saved = new Parameters();
+        saved.restore(data);
+        return saved;
+    }
+
+    /** checkCompatible: reject parameters that do not fit the saved state. */
+    private static void checkCompatible(Parameters saved, Parameters p, boolean sameStreams) {
+        if (!p.pumpTypes.equals(saved.pumpTypes) || !p.fuelMix.equals(saved.fuelMix)) {
+            throw new IllegalArgumentException("a checkpoint cannot change its pump types or fuel mix");
+        }
+        if (p.pumpTypes.isEmpty() && p.numPumps != saved.numPumps) {
+            throw new IllegalArgumentException("the checkpoint has " + saved.numPumps + " pumps, not " + p.numPumps);
+        }
+        if (sameStreams && p.variateBlock != saved.variateBlock) {
+            throw new IllegalArgumentException("the checkpoint draws variates in blocks of " + saved.variateBlock);
+        }
+        if ((p.targetPrecision > 0.0) != (saved.targetPrecision > 0.0)) {
+            throw new IllegalArgumentException("a checkpoint cannot switch stopping on precision on or off");
+        }
+        if (p.arrivalProfile.isEmpty() != saved.arrivalProfile.isEmpty()
+                || (!p.arrivalProfile.isEmpty() && p.timeOfDayBucket != saved.timeOfDayBucket)) {
+            throw new IllegalArgumentException("a checkpoint cannot switch its arrival profile or time-of-day buckets on or off");
+        }
+        if ((p.arrivalLog == null) != (saved.arrivalLog == null)) {
+            throw new IllegalArgumentException("a checkpoint cannot switch replaying an arrival log on or off");
+        }
+        if (detectsWarmUp(p) != detectsWarmUp(saved)) {
+            throw new IllegalArgumentException("a checkpoint cannot switch warm-up detection on or off");
+        }
+    }
+
+    private static boolean detectsWarmUp(Parameters p) {
+        return p.warmUpTime <= 0.0 && p.warmUpDetection;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java sim.Checkpoint checkpoint [endingTime]");
+            return;
+        }
+        ReportSink report = ReportSink.open(ReportSink.Format.parse(System.getProperty("sim.report", "text")),
+                System.out, true);
+        Path file = Paths.get(args[0]);
+        Parameters params;
+        try (InputStream in = Files.newInputStream(file)) {
+            params = parameters(in);
+        }
+        if (args.length > 1) params.endingTime = Double.parseDouble(args[1]);
+        params.traceFile = System.getProperty("sim.trace");
+        Simulation sim;
+        try (InputStream in = Files.newInputStream(file)) {
+            sim = restore(in, params, report);
+        }
+        report.message("Resumed at time " + Statistics.fmtDbl(sim.getSimulationTime(), 0, 0));
+        sim.run();
+        report.close();
+    }
+}
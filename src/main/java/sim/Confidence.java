@@ -0,0 +1,154 @@
+package sim;
+
+/**
+ * Confidence: confidence intervals for means estimated from independent observations,
+ * e.g. one value per replication. Quantiles are found by bisection on the distribution functions:
+ * Student's t from the regularized incomplete beta function, the normal from the incomplete gamma.
+ */
+public final class Confidence {
+
+    private Confidence() {
+    }
+
+    /** halfWidth: the half-width of the two-sided confidence interval for the mean, or NaN with fewer than two. */
+    public static double halfWidth(Welford observations, double level) {
+        long n = observations.getCount();
+        if (n < 2) return Double.NaN;
+        return tQuantile(0.5 + level / 2.0, n - 1) * observations.getStdDev() / Math.sqrt(n);
+    }
+
+    /** tQuantile: the p-quantile (0 &lt; p &lt; 1) of Student's t distribution with df degrees of freedom. */
+    public static double tQuantile(double p, double df) {
+        if (!(df > 0.0)) return Double.NaN;
+        if (df > 1e7) return normalQuantile(p);
+        return invert(p, false, df);
+    }
+
+    /** normalQuantile: the p-quantile (0 &lt; p &lt; 1) of the standard normal distribution. */
+    public static double normalQuantile(double p) {
+        return invert(p, true, 0.0);
+    }
+
+    /** invert: bisection for the p-quantile of the normal or t distribution, using their symmetry about 0. */
+    private static double invert(double p, boolean normal, double df) {
+        if (!(p > 0.0 && p < 1.0)) return Double.NaN;
+        if (p < 0.5) return -invert(1.0 - p, normal, df);
+        if (p == 0.5) return 0.0;
+        double lo = 0.0;
+        double hi = 1.0;
+        while ((normal ? normalCdf(hi) : tCdf(hi, df)) < p) {
+            lo = hi;
+            hi *= 2.0;
+            if (hi > 1e300) return Double.POSITIVE_INFINITY;
+        }
+        for (int i = 0; i < 200 && hi - lo > 1e-12 * hi; i++) {
+            double mid = 0.5 * (lo + hi);
+            if ((normal ? normalCdf(mid) : tCdf(mid, df)) < p) lo = mid;
+            else hi = mid;
+        }
+        return 0.5 * (lo + hi);
+    }
+
+    /** normalCdf: the probability that a standard normal variate is at most z. */
+    static double normalCdf(double z) {
+        // P(|Z| <= |z|) is the regularized lower incomplete gamma P(1/2, z^2/2)
+        double inner = 0.5 * incompleteGamma(0.5, 0.5 * z * z);
+        return (z >= 0.0) ? 0.5 + inner : 0.5 - inner;
+    }
+
+    /** incompleteGamma: the regularized lower incomplete gamma function P(a, x). */
+    static double incompleteGamma(double a, double x) {
+        if (x <= 0.0) return 0.0;
+        double front = Math.exp(-x + a * Math.log(x) - logGamma(a));
+        if (x < a + 1.0) {
+            // series
+            double term = 1.0 / a;
+            double sum = term;
+            for (int n = 1; n < 10000; n++) {
+                term *= x / (a + n);
+                sum += term;
+                if (Math.abs(term) < Math.abs(sum) * 1e-16) break;
+            }
+            return front * sum;
+        }
+        // continued fraction for the upper part (Lentz)
+        final double tiny = 1e-300;
+        double b = x + 1.0 - a;
+        double c = 1.0 / tiny;
+        double d = 1.0 / b;
+        double h = d;
+        for (int i = 1; i < 10000; i++) {
+            double an = -i * (i - a);
+            b += 2.0;
+            d = an * d + b;
+            if (Math.abs(d) < tiny) d = tiny;
+            c = b + an / c;
+            if (Math.abs(c) < tiny) c = tiny;
+            d = 1.0 / d;
+            double del = d * c;
+            h *= del;
+            if (Math.abs(del - 1.0) < 1e-16) break;
+        }
+        return 1.0 - front * h;
+    }
+
+    /** tCdf: the probability that a t variate with df degrees of freedom is at most t. */
+    static double tCdf(double t, double df) {
+        double tail = 0.5 * incompleteBeta(df / (df + t * t), df / 2.0, 0.5);
+        return (t >= 0.0) ? 1.0 - tail : tail;
+    }
+
+    /** incompleteBeta: the regularized incomplete beta function I_x(a, b). */
+    static double incompleteBeta(double x, double a, double b) {
+        if (x <= 0.0) return 0.0;
+        if (x >= 1.0) return 1.0;
+        double front = Math.exp(logGamma(a + b) - logGamma(a) - logGamma(b)
+                + a * Math.log(x) + b * Math.log1p(-x));
+        // the continued fraction converges quickly on this side of the mean; use the symmetry otherwise
+        if (x < (a + 1.0) / (a + b + 2.0)) return front * betaFraction(x, a, b) / a;
+        return 1.0 - front * betaFraction(1.0 - x, b, a) / b;
+    }
+
+    /** betaFraction: Lentz's evaluation of the continued fraction for the incomplete beta function. */
+    private static double betaFraction(double x, double a, double b) {
+        final double tiny = 1e-300;
+        double c = 1.0;
+        double d = 1.0 - (a + b) * x / (a + 1.0);
+        if (Math.abs(d) < tiny) d = tiny;
+        d = 1.0 / d;
+        double h = d;
+        for (int m = 1; m <= 10000; m++) {
+            int m2 = 2 * m;
+            double aa = m * (b - m) * x / ((a + m2 - 1.0) * (a + m2));
+            d = 1.0 + aa * d;
+            if (Math.abs(d) < tiny) d = tiny;
+            c = 1.0 + aa / c;
+            if (Math.abs(c) < tiny) c = tiny;
+            d = 1.0 / d;
+            h *= d * c;
+            aa = -(a + m) * (a + b + m) * x / ((a + m2) * (a + m2 + 1.0));
+            d = 1.0 + aa * d;
+            if (Math.abs(d) < tiny) d = tiny;
+            c = 1.0 + aa / c;
+            if (Math.abs(c) < tiny) c = tiny;
+            d = 1.0 / d;
+            double del = d * c;
+            h *= del;
+            if (Math.abs(del - 1.0) < 1e-15) break;
+        }
+        return h;
+    }
+
+    /** logGamma: the log of the gamma function for x &gt; 0 (Lanczos approximation). */
+    static double logGamma(double x) {
+        if (x < 0.5) return Math.log(Math.PI / Math.sin(Math.PI * x)) - logGamma(1.0 - x);
+        final double[] g = {0.99999999999980993, 676.5203681218851, -1259.1392167224028, 771.32342877765313,
+                -176.61502916214059, 12.507343278686905, -0.13857109526572012, 9.9843695780195716e-6,
+                1.5056327351493116e-7};
+        x -= 1.0;
+        double sum = g[0];
+        for (int i = 1; i < g.length; i++) sum += g[i] / (x + i);
+        double t = x + 7.5;
+        return 0.5 * Math.log(2.0 * Math.PI) + (x + 0.5) * Math.log(t) - t + Math.log(sum);
+    }
+}
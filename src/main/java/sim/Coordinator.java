@@ -0,0 +1,398 @@
+package sim;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coordinator: spreads the replications of a study (a list of scenarios, each run for the same
+ * number of replications) over worker processes on this or other hosts (see Worker). Every
+ * scenario x replication is a work unit; a worker connects, is handed one unit at a time, runs it
+ * exactly as Replications.runOne would, and sends back its Summary. If a worker's connection breaks
+ * or it stays silent for longer than the unit timeout (DEFAULT_UNIT_TIMEOUT unless set), its unit
+ * goes back to the front of the queue for another worker. Only a worker that has acknowledged a
+ * unit counts as an attempt at it, so a connection that died while it was idle just passes the unit
+ * on; a unit lost by MAX_ATTEMPTS workers that had taken it, or one whose run throws, fails the study.
+ *
+ * Replication k of a scenario draws the streams Seeding derives for replication k, whichever worker
+ * runs it, and the results are merged in scenario and replication order, so the result of a study
+ * is the same as a run in one JVM, however many workers there are and whatever they do.
+ *
+ * The protocol is DataInput/DataOutput over a socket. The worker opens with "SIMW", the protocol
+ * VERSION and its ResultCache.codeVersion() (workers running other code are turned away with
+ * REJECT and a reason, or else get ACCEPT). Then the coordinator sends UNIT, the unit's number, the
+ * parameters (as Parameters.save writes them), the seeding (as Seeding.toString writes it) and the
+ * replication; the worker acknowledges it at once with TAKEN and the unit's number, and when it is
+ * done answers RESULT, the unit's number and the Summary, or FAILED, the unit's number and a message.
+ * BYE tells the worker there is no more work.
+ *
+ * Usage: java sim.Coordinator port localWorkers replications name=v1,v2 ... [--csv] [--unitTimeout=seconds]
+ *        &lt; the usual seven input lines of Sim (the base scenario; the report interval is ignored)
+ * starts localWorkers worker JVMs on this host (0 to wait for remote ones: java sim.Worker host:port)
+ * and prints the table of Sweep for the grid of the axes given; --unitTimeout=0 waits for ever.
+ */
+public final class Coordinator implements Closeable {
+    static final int VERSION = 2;
+    static final int ACCEPT = 1;
+    static final int REJECT = 2;
+    static final int UNIT = 3;
+    static final int RESULT = 4;
+    static final int FAILED = 5;
+    static final int BYE = 6;
+    static final int TAKEN = 7;
+    static final int MAX_ATTEMPTS = 3;
+    /** the milliseconds a worker may take over a unit before it is given up */
+    public static final int DEFAULT_UNIT_TIMEOUT = 10 * 60 * 1000;
+
+    /** Study: the units of one call of run and the summaries that have come back. */
+    private static final class Study {
+        final Summary[][] results;
+        final int[] attempts;
+        int remaining;
+        RuntimeException failure;
+
+        Study(int scenarios, int replications) {
+            results = new Summary[scenarios][replications];
+            attempts = new int[scenarios * replications];
+            remaining = scenarios * replications;
+        }
+
+        synchronized boolean isOver() {
+            return remaining == 0 || failure != null;
+        }
+
+        synchronized void complete(Unit u, Summary s) {
+            if (failure != null || results[u.scenario][u.replication] != null) return;
+            results[u.scenario][u.replication] = s;
+            if (--remaining == 0) notifyAll();
+        }
+
+        synchronized void fail(RuntimeException e) {
+            if (failure == null) failure = e;
+            notifyAll();
+        }
+
+        /** lost: count a lost attempt at a unit; false if the unit may not be tried again. */
+        synchronized boolean lost(Unit u) {
+            return ++attempts[u.id] < MAX_ATTEMPTS;
+        }
+
+        synchronized Summary[][] await() throws InterruptedException {
+            while (remaining > 0 && failure == null) wait();
+            if (failure != null) throw failure;
+            return results;
+        }
+    }
+
+    /** Unit: one replication of one scenario. */
+    private static final class Unit {
+        final Study study;
+        final int id;
+        final int scenario;
+        final int replication;
+        final Parameters params;
+        final Seeding seeding;
+
+        Unit(Study study, int id, int scenario, int replication, Parameters params, Seeding seeding) {
+            this.study = study;
+            this.id = id;
+            this.scenario = scenario;
+            this.replication = replication;
+            this.params = params;
+            this.seeding = seeding;
+        }
+    }
+
+    private final ServerSocket server;
+    private final LinkedBlockingDeque<Unit> queue = new LinkedBlockingDeque<>();
+    private final List<Thread> handlers = new ArrayList<>();
+    private final List<Process> localWorkers = new ArrayList<>();
+    private final Thread acceptor;
+    private volatile int unitTimeout = DEFAULT_UNIT_TIMEOUT; // milliseconds; 0 = wait for ever
+    private volatile boolean closed = false;
+    private final AtomicInteger workers = new AtomicInteger();
+    private final AtomicLong retries = new AtomicLong();
+
+    /** Constructor; listen for workers on the given port (0 for any free port). */
+    public Coordinator(int port) throws IOException {
+        server = new ServerSocket(port);
+        acceptor = new Thread(this::accept, "sim-coordinator");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /** return the port workers connect to. */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /** return the number of workers connected now. */
+    public int getWorkers() {
+        return workers.get();
+    }
+
+    /** return the number of units that have been handed out again after a worker was lost. */
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * setUnitTimeout: give a worker up, and hand its unit to another, after this many milliseconds
+     * without an answer (0 to wait for ever).
+     */
+    public void setUnitTimeout(int milliseconds) {
+        if (milliseconds < 0) throw new IllegalArgumentException("negative unit timeout: " + milliseconds);
+        unitTimeout = milliseconds;
+    }
+
+    /**
+     * startLocalWorkers: start worker JVMs on this host, with the classes of this one, each running
+     * one unit at a time; they stop when the coordinator closes.
+     */
+    public void startLocalWorkers(int n) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        String classPath;
+        try {
+            classPath = Paths.get(Coordinator.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+        } catch (URISyntaxException e) {
+            throw new IOException("cannot find the classes of the model", e);
+        }
+        for (int i = 0; i < n; i++) {
+            ProcessBuilder pb = new ProcessBuilder(java, "-cp", classPath, "-Dsim.codeVersion=" + ResultCache.codeVersion(),
+                    "sim.Worker", "localhost:" + getPort());
+            pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+            pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+            synchronized (localWorkers) {
+                localWorkers.add(pb.start());
+            }
+        }
+    }
+
+    /** return the worker JVMs started by startLocalWorkers. */
+    List<Process> getLocalWorkers() {
+        synchronized (localWorkers) {
+            return new ArrayList<>(localWorkers);
+        }
+    }
+
+    /**
+     * run: run replications 0..n-1 of every scenario on the workers, and return the summaries by
+     * scenario and replication. Waits for as long as it takes workers to turn up.
+     */
+    public Summary[][] run(List<Parameters> scenarios, Seeding seeding, int replications) {
+        if (closed) throw new IllegalStateException("coordinator closed");
+        Study study = new Study(scenarios.size(), replications);
+        int id = 0;
+        for (int s = 0; s < scenarios.size(); s++) {
+            Parameters params = scenarios.get(s).copy();
+            for (int k = 0; k < replications; k++) queue.add(new Unit(study, id++, s, k, params, seeding));
+        }
+        try {
+            return study.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("study interrupted", e);
+        } finally {
+            queue.removeIf(u -> u.study == study);
+        }
+    }
+
+    /** merge: pool the replications of each scenario, in replication order. */
+    public static List<Summary> merge(Summary[][] results) {
+        List<Summary> merged = new ArrayList<>(results.length);
+        for (Summary[] scenario : results) merged.add(Replications.merge(Arrays.asList(scenario)));
+        return merged;
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = server.accept();
+                Thread handler = new Thread(() -> serve(socket), "sim-coordinator-" + socket.getRemoteSocketAddress());
+                handler.setDaemon(true);
+                synchronized (handlers) {
+                    handlers.add(handler);
+                }
+                handler.start();
+            } catch (IOException e) {
+                if (!closed) System.out.println("Error! coordinator cannot accept workers: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /** serve: hand units to one worker until it is lost or the coordinator closes. */
+    private void serve(Socket socket) {
+        Unit unit = null;
+        boolean taken = false; // whether the worker has acknowledged the unit
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            s.setKeepAlive(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            String reason = handshake(in);
+            if (reason != null) {
+                out.writeByte(REJECT);
+                out.writeUTF(reason);
+                out.flush();
+                return;
+            }
+            out.writeByte(ACCEPT);
+            out.flush();
+            workers.incrementAndGet();
+            try {
+                while (!closed) {
+                    unit = queue.take();
+                    if (unit.study.isOver()) {
+                        unit = null;
+                        continue;
+                    }
+                    s.setSoTimeout(unitTimeout);
+                    out.writeByte(UNIT);
+                    out.writeInt(unit.id);
+                    unit.params.save(out);
+                    out.writeUTF(unit.seeding.toString());
+                    out.writeInt(unit.replication);
+                    out.flush();
+                    if (in.readUnsignedByte() != TAKEN || in.readInt() != unit.id) {
+                        throw new IOException("worker did not take unit " + unit.id);
+                    }
+                    taken = true;
+                    int reply = in.readUnsignedByte();
+                    int id = in.readInt();
+                    if (id != unit.id) throw new IOException("worker answered unit " + id + ", not " + unit.id);
+                    if (reply == RESULT) {
+                        unit.study.complete(unit, Summary.read(in));
+                    } else if (reply == FAILED) {
+                        unit.study.fail(new IllegalStateException("scenario " + unit.scenario + " replication "
+                                + unit.replication + " failed on a worker: " + in.readUTF()));
+                    } else {
+                        throw new IOException("unexpected reply " + reply);
+                    }
+                    unit = null;
+                    taken = false;
+                }
+            } catch (InterruptedException e) {
+                // closing
+            } finally {
+                workers.decrementAndGet();
+            }
+            out.writeByte(BYE);
+            out.flush();
+        } catch (IOException e) {
+            // the worker is lost; its unit, if any, goes to another one
+            if (unit != null && taken) retry(unit, e);
+            else if (unit != null && !unit.study.isOver()) queue.addFirst(unit);
+        }
+    }
+
+    /** handshake: read a worker's greeting; null if it may work, else the reason it may not. */
+    private static String handshake(DataInputStream in) throws IOException {
+        byte[] magic = new byte[4];
+        in.readFully(magic);
+        if (!"SIMW".equals(new String(magic, StandardCharsets.US_ASCII))) return "not a worker";
+        int version = in.readInt();
+        if (version != VERSION) return "protocol version " + version + ", not " + VERSION;
+        String code = in.readUTF();
+        if (!code.equals(ResultCache.codeVersion())) return "model code " + code + ", not " + ResultCache.codeVersion();
+        return null;
+    }
+
+    private void retry(Unit unit, IOException cause) {
+        if (unit.study.isOver()) return;
+        if (!unit.study.lost(unit)) {
+            unit.study.fail(new IllegalStateException("scenario " + unit.scenario + " replication " + unit.replication
+                    + " lost " + MAX_ATTEMPTS + " workers; the last with: " + cause.getMessage(), cause));
+            return;
+        }
+        retries.incrementAndGet();
+        queue.addFirst(unit);
+    }
+
+    /** close: send the workers away, stop listening and stop the local worker JVMs. */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        synchronized (handlers) {
+            for (Thread t : handlers) t.interrupt();
+        }
+        for (Process p : getLocalWorkers()) {
+            try {
+                if (!p.waitFor(5, TimeUnit.SECONDS)) p.destroyForcibly();
+            } catch (InterruptedException e) {
+                p.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("Usage: java sim.Coordinator port localWorkers replications name=v1,v2 ... [--csv] "
+                    + "[--unitTimeout=seconds] < input");
+            return;
+        }
+        int port = Integer.parseInt(args[0]);
+        int local = Integer.parseInt(args[1]);
+        int replications = Integer.parseInt(args[2]);
+        boolean csv = false;
+        int unitTimeout = DEFAULT_UNIT_TIMEOUT;
+        List<Sweep.Axis> axes = new ArrayList<>();
+        for (int i = 3; i < args.length; i++) {
+            if (args[i].equals("--csv")) csv = true;
+            else if (args[i].startsWith("--unitTimeout=")) {
+                unitTimeout = Math.toIntExact(Math.round(Double.parseDouble(args[i].substring(14)) * 1000.0));
+            } else axes.add(Sweep.Axis.parse(args[i]));
+        }
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        Parameters base = new Parameters();
+        base.reportInterval = Double.parseDouble(in.readLine().trim());
+        base.endingTime = Double.parseDouble(in.readLine().trim());
+        base.numPumps = Integer.parseInt(in.readLine().trim());
+        long[] seeds = new long[4];
+        for (int i = 0; i < 4; i++) seeds[i] = Integer.parseInt(in.readLine().trim());
+        Seeding seeding = Seeding.fromInput(seeds[0], seeds[1], seeds[2], seeds[3]);
+
+        long start = System.nanoTime();
+        try (Coordinator coordinator = new Coordinator(port)) {
+            coordinator.setUnitTimeout(unitTimeout);
+            if (!csv) {
+                System.out.println("Coordinator on " + InetAddress.getLocalHost().getHostName() + ":" + coordinator.getPort()
+                        + (local > 0 ? " with " + local + " local workers" : "; start workers with java sim.Worker host:port"));
+            }
+            coordinator.startLocalWorkers(local);
+            List<Parameters> scenarios = Sweep.grid(base, axes);
+            Summary[][] results = coordinator.run(scenarios, seeding, replications);
+            Sweep.printTable(System.out, axes, Sweep.points(base, axes, results), Sweep.CONFIDENCE, csv);
+            if (!csv) {
+                System.out.println(scenarios.size() + " points x " + replications + " replications in "
+                        + String.format(Locale.ROOT, "%.1f", (System.nanoTime() - start) / 1e9) + " s, "
+                        + coordinator.getRetries() + " units retried, streams " + seeding);
+            }
+        } catch (SocketException e) {
+            System.out.println("Error! " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package sim;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CsvReportSink: one comma-separated line per report, with full-precision numbers and an empty
+ * field where a value is unknown; messages become comment lines starting with #. Messages reported
+ * before the header follow it, so the first line is always the column names.
+ */
+final class CsvReportSink extends CharReportSink {
+    private final List<String> early = new ArrayList<>(); // messages waiting for the header
+    private boolean started;
+
+    CsvReportSink(OutputStream out) {
+        super(out);
+    }
+
+    public void header(boolean detailed) {
+        line.append("time,arrivals,noQueueFraction,carToCarTime,averageLitres,balked,averageWait,"
+                + "pumpUsage,totalProfit,lostProfit");
+        if (detailed) {
+            line.append(",waitStdDev,waitP50,waitP95,waitP99,averageQueueLength,"
+                    + "serviceStdDev,serviceP50,serviceP95,serviceP99,pumpOccupancy");
+        }
+        endLine();
+        started = true;
+        for (String text : early) message(text);
+        early.clear();
+    }
+
+    public void row(Summary s, boolean detailed) {
+        value(s.getSimulationTime());
+        value(s.getArrivals());
+        value(s.getNoQueueFraction());
+        value(s.getCarToCarTime());
+        value(s.getAverageLitres());
+        value(s.getBalkingCustomers());
+        value(s.getAverageWait());
+        value(s.getPumpUsage());
+        value(s.getTotalProfit());
+        value(s.getLostProfit());
+        if (detailed) {
+            value(s.getWaitStdDev());
+            value(s.getWaitPercentile(50.0));
+            value(s.getWaitPercentile(95.0));
+            value(s.getWaitPercentile(99.0));
+            value(s.getAverageQueueLength());
+            value(s.getServiceStdDev());
+            value(s.getServicePercentile(50.0));
+            value(s.getServicePercentile(95.0));
+            value(s.getServicePercentile(99.0));
+            value(s.getPumpOccupancy());
+        }
+        line.setLength(line.length() - 1); // the last comma
+        endLine();
+    }
+
+    public void message(String text) {
+        if (!started) {
+            early.add(text);
+            return;
+        }
+        line.append("# ").append(text);
+        endLine();
+    }
+
+    private void value(double v) {
+        if (!Double.isNaN(v)) line.append(v);
+        line.append(',');
+    }
+}
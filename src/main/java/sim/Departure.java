@@ -2,16 +2,21 @@ package sim;
 
 /**
  * Departure: the class representing departure events.
+ * A pump serves one car at a time, so each pump owns one Departure and reschedules it for every service.
  */
 class Departure extends Event {
-    private Pump pump;
+    private final Simulation sim;
+    private final Pump pump;
 
-    public Departure(double time) {
-        super(time);
+    public Departure(Simulation sim, Pump pump) {
+        super(0.0);
+        this.sim = sim;
+        this.pump = pump;
     }
 
-    public void setPump(Pump pump) {
-        this.pump = pump;
+    /** return the pump this departure belongs to. */
+    Pump getPump() {
+        return pump;
     }
 
     /** departure event routine */
@@ -23,25 +28,24 @@ class Departure extends Event {
         }
 
         // Identify the departing car and collect statistics.
-        Car departingCar = pump.getCarInService();
-        // clear current service
-        // (Pump has no "clear" method in the original design; simulate by releasing after handling queue)
-        Sim.stats.accumSale(departingCar.getLitresNeeded());
+        Car departingCar = pump.endService();
+        sim.stats.accumSale(departingCar.getLitresNeeded());
+        if (sim.trace != null) {
+            sim.trace.record(sim.simulationTime, EventTrace.DEPARTURE, pump.getId(), sim.carQueue.getQueueSize(),
+                    departingCar.getLitresNeeded(), Double.NaN);
+        }
 
-        // The car vanishes and the pump is free; can we serve another car?
-        if (Sim.carQueue.getQueueSize() > 0) {
-            pump.startService(Sim.carQueue.takeFirstCar());
+        // The car vanishes and the pump is free; can we serve another car (the first one that can use this pump)?
+        Car next = null;
+        if (sim.carQueue.getQueueSize() > 0) {
+            next = sim.pumpStand.usesFuels()
+                    ? sim.carQueue.takeFirstCarFor(departingCar, pump.getType().fuels)
+                    : sim.carQueue.takeFirstCar(departingCar);
+        }
+        if (next != null) {
+            pump.startService(next);
         } else {
-            // mark pump free
-            // To match the original structure, we need to clear the pump's car.
-            // We can't access a setter; but startService will overwrite it next time.
-            // Release the pump to the stand:
-            Sim.pumpStand.releasePump(pump);
+            sim.pumpStand.releasePump(pump);
         }
-        // ensure pump no longer references the old car
-        try {
-            // reflection-free approach: rely on Pump.startService overwriting, and being idle otherwise
-            // (kept minimal to match the original flavor)
-        } catch (Exception ignored) {}
     }
 }
@@ -4,13 +4,16 @@ package sim;
  * EndOfSimulation: the class representing the final event that stops the simulation.
  */
 class EndOfSimulation extends Event {
-    public EndOfSimulation(double time) {
+    private final Simulation sim;
+
+    public EndOfSimulation(Simulation sim, double time) {
         super(time);
+        this.sim = sim;
     }
 
     public void makeItHappen() {
         // print a final snapshot
-        Sim.stats.snapshot();
+        sim.stats.snapshot();
         // nothing else; main loop will stop after this event returns
     }
 }
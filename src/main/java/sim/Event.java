@@ -5,6 +5,7 @@ package sim;
  */
 public abstract class Event {
     private double time; // the time when the event happens
+    long sequence;       // insertion stamp, breaks ties between equal times (set by EventList)
 
     public Event(double time) {
         this.time = time;
@@ -3,43 +3,81 @@ package sim;
 /**
  * EventList: the class for the event list.
  * (There is only one object of this class in the program.)
+ * The pending events are kept by a FutureEventList backend chosen when the list is created;
+ * every backend hands out events in time order, first-in first-out among equal times.
  */
 public class EventList {
 
-    /** ListItem: the class for objects stored in the event list. */
-    private static class ListItem {
-        public Event data;
-        public ListItem next;
+    /** Backend: the available future-event-list implementations. */
+    public enum Backend {
+        SORTED_LIST, HEAP, CALENDAR, LADDER;
+
+        /** parse: look a backend up by name, e.g. "heap" or "calendar". */
+        public static Backend parse(String name) {
+            return valueOf(name.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    /** the backend used when none is requested. */
+    public static final Backend DEFAULT_BACKEND = Backend.HEAP;
+
+    private final FutureEventList pending;
+    private long nextSequence = 0; // stamps events so equal times stay in insertion order
+    private Event head = null;     // the earliest event, once taken out of the backend by peekTime
+
+    public EventList() {
+        this(DEFAULT_BACKEND);
     }
 
-    private ListItem firstEvent = null; // head of time-ordered list
+    public EventList(Backend backend) {
+        switch (backend) {
+            case SORTED_LIST: pending = new SortedListEventList(); break;
+            case CALENDAR:    pending = new CalendarQueue(); break;
+            case LADDER:      pending = new LadderQueue(); break;
+            default:          pending = new HeapEventList(4); break;
+        }
+    }
 
     /** insert: add an event e to the event list in the appropriate place, prioritized by time. */
     public void insert(Event e) {
-        ListItem item = new ListItem();
-        item.data = e;
-
-        final double time = e.getTime();
-        if (firstEvent == null || time < firstEvent.data.getTime()) {
-            item.next = firstEvent;
-            firstEvent = item;
-        } else {
-            ListItem behind = firstEvent;
-            ListItem ahead = firstEvent.next;
-            while (ahead != null && ahead.data.getTime() <= time) {
-                behind = ahead;
-                ahead = ahead.next;
-            }
-            behind.next = item;
-            item.next = ahead;
+        e.sequence = nextSequence++;
+        if (head != null && e.getTime() < head.getTime()) {
+            // the new event comes first; the old head goes back with its original stamp
+            pending.insert(head);
+            head = null;
         }
+        pending.insert(e);
     }
 
-    /** takeNextEvent: remove the item at the head of the event list and return it. */
+    /** takeNextEvent: remove the earliest event from the event list and return it. */
     public Event takeNextEvent() {
-        if (firstEvent == null) return null;
-        Event eventToReturn = firstEvent.data;
-        firstEvent = firstEvent.next;
-        return eventToReturn;
+        if (head != null) {
+            Event e = head;
+            head = null;
+            return e;
+        }
+        return pending.removeFirst();
+    }
+
+    /** peekTime: the time of the earliest event, without removing it; +infinity if there is none. */
+    public double peekTime() {
+        if (head == null) head = pending.removeFirst();
+        return (head == null) ? Double.POSITIVE_INFINITY : head.getTime();
+    }
+
+    /**
+     * pendingEvents: the pending events in the order they will happen. They are taken out and put
+     * back in that order, which keeps the order (the backend may lay them out differently).
+     */
+    Event[] pendingEvents() {
+        Event[] events = new Event[size()];
+        for (int i = 0; i < events.length; i++) events[i] = takeNextEvent();
+        for (Event e : events) insert(e);
+        return events;
+    }
+
+    /** return the number of pending events. */
+    public int size() {
+        return pending.size() + (head != null ? 1 : 0);
     }
 }
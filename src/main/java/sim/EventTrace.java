@@ -0,0 +1,123 @@
+package sim;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * EventTrace: an optional record of what happened in a run, written to a memory-mapped file.
+ * Every record is RECORD_SIZE bytes, little-endian: time, litres and wait (doubles), then type,
+ * pump and queue length (ints) and 4 bytes of padding. The file starts with a HEADER_SIZE-byte
+ * header: the magic bytes "SIMT", the version (int) and the number of records (long, filled in
+ * by close). The file is mapped a segment at a time, so writing a record is a few stores into
+ * memory and the operating system does the I/O. A run without a trace only pays a null check.
+ * TraceReader reads traces back.
+ */
+public final class EventTrace {
+    // record types
+    public static final int ARRIVAL = 1;    // a car arrives and joins the queue or a pump: litres, queue length before
+    public static final int BALK = 2;       // a car arrives and leaves: litres, queue length
+    public static final int SERVICE = 3;    // a pump starts serving a car: pump, litres, wait, queue length after
+    public static final int DEPARTURE = 4;  // a car leaves its pump: pump, litres, queue length
+    public static final int END = 5;        // the end of the run: queue length
+    static final String[] TYPE_NAMES = {"?", "ARRIVAL", "BALK", "SERVICE", "DEPARTURE", "END"};
+
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 40;
+    private static final long SEGMENT_RECORDS = 1 << 20; // 40 MB of records per mapping
+
+    private final FileChannel channel;
+    private MappedByteBuffer segment;
+    private long segmentStart;  // file position of the segment
+    private long records = 0;
+    private boolean closed = false;
+
+    private EventTrace(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /** open: start a new trace in the given file, replacing any old one. */
+    static EventTrace open(Path file) {
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            EventTrace trace = new EventTrace(channel);
+            trace.map(0L);
+            trace.segment.put((byte) 'S').put((byte) 'I').put((byte) 'M').put((byte) 'T');
+            trace.segment.putInt(VERSION).putLong(0L);
+            return trace;
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot open trace " + file, e);
+        }
+    }
+
+    /** return the type name of a record type. */
+    public static String typeName(int type) {
+        return (type > 0 && type < TYPE_NAMES.length) ? TYPE_NAMES[type] : TYPE_NAMES[0];
+    }
+
+    /** parseType: a record type by name, e.g. "service". */
+    public static int parseType(String name) {
+        for (int t = 1; t < TYPE_NAMES.length; t++) {
+            if (TYPE_NAMES[t].equalsIgnoreCase(name.trim())) return t;
+        }
+        throw new IllegalArgumentException("unknown trace record type: " + name);
+    }
+
+    /** record: append one record; pump is -1 and wait NaN where they do not apply. */
+    void record(double time, int type, int pump, int queueLength, double litres, double wait) {
+        if (!segment.hasRemaining()) map(segmentStart + segment.capacity());
+        segment.putDouble(time).putDouble(litres).putDouble(wait)
+                .putInt(type).putInt(pump).putInt(queueLength).putInt(0);
+        records++;
+    }
+
+    /** return the number of records written. */
+    long getRecords() {
+        return records;
+    }
+
+    /** return true until the trace is closed. */
+    boolean isOpen() {
+        return !closed;
+    }
+
+    /** close: fill in the record count, cut the file to its length and release it. */
+    void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN).putLong(8, records);
+            header.force();
+            segment.force();
+            segment = null;
+            try {
+                channel.truncate(HEADER_SIZE + records * RECORD_SIZE);
+            } catch (IOException e) {
+                // some platforms refuse while the file is mapped; the header count still says where the records end
+            }
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot close trace", e);
+        }
+    }
+
+    /** map: map the segment starting at the given file position (the header, or a record boundary). */
+    private void map(long start) {
+        try {
+            long size = (start == 0L ? HEADER_SIZE : 0L) + SEGMENT_RECORDS * RECORD_SIZE;
+            if (segment != null) segment.force();
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+            segmentStart = start;
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot extend trace", e);
+        }
+    }
+}
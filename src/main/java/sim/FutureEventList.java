@@ -0,0 +1,23 @@
+package sim;
+
+/**
+ * FutureEventList: the interface for the containers that hold pending events behind EventList.
+ * Events come out in increasing order of time; events with equal times come out in the order
+ * they were inserted (lowest sequence stamp first), so every backend replays a seeded run exactly.
+ */
+interface FutureEventList {
+
+    /** insert: add an event; its time and sequence stamp are fixed while it is pending. */
+    void insert(Event e);
+
+    /** removeFirst: remove and return the earliest pending event, or null if there is none. */
+    Event removeFirst();
+
+    /** return the number of pending events. */
+    int size();
+
+    /** before: the ordering shared by all backends, time first and then insertion order. */
+    static boolean before(double time, long sequence, double otherTime, long otherSequence) {
+        return time < otherTime || (time == otherTime && sequence < otherSequence);
+    }
+}
@@ -0,0 +1,92 @@
+package sim;
+
+import java.util.Arrays;
+
+/**
+ * HeapEventList: an implicit d-ary min-heap of pending events.
+ * The keys (time, sequence stamp) are kept in parallel primitive arrays next to the events,
+ * so sifting compares doubles and longs without dereferencing the event objects.
+ * Insert and remove are O(log n); arity 2 gives a binary heap, 4 is usually fastest.
+ */
+class HeapEventList implements FutureEventList {
+    private final int arity;
+    private Event[] events = new Event[64];
+    private double[] times = new double[64];
+    private long[] sequences = new long[64];
+    private int size = 0;
+
+    public HeapEventList(int arity) {
+        if (arity < 2) {
+            System.out.println("Error! heap arity must be at least 2");
+            arity = 2;
+        }
+        this.arity = arity;
+    }
+
+    /** insert: add an event at the bottom of the heap and sift it up to its place. */
+    public void insert(Event e) {
+        if (size == events.length) grow();
+        final double time = e.getTime();
+        final long sequence = e.sequence;
+        int hole = size++;
+        while (hole > 0) {
+            int parent = (hole - 1) / arity;
+            if (!FutureEventList.before(time, sequence, times[parent], sequences[parent])) break;
+            move(parent, hole);
+            hole = parent;
+        }
+        place(hole, e, time, sequence);
+    }
+
+    /** removeFirst: take the root and sift the last event down from the top. */
+    public Event removeFirst() {
+        if (size == 0) return null;
+        Event first = events[0];
+        int last = --size;
+        Event e = events[last];
+        final double time = times[last];
+        final long sequence = sequences[last];
+        events[last] = null;
+        if (last > 0) {
+            int hole = 0;
+            while (true) {
+                int child = hole * arity + 1;
+                if (child >= last) break;
+                int end = Math.min(child + arity, last);
+                int best = child;
+                for (int c = child + 1; c < end; c++) {
+                    if (FutureEventList.before(times[c], sequences[c], times[best], sequences[best])) best = c;
+                }
+                if (!FutureEventList.before(times[best], sequences[best], time, sequence)) break;
+                move(best, hole);
+                hole = best;
+            }
+            place(hole, e, time, sequence);
+        }
+        return first;
+    }
+
+    /** return the number of pending events. */
+    public int size() {
+        return size;
+    }
+
+    private void move(int from, int to) {
+        events[to] = events[from];
+        times[to] = times[from];
+        sequences[to] = sequences[from];
+    }
+
+    private void place(int slot, Event e, double time, long sequence) {
+        events[slot] = e;
+        times[slot] = time;
+        sequences[slot] = sequence;
+    }
+
+    private void grow() {
+        int capacity = events.length * 2;
+        events = Arrays.copyOf(events, capacity);
+        times = Arrays.copyOf(times, capacity);
+        sequences = Arrays.copyOf(sequences, capacity);
+    }
+}
@@ -0,0 +1,248 @@
+package sim;
+
+/**
+ * LadderQueue: the ladder queue of Tang, Goh and Thng (ACM TOMACS 15(3), 2005).
+ * New far-future events go unsorted into Top. When Bottom runs dry, Top is spread over the
+ * buckets of a rung; a crowded bucket spawns a finer rung below it, and a small bucket is
+ * sorted into Bottom, the only sorted part of the structure. Sorting touches only small
+ * buckets, so insert and remove are O(1) amortised even for skewed event-time distributions.
+ */
+class LadderQueue implements FutureEventList {
+    private static final int THRESHOLD = 50; // largest bucket sorted directly into Bottom
+    private static final int MAX_RUNGS = 8;
+
+    /** Node: the class for objects stored in Top, the rungs and Bottom. */
+    private static class Node {
+        public Event data;
+        public double time;
+        public long sequence;
+        public Node next;
+    }
+
+    /** Rung: one level of the ladder, an array of unsorted buckets of equal width. */
+    private static class Rung {
+        public Node[] heads;
+        public Node[] tails;
+        public int[] counts;
+        public int numBuckets; // buckets in use; the arrays may be longer
+        public double start;
+        public double width;
+        public int current;   // first bucket that may still hold events
+        public int remaining; // events in this rung
+
+        /** position: the time measured in buckets from the start of the rung. */
+        public double position(double time) {
+            return (time - start) / width;
+        }
+
+        /** bucket: the bucket for a position; monotone in time, so buckets stay ordered. */
+        public int bucket(double position) {
+            if (position < current) return current;
+            if (position >= numBuckets - 1) return numBuckets - 1;
+            return (int) position;
+        }
+    }
+
+    private Node topHead = null;
+    private int topCount = 0;
+    private double topMin = Double.POSITIVE_INFINITY;
+    private double topMax = Double.NEGATIVE_INFINITY;
+    private double topStart = Double.NEGATIVE_INFINITY; // events at or after this time go to Top
+
+    private final Rung[] rungs = new Rung[MAX_RUNGS]; // kept when emptied, so their arrays can be reused
+    private int numRungs = 0;
+
+    private Node bottomHead = null; // sorted by (time, sequence)
+    private Node freeNodes = null;  // nodes no longer in the queue, for reuse
+    private int size = 0;
+
+    /** insert: drop the event into Top, the finest rung that covers its time, or Bottom. */
+    public void insert(Event e) {
+        Node node = freeNodes;
+        if (node != null) freeNodes = node.next;
+        else node = new Node();
+        node.data = e;
+        node.time = e.getTime();
+        node.sequence = e.sequence;
+        size++;
+
+        if (node.time >= topStart) {
+            node.next = topHead;
+            topHead = node;
+            topCount++;
+            if (node.time < topMin) topMin = node.time;
+            if (node.time > topMax) topMax = node.time;
+            return;
+        }
+        for (int r = 0; r < numRungs; r++) {
+            Rung rung = rungs[r];
+            double position = rung.position(node.time);
+            if (position >= rung.current) {
+                append(rung, rung.bucket(position), node);
+                return;
+            }
+        }
+        insertSorted(node);
+    }
+
+    /** removeFirst: pop Bottom, refilling it from the ladder (and the ladder from Top) when empty. */
+    public Event removeFirst() {
+        if (size == 0) return null;
+        if (bottomHead == null) refillBottom();
+        Node first = bottomHead;
+        bottomHead = first.next;
+        size--;
+        if (size == 0) topStart = Double.NEGATIVE_INFINITY;
+        Event e = first.data;
+        first.data = null;
+        first.next = freeNodes;
+        freeNodes = first;
+        return e;
+    }
+
+    /** return the number of pending events. */
+    public int size() {
+        return size;
+    }
+
+    private void refillBottom() {
+        while (true) {
+            if (numRungs == 0) {
+                spreadTop();
+                if (bottomHead != null || numRungs == 0) return;
+            }
+            Rung rung = rungs[numRungs - 1];
+            if (rung.remaining == 0) {
+                numRungs--;
+                continue;
+            }
+            while (rung.heads[rung.current] == null) rung.current++;
+            int b = rung.current;
+            Node bucket = rung.heads[b];
+            int count = rung.counts[b];
+            rung.heads[b] = null;
+            rung.tails[b] = null;
+            rung.counts[b] = 0;
+            rung.remaining -= count;
+            rung.current++;
+
+            double childWidth = rung.width / count;
+            double bucketStart = rung.start + b * rung.width;
+            if (count > THRESHOLD && numRungs < MAX_RUNGS && bucketStart + childWidth > bucketStart) {
+                Rung child = openRung(numRungs++, bucketStart, childWidth, count + 1);
+                distribute(child, bucket);
+                continue;
+            }
+            bottomHead = mergeSort(bucket);
+            return;
+        }
+    }
+
+    /** spreadTop: move every event in Top onto a fresh first rung (or straight into Bottom). */
+    private void spreadTop() {
+        if (topHead == null) return;
+        Node events = topHead;
+        double min = topMin;
+        double max = topMax;
+        int count = topCount;
+        topHead = null;
+        topCount = 0;
+        topMin = Double.POSITIVE_INFINITY;
+        topMax = Double.NEGATIVE_INFINITY;
+        topStart = max;
+
+        double width = (max - min) / count;
+        if (!(min + width > min)) {
+            // all events share (nearly) the same time: sorting them is all that is needed
+            bottomHead = mergeSort(events);
+            topStart = Math.nextUp(max);
+            return;
+        }
+        Rung rung = openRung(0, min, width, count + 1);
+        numRungs = 1;
+        distribute(rung, events);
+    }
+
+    /** openRung: set up level r of the ladder, reusing its arrays when they are long enough. */
+    private Rung openRung(int r, double start, double width, int numBuckets) {
+        Rung rung = rungs[r];
+        if (rung == null) rung = rungs[r] = new Rung();
+        if (rung.heads == null || rung.heads.length < numBuckets) {
+            rung.heads = new Node[numBuckets];
+            rung.tails = new Node[numBuckets];
+            rung.counts = new int[numBuckets];
+        }
+        rung.numBuckets = numBuckets;
+        rung.start = start;
+        rung.width = width;
+        rung.current = 0;
+        rung.remaining = 0;
+        return rung;
+    }
+
+    private void distribute(Rung rung, Node list) {
+        while (list != null) {
+            Node next = list.next;
+            append(rung, rung.bucket(rung.position(list.time)), list);
+            list = next;
+        }
+    }
+
+    private static void append(Rung rung, int b, Node node) {
+        node.next = null;
+        if (rung.tails[b] == null) rung.heads[b] = node;
+        else rung.tails[b].next = node;
+        rung.tails[b] = node;
+        rung.counts[b]++;
+        rung.remaining++;
+    }
+
+    private void insertSorted(Node node) {
+        if (bottomHead == null
+                || FutureEventList.before(node.time, node.sequence, bottomHead.time, bottomHead.sequence)) {
+            node.next = bottomHead;
+            bottomHead = node;
+            return;
+        }
+        Node behind = bottomHead;
+        while (behind.next != null
+                && FutureEventList.before(behind.next.time, behind.next.sequence, node.time, node.sequence)) {
+            behind = behind.next;
+        }
+        node.next = behind.next;
+        behind.next = node;
+    }
+
+    /** mergeSort: sort a linked list of nodes by (time, sequence). */
+    private static Node mergeSort(Node list) {
+        if (list == null || list.next == null) return list;
+        Node slow = list;
+        Node fast = list.next;
+        while (fast != null && fast.next != null) {
+            slow = slow.next;
+            fast = fast.next.next;
+        }
+        Node second = slow.next;
+        slow.next = null;
+        Node a = mergeSort(list);
+        Node b = mergeSort(second);
+
+        Node head = null;
+        Node tail = null;
+        while (a != null && b != null) {
+            Node smaller;
+            if (FutureEventList.before(b.time, b.sequence, a.time, a.sequence)) {
+                smaller = b;
+                b = b.next;
+            } else {
+                smaller = a;
+                a = a.next;
+            }
+            if (tail == null) head = smaller;
+            else tail.next = smaller;
+            tail = smaller;
+        }
+        tail.next = (a != null) ? a : b;
+        return head;
+    }
+}
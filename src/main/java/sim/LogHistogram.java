@@ -0,0 +1,128 @@
+package sim;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * LogHistogram: a fixed-size histogram of non-negative values with bounded relative error,
+ * laid out like HdrHistogram. Values are counted in integer units of a given resolution; below
+ * 2^SUB_BITS units every value has its own bucket, and above that each power of two is split
+ * into 2^SUB_BITS linear sub-buckets, so a bucket is never wider than 1/128 of the values in it.
+ * Percentiles come from one pass over the counts; nothing is stored per observation.
+ */
+public final class LogHistogram {
+    private static final int SUB_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_BITS = 44; // values up to 2^44 units; larger ones go in the top bucket
+    private static final long MAX_UNITS = (1L << MAX_BITS) - 1;
+
+    private final double unit;  // the resolution: the value of one unit
+    private final long[] counts = new long[indexOf(MAX_UNITS) + 1];
+    private long totalCount = 0;
+
+    /** Constructor; a histogram resolving values to multiples of unit. */
+    public LogHistogram(double unit) {
+        this.unit = unit;
+    }
+
+    /** record: count one observation; negative values count as 0. */
+    public void record(double value) {
+        long units = (value > 0.0) ? (long) (value / unit) : 0L;
+        counts[indexOf(Math.min(units, MAX_UNITS))]++;
+        totalCount++;
+    }
+
+    /** merge: add the counts of another histogram of the same resolution. */
+    public void merge(LogHistogram other) {
+        if (Double.compare(unit, other.unit) != 0) {
+            throw new IllegalArgumentException("histograms of different resolutions: " + unit + ", " + other.unit);
+        }
+        for (int i = 0; i < counts.length; i++) counts[i] += other.counts[i];
+        totalCount += other.totalCount;
+    }
+
+    /** save: write the non-empty buckets to a checkpoint (see Checkpoint). */
+    void save(DataOutput out) throws IOException {
+        out.writeDouble(unit);
+        int used = 0;
+        for (long c : counts) if (c != 0) used++;
+        out.writeInt(used);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) continue;
+            out.writeShort(i);
+            out.writeLong(counts[i]);
+        }
+    }
+
+    /** restore: read the buckets written by save into this (empty) histogram of the same resolution. */
+    void restore(DataInput in) throws IOException {
+        double savedUnit = in.readDouble();
+        if (Double.compare(unit, savedUnit) != 0) throw new IOException("histogram resolution " + savedUnit + ", expected " + unit);
+        Arrays.fill(counts, 0L);
+        totalCount = 0;
+        for (int used = in.readInt(); used > 0; used--) {
+            int i = in.readUnsignedShort();
+            counts[i] = in.readLong();
+            totalCount += counts[i];
+        }
+    }
+
+    /** copy: return an independent copy. */
+    public LogHistogram copy() {
+        LogHistogram h = new LogHistogram(unit);
+        h.merge(this);
+        return h;
+    }
+
+    /** return the number of observations. */
+    public long getCount() {
+        return totalCount;
+    }
+
+    /**
+     * percentile: the value below which the given percentage (0..100) of the observations fall,
+     * as the middle of its bucket; NaN without observations.
+     */
+    public double percentile(double percent) {
+        if (totalCount == 0) return Double.NaN;
+        long rank = Math.max(1L, (long) Math.ceil(percent / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return (lowestUnits(i) + highestUnits(i)) / 2.0 * unit;
+        }
+        return highestUnits(counts.length - 1) * unit;
+    }
+
+    /** indexOf: the bucket holding a number of units. */
+    private static int indexOf(long units) {
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(units) - SUB_BITS);
+        return shift * SUB_BUCKETS + (int) (units >>> shift);
+    }
+
+    private static long lowestUnits(int index) {
+        int shift = Math.max(0, index / SUB_BUCKETS - 1);
+        return (long) (index - shift * SUB_BUCKETS) << shift;
+    }
+
+    private static long highestUnits(int index) {
+        int shift = Math.max(0, index / SUB_BUCKETS - 1);
+        return ((long) (index - shift * SUB_BUCKETS + 1) << shift) - 1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof LogHistogram)) return false;
+        LogHistogram other = (LogHistogram) o;
+        return Double.compare(unit, other.unit) == 0 && totalCount == other.totalCount
+                && Arrays.equals(counts, other.counts);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(counts) + Double.hashCode(unit);
+    }
+}
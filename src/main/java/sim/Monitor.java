@@ -0,0 +1,248 @@
+package sim;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Monitor: the instrumentation of a run whose parameters ask for it (monitor = true, or
+ * -Dsim.monitor=true for Sim). The clock-driver loop hands each event to the monitor, which
+ * counts it by kind and keeps the gauges of the run up to date for two readers:
+ *
+ * JDK Flight Recorder: a sim.Event for every event handled (its kind, how long its routine took,
+ * and the queue and event list after it), a sim.RunUntil for every stretch of the loop, and a
+ * periodic sim.State with the gauges. Start a recording with e.g.
+ *   java -XX:StartFlightRecording:filename=sim.jfr -Dsim.monitor=true sim.Sim &lt; input
+ * sim.Event is committed only while a recording enables it.
+ *
+ * JMX: an MXBean (see SimulationMXBean) named sim:type=Simulation,run=n,replication=r, registered
+ * for as long as the run goes on.
+ *
+ * A run that is not instrumented has no monitor, and pays only a null check per event.
+ * The counters and gauges are written by the thread of the run alone, and published with ordered
+ * writes, so the JMX and JFR threads read them without locking the run.
+ */
+final class Monitor implements SimulationMXBean {
+    private static final AtomicLong RUNS = new AtomicLong();
+    private static final EventType HANDLED = EventType.getEventType(Handled.class);
+    private static final EventType SLICE = EventType.getEventType(Slice.class);
+
+    // the gauges, after each event
+    private static final int QUEUE = 0;
+    private static final int PENDING = 1;
+    private static final int BUSY = 2;
+    private static final int TIME = 3; // the bits of the simulated time
+
+    /** Handled: the JFR event of one simulation event. */
+    @Name("sim.Event")
+    @Label("Simulation Event")
+    @Category("Simulation")
+    @Description("One event of the simulation, timed over its event routine")
+    @StackTrace(false)
+    static final class Handled extends jdk.jfr.Event {
+        @Label("Kind")
+        String kind;
+        @Label("Simulated Time")
+        double simulationTime;
+        @Label("Queue Size")
+        int queueSize;
+        @Label("Pending Events")
+        int pendingEvents;
+    }
+
+    /** Slice: the JFR event of one call of the clock-driver loop (a whole run, or one runUntil). */
+    @Name("sim.RunUntil")
+    @Label("Simulation Loop")
+    @Category("Simulation")
+    @StackTrace(false)
+    static final class Slice extends jdk.jfr.Event {
+        @Label("Replication")
+        int replication;
+        @Label("From")
+        double from;
+        @Label("To")
+        double to;
+        @Label("Events")
+        long events;
+    }
+
+    /** State: the periodic JFR event with the gauges of a run. */
+    @Name("sim.State")
+    @Label("Simulation State")
+    @Category("Simulation")
+    @Period("1 s")
+    @StackTrace(false)
+    static final class State extends jdk.jfr.Event {
+        @Label("Run")
+        long run;
+        @Label("Simulated Time")
+        double simulationTime;
+        @Label("Events Processed")
+        long events;
+        @Label("Queue Size")
+        int queueSize;
+        @Label("Pending Events")
+        int pendingEvents;
+        @Label("Busy Pumps")
+        int busyPumps;
+        @Label("Speed")
+        @Description("Simulated seconds per second of wall time")
+        double speed;
+        @Label("Wall Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long wallTime;
+    }
+
+    private final Simulation sim;
+    private final long run = RUNS.incrementAndGet();
+    private final long started = System.nanoTime();
+    private final AtomicLongArray counts = new AtomicLongArray(Simulation.KIND_NAMES.length);
+    private final AtomicLongArray gauges = new AtomicLongArray(4);
+    private final Runnable sampler = this::sample;
+    private ObjectName name;
+
+    /** Constructor; the monitor of a run, registered with JMX and JFR. */
+    Monitor(Simulation sim) {
+        this.sim = sim;
+        FlightRecorder.addPeriodicEvent(State.class, sampler);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            name = new ObjectName("sim:type=Simulation,run=" + run + ",replication=" + sim.replication);
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            System.out.println("Error! cannot register the run with JMX: " + e.getMessage());
+            name = null;
+        }
+    }
+
+    /** handle: process an event, counting it and, if a recording wants it, timing it. */
+    void handle(Event e) {
+        int kind = Simulation.kindOf(e);
+        if (HANDLED.isEnabled()) {
+            Handled event = new Handled();
+            event.begin();
+            e.makeItHappen();
+            event.end();
+            if (event.shouldCommit()) {
+                event.kind = Simulation.KIND_NAMES[kind];
+                event.simulationTime = sim.simulationTime;
+                event.queueSize = sim.carQueue.getQueueSize();
+                event.pendingEvents = sim.eventList.size();
+                event.commit();
+            }
+        } else {
+            e.makeItHappen();
+        }
+        counts.lazySet(kind, counts.get(kind) + 1);
+        gauges.lazySet(QUEUE, sim.carQueue.getQueueSize());
+        gauges.lazySet(PENDING, sim.eventList.size());
+        gauges.lazySet(BUSY, sim.pumpStand.getBusyPumps());
+        gauges.lazySet(TIME, Double.doubleToRawLongBits(sim.simulationTime));
+    }
+
+    /** beginSlice: the JFR event of a call of the loop, or null if no recording wants it. */
+    Slice beginSlice() {
+        if (!SLICE.isEnabled()) return null;
+        Slice slice = new Slice();
+        slice.replication = sim.replication;
+        slice.from = sim.simulationTime;
+        slice.begin();
+        return slice;
+    }
+
+    /** endSlice: commit the JFR event of a call of the loop that processed the given number of events. */
+    void endSlice(Slice slice, long events) {
+        if (slice == null) return;
+        slice.end();
+        if (slice.shouldCommit()) {
+            slice.to = sim.simulationTime;
+            slice.events = events;
+            slice.commit();
+        }
+    }
+
+    /** close: the run has finished; withdraw it from JMX and JFR. */
+    void close() {
+        FlightRecorder.removePeriodicEvent(sampler);
+        if (name == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            // already gone
+        }
+        name = null;
+    }
+
+    private void sample() {
+        State state = new State();
+        state.run = run;
+        state.simulationTime = getSimulationTime();
+        state.events = getEventsProcessed();
+        state.queueSize = getQueueSize();
+        state.pendingEvents = getPendingEvents();
+        state.busyPumps = getBusyPumps();
+        state.speed = getSpeed();
+        state.wallTime = System.nanoTime() - started;
+        state.commit();
+    }
+
+    /** return the name of the run's MXBean, or null once the run has finished. */
+    ObjectName getName() {
+        return name;
+    }
+
+    public long getEventsProcessed() {
+        long total = 0;
+        for (int k = 0; k < counts.length(); k++) total += counts.get(k);
+        return total;
+    }
+
+    public Map<String, Long> getEventCounts() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (int k = 1; k < counts.length(); k++) map.put(Simulation.KIND_NAMES[k], counts.get(k));
+        if (counts.get(0) > 0) map.put(Simulation.KIND_NAMES[0], counts.get(0));
+        return map;
+    }
+
+    public int getQueueSize() {
+        return (int) gauges.get(QUEUE);
+    }
+
+    public int getPendingEvents() {
+        return (int) gauges.get(PENDING);
+    }
+
+    public int getBusyPumps() {
+        return (int) gauges.get(BUSY);
+    }
+
+    public double getSimulationTime() {
+        return Double.longBitsToDouble(gauges.get(TIME));
+    }
+
+    public double getSpeed() {
+        return getSimulationTime() / wallSeconds();
+    }
+
+    public double getEventsPerSecond() {
+        return getEventsProcessed() / wallSeconds();
+    }
+
+    private double wallSeconds() {
+        return Math.max(1e-9, (System.nanoTime() - started) / 1e9);
+    }
+}
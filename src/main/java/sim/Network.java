@@ -0,0 +1,285 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Network: a regional network of gas stations, each a Simulation of its own (pump stand, car queue,
+ * event list and streams), in which a car that balks at one station drives on to a neighbouring
+ * one, arriving after the travel time between them; after maxHops stations it gives up.
+ *
+ * Each station is a logical process of a conservative parallel simulation with a window-based
+ * synchronisation (bounded lag). The lookahead is the shortest travel time between neighbours: a car
+ * that leaves a station at time t arrives no earlier than t + lookahead. So if the earliest pending
+ * event anywhere is at time w, every station can process its events before w + lookahead without
+ * hearing from the others, and the stations of a window are run in parallel. At the end of the window
+ * the cars on the road are delivered, station by station in index order and in the order they left,
+ * so every station sees the same events in the same order whatever the number of threads, and the
+ * results are identical for any thread count.
+ *
+ * Usage: java sim.Network stations threads [endingTime] [--stations]
+ * simulates the region built by region() (default parameters, 2 pumps per station) and prints the
+ * network totals; --stations adds a line per station.
+ */
+public final class Network {
+    // the layout of region(): stations on a square, each linked to its nearest neighbours
+    static final double SPACING = 3000.0;     // metres of square per station
+    static final int NEIGHBOURS = 4;
+    static final double MIN_TRAVEL = 60.0;    // seconds to leave one station and pull in at the next
+    static final double SPEED = 13.9;         // metres per second (50 km/h)
+    static final int MAX_HOPS = 3;
+
+    /** Station: one station of the network, and the cars that have left it in the current window. */
+    static final class Station {
+        final int index;
+        final Simulation sim;
+        final int[] neighbours;
+        final double[] travelTimes;
+        private final int maxHops;
+        private final SplittableRandom routing;  // which neighbour a balking car drives to
+        private final List<double[]> leaving = new ArrayList<>(); // {arrival time, station, litres, fuel, hops}
+        long routedOut = 0;     // cars that balked here and drove on
+        long arrivedByRoute = 0; // cars that balked elsewhere and arrived here
+        long lost = 0;          // cars that balked here and gave up
+
+        Station(int index, Simulation sim, int[] neighbours, double[] travelTimes, int maxHops, long routingSeed) {
+            this.index = index;
+            this.sim = sim;
+            this.neighbours = neighbours;
+            this.travelTimes = travelTimes;
+            this.maxHops = maxHops;
+            this.routing = new SplittableRandom(routingSeed * 0x9E3779B97F4A7C15L + index);
+        }
+
+        /** balked: a car that has already left the given number of stations balked here; it keeps its fuel (-1: any). */
+        void balked(double litres, int fuel, int hops) {
+            if (hops >= maxHops || neighbours.length == 0) {
+                lost++;
+                return;
+            }
+            int k = routing.nextInt(neighbours.length);
+            leaving.add(new double[]{sim.simulationTime + travelTimes[k], neighbours[k], litres, fuel, hops + 1});
+            routedOut++;
+        }
+    }
+
+    private final Station[] stations;
+    private final double lookahead;
+    private long windows = 0;
+
+    /**
+     * Constructor; a network of stations with the given parameters, each linked to its neighbours
+     * with the given travel times (which must be positive; there must be at least one link, or there
+     * is no lookahead). Station i of replication r uses the streams of replication r * stations + i
+     * of the seeding.
+     */
+    public Network(List<Parameters> params, int[][] neighbours, double[][] travelTimes, Seeding seeding,
+                   int replication, int maxHops, long routingSeed) {
+        int n = params.size();
+        stations = new Station[n];
+        double minTravel = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            for (double t : travelTimes[i]) minTravel = Math.min(minTravel, t);
+            Simulation sim = new Simulation(params.get(i), seeding, replication * n + i, null);
+            stations[i] = new Station(i, sim, neighbours[i].clone(), travelTimes[i].clone(), maxHops, routingSeed);
+            sim.station = stations[i];
+        }
+        if (!(minTravel > 0.0)) throw new IllegalArgumentException("travel times must be positive: the lookahead is " + minTravel);
+        if (minTravel == Double.POSITIVE_INFINITY) {
+            throw new IllegalArgumentException("the stations have no links; a single station is a plain Simulation");
+        }
+        lookahead = minTravel;
+    }
+
+    /**
+     * region: a network of the given number of stations spread evenly at random over a square, each
+     * linked to its NEIGHBOURS nearest stations, with travel time MIN_TRAVEL plus the straight-line
+     * distance at SPEED. The stations share the given parameters except their demand: each station's
+     * mean interarrival time is scaled by a factor drawn uniformly from [0.5, 1.5). A region needs
+     * at least 2 stations.
+     */
+    public static Network region(int stations, Parameters base, Seeding seeding, int replication, long layoutSeed) {
+        if (stations < 2) throw new IllegalArgumentException("a region needs at least 2 stations, not " + stations);
+        SplittableRandom layout = new SplittableRandom(layoutSeed);
+        double side = Math.sqrt(stations) * SPACING;
+        double[] x = new double[stations];
+        double[] y = new double[stations];
+        List<Parameters> params = new ArrayList<>(stations);
+        for (int i = 0; i < stations; i++) {
+            x[i] = layout.nextDouble() * side;
+            y[i] = layout.nextDouble() * side;
+            Parameters p = base.copy();
+            p.meaninterarrivalTime *= 0.5 + layout.nextDouble();
+            params.add(p);
+        }
+        int k = Math.min(NEIGHBOURS, stations - 1);
+        int[][] neighbours = new int[stations][k];
+        double[][] travelTimes = new double[stations][k];
+        Integer[] order = new Integer[stations];
+        for (int i = 0; i < stations; i++) {
+            final int from = i;
+            for (int j = 0; j < stations; j++) order[j] = j;
+            Arrays.sort(order, (a, b) -> Double.compare(Math.hypot(x[a] - x[from], y[a] - y[from]),
+                    Math.hypot(x[b] - x[from], y[b] - y[from])));
+            for (int j = 0; j < k; j++) {
+                int to = order[j + 1]; // order[0] is the station itself
+                neighbours[i][j] = to;
+                travelTimes[i][j] = MIN_TRAVEL + Math.hypot(x[to] - x[i], y[to] - y[i]) / SPEED;
+            }
+        }
+        return new Network(params, neighbours, travelTimes, seeding, replication, MAX_HOPS, layoutSeed);
+    }
+
+    /** run: simulate the network to its ending time on the given number of threads. */
+    public void run(int threads) {
+        ForkJoinPool pool = (threads > 1) ? new ForkJoinPool(threads) : null;
+        try {
+            while (true) {
+                // the window starts at the earliest pending event anywhere
+                double start = Double.POSITIVE_INFINITY;
+                for (Station s : stations) {
+                    if (!s.sim.isFinished()) start = Math.min(start, s.sim.eventList.peekTime());
+                }
+                if (start == Double.POSITIVE_INFINITY) return;
+                double end = start + lookahead;
+                if (pool == null) {
+                    for (Station s : stations) s.sim.runUntil(end);
+                } else {
+                    pool.invoke(new Window(0, stations.length, end, Math.max(1, stations.length / (4 * threads))));
+                }
+                deliver(end);
+                windows++;
+            }
+        } finally {
+            if (pool != null) pool.shutdown();
+        }
+    }
+
+    /** Window: runs a range of stations up to the end of the window, splitting the range among the threads. */
+    private final class Window extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final double end;
+        private final int grain;
+
+        Window(int from, int to, double end, int grain) {
+            this.from = from;
+            this.to = to;
+            this.end = end;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                for (int i = from; i < to; i++) stations[i].sim.runUntil(end);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Window(from, middle, end, grain), new Window(middle, to, end, grain));
+        }
+    }
+
+    /** deliver: schedule the arrivals of the cars that left a station in the window that ends at the given time. */
+    private void deliver(double windowEnd) {
+        for (Station s : stations) {
+            for (double[] car : s.leaving) {
+                if (car[0] < windowEnd) throw new IllegalStateException("a car arrives inside the window it left in");
+                Simulation to = stations[(int) car[1]].sim;
+                if (!to.isFinished()) to.eventList.insert(new Transfer(to, car[0], car[2], (int) car[3], (int) car[4]));
+            }
+            s.leaving.clear();
+        }
+    }
+
+    /** return the number of stations. */
+    public int size() {
+        return stations.length;
+    }
+
+    /** return the lookahead: the shortest travel time between neighbouring stations. */
+    public double getLookahead() {
+        return lookahead;
+    }
+
+    /** return the number of windows simulated so far. */
+    public long getWindows() {
+        return windows;
+    }
+
+    /** summary: the statistics of station i so far. */
+    public Summary summary(int station) {
+        return stations[station].sim.summary();
+    }
+
+    /** return the number of cars that balked at station i and drove on. */
+    public long getRoutedOut(int station) {
+        return stations[station].routedOut;
+    }
+
+    /** return the number of cars that arrived at station i after balking elsewhere. */
+    public long getArrivedByRoute(int station) {
+        return stations[station].arrivedByRoute;
+    }
+
+    /** return the number of cars that gave up at station i after balking at maxHops stations. */
+    public long getLost(int station) {
+        return stations[station].lost;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: java sim.Network stations threads [endingTime] [--stations]");
+            return;
+        }
+        int n = Integer.parseInt(args[0]);
+        int threads = Integer.parseInt(args[1]);
+        if (n < 2) {
+            System.out.println("Error! A network needs at least 2 stations.");
+            return;
+        }
+        Parameters base = new Parameters();
+        base.numPumps = 2;
+        base.endingTime = 100000.0;
+        boolean perStation = false;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--stations")) perStation = true;
+            else base.endingTime = Double.parseDouble(args[i]);
+        }
+        Network network = region(n, base, Seeding.fromInput(1, 2, 3, 4), 0, 1L);
+
+        long start = System.nanoTime();
+        network.run(threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        double arrivals = 0, served = 0, profit = 0;
+        long routed = 0, lost = 0;
+        if (perStation) {
+            System.out.println("Station    Cars  Routed in  Balked  Drove on   Lost  Average Wait     Profit");
+        }
+        for (int i = 0; i < n; i++) {
+            Summary s = network.summary(i);
+            arrivals += s.getArrivals();
+            served += s.getCustomersServed();
+            profit += s.getTotalProfit();
+            routed += network.getRoutedOut(i);
+            lost += network.getLost(i);
+            if (perStation) {
+                System.out.println(String.format(Locale.ROOT, "%7d %7.0f %10d %7.0f %9d %6d %13.3f %10.2f", i,
+                        s.getArrivals(), network.getArrivedByRoute(i), s.getBalkingCustomers(), network.getRoutedOut(i),
+                        network.getLost(i), s.getAverageWait(), s.getTotalProfit()));
+            }
+        }
+        System.out.println(String.format(Locale.ROOT, "%d stations: %.0f arrivals (%d of them driven on from another "
+                + "station), %.0f served, %d gave up; profit %.2f", n, arrivals, routed, served, lost, profit));
+        System.out.println(String.format(Locale.ROOT, "%d windows of lookahead %.1f s in %.2f s on %d threads",
+                network.getWindows(), network.getLookahead(), seconds, threads));
+    }
+}
@@ -0,0 +1,288 @@
+package sim;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Optimisation: finds the alternative (by default, the number of pumps) with the highest expected
+ * total profit, the profit on the litres sold less the cost of the pumps as in Statistics.snapshot,
+ * spending replications where they help to tell the best from the rest: Optimal Computing Budget
+ * Allocation (Chen et al.). Every alternative first gets a few replications; then, round by round,
+ * the next replications go to the alternatives in the proportions OCBA gives from the current means
+ * and standard deviations: to the best, and to the others in proportion to (s_i / (mean_best - mean_i))^2,
+ * so clearly worse alternatives soon get no more runs. The search stops once the approximate probability
+ * of correct selection (the Bonferroni bound 1 - sum over i of P(alternative i is really better than
+ * the best so far), with Student's t for the differences) reaches the target, or the budget of
+ * replications is spent.
+ *
+ * An indifference amount makes alternatives within that much profit of the best count as correct
+ * picks, so a tie between two equally good alternatives does not use up the whole budget.
+ * Replication k of every alternative uses the same streams (common random numbers, as in Sweep);
+ * the positive correlation this brings only makes the bound conservative. Which replications are
+ * run does not depend on the number of threads, so neither does the answer.
+ *
+ * Usage: java sim.Optimisation pcs budget threads name=v1,v2|name=from:to [--initial=n] [--indifference=x]
+ *        &lt; the usual seven input lines of Sim (the base scenario; the report interval is ignored)
+ * e.g. java sim.Optimisation 0.95 400 4 numPumps=1:8
+ */
+public final class Optimisation {
+    /** the replications of every alternative before the allocation starts */
+    public static final int DEFAULT_INITIAL = 5;
+
+    /** Result: the alternatives, their profits so far, and the pick. */
+    public static final class Result {
+        private final Sweep.Axis axis;
+        private final Welford[] profits;
+        private final int best;
+        private final double pcs;
+        private final int rounds;
+        private final boolean reached;
+
+        Result(Sweep.Axis axis, Welford[] profits, int best, double pcs, int rounds, boolean reached) {
+            this.axis = axis;
+            this.profits = profits;
+            this.best = best;
+            this.pcs = pcs;
+            this.rounds = rounds;
+            this.reached = reached;
+        }
+
+        /** return the index of the best alternative. */
+        public int getBest() {
+            return best;
+        }
+
+        /** return the value of the best alternative, as given on the axis. */
+        public String getBestValue() {
+            return axis.getValue(best);
+        }
+
+        /** return the approximate probability of correct selection at the end. */
+        public double getPcs() {
+            return pcs;
+        }
+
+        /** return true if the target probability was reached within the budget. */
+        public boolean reachedTarget() {
+            return reached;
+        }
+
+        /** return the number of allocation rounds after the initial replications. */
+        public int getRounds() {
+            return rounds;
+        }
+
+        /** return the total number of replications run. */
+        public long getReplications() {
+            long n = 0;
+            for (Welford w : profits) n += w.getCount();
+            return n;
+        }
+
+        /** return the per-replication total profits of alternative i. */
+        public Welford getProfit(int i) {
+            return profits[i].copy();
+        }
+
+        /** printTable: one line per alternative: its replications, mean profit and 95% half-width. */
+        public void printTable(PrintStream out) {
+            out.println(String.format(Locale.ROOT, "%12s %6s %13s %10s", axis.getName(), "Reps", "Profit", "+/-"));
+            for (int i = 0; i < profits.length; i++) {
+                out.println(String.format(Locale.ROOT, "%12s %6d %13.3f %10.3f%s", axis.getValue(i), profits[i].getCount(),
+                        profits[i].getMean(), Confidence.halfWidth(profits[i], Sweep.CONFIDENCE), (i == best) ? "  <= best" : ""));
+            }
+        }
+    }
+
+    private Optimisation() {
+    }
+
+    /**
+     * run: choose among the values of the axis applied to the base parameters, until the probability
+     * of correct selection reaches pcs or budget replications have been run in all.
+     */
+    public static Result run(Parameters base, Sweep.Axis axis, Seeding seeding, double pcs, int initial, int budget,
+                             double indifference, int threads) {
+        if (!(pcs > 0.0 && pcs < 1.0)) throw new IllegalArgumentException("probability of correct selection out of (0, 1): " + pcs);
+        if (initial < 2) throw new IllegalArgumentException("need at least 2 initial replications, not " + initial);
+        if (!(indifference >= 0.0)) throw new IllegalArgumentException("negative indifference amount: " + indifference);
+        List<Parameters> alternatives = Sweep.grid(base, List.of(axis));
+        int k = alternatives.size();
+        if (k < 2) throw new IllegalArgumentException("need at least two alternatives");
+        if (budget < k * initial) throw new IllegalArgumentException("budget " + budget + " below " + k + " x " + initial + " initial replications");
+
+        Welford[] profits = new Welford[k];
+        for (int i = 0; i < k; i++) profits[i] = new Welford();
+        int[] extra = new int[k];
+        Arrays.fill(extra, initial);
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            int rounds = 0;
+            long used = 0;
+            while (true) {
+                runRound(pool, alternatives, seeding, profits, extra);
+                for (int e : extra) used += e;
+                int best = best(profits);
+                double p = probabilityOfCorrectSelection(profits, indifference);
+                if (p >= pcs || used >= budget) return new Result(axis, profits, best, p, rounds, p >= pcs);
+                // a round of about one replication per alternative, within the budget
+                extra = allocate(profits, (int) Math.min(k, budget - used));
+                rounds++;
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** runRound: run the extra replications of each alternative, folding them in alternative and replication order. */
+    private static void runRound(ForkJoinPool pool, List<Parameters> alternatives, Seeding seeding, Welford[] profits,
+                                 int[] extra) {
+        List<Future<Summary>> pending = new ArrayList<>();
+        for (int i = 0; i < extra.length; i++) {
+            Parameters params = alternatives.get(i);
+            int from = (int) profits[i].getCount();
+            for (int r = from; r < from + extra[i]; r++) {
+                final int replication = r;
+                pending.add(pool.submit(() -> Replications.runOne(params, seeding, replication)));
+            }
+        }
+        try {
+            int next = 0;
+            for (int i = 0; i < extra.length; i++) {
+                for (int r = 0; r < extra[i]; r++) profits[i].add(pending.get(next++).get().getTotalProfit());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("optimisation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("optimisation run failed", e.getCause());
+        }
+    }
+
+    /** best: the alternative with the highest mean (the lowest index on a tie). */
+    static int best(Welford[] profits) {
+        int b = 0;
+        for (int i = 1; i < profits.length; i++) if (profits[i].getMean() > profits[b].getMean()) b = i;
+        return b;
+    }
+
+    /**
+     * probabilityOfCorrectSelection: the Bonferroni bound on the probability that the alternative with
+     * the highest mean is within the indifference amount of the truly best one.
+     */
+    static double probabilityOfCorrectSelection(Welford[] profits, double indifference) {
+        int b = best(profits);
+        double p = 1.0;
+        for (int i = 0; i < profits.length; i++) {
+            if (i == b) continue;
+            double se = Math.sqrt(profits[b].getVariance() / profits[b].getCount()
+                    + profits[i].getVariance() / profits[i].getCount());
+            double gap = profits[b].getMean() - profits[i].getMean() + indifference;
+            double df = Math.min(profits[b].getCount(), profits[i].getCount()) - 1;
+            double wrong = (se > 0.0) ? 1.0 - Confidence.tCdf(gap / se, df) : (gap > 0.0 ? 0.0 : 0.5);
+            p -= wrong;
+        }
+        return Math.max(0.0, p);
+    }
+
+    /**
+     * allocate: share out delta more replications by OCBA: aim at totals N_i proportional to
+     * (s_i / d_i)^2 for the others and s_b * sqrt(sum (N_i / s_i)^2) for the best b, where d_i is the gap
+     * to the best, and give the new replications to the alternatives furthest below their aim
+     * (largest remainders, then the lower index, so the split is deterministic).
+     */
+    static int[] allocate(Welford[] profits, int delta) {
+        int k = profits.length;
+        int b = best(profits);
+        double scale = 0.0;
+        long total = delta;
+        for (Welford w : profits) {
+            scale = Math.max(scale, Math.abs(w.getMean()) + w.getStdDev());
+            total += w.getCount();
+        }
+        double tiny = Math.max(1e-12, scale * 1e-9);
+        double[] weight = new double[k];
+        double sum = 0.0;
+        double bestSum = 0.0;
+        for (int i = 0; i < k; i++) {
+            if (i == b) continue;
+            double s = Math.max(tiny, profits[i].getStdDev());
+            double d = Math.max(tiny, profits[b].getMean() - profits[i].getMean());
+            weight[i] = (s / d) * (s / d);
+            bestSum += (weight[i] / s) * (weight[i] / s);
+        }
+        weight[b] = Math.max(tiny, profits[b].getStdDev()) * Math.sqrt(bestSum);
+        for (double w : weight) sum += w;
+
+        double[] deficit = new double[k];
+        double deficits = 0.0;
+        for (int i = 0; i < k; i++) {
+            deficit[i] = Math.max(0.0, total * weight[i] / sum - profits[i].getCount());
+            deficits += deficit[i];
+        }
+        int[] extra = new int[k];
+        if (!(deficits > 0.0)) {
+            extra[b] = delta;
+            return extra;
+        }
+        int given = 0;
+        double[] remainder = new double[k];
+        for (int i = 0; i < k; i++) {
+            double share = delta * deficit[i] / deficits;
+            extra[i] = (int) Math.floor(share);
+            remainder[i] = share - extra[i];
+            given += extra[i];
+        }
+        for (; given < delta; given++) {
+            int r = 0;
+            for (int i = 1; i < k; i++) if (remainder[i] > remainder[r]) r = i;
+            extra[r]++;
+            remainder[r] = -1.0;
+        }
+        return extra;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.out.println("Usage: java sim.Optimisation pcs budget threads name=v1,v2|name=from:to [--initial=n] [--indifference=x] < input");
+            return;
+        }
+        double pcs = Double.parseDouble(args[0]);
+        int budget = Integer.parseInt(args[1]);
+        int threads = Integer.parseInt(args[2]);
+        Sweep.Axis axis = Sweep.Axis.parse(args[3]);
+        int initial = DEFAULT_INITIAL;
+        double indifference = 0.0;
+        for (int i = 4; i < args.length; i++) {
+            if (args[i].startsWith("--initial=")) initial = Integer.parseInt(args[i].substring(10));
+            else if (args[i].startsWith("--indifference=")) indifference = Double.parseDouble(args[i].substring(15));
+            else throw new IllegalArgumentException("unknown option " + args[i]);
+        }
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        Parameters base = new Parameters();
+        base.reportInterval = Double.parseDouble(in.readLine().trim());
+        base.endingTime = Double.parseDouble(in.readLine().trim());
+        base.numPumps = Integer.parseInt(in.readLine().trim());
+        long[] seeds = new long[4];
+        for (int i = 0; i < 4; i++) seeds[i] = Integer.parseInt(in.readLine().trim());
+        Seeding seeding = Seeding.fromInput(seeds[0], seeds[1], seeds[2], seeds[3]);
+
+        long start = System.nanoTime();
+        Result result = run(base, axis, seeding, pcs, initial, budget, indifference, threads);
+        result.printTable(System.out);
+        System.out.println(String.format(Locale.ROOT, "Best %s=%s with probability of correct selection %.4f%s; "
+                        + "%d replications in %d rounds, %.1f s", axis.getName(), result.getBestValue(), result.getPcs(),
+                result.reachedTarget() ? "" : " (budget spent before " + pcs + ")", result.getReplications(),
+                result.getRounds(), (System.nanoTime() - start) / 1e9));
+    }
+}
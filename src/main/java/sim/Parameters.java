@@ -0,0 +1,209 @@
+package sim;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Parameters: the quantities that determine how we model the real world, and how long
+ * and how often to report. One object describes one scenario; each Simulation gets its own.
+ */
+public class Parameters {
+
+    // economics: profit per litre of gas, and cost to operate one pump for a day
+    public double profit = 0.025;
+    public double pumpCost = 20.0;
+
+    // demand: minimum and maximum amount of gas needed by a car (see Car constructor)
+    public double litresNeededMin = 10.0;
+    public double litresNeededRange = 50.0; // => uniform [10, 60)
+
+    // service times: constant base time + time per litre + random spread (see Pump.serviceTime)
+    public double serviceTimeBase = 150.0;
+    public double serviceTimePerLitre = 0.5;
+    public double serviceTimeSpread = 30.0;
+
+    // customer behaviours: probability of balking depends on three ad-hoc constants (see Arrival.doesCarBalk)
+    public double balkA = 40.0;
+    public double balkB = 25.0;
+    public double balkC = 3.0;
+
+    // customer arrival rate (see Arrival.nextArrivalTime): constant, or over the day as given by an
+    // ArrivalProfile relative to it, with the statistics of each timeOfDayBucket seconds of the day (see TimeOfDay)
+    public double meaninterarrivalTime = 50.0; // seconds
+    public String arrivalProfile = "";         // e.g. "step:0=0.3,7=2.5,9=1" or "linear:..."; "" = constant
+    public double timeOfDayBucket = 3600.0;
+    public String arrivalLog = null;           // replay the cars of this log instead (see ArrivalLog); null = random
+
+    // the run itself: size of the station, length of the run, and how often to report
+    public int numPumps = 1;
+    // a mixed station (see PumpType and PumpStand): the kinds of pump, overriding numPumps and the
+    // service times; the fuels the cars need; and how a free pump is chosen
+    public String pumpTypes = "";     // e.g. "fast: count=2 base=90 fuels=petrol+diesel; slow: count=4 perLitre=0.6"
+    public String fuelMix = "";       // e.g. "petrol=0.8,diesel=0.2"; "" = every car takes any pump
+    public String pumpPolicy = "lifo"; // lifo, fastest, leastUtilised or match
+    public double endingTime = 0.0;
+    public double reportInterval = 0.0;
+    public EventList.Backend eventListBackend = EventList.DEFAULT_BACKEND;
+    public int variateBlock = 2048; // random variates drawn per refill of each stream's buffer (see VariateBuffer)
+    public boolean detailedReport = false; // print percentiles and time averages under each report line
+    public String traceFile = null; // write every event to this file (see EventTrace); null = no trace
+    public boolean monitor = false; // JFR events and a JMX MBean for the event loop (see Monitor)
+
+    // variance reduction (see VarianceReduction): with synchronizedStreams every car draws its balking
+    // and service-time variates on arrival, so car k sees the same variates in every configuration
+    // (its litres and fuel come from streams of their own, one draw per car, and need no help);
+    // antitheticMember 1 or 2 makes the run the first or the mirrored second run of an antithetic pair
+    public boolean synchronizedStreams = false;
+    public int antitheticMember = 0;
+
+    // precision-driven run length (see BatchMeans): stop once every target metric's confidence
+    // half-width is within targetPrecision of its mean; endingTime stays as a hard cap. 0 = off
+    public double targetPrecision = 0.0;
+    public String precisionMetrics = "wait,profit,balk";
+    public double confidenceLevel = 0.95;
+    public double batchLength = 1000.0; // initial batch length; doubles as the run goes on
+
+    // warm-up deletion (see WarmUp): clear the statistics at warmUpTime if it is positive, or else,
+    // with warmUpDetection, once MSER-5 finds the end of the transient (queue windows of warmUpWindow)
+    public double warmUpTime = 0.0;
+    public boolean warmUpDetection = false;
+    public double warmUpWindow = 100.0;
+
+    /**
+     * set: change the parameter with the given field name, parsing the value from text,
+     * e.g. set("numPumps", "4") or set("eventListBackend", "calendar").
+     */
+    public void set(String name, String value) {
+        String v = value.trim();
+        switch (name) {
+            case "profit":               profit = Double.parseDouble(v); break;
+            case "pumpCost":             pumpCost = Double.parseDouble(v); break;
+            case "litresNeededMin":      litresNeededMin = Double.parseDouble(v); break;
+            case "litresNeededRange":    litresNeededRange = Double.parseDouble(v); break;
+            case "serviceTimeBase":      serviceTimeBase = Double.parseDouble(v); break;
+            case "serviceTimePerLitre":  serviceTimePerLitre = Double.parseDouble(v); break;
+            case "serviceTimeSpread":    serviceTimeSpread = Double.parseDouble(v); break;
+            case "balkA":                balkA = Double.parseDouble(v); break;
+            case "balkB":                balkB = Double.parseDouble(v); break;
+            case "balkC":                balkC = Double.parseDouble(v); break;
+            case "meaninterarrivalTime": meaninterarrivalTime = Double.parseDouble(v); break;
+            case "arrivalProfile":       if (!v.isEmpty()) ArrivalProfile.parse(v, 1.0); arrivalProfile = v; break;
+            case "timeOfDayBucket":      timeOfDayBucket = Double.parseDouble(v); break;
+            case "arrivalLog":           arrivalLog = v.isEmpty() ? null : v; break;
+            case "numPumps":             numPumps = (int) Double.parseDouble(v); break;
+            case "pumpTypes":            pumpTypes = v; break;
+            case "fuelMix":              fuelMix = v; break;
+            case "pumpPolicy":           PumpStand.Policy.parse(v); pumpPolicy = v; break;
+            case "endingTime":           endingTime = Double.parseDouble(v); break;
+            case "reportInterval":       reportInterval = Double.parseDouble(v); break;
+            case "eventListBackend":     eventListBackend = EventList.Backend.parse(v); break;
+            case "variateBlock":         variateBlock = (int) Double.parseDouble(v); break;
+            case "detailedReport":       detailedReport = Boolean.parseBoolean(v); break;
+            case "traceFile":            traceFile = v.isEmpty() ? null : v; break;
+            case "monitor":              monitor = Boolean.parseBoolean(v); break;
+            case "synchronizedStreams":  synchronizedStreams = Boolean.parseBoolean(v); break;
+            case "antitheticMember":     antitheticMember = Integer.parseInt(v); break;
+            case "targetPrecision":      targetPrecision = Double.parseDouble(v); break;
+            case "precisionMetrics":     BatchMeans.Metric.parseList(v); precisionMetrics = v; break;
+            case "confidenceLevel":      confidenceLevel = Double.parseDouble(v); break;
+            case "batchLength":          batchLength = Double.parseDouble(v); break;
+            case "warmUpTime":           warmUpTime = Double.parseDouble(v); break;
+            case "warmUpDetection":      warmUpDetection = Boolean.parseBoolean(v); break;
+            case "warmUpWindow":         warmUpWindow = Double.parseDouble(v); break;
+            default: throw new IllegalArgumentException("unknown parameter: " + name);
+        }
+    }
+
+    /**
+     * save: write every parameter as a name and a value in text to a checkpoint (see Checkpoint),
+     * so that restore can read them back with set.
+     */
+    void save(DataOutput out) throws IOException {
+        put(out, "profit", profit);
+        put(out, "pumpCost", pumpCost);
+        put(out, "litresNeededMin", litresNeededMin);
+        put(out, "litresNeededRange", litresNeededRange);
+        put(out, "serviceTimeBase", serviceTimeBase);
+        put(out, "serviceTimePerLitre", serviceTimePerLitre);
+        put(out, "serviceTimeSpread", serviceTimeSpread);
+        put(out, "balkA", balkA);
+        put(out, "balkB", balkB);
+        put(out, "balkC", balkC);
+        put(out, "meaninterarrivalTime", meaninterarrivalTime);
+        put(out, "arrivalProfile", arrivalProfile);
+        put(out, "timeOfDayBucket", timeOfDayBucket);
+        put(out, "arrivalLog", (arrivalLog == null) ? "" : arrivalLog);
+        put(out, "numPumps", numPumps);
+        put(out, "pumpTypes", pumpTypes);
+        put(out, "fuelMix", fuelMix);
+        put(out, "pumpPolicy", pumpPolicy);
+        put(out, "endingTime", endingTime);
+        put(out, "reportInterval", reportInterval);
+        put(out, "eventListBackend", eventListBackend);
+        put(out, "variateBlock", variateBlock);
+        put(out, "detailedReport", detailedReport);
+        put(out, "traceFile", (traceFile == null) ? "" : traceFile);
+        put(out, "monitor", monitor);
+        put(out, "synchronizedStreams", synchronizedStreams);
+        put(out, "antitheticMember", antitheticMember);
+        put(out, "targetPrecision", targetPrecision);
+        put(out, "precisionMetrics", precisionMetrics);
+        put(out, "confidenceLevel", confidenceLevel);
+        put(out, "batchLength", batchLength);
+        put(out, "warmUpTime", warmUpTime);
+        put(out, "warmUpDetection", warmUpDetection);
+        put(out, "warmUpWindow", warmUpWindow);
+        out.writeUTF("");
+    }
+
+    private static void put(DataOutput out, String name, Object value) throws IOException {
+        out.writeUTF(name);
+        out.writeUTF(String.valueOf(value));
+    }
+
+    /** restore: read the parameters written by save. */
+    void restore(DataInput in) throws IOException {
+        for (String name = in.readUTF(); !name.isEmpty(); name = in.readUTF()) set(name, in.readUTF());
+    }
+
+    /** copy: return an independent copy of these parameters. */
+    public Parameters copy() {
+        Parameters p = new Parameters();
+        p.profit = profit;
+        p.pumpCost = pumpCost;
+        p.litresNeededMin = litresNeededMin;
+        p.litresNeededRange = litresNeededRange;
+        p.serviceTimeBase = serviceTimeBase;
+        p.serviceTimePerLitre = serviceTimePerLitre;
+        p.serviceTimeSpread = serviceTimeSpread;
+        p.balkA = balkA;
+        p.balkB = balkB;
+        p.balkC = balkC;
+        p.meaninterarrivalTime = meaninterarrivalTime;
+        p.arrivalProfile = arrivalProfile;
+        p.timeOfDayBucket = timeOfDayBucket;
+        p.arrivalLog = arrivalLog;
+        p.numPumps = numPumps;
+        p.pumpTypes = pumpTypes;
+        p.fuelMix = fuelMix;
+        p.pumpPolicy = pumpPolicy;
+        p.endingTime = endingTime;
+        p.reportInterval = reportInterval;
+        p.eventListBackend = eventListBackend;
+        p.variateBlock = variateBlock;
+        p.detailedReport = detailedReport;
+        p.traceFile = traceFile;
+        p.monitor = monitor;
+        p.synchronizedStreams = synchronizedStreams;
+        p.antitheticMember = antitheticMember;
+        p.targetPrecision = targetPrecision;
+        p.precisionMetrics = precisionMetrics;
+        p.confidenceLevel = confidenceLevel;
+        p.batchLength = batchLength;
+        p.warmUpTime = warmUpTime;
+        p.warmUpDetection = warmUpDetection;
+        p.warmUpWindow = warmUpWindow;
+        return p;
+    }
+}
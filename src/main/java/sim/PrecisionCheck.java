@@ -0,0 +1,39 @@
+package sim;
+
+/**
+ * PrecisionCheck: the class representing the events that close a batch of the batch-means
+ * method and stop the run once the target metrics are precise enough (see BatchMeans).
+ */
+class PrecisionCheck extends Event {
+    private final Simulation sim;
+
+    public PrecisionCheck(Simulation sim) {
+        super(sim.batchMeans.batchEnd());
+        this.sim = sim;
+    }
+
+    /** batch-closing event routine. */
+    public void makeItHappen() {
+        BatchMeans batchMeans = sim.batchMeans;
+        if (sim.simulationTime < batchMeans.batchEnd()) {
+            // the batches were restarted by the end of the warm-up; this batch has further to go
+            setTime(batchMeans.batchEnd());
+            sim.eventList.insert(this);
+            return;
+        }
+        batchMeans.closeBatch();
+        if (!batchMeans.waitingForWarmUp() && batchMeans.precise(sim.params.targetPrecision, sim.params.confidenceLevel)) {
+            // precise enough: end the run here, with the final snapshot EndOfSimulation would give
+            sim.stats.snapshot();
+            if (sim.report != null) {
+                sim.report.message("Stopped at time " + Statistics.fmtDbl(sim.simulationTime, 0, 0)
+                        + ": target precision reached after " + batchMeans.getBatches() + " batches of "
+                        + Statistics.fmtDbl(batchMeans.getBatchLength(), 0, 0));
+            }
+            sim.stop();
+            return;
+        }
+        setTime(batchMeans.batchEnd());
+        sim.eventList.insert(this);
+    }
+}
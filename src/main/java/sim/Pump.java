@@ -1,10 +1,74 @@
 package sim;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * Pump: the class representing single pumps at the gas station.
+ * Each pump has a type (see PumpType), which gives its service times and the fuels it dispenses,
+ * and keeps its own count of cars and busy time for the per-pump utilisation.
  */
 class Pump {
+    private final Simulation sim;
+    private final int id; // this pump's number in the pump stand
+    private final PumpType type;
+    private final Departure departure; // this pump's departure event, reused for every car
+    private final Car serviceRecord = new Car(); // this pump's copy of the car it serves
     private Car carInService = null;
+    private double serviceStart = 0.0; // when the car in service started
+    private double busyTime = 0.0;     // time spent serving the cars that have left, since the statistics started
+    private long cars = 0;             // cars served since the statistics started
+    private long released = 0;         // when the pump was last freed, as a count of releases (see PumpStand)
+
+    public Pump(Simulation sim, int id, PumpType type) {
+        this.sim = sim;
+        this.id = id;
+        this.type = type;
+        this.departure = new Departure(sim, this);
+    }
+
+    /** return this pump's number in the pump stand. */
+    public int getId() {
+        return id;
+    }
+
+    /** return this pump's type. */
+    PumpType getType() {
+        return type;
+    }
+
+    /** return the number of cars this pump has started serving since the statistics started. */
+    long getCars() {
+        return cars;
+    }
+
+    /** return the time this pump has spent serving the cars that have left, since the statistics started. */
+    double getBusyTime() {
+        return busyTime;
+    }
+
+    /** busyTimeUntil: the time this pump has been busy since the statistics started, up to the given time. */
+    double busyTimeUntil(double time) {
+        if (carInService == null) return busyTime;
+        return busyTime + Math.max(0.0, time - Math.max(serviceStart, sim.stats.getStart()));
+    }
+
+    /** return the stamp of this pump's last release. */
+    long getReleased() {
+        return released;
+    }
+
+    /** set the stamp of this pump's last release. */
+    void setReleased(long stamp) {
+        this.released = stamp;
+    }
+
+    /** resetStatistics: forget the busy time and cars so far (the end of a warm-up). */
+    void resetStatistics() {
+        busyTime = 0.0;
+        cars = 0;
+    }
 
     /** get the car currently being served by the pump. */
     public Car getCarInService() {
@@ -14,34 +78,90 @@ class Pump {
     /**
      * serviceTime: determine how long the service will take.
      * Service times have a normal distribution with a mean given by a constant base
-     * plus an amount of time per litre, and with a fixed standard deviation.
+     * plus an amount of time per litre, and with a fixed standard deviation. With synchronized
+     * streams the car brought its deviate with it from its arrival.
      */
     private double serviceTime() {
         if (carInService == null) {
             System.out.println("Error! no car in service when expected");
             return -1.0;
         }
-        return Sim.serviceTimeBase
-                + Sim.serviceTimePerLitre * carInService.getLitresNeeded()
-                + Sim.serviceTimeSpread * Sim.serviceStream.nextGaussian();
+        return type.serviceTimeBase
+                + type.serviceTimePerLitre * carInService.getLitresNeeded()
+                + type.serviceTimeSpread
+                * (sim.params.synchronizedStreams ? carInService.getServiceNoise() : sim.serviceNoise.next());
     }
 
     /**
      * startService: the start-of-service event routine.
-     * Connects the car to this pump, and determines when the service will stop.
+     * Connects (a copy of) the car to this pump, and determines when the service will stop.
      */
     public void startService(Car car) {
-        // precondition: Sim.pumpStand.aPumpIsAvailable()
-        carInService = car;
+        // precondition: sim.pumpStand.aPumpIsAvailable()
+        serviceRecord.set(car.getArrivalTime(), car.getLitresNeeded(), car.getServiceNoise(), car.getFuel());
+        carInService = serviceRecord;
+        serviceStart = sim.simulationTime;
+        cars++;
         final double pumpTime = Math.max(0.0, serviceTime());
 
         // Collect statistics.
-        Sim.stats.accumWaitingTime(Sim.simulationTime - carInService.getArrivalTime());
-        Sim.stats.accumServiceTime(pumpTime);
+        final double wait = sim.simulationTime - carInService.getArrivalTime();
+        sim.stats.accumWaitingTime(wait);
+        sim.stats.accumServiceTime(pumpTime);
+        if (sim.stats.timeOfDay != null) {
+            sim.stats.timeOfDay.countService(carInService.getArrivalTime(), wait, carInService.getLitresNeeded());
+        }
+        if (sim.trace != null) {
+            sim.trace.record(sim.simulationTime, EventTrace.SERVICE, id, sim.carQueue.getQueueSize(),
+                    carInService.getLitresNeeded(), wait);
+        }
 
         // Schedule departure of car from this pump.
-        Departure dep = new Departure(Sim.simulationTime + pumpTime);
-        dep.setPump(this);
-        Sim.eventList.insert(dep);
+        departure.setTime(sim.simulationTime + pumpTime);
+        sim.eventList.insert(departure);
+    }
+
+    /** return this pump's departure event. */
+    Departure getDeparture() {
+        return departure;
+    }
+
+    /**
+     * save: write the pump's counts and the car in service, if any, to a checkpoint (its departure is
+     * saved with the events).
+     */
+    void save(DataOutput out) throws IOException {
+        out.writeDouble(busyTime);
+        out.writeLong(cars);
+        out.writeLong(released);
+        out.writeBoolean(carInService != null);
+        if (carInService == null) return;
+        out.writeDouble(serviceStart);
+        out.writeDouble(carInService.getArrivalTime());
+        out.writeDouble(carInService.getLitresNeeded());
+        out.writeDouble(carInService.getServiceNoise());
+        out.writeInt(carInService.getFuel());
+    }
+
+    /** restore: read the state written by save. */
+    void restore(DataInput in) throws IOException {
+        busyTime = in.readDouble();
+        cars = in.readLong();
+        released = in.readLong();
+        if (!in.readBoolean()) {
+            carInService = null;
+            return;
+        }
+        serviceStart = in.readDouble();
+        serviceRecord.set(in.readDouble(), in.readDouble(), in.readDouble(), in.readInt());
+        carInService = serviceRecord;
+    }
+
+    /** endService: disconnect the car that has finished at this pump and return it (valid until the next service). */
+    public Car endService() {
+        Car car = carInService;
+        carInService = null;
+        busyTime += Math.max(0.0, sim.simulationTime - Math.max(serviceStart, sim.stats.getStart()));
+        return car;
     }
 }
@@ -1,30 +1,170 @@
 package sim;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
 /**
  * PumpStand: the class for the complete collection of pumps at the gas station.
+ *
+ * The pumps may differ (see PumpType): in speed, and in the fuels they dispense. The free pumps are
+ * kept in groups, one per set of fuels dispensed, and a bitset says which groups have a free pump,
+ * so finding the free pumps that can serve a car is a few bit operations. Within a group the free
+ * pumps are a stack (the policies LIFO and MATCH) or a binary heap ordered by the policy's key
+ * (FASTEST, LEAST_UTILISED), so taking or releasing a pump costs O(1) or O(log n) however many pumps
+ * there are, plus a look at the top of each group that could serve the car.
+ *   LIFO:           the pump freed last (the original behaviour; for identical pumps, the only one)
+ *   FASTEST:        the pump with the shortest mean service time for a car of mean demand
+ *   LEAST_UTILISED: the pump that has been busy for the least time so far
+ *   MATCH:          a pump of the group dispensing the fewest fuels, keeping versatile pumps free
+ * Ties go to the lower pump number (or, for LIFO and MATCH, to the pump freed last).
+ *
+ * With fuels, each car needs one fuel, drawn on arrival from Parameters.fuelMix ("petrol=0.8,
+ * diesel=0.2"), and only pumps dispensing it can serve it.
  */
 class PumpStand {
-    private Pump[] pumps; // an array of pumps
-    private int numPumps;
-    private int topPump;
+    /** Policy: how a free pump is chosen for a car. */
+    enum Policy {
+        LIFO, FASTEST, LEAST_UTILISED, MATCH;
+
+        /** parse: a policy by name, e.g. "fastest" or "leastUtilised". */
+        static Policy parse(String name) {
+            String n = name.trim().replace("-", "").replace("_", "");
+            for (Policy p : values()) {
+                if (p.name().replace("_", "").equalsIgnoreCase(n)) return p;
+            }
+            throw new IllegalArgumentException("unknown pump policy: " + name + " (lifo, fastest, leastUtilised, match)");
+        }
+    }
+
+    /** Group: the free pumps dispensing one set of fuels. */
+    private static final class Group {
+        final int fuels;
+        final int width;   // the number of fuels dispensed
+        final Pump[] free; // a stack, or a binary heap
+        int size = 0;
+
+        Group(int fuels, int pumps) {
+            this.fuels = fuels;
+            this.width = (fuels == PumpType.ALL_FUELS) ? 32 : Integer.bitCount(fuels);
+            this.free = new Pump[pumps];
+        }
+    }
+
+    private final Simulation sim;
+    private final Policy policy;
+    private final Pump[] byId; // every pump, free or busy, by its number
+    private final int[] groupOf; // the group of each pump
+    private final double[] speedKey; // for FASTEST, each pump's mean service time for a car of mean demand
+    private final int numPumps;
+    private int freePumps;
+    private final Group[] groups;
+    private final long[] groupsFor;  // the groups that can serve each fuel; the last entry is every group
+    private long nonEmpty = 0;       // the groups with a free pump
+    private long releases = 0;       // stamps pumps as they are freed, for LIFO between groups
+    private final List<String> fuelNames = new ArrayList<>();
+    private final double[] fuelMix;  // cumulative shares of the fuels, or null if cars take any pump
 
     /**
      * Constructor; build a PumpStand of numPumps pumps, and make all of them available.
      */
-    public PumpStand(int numPumps) {
+    public PumpStand(Simulation sim, int numPumps) {
         if (numPumps < 1) {
             System.out.println("Error! pump stand needs more than 0 pumps");
             numPumps = 1;
         }
-        pumps = new Pump[numPumps];
-        this.numPumps = numPumps;
-        topPump = numPumps - 1;
-        for (int p = 0; p < numPumps; p++) pumps[p] = new Pump();
+        this.sim = sim;
+        this.policy = Policy.parse(sim.params.pumpPolicy);
+        Parameters defaults = sim.params.copy();
+        defaults.numPumps = numPumps;
+        List<PumpType> types = PumpType.parseList(sim.params.pumpTypes, defaults, fuelNames);
+        fuelMix = parseFuelMix(sim.params.fuelMix);
+
+        int n = 0;
+        for (PumpType t : types) n += t.count;
+        this.numPumps = n;
+        byId = new Pump[n];
+        List<Group> list = new ArrayList<>();
+        int id = 0;
+        for (PumpType t : types) {
+            for (int k = 0; k < t.count; k++) byId[id] = new Pump(sim, id++, t);
+            Group g = null;
+            for (Group existing : list) if (existing.fuels == t.fuels) g = existing;
+            if (g == null) list.add(new Group(t.fuels, 0));
+        }
+        if (list.size() > 64) throw new IllegalArgumentException("more than 64 sets of fuels among the pump types");
+        groups = new Group[list.size()];
+        groupOf = new int[n];
+        speedKey = new double[n];
+        double meanLitres = sim.params.litresNeededMin + sim.params.litresNeededRange / 2.0;
+        for (int i = 0; i < groups.length; i++) {
+            int count = 0;
+            for (Pump p : byId) {
+                if (p.getType().fuels != list.get(i).fuels) continue;
+                groupOf[p.getId()] = i;
+                count++;
+            }
+            groups[i] = new Group(list.get(i).fuels, count);
+        }
+        for (Pump p : byId) speedKey[p.getId()] = p.getType().meanServiceTime(meanLitres);
+        groupsFor = new long[fuelNames.size() + 1];
+        for (int g = 0; g < groups.length; g++) {
+            for (int f = 0; f < fuelNames.size(); f++) {
+                if ((groups[g].fuels & (1 << f)) != 0) groupsFor[f] |= 1L << g;
+            }
+            groupsFor[fuelNames.size()] |= 1L << g;
+        }
+        for (int f = 0; fuelMix != null && f < fuelMix.length; f++) {
+            double share = fuelMix[f] - ((f > 0) ? fuelMix[f - 1] : 0.0);
+            if (share > 0.0 && groupsFor[f] == 0) {
+                throw new IllegalArgumentException("no pump dispenses " + fuelNames.get(f) + " of the fuel mix");
+            }
+        }
+        // every pump is free; for identical pumps the stack is 0 .. n-1, so pump n-1 is taken first
+        for (Pump p : byId) push(p);
+    }
+
+    /** parseFuelMix: the cumulative shares of a fuel mix such as "petrol=0.8,diesel=0.2", or null for none. */
+    private double[] parseFuelMix(String spec) {
+        if (spec == null || spec.trim().isEmpty()) return null;
+        List<double[]> shares = new ArrayList<>();
+        double total = 0.0;
+        for (String part : spec.split(",")) {
+            int eq = part.indexOf('=');
+            if (eq < 0) throw new IllegalArgumentException("expected fuel=share, not " + part.trim());
+            int fuel = PumpType.fuelIndex(part.substring(0, eq).trim(), fuelNames);
+            double share = Double.parseDouble(part.substring(eq + 1).trim());
+            if (!(share >= 0.0)) throw new IllegalArgumentException("negative fuel share: " + part.trim());
+            shares.add(new double[]{fuel, share});
+            total += share;
+        }
+        if (!(total > 0.0)) throw new IllegalArgumentException("fuel mix without shares: " + spec);
+        double[] cumulative = new double[fuelNames.size()];
+        for (double[] s : shares) cumulative[(int) s[0]] += s[1] / total;
+        for (int f = 1; f < cumulative.length; f++) cumulative[f] += cumulative[f - 1];
+        return cumulative;
+    }
+
+    /** return true if cars need particular fuels, which drawFuel gives them. */
+    boolean usesFuels() {
+        return fuelMix != null;
+    }
+
+    /** drawFuel: the fuel of a car, from a uniform variate. */
+    int drawFuel(double u) {
+        for (int f = 0; f < fuelMix.length - 1; f++) {
+            if (u < fuelMix[f]) return f;
+        }
+        return fuelMix.length - 1;
     }
 
     /** return true/false according to whether at least one pump is free for use. */
     public boolean aPumpIsAvailable() {
-        return topPump >= 0;
+        return freePumps > 0;
     }
 
     /** return the number of pumps in the pump stand. */
@@ -32,21 +172,190 @@ class PumpStand {
         return numPumps;
     }
 
+    /** return the number of pumps serving a car. */
+    public int getBusyPumps() {
+        return numPumps - freePumps;
+    }
+
+    /** return the pump with the given number. */
+    Pump getPump(int id) {
+        return byId[id];
+    }
+
+    /** save: write the free pumps of each group, in the order they are kept, and every pump to a checkpoint. */
+    void save(DataOutput out) throws IOException {
+        out.writeInt(numPumps);
+        out.writeLong(releases);
+        for (Group g : groups) {
+            out.writeInt(g.size);
+            for (int i = 0; i < g.size; i++) out.writeInt(g.free[i].getId());
+        }
+        for (Pump p : byId) p.save(out);
+    }
+
+    /** restore: read the state written by save (the statistics are restored separately). */
+    void restore(DataInput in) throws IOException {
+        int saved = in.readInt();
+        if (saved != numPumps) throw new IOException("checkpoint has " + saved + " pumps, not " + numPumps);
+        releases = in.readLong();
+        freePumps = 0;
+        nonEmpty = 0;
+        for (int k = 0; k < groups.length; k++) {
+            Group g = groups[k];
+            g.size = in.readInt();
+            for (int i = 0; i < g.size; i++) g.free[i] = byId[in.readInt()];
+            freePumps += g.size;
+            if (g.size > 0) nonEmpty |= 1L << k;
+        }
+        for (Pump p : byId) p.restore(in);
+    }
+
+    /** resetStatistics: start the pumps' busy times and counts again (the end of a warm-up). */
+    void resetStatistics() {
+        for (Pump p : byId) p.resetStatistics();
+        if (policy != Policy.LEAST_UTILISED) return;
+        // every free pump now has the same busy time: rebuild the heaps, in order of pump number
+        for (Group g : groups) {
+            Pump[] free = g.free.clone();
+            int size = g.size;
+            g.size = 0;
+            Arrays.sort(free, 0, size, (a, b) -> Integer.compare(a.getId(), b.getId()));
+            for (int i = 0; i < size; i++) g.free[g.size++] = free[i];
+        }
+    }
+
     /** releasePump: put pump p back in the stock of available pumps. */
     public void releasePump(Pump p) {
-        if (topPump >= numPumps - 1) {
+        if (freePumps >= numPumps) {
             System.out.println("Error! attempt to release a free pump?");
             return;
         }
-        pumps[++topPump] = p;
+        push(p);
+        sim.stats.trackBusyPumps(numPumps - freePumps);
     }
 
     /** takeAvailablePump: take a pump from the set of free pumps, and return that pump. */
     public Pump takeAvailablePump() {
-        if (topPump < 0) {
-            System.out.println("Error! no pump available when needed");
+        return takeAvailablePump(-1);
+    }
+
+    /**
+     * takeAvailablePump: take a free pump that dispenses the given fuel (any pump for -1), chosen by
+     * the policy, and return it; null if there is none.
+     */
+    Pump takeAvailablePump(int fuel) {
+        long candidates = nonEmpty & groupsFor[(fuel < 0) ? groupsFor.length - 1 : fuel];
+        if (candidates == 0) {
+            if (freePumps == 0) System.out.println("Error! no pump available when needed");
             return null;
         }
-        return pumps[topPump--];
+        int best = Long.numberOfTrailingZeros(candidates);
+        for (long c = candidates & (candidates - 1); c != 0; c &= c - 1) {
+            int g = Long.numberOfTrailingZeros(c);
+            if (better(groups[g], groups[best])) best = g;
+        }
+        Pump p = pop(groups[best]);
+        if (groups[best].size == 0) nonEmpty &= ~(1L << best);
+        freePumps--;
+        sim.stats.trackBusyPumps(numPumps - freePumps);
+        return p;
+    }
+
+    /** better: whether the pump group a offers a better pump than group b. */
+    private boolean better(Group a, Group b) {
+        Pump x = a.free[0];
+        Pump y = b.free[0];
+        switch (policy) {
+            case FASTEST:
+            case LEAST_UTILISED:
+                return before(x, y);
+            case MATCH:
+                if (a.width != b.width) return a.width < b.width;
+                return a.free[a.size - 1].getReleased() > b.free[b.size - 1].getReleased();
+            default:
+                return a.free[a.size - 1].getReleased() > b.free[b.size - 1].getReleased();
+        }
+    }
+
+    /** before: whether pump a comes before pump b in a heap of the policy. */
+    private boolean before(Pump a, Pump b) {
+        double ka = key(a);
+        double kb = key(b);
+        if (ka != kb) return ka < kb;
+        return a.getId() < b.getId();
+    }
+
+    private double key(Pump p) {
+        return (policy == Policy.FASTEST) ? speedKey[p.getId()] : p.getBusyTime();
+    }
+
+    private boolean isHeap() {
+        return policy == Policy.FASTEST || policy == Policy.LEAST_UTILISED;
+    }
+
+    /** push: add a free pump to its group. */
+    private void push(Pump p) {
+        int k = groupOf[p.getId()];
+        Group g = groups[k];
+        p.setReleased(++releases);
+        int i = g.size++;
+        g.free[i] = p;
+        if (isHeap()) {
+            // sift up
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(p, g.free[parent])) break;
+                g.free[i] = g.free[parent];
+                i = parent;
+            }
+            g.free[i] = p;
+        }
+        freePumps++;
+        nonEmpty |= 1L << k;
+    }
+
+    /** pop: take the best free pump of a group. */
+    private Pump pop(Group g) {
+        if (!isHeap()) {
+            Pump p = g.free[--g.size];
+            g.free[g.size] = null;
+            return p;
+        }
+        Pump top = g.free[0];
+        Pump last = g.free[--g.size];
+        g.free[g.size] = null;
+        if (g.size > 0) {
+            // sift down
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= g.size) break;
+                if (child + 1 < g.size && before(g.free[child + 1], g.free[child])) child++;
+                if (!before(g.free[child], last)) break;
+                g.free[i] = g.free[child];
+                i = child;
+            }
+            g.free[i] = last;
+        }
+        return top;
+    }
+
+    /** getUtilisation: the fraction of the time since the statistics started that each pump has been busy. */
+    double[] getUtilisation() {
+        double observed = Math.max(1e-9, sim.simulationTime - sim.stats.getStart());
+        double[] u = new double[numPumps];
+        for (int i = 0; i < numPumps; i++) u[i] = byId[i].busyTimeUntil(sim.simulationTime) / observed;
+        return u;
+    }
+
+    /** report: one line per pump, its type, fuels, cars served and utilisation, for a report's messages. */
+    void report(ReportSink sink) {
+        double[] u = getUtilisation();
+        sink.message("Pump  Type          Fuels             Cars  Utilisation");
+        for (int i = 0; i < numPumps; i++) {
+            Pump p = byId[i];
+            sink.message(String.format(Locale.ROOT, "%4d  %-12s  %-14s %7d  %11.3f", i, p.getType().name,
+                    PumpType.fuelNames(p.getType().fuels, fuelNames), p.getCars(), u[i]));
+        }
     }
 }
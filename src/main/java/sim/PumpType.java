@@ -0,0 +1,119 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PumpType: a kind of pump of a mixed station: how many there are, their service-time parameters
+ * and the fuels they dispense. The pump types of a station are given by Parameters.pumpTypes as
+ * "name: setting=value ..." entries separated by semicolons, e.g.
+ *   fast: count=4 base=90 perLitre=0.4 spread=20 fuels=petrol+diesel; slow: count=6 perLitre=0.6 fuels=petrol
+ * where count is the number of pumps (default 1), base, perLitre and spread the service time
+ * (defaults: serviceTimeBase, serviceTimePerLitre and serviceTimeSpread) and fuels the fuels
+ * dispensed (default: every fuel). Without pump types a station has numPumps identical pumps that
+ * dispense every fuel.
+ */
+final class PumpType {
+    static final int ALL_FUELS = -1; // the fuel mask of a pump that dispenses every fuel
+
+    final String name;
+    final int count;
+    final double serviceTimeBase;
+    final double serviceTimePerLitre;
+    final double serviceTimeSpread;
+    final int fuels;           // mask of the fuels dispensed, bit i for fuel i of the station's list
+
+    PumpType(String name, int count, double serviceTimeBase, double serviceTimePerLitre, double serviceTimeSpread,
+             int fuels) {
+        if (count < 0) throw new IllegalArgumentException("negative pump count for " + name);
+        this.name = name;
+        this.count = count;
+        this.serviceTimeBase = serviceTimeBase;
+        this.serviceTimePerLitre = serviceTimePerLitre;
+        this.serviceTimeSpread = serviceTimeSpread;
+        this.fuels = fuels;
+    }
+
+    /** meanServiceTime: the mean service time of a car of the given demand. */
+    double meanServiceTime(double litres) {
+        return serviceTimeBase + serviceTimePerLitre * litres;
+    }
+
+    /** count: the number of pumps of a station, of all its types. */
+    static int count(Parameters p) {
+        int n = 0;
+        for (PumpType t : parseList(p.pumpTypes, p, new ArrayList<>())) n += t.count;
+        return n;
+    }
+
+    /**
+     * parseList: the pump types of a station (or a single type of numPumps pumps if the spec is empty),
+     * adding the fuels they name to the list of fuels.
+     */
+    static List<PumpType> parseList(String spec, Parameters defaults, List<String> fuelNames) {
+        List<PumpType> types = new ArrayList<>();
+        if (spec == null || spec.trim().isEmpty()) {
+            types.add(new PumpType("pump", defaults.numPumps, defaults.serviceTimeBase, defaults.serviceTimePerLitre,
+                    defaults.serviceTimeSpread, ALL_FUELS));
+            return types;
+        }
+        for (String entry : spec.split(";")) {
+            if (entry.trim().isEmpty()) continue;
+            int colon = entry.indexOf(':');
+            if (colon < 0) throw new IllegalArgumentException("expected name: settings, not " + entry.trim());
+            String name = entry.substring(0, colon).trim();
+            int count = 1;
+            double base = defaults.serviceTimeBase;
+            double perLitre = defaults.serviceTimePerLitre;
+            double spread = defaults.serviceTimeSpread;
+            int fuels = ALL_FUELS;
+            for (String setting : entry.substring(colon + 1).trim().split("\\s+")) {
+                if (setting.isEmpty()) continue;
+                int eq = setting.indexOf('=');
+                if (eq < 0) throw new IllegalArgumentException("expected setting=value for pump type " + name + ", not " + setting);
+                String value = setting.substring(eq + 1);
+                switch (setting.substring(0, eq)) {
+                    case "count":    count = Integer.parseInt(value); break;
+                    case "base":     base = Double.parseDouble(value); break;
+                    case "perLitre": perLitre = Double.parseDouble(value); break;
+                    case "spread":   spread = Double.parseDouble(value); break;
+                    case "fuels":    fuels = fuelMask(value, fuelNames); break;
+                    default: throw new IllegalArgumentException("unknown pump setting " + setting.substring(0, eq));
+                }
+            }
+            types.add(new PumpType(name, count, base, perLitre, spread, fuels));
+        }
+        int total = 0;
+        for (PumpType t : types) total += t.count;
+        if (total < 1) throw new IllegalArgumentException("pump types without pumps: " + spec);
+        return types;
+    }
+
+    /** fuelMask: the mask of fuels named as "a+b+...", adding new names to the list. */
+    static int fuelMask(String names, List<String> fuelNames) {
+        int mask = 0;
+        for (String name : names.split("\\+")) mask |= 1 << fuelIndex(name.trim(), fuelNames);
+        return mask;
+    }
+
+    /** fuelIndex: the number of a fuel, adding it to the list if it is new. */
+    static int fuelIndex(String name, List<String> fuelNames) {
+        int i = fuelNames.indexOf(name);
+        if (i >= 0) return i;
+        if (fuelNames.size() == 31) throw new IllegalArgumentException("more than 31 fuels");
+        fuelNames.add(name);
+        return fuelNames.size() - 1;
+    }
+
+    /** fuelNames: the names of the fuels in a mask, as "a+b", or "all". */
+    static String fuelNames(int mask, List<String> fuelNames) {
+        if (mask == ALL_FUELS) return "all";
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < fuelNames.size(); i++) {
+            if ((mask & (1 << i)) == 0) continue;
+            if (s.length() > 0) s.append('+');
+            s.append(fuelNames.get(i));
+        }
+        return s.toString();
+    }
+}
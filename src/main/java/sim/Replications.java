@@ -0,0 +1,89 @@
+package sim;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Replications: runs N independently seeded replications of one scenario in parallel, on a
+ * fork-join pool sized to the machine, and merges their statistics. Each replication has its
+ * own Simulation, so its result is exactly what a single-threaded run with the same seeds gives.
+ * The streams of replication k come from Seeding (see there; -Dsim.rng selects the algorithm).
+ *
+ * Usage: java sim.Replications replications [threads] &lt; the usual seven input lines of Sim
+ * (the report interval is ignored; one line is printed per replication, then the merged line).
+ */
+public class Replications {
+
+    /** runOne: run replication k silently and return its summary (from the result cache, if -Dsim.cache is set). */
+    public static Summary runOne(Parameters params, Seeding seeding, int replication) {
+        ResultCache cache = ResultCache.shared();
+        if (cache != null) return cache.run(params, seeding, replication);
+        Simulation sim = new Simulation(params, seeding, replication, null);
+        sim.run();
+        return sim.summary();
+    }
+
+    /** run: run replications 0..n-1 on the given number of threads; summaries come back in replication order. */
+    public static List<Summary> run(Parameters params, Seeding seeding, int replications, int threads) {
+        final Parameters scenario = params.copy();
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            List<Future<Summary>> pending = new ArrayList<>(replications);
+            for (int k = 0; k < replications; k++) {
+                final int replication = k;
+                pending.add(pool.submit(() -> runOne(scenario, seeding, replication)));
+            }
+            List<Summary> results = new ArrayList<>(replications);
+            for (Future<Summary> f : pending) results.add(f.get());
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("replications interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("replication failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** merge: pool a list of summaries, in list order. */
+    public static Summary merge(List<Summary> summaries) {
+        Summary merged = null;
+        for (Summary s : summaries) merged = (merged == null) ? s : merged.merge(s);
+        return merged;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java sim.Replications replications [threads] < input");
+            return;
+        }
+        int replications = Integer.parseInt(args[0]);
+        int threads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        Parameters params = new Parameters();
+        params.reportInterval = Double.parseDouble(in.readLine().trim());
+        params.endingTime = Double.parseDouble(in.readLine().trim());
+        params.numPumps = Integer.parseInt(in.readLine().trim());
+        long[] seeds = new long[4];
+        for (int i = 0; i < 4; i++) seeds[i] = Integer.parseInt(in.readLine().trim());
+        Seeding seeding = Seeding.fromInput(seeds[0], seeds[1], seeds[2], seeds[3]);
+
+        System.out.println("Running " + replications + " replications with " + params.numPumps
+                + " pumps on " + threads + " threads, streams " + seeding);
+        List<Summary> summaries = run(params, seeding, replications, threads);
+        ReportSink report = ReportSink.text(System.out);
+        report.header(false);
+        for (Summary s : summaries) report.row(s, false);
+        report.message("=".repeat(79));
+        report.row(merge(summaries), Boolean.getBoolean("sim.detail"));
+        report.close();
+    }
+}
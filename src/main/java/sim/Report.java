@@ -4,16 +4,19 @@ package sim;
  * Report: the class representing reporting events.
  */
 class Report extends Event {
-    public Report(double time) {
+    private final Simulation sim;
+
+    public Report(Simulation sim, double time) {
         super(time);
+        this.sim = sim;
     }
 
     /** interim reporting event routine. */
     public void makeItHappen() {
-        Sim.stats.snapshot();
+        sim.stats.snapshot();
         // Schedule the next interim report.
-        setTime(Sim.simulationTime + Sim.reportInterval);
-        if (getTime() <= Sim.simulationTime) return; // guard
-        Sim.eventList.insert(this);
+        setTime(sim.simulationTime + sim.params.reportInterval);
+        if (getTime() <= sim.simulationTime) return; // guard
+        sim.eventList.insert(this);
     }
 }
@@ -0,0 +1,54 @@
+package sim;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * ReportSink: where the progress reports of a run go. A sink formats each report into a buffer it
+ * reuses and hands the bytes to its output; with an asynchronous output a background thread does
+ * the writing, so the event loop never waits for the console or the disk.
+ */
+public interface ReportSink {
+
+    /** Format: the available report formats. */
+    enum Format {
+        TEXT,   // the fixed-width table Sim has always printed
+        CSV,    // one comma-separated line per report, messages as # comments
+        BINARY; // fixed-size big-endian records (see BinaryReportSink)
+
+        /** parse: look a format up by name, e.g. "csv". */
+        public static Format parse(String name) {
+            return valueOf(name.trim().toUpperCase());
+        }
+    }
+
+    /** header: start the report; detailed reports also carry the streaming statistics of each summary. */
+    void header(boolean detailed);
+
+    /** row: report one summary; for a merged summary, the per-replication averages. */
+    void row(Summary s, boolean detailed);
+
+    /** message: report a line of text, e.g. that the warm-up is over. */
+    void message(String text);
+
+    /** flush: pass everything reported so far on to the output, e.g. at the end of a scenario; nothing waits for the writer. */
+    void flush();
+
+    /** close: write out everything reported and, for an asynchronous sink, wait for the writer; the stream stays open. */
+    void close();
+
+    /** text: the fixed-width text report, written straight to the given stream. */
+    static ReportSink text(PrintStream out) {
+        return new TextReportSink(out);
+    }
+
+    /** open: a report of the given format on the given stream, written by a background thread if async. */
+    static ReportSink open(Format format, OutputStream out, boolean async) {
+        OutputStream target = async ? new AsyncOutput(out) : out;
+        switch (format) {
+            case CSV:    return new CsvReportSink(target);
+            case BINARY: return new BinaryReportSink(target);
+            default:     return new TextReportSink(target);
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package sim;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * ResultCache: a content-addressed cache of run results. A run is determined by its parameters, its
+ * seeding and replication, and the code of the model, so its summary is stored under a SHA-256 hash
+ * of those and a repeated run is answered at once from the cache.
+ *
+ * There are two tiers: an in-memory LRU map of the most recent summaries, for repeated queries in
+ * one process, and a directory on disk shared by every process that uses it, kept under a size
+ * bound by deleting the least recently used entries (a hit touches the file's modification time).
+ * An entry (the magic bytes "SIMK", a version byte, the key and the summary) is written to a
+ * temporary file and moved into place, so readers never see half an entry, and an unreadable entry
+ * is simply a miss.
+ *
+ * The code version in the key is a hash of the model's class files (or of the jar they are in), so
+ * a rebuilt model never sees the results of the old one; -Dsim.codeVersion overrides it.
+ * The parameters that do not change the result (detailedReport, traceFile and monitor) are left
+ * out of the key. A replayed arrival log is in the key by its size, modification time and a hash
+ * of its contents, so a log rewritten in place is a new scenario; the hash of a log is computed
+ * once per size and modification time in a process.
+ *
+ * Replications.runOne (and so Sweep, Batch and Replications) goes through the shared cache when
+ * -Dsim.cache names its directory; -Dsim.cacheSize sets the disk bound in megabytes (default 256)
+ * and -Dsim.cacheEntries the size of the memory tier (default 1024). A run that writes an event
+ * trace always runs.
+ *
+ * Usage: java sim.ResultCache directory [--clear]
+ * prints the number and total size of the entries in a cache directory, or deletes them.
+ */
+public final class ResultCache {
+    static final int VERSION = 1;
+    private static final String MAGIC = "SIMK";
+    private static final String SUFFIX = ".result";
+
+    private static volatile String codeVersion;
+    private static volatile ResultCache shared;
+    private static volatile boolean sharedChecked = false;
+    private static final Map<String, String> logVersions = new ConcurrentHashMap<>();
+
+    private final Path directory;
+    private final long maxBytes;
+    private final Map<String, Summary> memory;
+    private long diskBytes;     // this process's tally of the entries on disk; rescanned on eviction
+    private long memoryHits = 0;
+    private long diskHits = 0;
+    private long misses = 0;
+
+    /**
+     * Constructor; a cache in the given directory (created if need be), holding at most maxBytes on
+     * disk and the given number of summaries in memory.
+     */
+    public ResultCache(Path directory, long maxBytes, int memoryEntries) throws IOException {
+        if (maxBytes <= 0 || memoryEntries < 0) throw new IllegalArgumentException("cache bounds must be positive");
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Summary> eldest) {
+                return size() > memoryEntries;
+            }
+        };
+        long total = 0;
+        for (Path p : entries()) total += sizeOf(p);
+        diskBytes = total;
+    }
+
+    /** shared: the cache named by -Dsim.cache, or null if there is none. */
+    public static ResultCache shared() {
+        if (sharedChecked) return shared;
+        synchronized (ResultCache.class) {
+            if (!sharedChecked) {
+                String dir = System.getProperty("sim.cache");
+                if (dir != null) {
+                    try {
+                        shared = new ResultCache(Paths.get(dir), Long.getLong("sim.cacheSize", 256L) << 20,
+                                Integer.getInteger("sim.cacheEntries", 1024));
+                    } catch (IOException e) {
+                        System.out.println("Error! cannot open the result cache " + dir + ": " + e.getMessage());
+                    }
+                }
+                sharedChecked = true;
+            }
+            return shared;
+        }
+    }
+
+    /** key: the hash of everything that determines the result of a run. */
+    public static String key(Parameters params, Seeding seeding, int replication) {
+        Parameters p = params.copy();
+        // settings that change what a run writes, not what it computes
+        p.detailedReport = false;
+        p.traceFile = null;
+        p.monitor = false;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            DataOutputStream out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest));
+            out.writeUTF("sim result");
+            out.writeInt(VERSION);
+            out.writeUTF(codeVersion());
+            p.save(out);
+            if (p.arrivalLog != null) out.writeUTF(logVersion(Paths.get(p.arrivalLog)));
+            out.writeUTF(seeding.toString());
+            out.writeInt(replication);
+            out.flush();
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("cannot hash a scenario", e);
+        }
+    }
+
+    /** logVersion: the size, modification time and content hash of an arrival log. */
+    static String logVersion(Path log) {
+        try {
+            Path file = log.toAbsolutePath();
+            String stamp = file + " " + Files.size(file) + " "
+                    + Files.getLastModifiedTime(file).to(TimeUnit.NANOSECONDS);
+            String version = logVersions.get(stamp);
+            if (version != null) return version;
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            version = stamp.substring(file.toString().length() + 1) + " " + HexFormat.of().formatHex(digest.digest());
+            logVersions.put(stamp, version);
+            return version;
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot read the arrival log " + log, e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("cannot hash an arrival log", e);
+        }
+    }
+
+    /** run: the summary of replication k of a scenario, from the cache if it is there. */
+    public Summary run(Parameters params, Seeding seeding, int replication) {
+        if (params.traceFile != null) return simulate(params, seeding, replication);
+        String key = key(params, seeding, replication);
+        Summary s = get(key);
+        if (s == null) {
+            s = simulate(params, seeding, replication);
+            put(key, s);
+        }
+        return s;
+    }
+
+    private static Summary simulate(Parameters params, Seeding seeding, int replication) {
+        Simulation sim = new Simulation(params, seeding, replication, null);
+        sim.run();
+        return sim.summary();
+    }
+
+    /** get: the summary stored under a key, or null. */
+    public Summary get(String key) {
+        synchronized (memory) {
+            Summary s = memory.get(key);
+            if (s != null) {
+                memoryHits++;
+                return s;
+            }
+        }
+        Path file = fileOf(key);
+        Summary s = null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            byte[] magic = new byte[4];
+            in.readFully(magic);
+            if (MAGIC.equals(new String(magic, StandardCharsets.US_ASCII)) && in.readUnsignedByte() == VERSION
+                    && in.readUTF().equals(key)) {
+                s = Summary.read(in);
+            }
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            // a miss
+        } catch (IOException e) {
+            s = null; // a damaged or half-deleted entry: a miss, to be written again
+        }
+        synchronized (memory) {
+            if (s == null) {
+                misses++;
+                return null;
+            }
+            diskHits++;
+            memory.put(key, s);
+            return s;
+        }
+    }
+
+    /** put: store a summary under a key, evicting the least recently used entries beyond the disk bound. */
+    public void put(String key, Summary s) {
+        synchronized (memory) {
+            memory.put(key, s);
+        }
+        Path file = fileOf(key);
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), key, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.write(MAGIC.getBytes(StandardCharsets.US_ASCII));
+                out.writeByte(VERSION);
+                out.writeUTF(key);
+                s.save(out);
+            }
+            long size = Files.size(temp);
+            long replaced = sizeOf(file); // an entry written again under the same key, e.g. over a damaged one
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            synchronized (this) {
+                diskBytes += size - replaced;
+                if (diskBytes > maxBytes) evict();
+            }
+        } catch (IOException e) {
+            System.out.println("Error! cannot write to the result cache: " + e.getMessage());
+        }
+    }
+
+    /** evict: delete the least recently used entries until the cache is within its bound again. */
+    private void evict() throws IOException {
+        List<Path> files = entries();
+        List<Object[]> byAge = new ArrayList<>(files.size()); // {file, last use, size}
+        long total = 0;
+        for (Path p : files) {
+            try {
+                long size = Files.size(p);
+                byAge.add(new Object[]{p, Files.getLastModifiedTime(p).toMillis(), size});
+                total += size;
+            } catch (NoSuchFileException e) {
+                // deleted by another process meanwhile
+            }
+        }
+        byAge.sort((a, b) -> Long.compare((Long) a[1], (Long) b[1]));
+        for (int i = 0; i < byAge.size() && total > maxBytes; i++) {
+            Files.deleteIfExists((Path) byAge.get(i)[0]);
+            total -= (Long) byAge.get(i)[2];
+        }
+        diskBytes = total;
+    }
+
+    /** clear: delete every entry, in memory and on disk. */
+    public synchronized void clear() throws IOException {
+        synchronized (memory) {
+            memory.clear();
+        }
+        for (Path p : entries()) Files.deleteIfExists(p);
+        diskBytes = 0;
+    }
+
+    private Path fileOf(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key + SUFFIX);
+    }
+
+    private List<Path> entries() throws IOException {
+        try (Stream<Path> walk = Files.walk(directory, 2)) {
+            return walk.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).toList();
+        }
+    }
+
+    private static long sizeOf(Path p) {
+        try {
+            return Files.size(p);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /** return the number of queries answered from memory. */
+    public long getMemoryHits() {
+        synchronized (memory) {
+            return memoryHits;
+        }
+    }
+
+    /** return the number of queries answered from disk. */
+    public long getDiskHits() {
+        synchronized (memory) {
+            return diskHits;
+        }
+    }
+
+    /** return the number of queries not in the cache. */
+    public long getMisses() {
+        synchronized (memory) {
+            return misses;
+        }
+    }
+
+    /** return the bytes on disk, as this process counts them. */
+    public synchronized long getDiskBytes() {
+        return diskBytes;
+    }
+
+    /**
+     * codeVersion: a hash of the model's code, from -Dsim.codeVersion or else from the class files
+     * of this package (or the jar holding them).
+     */
+    public static String codeVersion() {
+        String version = codeVersion;
+        if (version != null) return version;
+        version = System.getProperty("sim.codeVersion");
+        if (version == null) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                Path source = Paths.get(ResultCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+                List<Path> files;
+                if (Files.isDirectory(source)) {
+                    try (Stream<Path> walk = Files.list(source.resolve("sim"))) {
+                        files = walk.filter(p -> p.toString().endsWith(".class")).sorted().toList();
+                    }
+                } else {
+                    files = List.of(source);
+                }
+                for (Path p : files) {
+                    digest.update(p.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+                    try (InputStream in = Files.newInputStream(p)) {
+                        digest.update(in.readAllBytes());
+                    }
+                }
+                version = HexFormat.of().formatHex(digest.digest(), 0, 8);
+            } catch (IOException e) {
+                throw new UncheckedIOException("cannot read the model's code", e);
+            } catch (NoSuchAlgorithmException | URISyntaxException | SecurityException e) {
+                throw new IllegalStateException("cannot find the model's code", e);
+            }
+        }
+        codeVersion = version;
+        return version;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java sim.ResultCache directory [--clear]");
+            return;
+        }
+        ResultCache cache = new ResultCache(Paths.get(args[0]), Long.MAX_VALUE, 0);
+        if (args.length > 1 && args[1].equals("--clear")) {
+            cache.clear();
+            System.out.println("Cleared " + args[0]);
+            return;
+        }
+        System.out.println(cache.entries().size() + " results, " + cache.getDiskBytes() + " bytes in " + args[0]
+                + " (code version " + codeVersion() + ")");
+    }
+}
@@ -0,0 +1,192 @@
+package sim;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGenerator.JumpableGenerator;
+import java.util.random.RandomGenerator.LeapableGenerator;
+import java.util.random.RandomGenerator.SplittableGenerator;
+import java.util.random.RandomGeneratorFactory;
+
+/**
+ * Seeding: how the five random-number streams of a run (arrival, litre, balking, service, fuel) are
+ * made, for any replication of a study.
+ *
+ * In legacy mode each stream is a java.util.Random with its own int seed, exactly as Sim has always
+ * read them; replication 0 uses those seeds and later replications scramble them. The fuel stream,
+ * used only with a fuel mix, has no seed of its own: its seed is the litre stream's with bit 34
+ * flipped, a pattern no int seed or branch seed has. In any other mode
+ * the streams come from one master seed and a java.util.random algorithm: a splittable generator
+ * (the LXM family, e.g. L64X128MixRandom) is split once per replication and once per stream, and a
+ * jumpable one (Xoshiro256PlusPlus, Xoroshiro128PlusPlus) leaps once per replication and jumps once per
+ * stream, so the streams of every replication are disjoint and there is nothing to pick by hand.
+ *
+ * A replication may also have branches (see Checkpoint.fork), runs that carry on from one of its
+ * states on streams of their own. These come from a range no replication uses: in legacy mode seeds
+ * with bit 32 set and bit 33 clear, which no int seed has once java.util.Random keeps its 48 bits; with
+ * a splittable generator the splits of the replication's generator after its five streams; with a
+ * leapable one the jumps after the replication's five streams, within its leap.
+ */
+public final class Seeding {
+    /** the algorithm name of legacy mode */
+    public static final String LEGACY = "Random";
+
+    // indices of the streams in the array returned by streams()
+    public static final int ARRIVAL = 0;
+    public static final int LITRE = 1;
+    public static final int BALKING = 2;
+    public static final int SERVICE = 3;
+    public static final int FUEL = 4;
+    static final int STREAMS = 5;
+
+    private final String algorithm;
+    private final long[] seeds; // legacy: one seed per stream; otherwise the master seed
+
+    private Seeding(String algorithm, long[] seeds) {
+        this.algorithm = algorithm;
+        this.seeds = seeds;
+    }
+
+    /** legacy: java.util.Random streams with the given seeds. */
+    public static Seeding legacy(long arrivalSeed, long litreSeed, long balkingSeed, long serviceSeed) {
+        return new Seeding(LEGACY, new long[]{arrivalSeed, litreSeed, balkingSeed, serviceSeed});
+    }
+
+    /** of: streams derived from one master seed by a splittable or jumpable java.util.random algorithm. */
+    public static Seeding of(String algorithm, long masterSeed) {
+        if (LEGACY.equals(algorithm)) {
+            throw new IllegalArgumentException("legacy streams need four seeds; use Seeding.legacy");
+        }
+        RandomGeneratorFactory<RandomGenerator> factory = RandomGeneratorFactory.of(algorithm);
+        if (!factory.isSplittable() && !factory.isJumpable()) {
+            throw new IllegalArgumentException(algorithm + " can neither split nor jump");
+        }
+        return new Seeding(algorithm, new long[]{masterSeed});
+    }
+
+    /**
+     * combine: fold the four seeds Sim reads from its input into one master seed,
+     * for runs that use a java.util.random algorithm.
+     */
+    public static long combine(long arrivalSeed, long litreSeed, long balkingSeed, long serviceSeed) {
+        long h = arrivalSeed;
+        h = h * 0x9E3779B97F4A7C15L + litreSeed;
+        h = h * 0x9E3779B97F4A7C15L + balkingSeed;
+        h = h * 0x9E3779B97F4A7C15L + serviceSeed;
+        return h;
+    }
+
+    /** return the name of the random-number algorithm. */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /** return true for java.util.Random streams seeded one by one. */
+    public boolean isLegacy() {
+        return LEGACY.equals(algorithm);
+    }
+
+    /** streams: the five streams of one replication, indexed by ARRIVAL, LITRE, BALKING, SERVICE and FUEL. */
+    public RandomGenerator[] streams(int replication) {
+        return streams(replication, -1);
+    }
+
+    /** streams: the five streams of branch k of one replication, or of the replication itself if k is -1. */
+    public RandomGenerator[] streams(int replication, int branch) {
+        if (branch < -1) throw new IllegalArgumentException("negative branch " + branch);
+        RandomGenerator[] streams = new RandomGenerator[STREAMS];
+        if (isLegacy()) {
+            for (int i = 0; i < STREAMS; i++) {
+                long seed = seeds[(i == FUEL) ? LITRE : i];
+                seed = (branch < 0) ? legacySeed(seed, replication) : branchSeed(seed, replication, branch);
+                streams[i] = new Random((i == FUEL) ? seed ^ (1L << 34) : seed);
+            }
+            return streams;
+        }
+        RandomGeneratorFactory<RandomGenerator> factory = RandomGeneratorFactory.of(algorithm);
+        RandomGenerator root = factory.create(seeds[0]);
+        if (root instanceof SplittableGenerator) {
+            SplittableGenerator master = (SplittableGenerator) root;
+            SplittableGenerator run = master.split();
+            for (int k = 0; k < replication; k++) run = master.split();
+            SplittableGenerator source = run;
+            if (branch >= 0) {
+                for (int i = 0; i < STREAMS; i++) run.split(); // the replication's own streams
+                for (int b = 0; b <= branch; b++) source = run.split();
+            }
+            for (int i = 0; i < STREAMS; i++) streams[i] = source.split();
+        } else if (root instanceof LeapableGenerator) {
+            LeapableGenerator run = (LeapableGenerator) root;
+            for (int k = 0; k < replication; k++) run.leap();
+            if (branch >= 0) for (long j = 0; j < (long) STREAMS * (branch + 1); j++) run.jump();
+            for (int i = 0; i < STREAMS; i++) streams[i] = run.copyAndJump();
+        } else {
+            if (branch >= 0) throw new IllegalArgumentException(algorithm + " cannot leap, so its runs cannot branch");
+            JumpableGenerator run = (JumpableGenerator) root;
+            for (int k = 0; k < STREAMS * replication; k++) run.jump();
+            for (int i = 0; i < STREAMS; i++) streams[i] = run.copyAndJump();
+        }
+        return streams;
+    }
+
+    /**
+     * legacySeed: the seed of one stream in replication k of legacy mode.
+     * Replication 0 uses the given seed, so it reproduces a plain Sim run; the others are
+     * scrambled from it so that neighbouring replications do not get neighbouring seeds.
+     */
+    static long legacySeed(long baseSeed, int replication) {
+        if (replication == 0) return baseSeed;
+        return new SplittableRandom(baseSeed * 0x9E3779B97F4A7C15L + replication).nextInt();
+    }
+
+    /** branchSeed: the seed of one stream in branch k of replication r in legacy mode; never an int. */
+    static long branchSeed(long baseSeed, int replication, int branch) {
+        int mixed = new SplittableRandom(baseSeed * 0xBF58476D1CE4E5B9L + ((long) replication << 32) + branch).nextInt();
+        return (mixed & 0xFFFFFFFFL) | (1L << 32);
+    }
+
+    /** toString: e.g. "Random:1,2,3,4" or "L64X128MixRandom:270"; parse reads it back. */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(algorithm).append(':');
+        for (int i = 0; i < seeds.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(seeds[i]);
+        }
+        return sb.toString();
+    }
+
+    /** parse: read a seeding written by toString. */
+    public static Seeding parse(String text) {
+        int colon = text.indexOf(':');
+        if (colon < 0) throw new IllegalArgumentException("not a seeding: " + text);
+        String algorithm = text.substring(0, colon).trim();
+        String[] parts = text.substring(colon + 1).split(",");
+        if (LEGACY.equals(algorithm)) {
+            if (parts.length != 4) throw new IllegalArgumentException("legacy seeding needs four seeds: " + text);
+            return legacy(Long.parseLong(parts[0].trim()), Long.parseLong(parts[1].trim()),
+                    Long.parseLong(parts[2].trim()), Long.parseLong(parts[3].trim()));
+        }
+        return of(algorithm, Long.parseLong(parts[0].trim()));
+    }
+
+    /**
+     * fromInput: the seeding for the four seeds read by Sim. Legacy unless the system property
+     * sim.rng names a java.util.random algorithm, in which case the seeds are combined into a master seed.
+     */
+    public static Seeding fromInput(long arrivalSeed, long litreSeed, long balkingSeed, long serviceSeed) {
+        String algorithm = System.getProperty("sim.rng", LEGACY);
+        if (LEGACY.equals(algorithm)) return legacy(arrivalSeed, litreSeed, balkingSeed, serviceSeed);
+        return of(algorithm, combine(arrivalSeed, litreSeed, balkingSeed, serviceSeed));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Seeding && toString().equals(o.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+}
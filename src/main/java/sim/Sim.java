@@ -1,7 +1,8 @@
 package sim;
 
-import java.util.*;
 import java.io.*;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 /**
  * CSC 270 simulation example
@@ -9,57 +10,22 @@ import java.io.*;
  * Turing original by M. Molle
  *
  * Sim: the class in charge of the simulation.
- * This class contains both the main() method for the application, and the
- * "global" variables controlling the execution.
+ * This class contains the main() method for the application; the state of a run
+ * lives in a Simulation object and the model constants in its Parameters.
  */
 public class Sim {
 
-    /** Global quantities used throughout the simulation */
-    public static double simulationTime;         // What time is it?
-    public static double reportInterval;         // How often should we report?
-
-    // quantities that determine how we model the real world
-    // In a more elaborate program, these might be input data.
-
-    // economics: profit per litre of gas, and cost to operate one pump for a day
-    public static double profit = 0.025;
-    public static double pumpCost = 20.0;
-
-    // demand: minimum and maximum amount of gas needed by a car (see Car constructor)
-    public static double litresNeededMin = 10.0;
-    public static double litresNeededRange = 50.0; // => uniform [10, 60)
-
-    // service times: constant base time + time per litre + random spread (see Pump.serviceTime)
-    public static double serviceTimeBase = 150.0;
-    public static double serviceTimePerLitre = 0.5;
-    public static double serviceTimeSpread = 30.0;
-
-    // customer behaviours: probability of balking depends on three ad-hoc constants (see Arrival.doesCarBalk)
-    public static double balkA = 40.0;
-    public static double balkB = 25.0;
-    public static double balkC = 3.0;
-
-    // customer arrival rate (see Arrival.interarrivalTime).
-    public static double meaninterarrivalTime = 50.0; // seconds
-
-    // random-number streams used to model the world
-    // separate streams for different random variables
-    public static Random arrivalStream;  // auto arrival times
-    public static Random litreStream;    // number of litres needed
-    public static Random balkingStream;  // balking probability
-    public static Random serviceStream;  // service times
-
-    // major data structures
-    public static EventList eventList;
-    public static CarQueue carQueue;
-    public static PumpStand pumpStand;
-    public static Statistics stats;
-
     /**
      * main entrypoint - starts the application
      */
     public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            // a file of scenarios instead of the seven input lines (see Batch)
+            Batch.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        Parameters params = new Parameters();
 
         // Read data and print introduction.
         // Inputs (each on its own line):
@@ -70,65 +36,61 @@ public class Sim {
         //   seed for litreStream (int)
         //   seed for balkingStream (int)
         //   seed for serviceStream (int)
-        reportInterval = Double.parseDouble(in.readLine().trim());
-        double endingTime = Double.parseDouble(in.readLine().trim());
-        int numPumps = Integer.parseInt(in.readLine().trim());
-
-        System.out.print("This simulation run uses " + numPumps + " pumps");
-        System.out.println(" and the following random number seeds:");
+        params.reportInterval = Double.parseDouble(in.readLine().trim());
+        params.endingTime = Double.parseDouble(in.readLine().trim());
+        params.numPumps = Integer.parseInt(in.readLine().trim());
+        // The event-list backend can be chosen per run, e.g. -Dsim.eventList=calendar
+        params.eventListBackend = EventList.Backend.parse(
+                System.getProperty("sim.eventList", EventList.DEFAULT_BACKEND.name()));
+        // -Dsim.detail=true adds waiting/service percentiles and time averages to every report
+        params.detailedReport = Boolean.getBoolean("sim.detail");
+        // -Dsim.trace=run.trace writes every event to a memory-mapped trace; read it with sim.TraceReader
+        params.traceFile = System.getProperty("sim.trace");
+        // -Dsim.monitor=true emits JFR events (sim.Event, sim.RunUntil, sim.State) and registers a JMX MXBean
+        params.monitor = Boolean.getBoolean("sim.monitor");
+        // -Dsim.precision=0.05 stops the run once wait, profit rate and balk rate are known to within 5%
+        // (-Dsim.precisionMetrics picks the metrics); the ending time is then only a cap
+        params.targetPrecision = Double.parseDouble(System.getProperty("sim.precision", "0"));
+        params.precisionMetrics = System.getProperty("sim.precisionMetrics", params.precisionMetrics);
+        // -Dsim.arrivalProfile=step:0=0.3,7=2.5,9=1,16=2,19=0.8 varies the arrival rate over the day (see
+        // ArrivalProfile) and reports the statistics of each hour at the end
+        params.arrivalProfile = System.getProperty("sim.arrivalProfile", "");
+        // -Dsim.arrivalLog=pos.csv replays the arrival times and litres of a log of real cars (see ArrivalLog)
+        params.arrivalLog = System.getProperty("sim.arrivalLog");
+        // -Dsim.pumpTypes="fast: count=2 base=60 fuels=petrol+diesel; slow: count=3 fuels=petrol" mixes kinds of
+        // pump in place of the numPumps of the input, -Dsim.fuelMix=petrol=0.8,diesel=0.2 gives the cars their
+        // fuels and -Dsim.pumpPolicy=fastest (leastUtilised, match) how pumps are chosen (see PumpStand)
+        params.pumpTypes = System.getProperty("sim.pumpTypes", "");
+        params.fuelMix = System.getProperty("sim.fuelMix", "");
+        params.set("pumpPolicy", System.getProperty("sim.pumpPolicy", params.pumpPolicy));
+        params.numPumps = PumpType.count(params);
+        // -Dsim.warmUp=mser deletes the warm-up found by MSER-5; -Dsim.warmUp=5000 deletes a fixed 5000 seconds
+        String warmUp = System.getProperty("sim.warmUp", "none");
+        if (warmUp.equalsIgnoreCase("mser")) params.warmUpDetection = true;
+        else if (!warmUp.equalsIgnoreCase("none")) params.warmUpTime = Double.parseDouble(warmUp);
 
         // 4 random number seeds (one for each stream)
-        int seed = Integer.parseInt(in.readLine().trim());
-        arrivalStream = new Random(seed);
-
-        seed = Integer.parseInt(in.readLine().trim());
-        litreStream = new Random(seed);
-
-        seed = Integer.parseInt(in.readLine().trim());
-        balkingStream = new Random(seed);
-
-        seed = Integer.parseInt(in.readLine().trim());
-        serviceStream = new Random(seed);
-
-        // Create and initialize the event list, the car queue, the pump stand, and the statistics collector.
-        // Create core components (data structures)
-        eventList = new EventList();
-        carQueue = new CarQueue();
-        pumpStand = new PumpStand(numPumps);
-        stats = new Statistics();
-
-        // Schedule the required events:
-        //   the end of the simulation;
-        //   the first progress report;
-        //   the arrival of the first car.
-        EndOfSimulation lastEvent = new EndOfSimulation(endingTime);
-        eventList.insert(lastEvent);
-
-        if (reportInterval <= endingTime && reportInterval > 0) {
-            Report nextReport = new Report(reportInterval);
-            eventList.insert(nextReport);
-        }
-
-        // (Should the first car really arrive at time 0?)
-        // Schedule the first arrival event at time 0
-        eventList.insert(new Arrival(0.0));
-
-        // The "clock driver" loop
-        while (true) {
-            // Fetch the earliest future event
-            Event currentEvent = eventList.takeNextEvent();
-            if (currentEvent == null) {
-                System.out.println("Error! ran out of events");
-                break;
-            }
-
-            // Each iteration of the loop jumps from one event to the next in the timeline
-            // Set simulated time to the time of the event being processed
-            simulationTime = currentEvent.getTime();
-            // executes the event
-            currentEvent.makeItHappen();
-            if (currentEvent instanceof EndOfSimulation) break;
+        int arrivalSeed = Integer.parseInt(in.readLine().trim());
+        int litreSeed = Integer.parseInt(in.readLine().trim());
+        int balkingSeed = Integer.parseInt(in.readLine().trim());
+        int serviceSeed = Integer.parseInt(in.readLine().trim());
+
+        // java.util.Random streams unless -Dsim.rng names another algorithm, e.g. -Dsim.rng=L64X128MixRandom
+        Seeding seeding = Seeding.fromInput(arrivalSeed, litreSeed, balkingSeed, serviceSeed);
+        // reports are written by a background thread; -Dsim.report=csv or binary changes their format
+        ReportSink report = ReportSink.open(ReportSink.Format.parse(System.getProperty("sim.report", "text")),
+                System.out, true);
+        report.message("This simulation run uses " + params.numPumps + " pumps and the following random number seeds:");
+        Simulation sim = new Simulation(params, seeding, 0, report);
+        // -Dsim.checkpoint=file -Dsim.checkpointAt=5000 saves the state at time 5000; java sim.Checkpoint file resumes it
+        String checkpoint = System.getProperty("sim.checkpoint");
+        if (checkpoint != null) {
+            sim.runUntil(Double.parseDouble(System.getProperty("sim.checkpointAt", "0")));
+            Checkpoint.save(sim, Paths.get(checkpoint));
         }
-        // The loop breaks if event list is empty or if the event being processed is an EndOfSimulation event
+        sim.run();
+        if (sim.getTimeOfDay() != null) sim.getTimeOfDay().report(report);
+        if (!params.pumpTypes.isEmpty()) sim.reportPumps(report);
+        report.close();
     }
 }
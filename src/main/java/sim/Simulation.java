@@ -0,0 +1,381 @@
+package sim;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.function.Predicate;
+import java.util.random.RandomGenerator;
+
+/**
+ * Simulation: the state of one simulation run.
+ * Everything an event touches (the clock, the random-number streams, the event list, the car queue,
+ * the pump stand and the statistics) lives here rather than in static fields, so any number of
+ * runs can exist side by side, e.g. on different threads.
+ */
+public final class Simulation {
+    // the kinds of event, as numbered in a checkpoint and counted by a Monitor
+    private static final int ARRIVAL = 1;
+    private static final int DEPARTURE = 2;
+    private static final int END = 3;
+    private static final int REPORT = 4;
+    private static final int PRECISION_CHECK = 5;
+    private static final int WARM_UP_END = 6;
+    static final int TRANSFER = 7;          // only in a network, which is not checkpointed
+    static final String[] KIND_NAMES = {"Other", "Arrival", "Departure", "EndOfSimulation", "Report",
+            "PrecisionCheck", "WarmUpEnd", "Transfer"};
+
+    final Parameters params;
+    final ReportSink report;              // where reports go; null for a silent run
+
+    double simulationTime = 0.0;          // What time is it?
+
+    // random-number streams used to model the world
+    // separate streams for different random variables
+    final Seeding seeding;                // how the streams were made
+    final int replication;                // which replication of that seeding this run is
+    final int branch;                     // which branch of that replication (see Checkpoint.fork), or -1
+    final RandomGenerator arrivalStream;  // auto arrival times
+    final RandomGenerator litreStream;    // number of litres needed
+    final RandomGenerator balkingStream;  // balking probability
+    final RandomGenerator serviceStream;  // service times
+    final RandomGenerator fuelStream;     // the fuel a car needs
+
+    // the variates the events use, drawn from those streams a block at a time
+    final VariateBuffer interarrivals;    // exponential, mean 1
+    final VariateBuffer litreDraws;       // uniform [0, 1)
+    final VariateBuffer balkingDraws;     // uniform [0, 1)
+    final VariateBuffer serviceNoise;     // normal, mean 0 and standard deviation 1
+    final VariateBuffer fuelDraws;        // uniform [0, 1), drawn only with a fuel mix
+
+    // major data structures
+    final EventList eventList;
+    final CarQueue carQueue;
+    final PumpStand pumpStand;
+    final Statistics stats;
+    final BatchMeans batchMeans;          // null unless the run stops on precision
+    final WarmUp warmUp;                  // null unless the warm-up is detected
+    final EventTrace trace;               // null unless the run writes an event trace
+    final ArrivalProfile arrivalProfile;  // null unless the arrival rate changes over the day
+    final ArrivalLog arrivalLog;          // null unless the run replays the cars of a log
+    Monitor monitor = null;               // null unless the run is instrumented and under way
+    Network.Station station = null;       // the station this run is in a network, or null
+    Predicate<Simulation> stopWhen = null; // runUntil stops as soon as this holds (see Splitting), or null
+    private boolean finished = false;
+
+    /**
+     * Constructor; create the data structures and schedule the first events.
+     * The parameters are copied, so the caller may go on to change its own object.
+     */
+    public Simulation(Parameters params, Seeding seeding, int replication, ReportSink report) {
+        this(params, seeding, replication, report, true);
+    }
+
+    /**
+     * Constructor; create the data structures, and schedule the first events if start is true.
+     * Without them the run is an empty shell for restore to fill in.
+     */
+    Simulation(Parameters params, Seeding seeding, int replication, ReportSink report, boolean start) {
+        this(params, seeding, replication, -1, report, start);
+    }
+
+    /** Constructor; as above, for branch k of the replication (or the replication itself if k is -1). */
+    Simulation(Parameters params, Seeding seeding, int replication, int branch, ReportSink report, boolean start) {
+        this.params = params.copy();
+        this.report = report;
+        this.seeding = seeding;
+        this.replication = replication;
+        this.branch = branch;
+        RandomGenerator[] streams = seeding.streams(replication, branch);
+        this.arrivalStream = streams[Seeding.ARRIVAL];
+        this.litreStream = streams[Seeding.LITRE];
+        this.balkingStream = streams[Seeding.BALKING];
+        this.serviceStream = streams[Seeding.SERVICE];
+        this.fuelStream = streams[Seeding.FUEL];
+        arrivalProfile = this.params.arrivalProfile.isEmpty() ? null
+                : ArrivalProfile.parse(this.params.arrivalProfile, this.params.meaninterarrivalTime);
+        try {
+            arrivalLog = (this.params.arrivalLog != null) ? ArrivalLog.open(Paths.get(this.params.arrivalLog)) : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot open arrival log " + this.params.arrivalLog, e);
+        }
+        trace = (this.params.traceFile != null) ? EventTrace.open(Paths.get(this.params.traceFile)) : null;
+        final int block = this.params.variateBlock;
+        final VariateBuffer.Pairing pairing = (this.params.antitheticMember == 0) ? VariateBuffer.Pairing.NONE
+                : (this.params.antitheticMember == 1) ? VariateBuffer.Pairing.FIRST : VariateBuffer.Pairing.SECOND;
+        interarrivals = new VariateBuffer(arrivalStream, VariateBuffer.Kind.EXPONENTIAL, block, pairing);
+        litreDraws = new VariateBuffer(litreStream, VariateBuffer.Kind.UNIFORM, block, pairing);
+        balkingDraws = new VariateBuffer(balkingStream, VariateBuffer.Kind.UNIFORM, block, pairing);
+        serviceNoise = new VariateBuffer(serviceStream, VariateBuffer.Kind.NORMAL, block, pairing);
+        fuelDraws = new VariateBuffer(fuelStream, VariateBuffer.Kind.UNIFORM, block, pairing);
+
+        // Create and initialize the event list, the car queue, the pump stand, and the statistics collector.
+        warmUp = (this.params.warmUpTime <= 0.0 && this.params.warmUpDetection)
+                ? new WarmUp(this, this.params.warmUpWindow) : null;
+        eventList = new EventList(this.params.eventListBackend);
+        carQueue = new CarQueue(this);
+        pumpStand = new PumpStand(this, this.params.numPumps);
+        stats = new Statistics(this);
+        batchMeans = (this.params.targetPrecision > 0.0)
+                ? new BatchMeans(this, BatchMeans.Metric.parseList(this.params.precisionMetrics),
+                        0.0, this.params.batchLength)
+                : null;
+        if (!start) return;
+
+        // Schedule the required events:
+        //   the end of the simulation (with a target precision, only a cap on the run length);
+        //   the first progress report;
+        //   the first batch boundary, for a run that stops on precision;
+        //   the end of a fixed warm-up, or the first window of warm-up detection;
+        //   the arrival of the first car.
+        EndOfSimulation lastEvent = new EndOfSimulation(this, this.params.endingTime);
+        eventList.insert(lastEvent);
+
+        if (this.params.reportInterval <= this.params.endingTime && this.params.reportInterval > 0) {
+            Report nextReport = new Report(this, this.params.reportInterval);
+            eventList.insert(nextReport);
+        }
+
+        if (batchMeans != null) eventList.insert(new PrecisionCheck(this));
+        if (this.params.warmUpTime > 0.0) eventList.insert(new WarmUpEnd(this, this.params.warmUpTime));
+        else if (warmUp != null) eventList.insert(new WarmUpEnd(this, this.params.warmUpWindow));
+
+        // (Should the first car really arrive at time 0?)
+        // Schedule the first arrival event at time 0, or when the arrival profile or log has it
+        if (arrivalLog != null) {
+            if (arrivalLog.next()) eventList.insert(new Arrival(this, Math.max(0.0, arrivalLog.getTime())));
+        } else {
+            eventList.insert(new Arrival(this, (arrivalProfile == null) ? 0.0 : Arrival.nextArrivalTime(this)));
+        }
+    }
+
+    /** Constructor; a run whose four streams are java.util.Random seeded with the given seeds. */
+    public Simulation(Parameters params, long arrivalSeed, long litreSeed, long balkingSeed, long serviceSeed,
+                      ReportSink report) {
+        this(params, Seeding.legacy(arrivalSeed, litreSeed, balkingSeed, serviceSeed), 0, report);
+    }
+
+    /** run: the "clock driver" loop; process events until the end of the simulation and return how many. */
+    public long run() {
+        return runUntil(Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * runUntil: process the events scheduled before the given time, stopping early at the end of
+     * the simulation (or once stopWhen holds); return how many were processed. Later calls carry on where this one stopped.
+     */
+    public long runUntil(double limit) {
+        long eventsProcessed = 0;
+        // an instrumented run appears in JMX and JFR from its first stretch of the loop until close
+        if (monitor == null && params.monitor && !finished) monitor = new Monitor(this);
+        Monitor.Slice slice = (monitor != null) ? monitor.beginSlice() : null;
+        while (!finished) {
+            if (eventList.size() == 0) {
+                System.out.println("Error! ran out of events");
+                break;
+            }
+            if (eventList.peekTime() >= limit) break;
+            // Fetch the earliest future event
+            Event currentEvent = eventList.takeNextEvent();
+
+            // Each iteration of the loop jumps from one event to the next in the timeline
+            // Set simulated time to the time of the event being processed
+            simulationTime = currentEvent.getTime();
+            // executes the event (and counts and times it if the run is instrumented)
+            if (monitor != null) monitor.handle(currentEvent);
+            else currentEvent.makeItHappen();
+            eventsProcessed++;
+            if (currentEvent instanceof EndOfSimulation) finished = true;
+            else if (stopWhen != null && stopWhen.test(this)) break;
+        }
+        // The loop breaks if event list is empty or if the event being processed is an EndOfSimulation event
+        if (monitor != null) monitor.endSlice(slice, eventsProcessed);
+        if (finished) {
+            if (trace != null && trace.isOpen()) {
+                trace.record(simulationTime, EventTrace.END, -1, carQueue.getQueueSize(), Double.NaN, Double.NaN);
+            }
+            close();
+        }
+        return eventsProcessed;
+    }
+
+    /**
+     * close: withdraw the run from JMX and JFR and close its event trace and arrival log. A run does
+     * this itself when it reaches its end; call it for a run given up before then. The run is over
+     * afterwards, and closing it again does nothing.
+     */
+    public void close() {
+        finished = true;
+        if (monitor != null) {
+            monitor.close();
+            monitor = null;
+        }
+        if (trace != null && trace.isOpen()) trace.close();
+        if (arrivalLog != null) closeArrivalLog();
+    }
+
+    private void closeArrivalLog() {
+        try {
+            arrivalLog.close();
+        } catch (IOException e) {
+            System.out.println("Error! cannot close arrival log: " + e.getMessage());
+        }
+    }
+
+    /** resetStatistics: the end of the warm-up; clear the statistics and start the batches again. */
+    void resetStatistics() {
+        stats.reset();
+        carQueue.resetEmptyTime();
+        pumpStand.resetStatistics();
+        if (batchMeans != null) batchMeans.restart(simulationTime);
+    }
+
+    /**
+     * save: write the state of the run to a checkpoint (see Checkpoint): the clock, the positions of
+     * the streams, the car queue, the pumps, the statistics and the pending events in the order they
+     * will happen. The run itself is not changed.
+     */
+    void save(DataOutput out) throws IOException {
+        out.writeDouble(simulationTime);
+        out.writeBoolean(finished);
+        interarrivals.save(out);
+        litreDraws.save(out);
+        balkingDraws.save(out);
+        serviceNoise.save(out);
+        fuelDraws.save(out);
+        carQueue.save(out);
+        pumpStand.save(out);
+        stats.save(out);
+        if (batchMeans != null) batchMeans.save(out);
+        if (warmUp != null) warmUp.save(out);
+        if (arrivalLog != null) {
+            out.writeLong(arrivalLog.getRecordStart());
+            out.writeLong(arrivalLog.getRecords());
+        }
+
+        Event[] pending = eventList.pendingEvents();
+        out.writeInt(pending.length);
+        for (Event e : pending) {
+            int kind = kindOf(e);
+            if (kind == 0 || kind == TRANSFER) {
+                throw new IOException("cannot save a " + e.getClass().getSimpleName() + " event");
+            }
+            out.writeByte(kind);
+            out.writeDouble(e.getTime());
+            if (e instanceof Departure) out.writeInt(((Departure) e).getPump().getId());
+        }
+    }
+
+    /** kindOf: the kind of an event, 0 for one of no known kind. */
+    static int kindOf(Event e) {
+        if (e instanceof Arrival) return ARRIVAL;
+        if (e instanceof Departure) return DEPARTURE;
+        if (e instanceof Report) return REPORT;
+        if (e instanceof EndOfSimulation) return END;
+        if (e instanceof PrecisionCheck) return PRECISION_CHECK;
+        if (e instanceof WarmUpEnd) return WARM_UP_END;
+        if (e instanceof Transfer) return TRANSFER;
+        return 0;
+    }
+
+    /**
+     * restore: fill in a run made without its first events from the state written by save.
+     * With sameStreams the streams are brought to their saved positions, and the run carries on
+     * exactly as the saved one would; otherwise it carries on with the fresh streams it was made with.
+     * The end of the simulation is rescheduled at this run's ending time, so a restored run may be
+     * made longer or shorter.
+     */
+    void restore(DataInput in, boolean sameStreams) throws IOException {
+        simulationTime = in.readDouble();
+        if (in.readBoolean()) finished = true;
+        if (params.endingTime < simulationTime) {
+            throw new IllegalArgumentException("ending time " + params.endingTime + " is before the checkpoint at " + simulationTime);
+        }
+        for (VariateBuffer buffer : new VariateBuffer[]{interarrivals, litreDraws, balkingDraws, serviceNoise, fuelDraws}) {
+            if (sameStreams) buffer.restore(in);
+            else VariateBuffer.skip(in);
+        }
+        carQueue.restore(in);
+        pumpStand.restore(in);
+        stats.restore(in);
+        if (batchMeans != null) batchMeans.restore(in);
+        if (warmUp != null) warmUp.restore(in);
+        if (arrivalLog != null) {
+            // read the log's current car again
+            long recordStart = in.readLong();
+            long records = in.readLong();
+            if (records > 0) {
+                arrivalLog.seek(recordStart, records - 1);
+                arrivalLog.next();
+            }
+        }
+
+        for (int n = in.readInt(); n > 0; n--) {
+            int kind = in.readUnsignedByte();
+            double time = in.readDouble();
+            Event e;
+            switch (kind) {
+                case ARRIVAL:         e = new Arrival(this, time); break;
+                case DEPARTURE:       e = pumpStand.getPump(in.readInt()).getDeparture(); break;
+                case END:             e = new EndOfSimulation(this, params.endingTime); break;
+                case REPORT:          e = new Report(this, time); break;
+                case PRECISION_CHECK: e = new PrecisionCheck(this); break;
+                case WARM_UP_END:     e = new WarmUpEnd(this, time); break;
+                default: throw new IOException("bad event kind " + kind);
+            }
+            if (kind != END) e.setTime(time);
+            eventList.insert(e);
+        }
+    }
+
+    /** return the warm-up detector of a run that detects its warm-up, or null. */
+    public WarmUp getWarmUp() {
+        return warmUp;
+    }
+
+    /** stop: end the run after the current event, as EndOfSimulation does. */
+    void stop() {
+        finished = true;
+    }
+
+    /** return the batch means of a run that stops on precision, or null. */
+    public BatchMeans getBatchMeans() {
+        return batchMeans;
+    }
+
+    /** return true once the EndOfSimulation event has happened, or the run stopped on precision. */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /** return the statistics by time of day of a run with an arrival profile, or null. */
+    public TimeOfDay getTimeOfDay() {
+        return stats.timeOfDay;
+    }
+
+    /** return the fraction of the time since the statistics started that each pump has been busy, by pump number. */
+    public double[] getPumpUtilisation() {
+        return pumpStand.getUtilisation();
+    }
+
+    /** reportPumps: one line per pump, its type, fuels, cars served and utilisation, for a report's messages. */
+    public void reportPumps(ReportSink sink) {
+        pumpStand.report(sink);
+    }
+
+    /** return the current simulated time. */
+    public double getSimulationTime() {
+        return simulationTime;
+    }
+
+    /** return this run's parameters. */
+    public Parameters getParameters() {
+        return params.copy();
+    }
+
+    /** summary: the statistics collected so far. */
+    public Summary summary() {
+        return stats.summary();
+    }
+}
@@ -0,0 +1,34 @@
+package sim;
+
+import java.util.Map;
+
+/**
+ * SimulationMXBean: the live view of an instrumented run (see Monitor) in JMX, e.g. in JConsole
+ * or VisualVM under sim:type=Simulation.
+ */
+public interface SimulationMXBean {
+
+    /** return the number of events processed so far. */
+    long getEventsProcessed();
+
+    /** return the number of events processed so far of each kind (Arrival, Departure, ...). */
+    Map<String, Long> getEventCounts();
+
+    /** return the number of cars waiting in the queue. */
+    int getQueueSize();
+
+    /** return the number of pending events in the event list. */
+    int getPendingEvents();
+
+    /** return the number of pumps serving a car. */
+    int getBusyPumps();
+
+    /** return the current simulated time, in seconds. */
+    double getSimulationTime();
+
+    /** return the simulated time per second of wall time since the run started. */
+    double getSpeed();
+
+    /** return the events processed per second of wall time since the run started. */
+    double getEventsPerSecond();
+}
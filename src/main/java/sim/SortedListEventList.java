@@ -0,0 +1,63 @@
+package sim;
+
+/**
+ * SortedListEventList: the original time-ordered singly linked list.
+ * Insertion is O(n) in the number of pending events; kept as the reference backend.
+ */
+class SortedListEventList implements FutureEventList {
+
+    /** ListItem: the class for objects stored in the event list. */
+    private static class ListItem {
+        public Event data;
+        public ListItem next;
+    }
+
+    private ListItem firstEvent = null; // head of time-ordered list
+    private ListItem freeItems = null;  // items no longer in the list, for reuse
+    private int size = 0;
+
+    /** insert: add an event e to the list in the appropriate place, after any earlier events with the same time. */
+    public void insert(Event e) {
+        ListItem item = freeItems;
+        if (item != null) freeItems = item.next;
+        else item = new ListItem();
+        item.data = e;
+
+        final double time = e.getTime();
+        final long sequence = e.sequence;
+        if (firstEvent == null
+                || FutureEventList.before(time, sequence, firstEvent.data.getTime(), firstEvent.data.sequence)) {
+            item.next = firstEvent;
+            firstEvent = item;
+        } else {
+            ListItem behind = firstEvent;
+            ListItem ahead = firstEvent.next;
+            while (ahead != null
+                    && FutureEventList.before(ahead.data.getTime(), ahead.data.sequence, time, sequence)) {
+                behind = ahead;
+                ahead = ahead.next;
+            }
+            behind.next = item;
+            item.next = ahead;
+        }
+        size++;
+    }
+
+    /** removeFirst: remove the item at the head of the list and return it. */
+    public Event removeFirst() {
+        if (firstEvent == null) return null;
+        ListItem item = firstEvent;
+        Event eventToReturn = item.data;
+        firstEvent = item.next;
+        item.data = null;
+        item.next = freeItems;
+        freeItems = item;
+        size--;
+        return eventToReturn;
+    }
+
+    /** return the number of pending events. */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,374 @@
+package sim;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Splitting: estimates the probability of a rare event within a horizon, such as the queue
+ * reaching 50 cars within a day, or more than 40 cars balking within an hour, by fixed-effort
+ * multilevel splitting. The event is a level of an importance function that rises one step at a
+ * time (the queue length, or the balks since the start of the horizon), with intermediate levels
+ * below it. Stage 0 makes `effort` runs from the start state, each until it reaches the first level
+ * or the horizon ends; the state of every run that reached the level is kept (Simulation.save). Stage
+ * j makes `effort` runs from states drawn at random, with replacement, among those kept by stage j-1,
+ * each on fresh streams of its own, until they reach level j+1 or the horizon ends. The estimate is the
+ * product of the fractions of runs that made it, which is unbiased; a stage in which no run makes it
+ * gives 0.
+ *
+ * The whole procedure is repeated with independent start states (each the state at the start time
+ * of a run on its own streams) and its estimates averaged, so the relative error is measured, not
+ * approximated. Runs of crude simulation over the same horizon give the cost of a trial without
+ * splitting, and from it the speed-up: the events crude simulation would need for the same relative
+ * error, (1 - p) / (p RE^2) trials, over the events splitting used.
+ *
+ * Stream numbers: repetition r starts on replication r * block of the seeding and its runs take the
+ * next ones, block = 1 + levels x effort; the crude runs come after the last repetition. The start
+ * states and the draws among kept states do not depend on the threads, so neither does the estimate.
+ * Warm-up deletion, stopping on precision and reports are off in these runs: the start time plays
+ * the part of the warm-up.
+ *
+ * Usage: java sim.Splitting queue|balks levels horizon effort repetitions threads [--start=s] [--crude=n]
+ *        &lt; the usual seven input lines of Sim (the report interval and ending time are ignored)
+ * levels are "10,20,30,40,50" or "10:50:10"; e.g. java sim.Splitting queue 4:24:4 86400 500 20 4
+ */
+public final class Splitting {
+    static final int SPLIT_BLOCK = 64;
+
+    /** Target: the importance function whose last level is the rare event. */
+    public enum Target {
+        QUEUE, BALKS;
+
+        /** parse: a target by name, "queue" or "balks". */
+        public static Target parse(String name) {
+            for (Target t : values()) {
+                if (t.name().equalsIgnoreCase(name.trim())) return t;
+            }
+            throw new IllegalArgumentException("unknown splitting target: " + name + " (queue, balks)");
+        }
+    }
+
+    /** Result: the estimate, its error, the conditional probabilities of the levels and the cost. */
+    public static final class Result {
+        private final int[] levels;
+        private final Welford estimates;
+        private final Welford[] stages;
+        private final long events;
+        private final double crudeEventsPerTrial;
+        private final long crudeTrials;
+        private final long crudeHits;
+
+        Result(int[] levels, Welford estimates, Welford[] stages, long events, double crudeEventsPerTrial,
+               long crudeTrials, long crudeHits) {
+            this.levels = levels;
+            this.estimates = estimates;
+            this.stages = stages;
+            this.events = events;
+            this.crudeEventsPerTrial = crudeEventsPerTrial;
+            this.crudeTrials = crudeTrials;
+            this.crudeHits = crudeHits;
+        }
+
+        /** return the estimated probability of the event. */
+        public double getEstimate() {
+            return estimates.getMean();
+        }
+
+        /** return the standard error of the estimate, from the spread of the repetitions. */
+        public double getStandardError() {
+            return estimates.getStdDev() / Math.sqrt(estimates.getCount());
+        }
+
+        /** return the relative error: the standard error over the estimate (infinite for an estimate of 0). */
+        public double getRelativeError() {
+            return (getEstimate() > 0.0) ? getStandardError() / getEstimate() : Double.POSITIVE_INFINITY;
+        }
+
+        /** return the half-width of the confidence interval of the estimate at the given level. */
+        public double getHalfWidth(double level) {
+            return Confidence.halfWidth(estimates, level);
+        }
+
+        /** return the estimates of the repetitions. */
+        public Welford getEstimates() {
+            return estimates.copy();
+        }
+
+        /** return the mean fraction of runs of stage j that reached level j. */
+        public double getStageProbability(int j) {
+            return stages[j].getMean();
+        }
+
+        /** return the events processed by the splitting runs (the start runs not included). */
+        public long getEvents() {
+            return events;
+        }
+
+        /** return the events of a crude run over the horizon, on average. */
+        public double getCrudeEventsPerTrial() {
+            return crudeEventsPerTrial;
+        }
+
+        /** return the number of crude runs. */
+        public long getCrudeTrials() {
+            return crudeTrials;
+        }
+
+        /** return the number of crude runs that saw the event. */
+        public long getCrudeHits() {
+            return crudeHits;
+        }
+
+        /**
+         * getSpeedUp: the events crude simulation would need for the relative error of this estimate,
+         * over the events splitting used; NaN if the estimate is 0.
+         */
+        public double getSpeedUp() {
+            double p = getEstimate();
+            double re = getRelativeError();
+            if (!(p > 0.0) || !(re > 0.0) || Double.isInfinite(re)) return Double.NaN;
+            double crudeTrialsNeeded = (1.0 - p) / (p * re * re);
+            return crudeTrialsNeeded * crudeEventsPerTrial / events;
+        }
+
+        /** printReport: the levels and their conditional probabilities, the estimate and the comparison with crude simulation. */
+        public void printReport(PrintStream out, Target target) {
+            out.println(String.format(Locale.ROOT, "%8s %14s", target.name().toLowerCase(Locale.ROOT), "P(level|prev)"));
+            for (int j = 0; j < levels.length; j++) {
+                out.println(String.format(Locale.ROOT, "%8d %14.6f", levels[j], stages[j].getMean()));
+            }
+            out.println(String.format(Locale.ROOT, "P(%s >= %d) = %.6e +/- %.3e (95%%), relative error %.4f, %d repetitions",
+                    target.name().toLowerCase(Locale.ROOT), levels[levels.length - 1], getEstimate(),
+                    getHalfWidth(Sweep.CONFIDENCE), getRelativeError(), estimates.getCount()));
+            double p = getEstimate();
+            String needed = (p > 0.0) ? String.format(Locale.ROOT, "%.3e", (1.0 - p) / (p * getRelativeError() * getRelativeError())) : "-";
+            out.println(String.format(Locale.ROOT, "Splitting used %d events; crude simulation (%d runs, %d hits, "
+                            + "%.0f events a run) would need %s runs for the same relative error: speed-up %.1f",
+                    events, crudeTrials, crudeHits, crudeEventsPerTrial, needed, getSpeedUp()));
+        }
+    }
+
+    /** Trial: what became of one run: the state it reached the level in (or null) and its events. */
+    private static final class Trial {
+        final byte[] state;
+        final long events;
+
+        Trial(byte[] state, long events) {
+            this.state = state;
+            this.events = events;
+        }
+    }
+
+    private Splitting() {
+    }
+
+    /**
+     * run: estimate the probability that the importance function of the target reaches the last of
+     * the (rising) levels within horizon seconds of the start time.
+     */
+    public static Result run(Parameters base, Seeding seeding, Target target, int[] levels, double start, double horizon,
+                             int effort, int repetitions, int crudeTrials, int threads) {
+        if (levels.length < 1) throw new IllegalArgumentException("no levels");
+        for (int j = 0; j < levels.length; j++) {
+            if (levels[j] < 1 || (j > 0 && levels[j] <= levels[j - 1])) {
+                throw new IllegalArgumentException("levels must be positive and rise: " + Arrays.toString(levels));
+            }
+        }
+        if (!(horizon > 0.0) || !(start >= 0.0)) throw new IllegalArgumentException("bad start " + start + " or horizon " + horizon);
+        if (effort < 1 || repetitions < 2 || crudeTrials < 1) {
+            throw new IllegalArgumentException("need effort >= 1, repetitions >= 2 and crude runs >= 1");
+        }
+        long block = 1L + (long) levels.length * effort;
+        if (block * (repetitions + 1) + crudeTrials > Integer.MAX_VALUE) throw new IllegalArgumentException("too many runs");
+
+        Parameters p = base.copy();
+        p.endingTime = start + horizon;
+        p.reportInterval = 0.0;
+        p.warmUpTime = 0.0;
+        p.warmUpDetection = false;
+        p.targetPrecision = 0.0;
+        p.detailedReport = false;
+        p.traceFile = null;
+        p.monitor = false;
+        // most runs are short, and each starts on fresh streams: draw their variates in small blocks
+        p.variateBlock = Math.min(p.variateBlock, SPLIT_BLOCK);
+
+        Welford estimates = new Welford();
+        Welford[] stages = new Welford[levels.length];
+        for (int j = 0; j < levels.length; j++) stages[j] = new Welford();
+        long events = 0;
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            for (int r = 0; r < repetitions; r++) {
+                int first = (int) (r * block);
+                Simulation startRun = startRun(p, seeding, first, start);
+                byte[] startState = save(startRun);
+                int balksAtStart = startRun.stats.getBalkingCustomers();
+                SplittableRandom draws = new SplittableRandom(seeding.hashCode() * 0x9E3779B97F4A7C15L + r);
+                List<byte[]> entrance = List.of(startState);
+                double estimate = 1.0;
+                for (int j = 0; j < levels.length; j++) {
+                    byte[][] from = new byte[effort][];
+                    for (int i = 0; i < effort; i++) from[i] = entrance.get((entrance.size() == 1) ? 0 : draws.nextInt(entrance.size()));
+                    List<Trial> trials = runStage(pool, p, seeding, first + 1 + j * effort, from, target, levels[j], balksAtStart);
+                    List<byte[]> reached = new ArrayList<>();
+                    for (Trial t : trials) {
+                        events += t.events;
+                        if (t.state != null) reached.add(t.state);
+                    }
+                    double fraction = (double) reached.size() / effort;
+                    stages[j].add(fraction);
+                    estimate *= fraction;
+                    if (reached.isEmpty()) break;
+                    entrance = reached;
+                }
+                estimates.add(estimate);
+            }
+
+            // crude runs over the horizon, from the start state of the first repetition
+            Simulation startRun = startRun(p, seeding, 0, start);
+            byte[] startState = save(startRun);
+            int balksAtStart = startRun.stats.getBalkingCustomers();
+            byte[][] from = new byte[crudeTrials][];
+            Arrays.fill(from, startState);
+            int top = levels[levels.length - 1];
+            long crudeEvents = 0;
+            long hits = 0;
+            for (Trial t : runStage(pool, p, seeding, (int) (repetitions * block), from, target, top, balksAtStart)) {
+                crudeEvents += t.events;
+                if (t.state != null) hits++;
+            }
+            return new Result(levels.clone(), estimates, stages, events, (double) crudeEvents / crudeTrials, crudeTrials, hits);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** startRun: a run on the streams of the given replication, brought to the start time. */
+    private static Simulation startRun(Parameters p, Seeding seeding, int replication, double start) {
+        Simulation sim = new Simulation(p, seeding, replication, null);
+        sim.runUntil(start);
+        return sim;
+    }
+
+    /** runStage: run from each of the states, on replications first, first + 1, ..., until the level or the end. */
+    private static List<Trial> runStage(ForkJoinPool pool, Parameters p, Seeding seeding, int first, byte[][] from,
+                                        Target target, int level, int balksAtStart) {
+        List<Future<Trial>> pending = new ArrayList<>(from.length);
+        for (int i = 0; i < from.length; i++) {
+            final int replication = first + i;
+            final byte[] state = from[i];
+            pending.add(pool.submit(() -> trial(p, seeding, replication, state, target, level, balksAtStart)));
+        }
+        List<Trial> trials = new ArrayList<>(from.length);
+        try {
+            for (Future<Trial> f : pending) trials.add(f.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("splitting interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("splitting run failed", e.getCause());
+        }
+        return trials;
+    }
+
+    /** trial: one run from a saved state on fresh streams, until the importance function reaches the level or the horizon ends. */
+    private static Trial trial(Parameters p, Seeding seeding, int replication, byte[] state, Target target, int level,
+                               int balksAtStart) {
+        Simulation sim = restore(p, seeding, replication, state);
+        sim.stopWhen = (target == Target.QUEUE)
+                ? s -> s.carQueue.getQueueSize() >= level
+                : s -> s.stats.getBalkingCustomers() - balksAtStart >= level;
+        long events = sim.run();
+        boolean reached = !sim.isFinished() && sim.stopWhen.test(sim);
+        return new Trial(reached ? save(sim) : null, events);
+    }
+
+    private static byte[] save(Simulation sim) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            sim.save(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot save a splitting state", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Simulation restore(Parameters p, Seeding seeding, int replication, byte[] state) {
+        Simulation sim = new Simulation(p, seeding, replication, null, false);
+        try {
+            sim.restore(new DataInputStream(new ByteArrayInputStream(state)), false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot restore a splitting state", e);
+        }
+        return sim;
+    }
+
+    /** parseLevels: "10,20,30" or "from:to:step". */
+    public static int[] parseLevels(String spec) {
+        if (!spec.contains(":")) {
+            String[] parts = spec.split(",");
+            int[] levels = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) levels[i] = Integer.parseInt(parts[i].trim());
+            return levels;
+        }
+        String[] range = spec.split(":");
+        int from = Integer.parseInt(range[0].trim());
+        int to = Integer.parseInt(range[1].trim());
+        int step = (range.length > 2) ? Integer.parseInt(range[2].trim()) : 1;
+        if (step < 1 || to < from) throw new IllegalArgumentException("empty range of levels: " + spec);
+        int[] levels = new int[(to - from) / step + 1];
+        for (int i = 0; i < levels.length; i++) levels[i] = from + i * step;
+        return levels;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 6) {
+            System.out.println("Usage: java sim.Splitting queue|balks levels horizon effort repetitions threads "
+                    + "[--start=s] [--crude=n] < input");
+            return;
+        }
+        Target target = Target.parse(args[0]);
+        int[] levels = parseLevels(args[1]);
+        double horizon = Double.parseDouble(args[2]);
+        int effort = Integer.parseInt(args[3]);
+        int repetitions = Integer.parseInt(args[4]);
+        int threads = Integer.parseInt(args[5]);
+        double start = 0.0;
+        int crude = effort;
+        for (int i = 6; i < args.length; i++) {
+            if (args[i].startsWith("--start=")) start = Double.parseDouble(args[i].substring(8));
+            else if (args[i].startsWith("--crude=")) crude = Integer.parseInt(args[i].substring(8));
+            else throw new IllegalArgumentException("unknown option " + args[i]);
+        }
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        Parameters base = new Parameters();
+        base.reportInterval = Double.parseDouble(in.readLine().trim());
+        base.endingTime = Double.parseDouble(in.readLine().trim());
+        base.numPumps = Integer.parseInt(in.readLine().trim());
+        long[] seeds = new long[4];
+        for (int i = 0; i < 4; i++) seeds[i] = Integer.parseInt(in.readLine().trim());
+        Seeding seeding = Seeding.fromInput(seeds[0], seeds[1], seeds[2], seeds[3]);
+
+        long startTime = System.nanoTime();
+        Result result = run(base, seeding, target, levels, start, horizon, effort, repetitions, crude, threads);
+        result.printReport(System.out, target);
+        System.out.println(String.format(Locale.ROOT, "%.1f s on %d threads, streams %s",
+                (System.nanoTime() - startTime) / 1e9, threads, seeding));
+    }
+}
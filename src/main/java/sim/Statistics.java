@@ -1,10 +1,25 @@
 package sim;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * Statistics: the class for objects that collect statistics.
  * (There is only one such object in this program.)
+ * Besides the running totals it keeps streaming estimators in constant memory: the mean and
+ * variance of waiting and service times, their histograms for percentiles, and the time-weighted
+ * queue length and number of busy pumps.
  */
 class Statistics {
+    /** the resolution of the waiting and service time histograms, in seconds */
+    static final double HISTOGRAM_UNIT = 0.001;
+    // stands in for the histograms in the summaries of plain reports, which do not print percentiles
+    private static final LogHistogram NO_HISTOGRAM = new LogHistogram(HISTOGRAM_UNIT);
+
+    private final Simulation sim;
+    private double start = 0.0; // when the statistics were started, or last cleared after a warm-up
+
     // The explicit initializations are not needed, but improve clarity.
     // Metrics
     private int totalArrivals = 0;
@@ -17,11 +32,22 @@ class Statistics {
     private double totalWaitingTime = 0.0;
     private double totalServiceTime = 0.0;
 
+    // Streaming estimators
+    private Welford waitingTimes = new Welford();
+    private Welford serviceTimes = new Welford();
+    private LogHistogram waitingHistogram = new LogHistogram(HISTOGRAM_UNIT);
+    private LogHistogram serviceHistogram = new LogHistogram(HISTOGRAM_UNIT);
+    private final TimeWeighted queueLength = new TimeWeighted();
+    private final TimeWeighted busyPumps = new TimeWeighted();
+    final TimeOfDay timeOfDay; // null unless the run has an arrival profile
+
     /**
      * Constructor.
      */
-    public Statistics() {
-        printHeaders();
+    public Statistics(Simulation sim) {
+        this.sim = sim;
+        timeOfDay = sim.params.arrivalProfile.isEmpty() ? null : new TimeOfDay(sim.params.timeOfDayBucket);
+        if (sim.report != null) sim.report.header(sim.params.detailedReport);
     }
 
     // Methods to update metrics, called from events
@@ -31,6 +57,7 @@ class Statistics {
     public void accumBalk(double litres) {
         balkingCustomers += 1;
         totalLitresMissed += litres;
+        if (timeOfDay != null) timeOfDay.countBalk(sim.simulationTime);
     }
 
     /**
@@ -46,6 +73,8 @@ class Statistics {
      */
     public void accumServiceTime(double interval) {
         totalServiceTime += interval;
+        serviceTimes.add(interval);
+        serviceHistogram.record(interval);
     }
 
     /**
@@ -53,6 +82,9 @@ class Statistics {
      */
     public void accumWaitingTime(double interval) {
         totalWaitingTime += interval;
+        waitingTimes.add(interval);
+        waitingHistogram.record(interval);
+        if (sim.warmUp != null) sim.warmUp.observeWait(interval);
     }
 
     /**
@@ -60,6 +92,117 @@ class Statistics {
      */
     public void countArrival() {
         totalArrivals += 1;
+        if (timeOfDay != null) timeOfDay.countArrival(sim.simulationTime);
+    }
+
+    /**
+     * trackQueueLength: record that the car queue now holds the given number of cars.
+     */
+    public void trackQueueLength(int cars) {
+        queueLength.update(sim.simulationTime, cars);
+    }
+
+    /**
+     * trackBusyPumps: record that the given number of pumps are now serving cars.
+     */
+    public void trackBusyPumps(int pumps) {
+        busyPumps.update(sim.simulationTime, pumps);
+    }
+
+    /**
+     * reset: forget everything observed so far (the end of a warm-up period); from now on the
+     * statistics describe the run from the current time. Queue and pumps keep their current levels.
+     */
+    void reset() {
+        start = sim.simulationTime;
+        totalArrivals = 0;
+        customersServed = 0;
+        balkingCustomers = 0;
+        totalLitresSold = 0.0;
+        totalLitresMissed = 0.0;
+        totalWaitingTime = 0.0;
+        totalServiceTime = 0.0;
+        waitingTimes = new Welford();
+        serviceTimes = new Welford();
+        waitingHistogram = new LogHistogram(HISTOGRAM_UNIT);
+        serviceHistogram = new LogHistogram(HISTOGRAM_UNIT);
+        queueLength.restart(start);
+        busyPumps.restart(start);
+        if (timeOfDay != null) timeOfDay.reset();
+    }
+
+    /** save: write every accumulator to a checkpoint (see Checkpoint). */
+    void save(DataOutput out) throws IOException {
+        out.writeDouble(start);
+        out.writeInt(totalArrivals);
+        out.writeInt(customersServed);
+        out.writeInt(balkingCustomers);
+        out.writeDouble(totalLitresSold);
+        out.writeDouble(totalLitresMissed);
+        out.writeDouble(totalWaitingTime);
+        out.writeDouble(totalServiceTime);
+        waitingTimes.save(out);
+        serviceTimes.save(out);
+        waitingHistogram.save(out);
+        serviceHistogram.save(out);
+        queueLength.save(out);
+        busyPumps.save(out);
+        if (timeOfDay != null) timeOfDay.save(out);
+    }
+
+    /** restore: read the accumulators written by save. */
+    void restore(DataInput in) throws IOException {
+        start = in.readDouble();
+        totalArrivals = in.readInt();
+        customersServed = in.readInt();
+        balkingCustomers = in.readInt();
+        totalLitresSold = in.readDouble();
+        totalLitresMissed = in.readDouble();
+        totalWaitingTime = in.readDouble();
+        totalServiceTime = in.readDouble();
+        waitingTimes.restore(in);
+        serviceTimes.restore(in);
+        waitingHistogram.restore(in);
+        serviceHistogram.restore(in);
+        queueLength.restore(in);
+        busyPumps.restore(in);
+        if (timeOfDay != null) timeOfDay.restore(in);
+    }
+
+    /** return the time from which the statistics are collected. */
+    double getStart() {
+        return start;
+    }
+
+    /** return the integral of the queue length since the statistics started. */
+    double getQueueLengthArea() {
+        return queueLength.areaUntil(sim.simulationTime);
+    }
+
+    // Totals read by the batch-means method
+    /** return the number of arrivals so far. */
+    int getTotalArrivals() {
+        return totalArrivals;
+    }
+
+    /** return the number of cars served so far. */
+    int getCustomersServed() {
+        return customersServed;
+    }
+
+    /** return the number of cars that balked so far. */
+    int getBalkingCustomers() {
+        return balkingCustomers;
+    }
+
+    /** return the litres sold so far. */
+    double getTotalLitresSold() {
+        return totalLitresSold;
+    }
+
+    /** return the waiting time of the cars served so far. */
+    double getTotalWaitingTime() {
+        return totalWaitingTime;
     }
 
     // Formatting helpers to keep the report columns aligned in plain text
@@ -69,7 +212,7 @@ class Statistics {
      * returned is padded by blanks on the left if necessary. If it is too long,
      * it is not changed.
      */
-    private static String fmtDbl(double number, int width, int precision) {
+    static String fmtDbl(double number, int width, int precision) {
         double scale = 1.0;
         for (int i = 0; i < precision; i++) scale *= 10.0;
         String result = "" + (int) (number * scale + 0.5);
@@ -88,49 +231,39 @@ class Statistics {
      * The string returned is padded by blanks on the left if necessary.
      * If it is too long, it is not changed.
      */
-    private static String fmtInt(int number, int width) {
+    static String fmtInt(int number, int width) {
         String result = "" + number;
         for (int i = result.length(); i < width; i++) result = " " + result;
         return result;
     }
 
-    /** printHeaders: print column titles for the statistics summaries. */
-    private static void printHeaders() {
-        System.out.println(" Current  Total  NoQueue  Car->Car  Average  Number  Average  Pump   Total     Lost");
-        System.out.println("  Time     Cars  Fraction    Time    Litres  Balked   Wait    Usage  Profit   Profit");
-        for (int i = 0; i < 79; i++) System.out.print("-");
-        System.out.println();
+    /**
+     * summary: the statistics so far, as a Summary. After a warm-up its simulated time is the
+     * time observed since the statistics were cleared.
+     */
+    public Summary summary() {
+        return summary(true);
     }
 
-    /** snapshot: print a summary of the statistics so far. */
-    public void snapshot() {
-        System.out.print(fmtDbl(Sim.simulationTime, 8, 0));
-        System.out.print(fmtInt(totalArrivals, 7));
-
-        double noQueueFrac = (Sim.simulationTime > 0.0)
-                ? (Sim.carQueue.getEmptyTime() / Sim.simulationTime) : 0.0;
-        System.out.print(fmtDbl(noQueueFrac, 8, 3));
-
-        if (totalArrivals > 0) {
-            System.out.print(fmtDbl(Sim.simulationTime / totalArrivals, 9, 3));
-            System.out.print(fmtDbl((totalLitresSold + totalLitresMissed) / totalArrivals, 10, 3));
-        } else {
-            System.out.print("   Unknown");
-            System.out.print("   Unknown");
-        }
-
-        System.out.print(fmtInt(balkingCustomers, 8));
-        if (customersServed > 0)
-            System.out.print(fmtDbl(totalWaitingTime / customersServed, 9, 3));
-        else
-            System.out.print("   Unknown");
-
-        double denom = Sim.pumpStand.getNumberOfPumps() * Math.max(1e-9, Sim.simulationTime);
-        System.out.print(fmtDbl(totalServiceTime / denom, 8, 3));
+    /** summary: the statistics so far; without distributions the percentiles are unknown, but nothing big is copied. */
+    private Summary summary(boolean withDistributions) {
+        final int numPumps = sim.pumpStand.getNumberOfPumps();
+        final double observed = sim.simulationTime - start;
+        double totalProfit = (totalLitresSold * sim.params.profit) - (sim.params.pumpCost * numPumps);
+        return new Summary(1, observed, numPumps * Math.max(1e-9, observed),
+                sim.carQueue.getEmptyTime(), totalArrivals, customersServed, balkingCustomers,
+                totalLitresSold, totalLitresMissed, totalWaitingTime, totalServiceTime,
+                totalProfit, totalLitresMissed * sim.params.profit,
+                queueLength.areaUntil(sim.simulationTime), busyPumps.areaUntil(sim.simulationTime),
+                waitingTimes.copy(), serviceTimes.copy(),
+                withDistributions ? waitingHistogram.copy() : NO_HISTOGRAM,
+                withDistributions ? serviceHistogram.copy() : NO_HISTOGRAM);
+    }
 
-        double totalProfit = (totalLitresSold * Sim.profit) - (Sim.pumpCost * Sim.pumpStand.getNumberOfPumps());
-        System.out.print(fmtDbl(totalProfit, 9, 2));
-        System.out.print(fmtDbl(totalLitresMissed * Sim.profit, 9, 2));
-        System.out.println();
+    /** snapshot: report a summary of the statistics so far, in detail if the parameters ask for it. */
+    public void snapshot() {
+        if (sim.report == null) return;
+        final boolean detailed = sim.params.detailedReport;
+        sim.report.row(summary(detailed), detailed);
     }
 }
@@ -0,0 +1,276 @@
+package sim;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Summary: the totals behind one line of the statistics report.
+ * A summary either describes one run, or (after merge) the pooled totals of several
+ * replications; the report columns of a merged summary are per-replication averages.
+ * It also carries the streaming statistics of Statistics, pooled over all cars and all simulated time.
+ */
+public final class Summary {
+    private final int replications;
+    private final double simulationTime;
+    private final double pumpTime;        // number of pumps times the simulated time (at least 1e-9)
+    private final double emptyQueueTime;
+    private final long totalArrivals;
+    private final long customersServed;
+    private final long balkingCustomers;
+    private final double totalLitresSold;
+    private final double totalLitresMissed;
+    private final double totalWaitingTime;
+    private final double totalServiceTime;
+    private final double totalProfit;
+    private final double lostProfit;
+    private final double queueLengthArea; // integral of the queue length over simulated time
+    private final double busyPumpArea;    // integral of the number of busy pumps over simulated time
+    private final Welford waitingTimes;
+    private final Welford serviceTimes;
+    private final LogHistogram waitingHistogram;
+    private final LogHistogram serviceHistogram;
+
+    Summary(int replications, double simulationTime, double pumpTime, double emptyQueueTime,
+            long totalArrivals, long customersServed, long balkingCustomers,
+            double totalLitresSold, double totalLitresMissed, double totalWaitingTime, double totalServiceTime,
+            double totalProfit, double lostProfit, double queueLengthArea, double busyPumpArea,
+            Welford waitingTimes, Welford serviceTimes, LogHistogram waitingHistogram, LogHistogram serviceHistogram) {
+        this.replications = replications;
+        this.simulationTime = simulationTime;
+        this.pumpTime = pumpTime;
+        this.emptyQueueTime = emptyQueueTime;
+        this.totalArrivals = totalArrivals;
+        this.customersServed = customersServed;
+        this.balkingCustomers = balkingCustomers;
+        this.totalLitresSold = totalLitresSold;
+        this.totalLitresMissed = totalLitresMissed;
+        this.totalWaitingTime = totalWaitingTime;
+        this.totalServiceTime = totalServiceTime;
+        this.totalProfit = totalProfit;
+        this.lostProfit = lostProfit;
+        this.queueLengthArea = queueLengthArea;
+        this.busyPumpArea = busyPumpArea;
+        // taken over, not copied: callers pass estimators nobody else will change
+        this.waitingTimes = waitingTimes;
+        this.serviceTimes = serviceTimes;
+        this.waitingHistogram = waitingHistogram;
+        this.serviceHistogram = serviceHistogram;
+    }
+
+    /** merge: pool this summary with another one. */
+    public Summary merge(Summary other) {
+        Welford waiting = waitingTimes.copy();
+        waiting.merge(other.waitingTimes);
+        Welford service = serviceTimes.copy();
+        service.merge(other.serviceTimes);
+        LogHistogram waitingCounts = waitingHistogram.copy();
+        waitingCounts.merge(other.waitingHistogram);
+        LogHistogram serviceCounts = serviceHistogram.copy();
+        serviceCounts.merge(other.serviceHistogram);
+        return new Summary(replications + other.replications,
+                simulationTime + other.simulationTime,
+                pumpTime + other.pumpTime,
+                emptyQueueTime + other.emptyQueueTime,
+                totalArrivals + other.totalArrivals,
+                customersServed + other.customersServed,
+                balkingCustomers + other.balkingCustomers,
+                totalLitresSold + other.totalLitresSold,
+                totalLitresMissed + other.totalLitresMissed,
+                totalWaitingTime + other.totalWaitingTime,
+                totalServiceTime + other.totalServiceTime,
+                totalProfit + other.totalProfit,
+                lostProfit + other.lostProfit,
+                queueLengthArea + other.queueLengthArea,
+                busyPumpArea + other.busyPumpArea,
+                waiting, service, waitingCounts, serviceCounts);
+    }
+
+    /** save: write the summary, to the last bit, for read (see ResultCache). */
+    void save(DataOutput out) throws IOException {
+        out.writeInt(replications);
+        out.writeDouble(simulationTime);
+        out.writeDouble(pumpTime);
+        out.writeDouble(emptyQueueTime);
+        out.writeLong(totalArrivals);
+        out.writeLong(customersServed);
+        out.writeLong(balkingCustomers);
+        out.writeDouble(totalLitresSold);
+        out.writeDouble(totalLitresMissed);
+        out.writeDouble(totalWaitingTime);
+        out.writeDouble(totalServiceTime);
+        out.writeDouble(totalProfit);
+        out.writeDouble(lostProfit);
+        out.writeDouble(queueLengthArea);
+        out.writeDouble(busyPumpArea);
+        waitingTimes.save(out);
+        serviceTimes.save(out);
+        waitingHistogram.save(out);
+        serviceHistogram.save(out);
+    }
+
+    /** read: a summary written by save. */
+    static Summary read(DataInput in) throws IOException {
+        int replications = in.readInt();
+        double simulationTime = in.readDouble();
+        double pumpTime = in.readDouble();
+        double emptyQueueTime = in.readDouble();
+        long totalArrivals = in.readLong();
+        long customersServed = in.readLong();
+        long balkingCustomers = in.readLong();
+        double totalLitresSold = in.readDouble();
+        double totalLitresMissed = in.readDouble();
+        double totalWaitingTime = in.readDouble();
+        double totalServiceTime = in.readDouble();
+        double totalProfit = in.readDouble();
+        double lostProfit = in.readDouble();
+        double queueLengthArea = in.readDouble();
+        double busyPumpArea = in.readDouble();
+        Welford waitingTimes = new Welford();
+        waitingTimes.restore(in);
+        Welford serviceTimes = new Welford();
+        serviceTimes.restore(in);
+        LogHistogram waitingHistogram = new LogHistogram(Statistics.HISTOGRAM_UNIT);
+        waitingHistogram.restore(in);
+        LogHistogram serviceHistogram = new LogHistogram(Statistics.HISTOGRAM_UNIT);
+        serviceHistogram.restore(in);
+        return new Summary(replications, simulationTime, pumpTime, emptyQueueTime, totalArrivals, customersServed,
+                balkingCustomers, totalLitresSold, totalLitresMissed, totalWaitingTime, totalServiceTime,
+                totalProfit, lostProfit, queueLengthArea, busyPumpArea,
+                waitingTimes, serviceTimes, waitingHistogram, serviceHistogram);
+    }
+
+    /** return the number of runs pooled in this summary. */
+    public int getReplications() {
+        return replications;
+    }
+
+    /** return the simulated time, averaged over replications. */
+    public double getSimulationTime() {
+        return simulationTime / replications;
+    }
+
+    /** return the number of arrivals, averaged over replications. */
+    public double getArrivals() {
+        return (double) totalArrivals / replications;
+    }
+
+    /** return the number of cars served, averaged over replications. */
+    public double getCustomersServed() {
+        return (double) customersServed / replications;
+    }
+
+    /** return the number of cars that balked, averaged over replications. */
+    public double getBalkingCustomers() {
+        return (double) balkingCustomers / replications;
+    }
+
+    /** return the fraction of time the car queue was empty. */
+    public double getNoQueueFraction() {
+        return (simulationTime > 0.0) ? emptyQueueTime / simulationTime : 0.0;
+    }
+
+    /** return the average time between arrivals, or NaN before the first arrival. */
+    public double getCarToCarTime() {
+        return (totalArrivals > 0) ? simulationTime / totalArrivals : Double.NaN;
+    }
+
+    /** return the average litres wanted per arriving car, or NaN before the first arrival. */
+    public double getAverageLitres() {
+        return (totalArrivals > 0) ? (totalLitresSold + totalLitresMissed) / totalArrivals : Double.NaN;
+    }
+
+    /** return the average waiting time per car served, or NaN before the first service. */
+    public double getAverageWait() {
+        return (customersServed > 0) ? totalWaitingTime / customersServed : Double.NaN;
+    }
+
+    /** return the fraction of pump time spent serving cars. */
+    public double getPumpUsage() {
+        return totalServiceTime / pumpTime;
+    }
+
+    /** return the total profit, averaged over replications. */
+    public double getTotalProfit() {
+        return totalProfit / replications;
+    }
+
+    /** return the profit lost to balking, averaged over replications. */
+    public double getLostProfit() {
+        return lostProfit / replications;
+    }
+
+    /** return the time-averaged number of cars in the queue, or NaN before any time has passed. */
+    public double getAverageQueueLength() {
+        return (simulationTime > 0.0) ? queueLengthArea / simulationTime : Double.NaN;
+    }
+
+    /** return the time-averaged fraction of pumps serving a car, or NaN before any time has passed. */
+    public double getPumpOccupancy() {
+        return (simulationTime > 0.0) ? busyPumpArea / pumpTime : Double.NaN;
+    }
+
+    /** return the standard deviation of the waiting time per car served, or NaN with fewer than two. */
+    public double getWaitStdDev() {
+        return waitingTimes.getStdDev();
+    }
+
+    /** return the standard deviation of the service time per car served, or NaN with fewer than two. */
+    public double getServiceStdDev() {
+        return serviceTimes.getStdDev();
+    }
+
+    /** return a percentile (0..100) of the waiting time, or NaN before the first service. */
+    public double getWaitPercentile(double percent) {
+        return waitingHistogram.percentile(percent);
+    }
+
+    /** return a percentile (0..100) of the service time, or NaN before the first service. */
+    public double getServicePercentile(double percent) {
+        return serviceHistogram.percentile(percent);
+    }
+
+    /** return the waiting-time statistics (a copy). */
+    public Welford getWaitingTimes() {
+        return waitingTimes.copy();
+    }
+
+    /** return the service-time statistics (a copy). */
+    public Welford getServiceTimes() {
+        return serviceTimes.copy();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Summary)) return false;
+        Summary other = (Summary) o;
+        return replications == other.replications
+                && Double.compare(simulationTime, other.simulationTime) == 0
+                && Double.compare(pumpTime, other.pumpTime) == 0
+                && Double.compare(emptyQueueTime, other.emptyQueueTime) == 0
+                && totalArrivals == other.totalArrivals
+                && customersServed == other.customersServed
+                && balkingCustomers == other.balkingCustomers
+                && Double.compare(totalLitresSold, other.totalLitresSold) == 0
+                && Double.compare(totalLitresMissed, other.totalLitresMissed) == 0
+                && Double.compare(totalWaitingTime, other.totalWaitingTime) == 0
+                && Double.compare(totalServiceTime, other.totalServiceTime) == 0
+                && Double.compare(totalProfit, other.totalProfit) == 0
+                && Double.compare(lostProfit, other.lostProfit) == 0
+                && Double.compare(queueLengthArea, other.queueLengthArea) == 0
+                && Double.compare(busyPumpArea, other.busyPumpArea) == 0
+                && waitingTimes.equals(other.waitingTimes)
+                && serviceTimes.equals(other.serviceTimes)
+                && waitingHistogram.equals(other.waitingHistogram)
+                && serviceHistogram.equals(other.serviceHistogram);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(replications, simulationTime, pumpTime, emptyQueueTime, totalArrivals,
+                customersServed, balkingCustomers, totalLitresSold, totalLitresMissed, totalWaitingTime,
+                totalServiceTime, totalProfit, lostProfit, queueLengthArea, busyPumpArea, waitingTimes, serviceTimes);
+    }
+}
@@ -0,0 +1,278 @@
+package sim;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Sweep: runs a scenario over a grid of parameter values, with several replications per grid point,
+ * in one JVM. Every point x replication is a task on a work-stealing pool, so a large sweep keeps all
+ * cores busy and the event loop is compiled once, not once per point. Replication k of every point
+ * uses the same streams (common random numbers), which sharpens the comparison between points.
+ *
+ * Usage: java sim.Sweep replications threads name=v1,v2,... name=from:to:step ... [--csv]
+ *        &lt; the usual seven input lines of Sim (the base scenario; the report interval is ignored)
+ * Prints one line per grid point: mean and 95% confidence half-width of the profit, lost profit,
+ * average wait and pump utilisation over the replications.
+ */
+public class Sweep {
+    /** the confidence level of the printed intervals */
+    public static final double CONFIDENCE = 0.95;
+
+    // the per-replication quantities reported for each point
+    private static final int PROFIT = 0;
+    private static final int LOST_PROFIT = 1;
+    private static final int WAIT = 2;
+    private static final int UTILISATION = 3;
+    private static final String[] METRICS = {"Profit", "LostProfit", "Wait", "Utilisation"};
+
+    /** Axis: one swept parameter and the values it takes. */
+    public static final class Axis {
+        private final String name;
+        private final String[] values;
+
+        public Axis(String name, String... values) {
+            new Parameters().set(name, values[0]); // reject unknown names early
+            this.name = name;
+            this.values = values.clone();
+        }
+
+        /** parse: read "name=v1,v2,..." or "name=from:to:step" (inclusive). */
+        public static Axis parse(String spec) {
+            int eq = spec.indexOf('=');
+            if (eq < 0) throw new IllegalArgumentException("not an axis: " + spec);
+            String name = spec.substring(0, eq).trim();
+            String values = spec.substring(eq + 1).trim();
+            if (!values.contains(":")) return new Axis(name, values.split(","));
+            String[] range = values.split(":");
+            double from = Double.parseDouble(range[0]);
+            double to = Double.parseDouble(range[1]);
+            double step = (range.length > 2) ? Double.parseDouble(range[2]) : 1.0;
+            if (!(step > 0.0) || to < from) throw new IllegalArgumentException("empty range: " + spec);
+            List<String> list = new ArrayList<>();
+            long n = (long) Math.floor((to - from) / step + 1e-9);
+            for (long i = 0; i <= n; i++) {
+                double v = from + i * step;
+                list.add((v == Math.rint(v) && Math.abs(v) < 1e15) ? Long.toString((long) v) : Double.toString(v));
+            }
+            return new Axis(name, list.toArray(new String[0]));
+        }
+
+        /** return the parameter name. */
+        public String getName() {
+            return name;
+        }
+
+        /** return the number of values. */
+        public int size() {
+            return values.length;
+        }
+
+        /** return value i, as given. */
+        public String getValue(int i) {
+            return values[i];
+        }
+    }
+
+    /** Point: one grid point and the statistics of its replications. */
+    public static final class Point {
+        private final Parameters params;
+        private final String[] values; // the value of each axis, as given
+        private final Welford[] metrics = new Welford[METRICS.length];
+
+        Point(Parameters params, String[] values) {
+            this.params = params;
+            this.values = values;
+            for (int m = 0; m < metrics.length; m++) metrics[m] = new Welford();
+        }
+
+        void add(double[] replication) {
+            for (int m = 0; m < metrics.length; m++) {
+                if (!Double.isNaN(replication[m])) metrics[m].add(replication[m]);
+            }
+        }
+
+        /** return the parameters of this point. */
+        public Parameters getParameters() {
+            return params.copy();
+        }
+
+        /** return the per-replication profits. */
+        public Welford getProfit() {
+            return metrics[PROFIT].copy();
+        }
+
+        /** return the per-replication profits lost to balking. */
+        public Welford getLostProfit() {
+            return metrics[LOST_PROFIT].copy();
+        }
+
+        /** return the per-replication average waits. */
+        public Welford getWait() {
+            return metrics[WAIT].copy();
+        }
+
+        /** return the per-replication time-averaged pump occupancies. */
+        public Welford getUtilisation() {
+            return metrics[UTILISATION].copy();
+        }
+    }
+
+    /** grid: the parameters of every point, the last axis varying fastest. */
+    public static List<Parameters> grid(Parameters base, List<Axis> axes) {
+        List<Parameters> points = new ArrayList<>();
+        for (String[] values : combinations(axes)) points.add(at(base, axes, values));
+        return points;
+    }
+
+    private static Parameters at(Parameters base, List<Axis> axes, String[] values) {
+        Parameters p = base.copy();
+        for (int a = 0; a < axes.size(); a++) p.set(axes.get(a).name, values[a]);
+        return p;
+    }
+
+    private static List<String[]> combinations(List<Axis> axes) {
+        List<String[]> result = new ArrayList<>();
+        int[] index = new int[axes.size()];
+        while (true) {
+            String[] values = new String[axes.size()];
+            for (int a = 0; a < values.length; a++) values[a] = axes.get(a).values[index[a]];
+            result.add(values);
+            int a = axes.size() - 1;
+            while (a >= 0 && ++index[a] == axes.get(a).values.length) index[a--] = 0;
+            if (a < 0) return result;
+        }
+    }
+
+    /** run: run every grid point for the given number of replications; points come back in grid order. */
+    public static List<Point> run(Parameters base, List<Axis> axes, Seeding seeding, int replications, int threads) {
+        List<Point> points = new ArrayList<>();
+        for (String[] values : combinations(axes)) points.add(new Point(at(base, axes, values), values));
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            List<Future<double[]>> pending = new ArrayList<>(points.size() * replications);
+            for (Point point : points) {
+                for (int k = 0; k < replications; k++) {
+                    final int replication = k;
+                    pending.add(pool.submit(() -> measure(Replications.runOne(point.params, seeding, replication))));
+                }
+            }
+            // fold in grid and replication order, so the result does not depend on the scheduling
+            int next = 0;
+            for (Point point : points) {
+                for (int k = 0; k < replications; k++) point.add(pending.get(next++).get());
+            }
+            return points;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("sweep interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("sweep run failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * points: the grid points of a sweep whose replications were run elsewhere (see Coordinator),
+     * from their summaries by point and replication, folded in that order.
+     */
+    static List<Point> points(Parameters base, List<Axis> axes, Summary[][] results) {
+        List<Point> points = new ArrayList<>();
+        int next = 0;
+        for (String[] values : combinations(axes)) {
+            Point point = new Point(at(base, axes, values), values);
+            for (Summary s : results[next++]) point.add(measure(s));
+            points.add(point);
+        }
+        return points;
+    }
+
+    private static double[] measure(Summary s) {
+        double[] m = new double[METRICS.length];
+        m[PROFIT] = s.getTotalProfit();
+        m[LOST_PROFIT] = s.getLostProfit();
+        m[WAIT] = s.getAverageWait();
+        m[UTILISATION] = s.getPumpOccupancy();
+        return m;
+    }
+
+    /** printTable: one line per point, aligned text or CSV, with confidence half-widths at the given level. */
+    public static void printTable(PrintStream out, List<Axis> axes, List<Point> points, double level, boolean csv) {
+        StringBuilder header = new StringBuilder();
+        int[] widths = new int[axes.size()];
+        for (int a = 0; a < widths.length; a++) {
+            Axis axis = axes.get(a);
+            widths[a] = Math.max(10, axis.name.length() + 2);
+            header.append(csv ? axis.name + "," : pad(axis.name, widths[a]));
+        }
+        header.append(csv ? "Reps" : String.format(Locale.ROOT, "%6s", "Reps"));
+        for (String metric : METRICS) {
+            header.append(csv ? "," + metric + "," + metric + "HalfWidth"
+                    : String.format(Locale.ROOT, "%13s %10s", metric, "+/-"));
+        }
+        out.println(header);
+        for (Point point : points) {
+            StringBuilder line = new StringBuilder();
+            for (int a = 0; a < widths.length; a++) {
+                line.append(csv ? point.values[a] + "," : pad(point.values[a], widths[a]));
+            }
+            long reps = point.metrics[PROFIT].getCount();
+            line.append(csv ? Long.toString(reps) : String.format(Locale.ROOT, "%6d", reps));
+            for (Welford w : point.metrics) {
+                double mean = w.getMean();
+                double hw = Confidence.halfWidth(w, level);
+                line.append(csv ? String.format(Locale.ROOT, ",%s,%s", mean, hw)
+                        : String.format(Locale.ROOT, "%13.3f %10.3f", mean, hw));
+            }
+            out.println(line);
+        }
+    }
+
+    private static String pad(String text, int width) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = text.length(); i < width; i++) sb.append(' ');
+        return sb.append(text).toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("Usage: java sim.Sweep replications threads name=v1,v2|name=from:to:step ... [--csv] < input");
+            return;
+        }
+        int replications = Integer.parseInt(args[0]);
+        int threads = Integer.parseInt(args[1]);
+        boolean csv = false;
+        List<Axis> axes = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--csv")) csv = true;
+            else axes.add(Axis.parse(args[i]));
+        }
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        Parameters base = new Parameters();
+        base.reportInterval = Double.parseDouble(in.readLine().trim());
+        base.endingTime = Double.parseDouble(in.readLine().trim());
+        base.numPumps = Integer.parseInt(in.readLine().trim());
+        long[] seeds = new long[4];
+        for (int i = 0; i < 4; i++) seeds[i] = Integer.parseInt(in.readLine().trim());
+        Seeding seeding = Seeding.fromInput(seeds[0], seeds[1], seeds[2], seeds[3]);
+
+        long start = System.nanoTime();
+        List<Point> points = run(base, axes, seeding, replications, threads);
+        printTable(System.out, axes, points, CONFIDENCE, csv);
+        if (!csv) {
+            System.out.println(points.size() + " points x " + replications + " replications in "
+                    + String.format(Locale.ROOT, "%.1f", (System.nanoTime() - start) / 1e9) + " s on " + threads
+                    + " threads, streams " + seeding);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package sim;
+
+import java.io.OutputStream;
+
+/**
+ * TextReportSink: the fixed-width report Sim has always printed. Numbers are formatted exactly as
+ * Statistics.fmtDbl and fmtInt would, but straight into the line buffer, without building strings.
+ */
+final class TextReportSink extends CharReportSink {
+    private final char[] digits = new char[24]; // scratch for one formatted number
+
+    TextReportSink(OutputStream out) {
+        super(out);
+    }
+
+    public void header(boolean detailed) {
+        line.append(" Current  Total  NoQueue  Car->Car  Average  Number  Average  Pump   Total     Lost");
+        endLine();
+        line.append("  Time     Cars  Fraction    Time    Litres  Balked   Wait    Usage  Profit   Profit");
+        endLine();
+        for (int i = 0; i < 79; i++) line.append('-');
+        endLine();
+    }
+
+    public void row(Summary s, boolean detailed) {
+        fixed(s.getSimulationTime(), 8, 0);
+        integer((int) Math.round(s.getArrivals()), 7);
+        fixed(s.getNoQueueFraction(), 8, 3);
+
+        if (s.getArrivals() > 0) {
+            fixed(s.getCarToCarTime(), 9, 3);
+            fixed(s.getAverageLitres(), 10, 3);
+        } else {
+            line.append("   Unknown");
+            line.append("   Unknown");
+        }
+
+        integer((int) Math.round(s.getBalkingCustomers()), 8);
+        if (s.getCustomersServed() > 0)
+            fixed(s.getAverageWait(), 9, 3);
+        else
+            line.append("   Unknown");
+
+        fixed(s.getPumpUsage(), 8, 3);
+        fixed(s.getTotalProfit(), 9, 2);
+        fixed(s.getLostProfit(), 9, 2);
+        endLine();
+        if (!detailed) return;
+
+        // standard deviation and percentiles of waiting and service times, time-averaged queue and pumps
+        line.append("    wait   sd");
+        stat(s.getWaitStdDev(), 9);
+        line.append("  p50");
+        stat(s.getWaitPercentile(50.0), 9);
+        line.append("  p95");
+        stat(s.getWaitPercentile(95.0), 9);
+        line.append("  p99");
+        stat(s.getWaitPercentile(99.0), 9);
+        line.append("   queue");
+        stat(s.getAverageQueueLength(), 8);
+        endLine();
+        line.append("    service sd");
+        stat(s.getServiceStdDev(), 9);
+        line.append("  p50");
+        stat(s.getServicePercentile(50.0), 9);
+        line.append("  p95");
+        stat(s.getServicePercentile(95.0), 9);
+        line.append("  p99");
+        stat(s.getServicePercentile(99.0), 9);
+        line.append("   pumps");
+        stat(s.getPumpOccupancy(), 8);
+        endLine();
+    }
+
+    public void message(String text) {
+        line.append(text);
+        endLine();
+    }
+
+    /** stat: a statistic with 3 decimals, or "Unknown" if it has no data (NaN). */
+    private void stat(double number, int width) {
+        if (Double.isNaN(number)) {
+            for (int i = "Unknown".length(); i < width; i++) line.append(' ');
+            line.append("Unknown");
+        } else {
+            fixed(number, width, 3);
+        }
+    }
+
+    /**
+     * fixed: append what Statistics.fmtDbl(number, width, precision) returns: the number scaled,
+     * rounded half up and truncated to an int, zero-padded to precision + 1 digits, the decimal
+     * point inserted, and the whole blank-padded on the left.
+     */
+    private void fixed(double number, int width, int precision) {
+        double scale = 1.0;
+        for (int i = 0; i < precision; i++) scale *= 10.0;
+        int n = toChars((int) (number * scale + 0.5)); // digits[24 - n .. 24)
+        int zeros = (precision > 0) ? Math.max(0, precision + 1 - n) : 0;
+        int length = zeros + n + (precision > 0 ? 1 : 0);
+        for (int i = length; i < width; i++) line.append(' ');
+        int point = zeros + n - precision; // characters before the decimal point
+        int written = 0;
+        for (int i = 0; i < zeros; i++, written++) {
+            if (precision > 0 && written == point) line.append('.');
+            line.append('0');
+        }
+        for (int i = digits.length - n; i < digits.length; i++, written++) {
+            if (precision > 0 && written == point) line.append('.');
+            line.append(digits[i]);
+        }
+        if (precision > 0 && written == point) line.append('.');
+    }
+
+    /** integer: append what Statistics.fmtInt(number, width) returns. */
+    private void integer(int number, int width) {
+        int n = toChars(number);
+        for (int i = n; i < width; i++) line.append(' ');
+        line.append(digits, digits.length - n, n);
+    }
+
+    /** toChars: write the decimal form of v at the end of digits and return its length. */
+    private int toChars(int v) {
+        int pos = digits.length;
+        long u = Math.abs((long) v);
+        do {
+            digits[--pos] = (char) ('0' + (u % 10));
+            u /= 10;
+        } while (u > 0);
+        if (v < 0) digits[--pos] = '-';
+        return digits.length - pos;
+    }
+}
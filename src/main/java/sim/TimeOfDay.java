@@ -0,0 +1,146 @@
+package sim;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * TimeOfDay: the statistics of a run broken down by the time of day at which the cars arrived,
+ * in buckets of equal length (an hour by default), so that a run with an arrival profile shows how
+ * the station copes with each part of the day. The buckets pool all the days of the run.
+ */
+public final class TimeOfDay {
+    private final double bucketLength;
+    private final long[] arrivals;
+    private final long[] balks;
+    private final long[] served;
+    private final double[] waitingTime;
+    private final double[] litresSold;
+
+    /** Constructor; buckets of the given length in seconds, which should divide a day. */
+    public TimeOfDay(double bucketLength) {
+        if (!(bucketLength > 0.0) || bucketLength > ArrivalProfile.DAY) {
+            throw new IllegalArgumentException("time-of-day bucket out of (0, 86400]: " + bucketLength);
+        }
+        int n = (int) Math.ceil(ArrivalProfile.DAY / bucketLength - 1e-9);
+        this.bucketLength = bucketLength;
+        arrivals = new long[n];
+        balks = new long[n];
+        served = new long[n];
+        waitingTime = new double[n];
+        litresSold = new double[n];
+    }
+
+    /** bucketOf: the bucket of a time. */
+    int bucketOf(double time) {
+        double t = time % ArrivalProfile.DAY;
+        return Math.min(arrivals.length - 1, (int) (t / bucketLength));
+    }
+
+    /** countArrival: a car arrived at the given time. */
+    void countArrival(double time) {
+        arrivals[bucketOf(time)]++;
+    }
+
+    /** countBalk: a car that arrived at the given time balked. */
+    void countBalk(double time) {
+        balks[bucketOf(time)]++;
+    }
+
+    /** countService: a car that arrived at the given time is served after waiting. */
+    void countService(double arrivalTime, double wait, double litres) {
+        int b = bucketOf(arrivalTime);
+        served[b]++;
+        waitingTime[b] += wait;
+        litresSold[b] += litres;
+    }
+
+    /** reset: forget everything (the end of a warm-up). */
+    void reset() {
+        Arrays.fill(arrivals, 0);
+        Arrays.fill(balks, 0);
+        Arrays.fill(served, 0);
+        Arrays.fill(waitingTime, 0.0);
+        Arrays.fill(litresSold, 0.0);
+    }
+
+    /** save: write the buckets to a checkpoint (see Checkpoint). */
+    void save(DataOutput out) throws IOException {
+        out.writeInt(arrivals.length);
+        for (int b = 0; b < arrivals.length; b++) {
+            out.writeLong(arrivals[b]);
+            out.writeLong(balks[b]);
+            out.writeLong(served[b]);
+            out.writeDouble(waitingTime[b]);
+            out.writeDouble(litresSold[b]);
+        }
+    }
+
+    /** restore: read the buckets written by save. */
+    void restore(DataInput in) throws IOException {
+        int n = in.readInt();
+        if (n != arrivals.length) throw new IOException("checkpoint has " + n + " time-of-day buckets, not " + arrivals.length);
+        for (int b = 0; b < n; b++) {
+            arrivals[b] = in.readLong();
+            balks[b] = in.readLong();
+            served[b] = in.readLong();
+            waitingTime[b] = in.readDouble();
+            litresSold[b] = in.readDouble();
+        }
+    }
+
+    /** return the number of buckets. */
+    public int size() {
+        return arrivals.length;
+    }
+
+    /** return the length of a bucket, in seconds. */
+    public double getBucketLength() {
+        return bucketLength;
+    }
+
+    /** return the number of cars that arrived in bucket b. */
+    public long getArrivals(int b) {
+        return arrivals[b];
+    }
+
+    /** return the number of cars that arrived in bucket b and balked. */
+    public long getBalks(int b) {
+        return balks[b];
+    }
+
+    /** return the number of cars that arrived in bucket b and were served. */
+    public long getServed(int b) {
+        return served[b];
+    }
+
+    /** return the average wait of the cars that arrived in bucket b and were served. */
+    public double getAverageWait(int b) {
+        return (served[b] > 0) ? waitingTime[b] / served[b] : 0.0;
+    }
+
+    /** return the litres sold to the cars that arrived in bucket b. */
+    public double getLitresSold(int b) {
+        return litresSold[b];
+    }
+
+    /** report: one line per bucket, under a heading, for a report's messages. */
+    public void report(ReportSink sink) {
+        sink.message(" Time of day   Arrivals    Balked  Balk Rate  Average Wait  Litres Sold");
+        for (int b = 0; b < arrivals.length; b++) {
+            double from = b * bucketLength;
+            double to = Math.min(ArrivalProfile.DAY, from + bucketLength);
+            sink.message(clock(from) + "-" + clock(to)
+                    + Statistics.fmtInt((int) arrivals[b], 11) + Statistics.fmtInt((int) balks[b], 10)
+                    + Statistics.fmtDbl((arrivals[b] > 0) ? (double) balks[b] / arrivals[b] : 0.0, 11, 3)
+                    + Statistics.fmtDbl(getAverageWait(b), 14, 3) + Statistics.fmtDbl(litresSold[b], 13, 1));
+        }
+    }
+
+    private static String clock(double seconds) {
+        int minutes = (int) Math.round(seconds / 60.0);
+        return String.format(Locale.ROOT, "%02d:%02d", minutes / 60, minutes % 60);
+    }
+}
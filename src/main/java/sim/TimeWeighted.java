@@ -0,0 +1,47 @@
+package sim;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * TimeWeighted: the time integral of a level that changes in steps, such as the length of the
+ * car queue; divided by the elapsed time it gives the time-averaged level.
+ */
+final class TimeWeighted {
+    private double area = 0.0;      // integral of the level up to lastChange
+    private double level = 0.0;     // the current level
+    private double lastChange = 0.0;
+
+    /** update: the level becomes newLevel at the given time. */
+    void update(double time, double newLevel) {
+        area += level * (time - lastChange);
+        lastChange = time;
+        level = newLevel;
+    }
+
+    /** restart: drop the integral so far and integrate from the given time, at the current level. */
+    void restart(double time) {
+        area = 0.0;
+        lastChange = time;
+    }
+
+    /** save: write the state to a checkpoint (see Checkpoint). */
+    void save(DataOutput out) throws IOException {
+        out.writeDouble(area);
+        out.writeDouble(level);
+        out.writeDouble(lastChange);
+    }
+
+    /** restore: read the state written by save. */
+    void restore(DataInput in) throws IOException {
+        area = in.readDouble();
+        level = in.readDouble();
+        lastChange = in.readDouble();
+    }
+
+    /** areaUntil: the integral of the level from time 0 up to the given time. */
+    double areaUntil(double time) {
+        return area + level * (time - lastChange);
+    }
+}
@@ -0,0 +1,154 @@
+package sim;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * TraceReader: streams the records of an EventTrace file. The file is mapped read-only a window at
+ * a time and each record is decoded into one reused Record, so traces of any size are read in
+ * constant heap space.
+ *
+ * Usage: java sim.TraceReader trace [--type=service] [--pump=3] [--from=t] [--to=t] [--print]
+ * Prints a summary of the matching records (counts per type, waits, queue lengths, litres);
+ * with --print also the records themselves.
+ */
+public final class TraceReader {
+    private static final long WINDOW_RECORDS = 1 << 22; // 160 MB per mapping
+
+    /** Record: one trace record; the reader reuses one object, so copy what you keep. */
+    public static final class Record {
+        public double time;
+        public int type;
+        public int pump;
+        public int queueLength;
+        public double litres;
+        public double wait;
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%14.3f %-9s pump %4d queue %5d litres %7.3f wait %s",
+                    time, EventTrace.typeName(type), pump, queueLength, litres,
+                    Double.isNaN(wait) ? "-" : String.format(Locale.ROOT, "%.3f", wait));
+        }
+    }
+
+    /** Visitor: what to do with each record. */
+    public interface Visitor {
+        void visit(Record r);
+    }
+
+    /** Filter: which records to visit; -1 or infinities mean "any". */
+    public static final class Filter {
+        public int type = -1;
+        public int pump = -1;
+        public double from = Double.NEGATIVE_INFINITY;
+        public double to = Double.POSITIVE_INFINITY;
+
+        boolean matches(Record r) {
+            return (type < 0 || r.type == type) && (pump < 0 || r.pump == pump) && r.time >= from && r.time <= to;
+        }
+    }
+
+    private TraceReader() {
+    }
+
+    /** scan: visit every record of the trace that the filter lets through, in file order; return how many. */
+    public static long scan(Path file, Filter filter, Visitor visitor) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, EventTrace.HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (header.get(0) != 'S' || header.get(1) != 'I' || header.get(2) != 'M' || header.get(3) != 'T') {
+                throw new IOException("not an event trace: " + file);
+            }
+            if (header.getInt(4) != EventTrace.VERSION) throw new IOException("unknown trace version " + header.getInt(4));
+            long records = header.getLong(8);
+            if (records == 0L) {
+                // the run did not close its trace; use the records that were filled in
+                records = (channel.size() - EventTrace.HEADER_SIZE) / EventTrace.RECORD_SIZE;
+            }
+
+            Record r = new Record();
+            long visited = 0;
+            for (long first = 0; first < records; first += WINDOW_RECORDS) {
+                long count = Math.min(WINDOW_RECORDS, records - first);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY,
+                        EventTrace.HEADER_SIZE + first * EventTrace.RECORD_SIZE, count * EventTrace.RECORD_SIZE);
+                window.order(ByteOrder.LITTLE_ENDIAN);
+                for (int i = 0; i < count; i++) {
+                    r.time = window.getDouble();
+                    r.litres = window.getDouble();
+                    r.wait = window.getDouble();
+                    r.type = window.getInt();
+                    r.pump = window.getInt();
+                    r.queueLength = window.getInt();
+                    window.getInt();
+                    if (r.type == 0) return visited; // an unclosed trace ends at the first empty record
+                    if (filter.matches(r)) {
+                        visitor.visit(r);
+                        visited++;
+                    }
+                }
+            }
+            return visited;
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot read trace " + file, e);
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: java sim.TraceReader trace [--type=t] [--pump=p] [--from=t] [--to=t] [--print]");
+            return;
+        }
+        Filter filter = new Filter();
+        boolean print = false;
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--type=")) filter.type = EventTrace.parseType(value);
+            else if (arg.startsWith("--pump=")) filter.pump = Integer.parseInt(value);
+            else if (arg.startsWith("--from=")) filter.from = Double.parseDouble(value);
+            else if (arg.startsWith("--to=")) filter.to = Double.parseDouble(value);
+            else if (arg.equals("--print")) print = true;
+            else throw new IllegalArgumentException("unknown option " + arg);
+        }
+
+        final boolean printing = print;
+        final long[] perType = new long[EventTrace.TYPE_NAMES.length];
+        final Welford waits = new Welford();
+        final LogHistogram waitHistogram = new LogHistogram(Statistics.HISTOGRAM_UNIT);
+        final double[] litresServed = new double[1];
+        final double[] span = {Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        final int[] maxQueue = new int[1];
+        long n = scan(Paths.get(args[0]), filter, r -> {
+            if (printing) System.out.println(r);
+            if (r.type > 0 && r.type < perType.length) perType[r.type]++;
+            if (r.type == EventTrace.SERVICE) {
+                waits.add(r.wait);
+                waitHistogram.record(r.wait);
+            }
+            if (r.type == EventTrace.DEPARTURE) litresServed[0] += r.litres;
+            span[0] = Math.min(span[0], r.time);
+            span[1] = Math.max(span[1], r.time);
+            maxQueue[0] = Math.max(maxQueue[0], r.queueLength);
+        });
+
+        System.out.println(n + " records from time " + span[0] + " to " + span[1]);
+        for (int t = 1; t < perType.length; t++) {
+            if (perType[t] > 0) System.out.println(String.format(Locale.ROOT, "%12s %12d", EventTrace.typeName(t), perType[t]));
+        }
+        if (waits.getCount() > 0) {
+            System.out.println(String.format(Locale.ROOT, "wait: mean %.3f sd %.3f max %.3f p50 %.3f p95 %.3f p99 %.3f",
+                    waits.getMean(), waits.getStdDev(), waits.getMax(), waitHistogram.percentile(50.0),
+                    waitHistogram.percentile(95.0), waitHistogram.percentile(99.0)));
+        }
+        System.out.println(String.format(Locale.ROOT, "longest queue %d, litres sold %.3f", maxQueue[0], litresServed[0]));
+    }
+}
@@ -0,0 +1,24 @@
+package sim;
+
+/**
+ * Transfer: the class representing the arrival of a car that balked at another station of a
+ * network (see Network) and drove on to this one.
+ */
+class Transfer extends Event {
+    private final Simulation sim;
+    private final Car car = new Car();
+    private final int hops; // stations the car has already left
+
+    public Transfer(Simulation sim, double time, double litres, int fuel, int hops) {
+        super(time);
+        this.sim = sim;
+        this.car.set(time, litres, Double.NaN, fuel);
+        this.hops = hops;
+    }
+
+    /** transfer event routine. */
+    public void makeItHappen() {
+        sim.station.arrivedByRoute++;
+        Arrival.admit(sim, car, hops);
+    }
+}
@@ -0,0 +1,327 @@
+package sim;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * VarianceReduction: estimators that reach a given precision with fewer replications than plain
+ * independent replications, each reporting its variance-reduction factor (the variance of the plain
+ * estimator from as many runs, divided by its own; greater than 1 is better).
+ *
+ * Common random numbers: two configurations are run on the same streams, replication by replication,
+ * and the difference of their responses is estimated from the paired differences. Antithetic
+ * variates: each replication is run twice, the second time on the mirrored variates (see
+ * VariateBuffer), and the pair averages are the observations. Both synchronize the streams (see
+ * Parameters.synchronizedStreams), so that car k draws the same variates in every run it appears in.
+ * Control variates: the response of each replication is adjusted by regression on the averages of
+ * the standardized interarrival times and litre demands drawn in that run, whose means are known
+ * (1 and 1/2, from the mean interarrival time and the litres distribution). The average of the
+ * interarrival times drawn up to the end of the run is biased by O(1/N), which is negligible for
+ * runs of many cars.
+ *
+ * Usage: java sim.VarianceReduction crn|antithetic|control replications [profit|wait|balk] [name=value ...]
+ *        &lt; the usual seven input lines of Sim (the report interval is ignored)
+ * For crn the name=value settings make the alternative compared with the scenario of the input.
+ */
+public final class VarianceReduction {
+    /** the confidence level of the printed intervals */
+    public static final double CONFIDENCE = 0.95;
+
+    // the known means of the control variates: standardized exponential interarrival times, uniform litres
+    private static final double[] CONTROL_MEANS = {1.0, 0.5};
+
+    /** Response: the per-replication quantities that can be estimated. */
+    public enum Response {
+        PROFIT,         // total profit of the run
+        WAIT,           // average wait per car served
+        BALK_FRACTION;  // fraction of the arrivals that balk
+
+        /** parse: look a response up by name, e.g. "profit", "wait" or "balk". */
+        public static Response parse(String name) {
+            switch (name.trim().toLowerCase()) {
+                case "profit": return PROFIT;
+                case "wait": return WAIT;
+                case "balk": case "balk_fraction": return BALK_FRACTION;
+                default: throw new IllegalArgumentException("unknown response: " + name);
+            }
+        }
+
+        /** of: the value of this response in a run's summary. */
+        public double of(Summary s) {
+            switch (this) {
+                case PROFIT: return s.getTotalProfit();
+                case WAIT:   return s.getAverageWait();
+                default:     return (s.getArrivals() > 0) ? s.getBalkingCustomers() / s.getArrivals() : Double.NaN;
+            }
+        }
+    }
+
+    /** Estimate: a point estimate, its confidence half-width, and what the method gained. */
+    public static final class Estimate {
+        private final double value;
+        private final double halfWidth;
+        private final double varianceReduction;
+        private final int runs;
+
+        Estimate(double value, double halfWidth, double varianceReduction, int runs) {
+            this.value = value;
+            this.halfWidth = halfWidth;
+            this.varianceReduction = varianceReduction;
+            this.runs = runs;
+        }
+
+        /** return the point estimate. */
+        public double getValue() {
+            return value;
+        }
+
+        /** return the confidence half-width. */
+        public double getHalfWidth() {
+            return halfWidth;
+        }
+
+        /** return the variance of the plain estimator from as many runs, divided by this one's. */
+        public double getVarianceReduction() {
+            return varianceReduction;
+        }
+
+        /** return the number of simulation runs behind the estimate. */
+        public int getRuns() {
+            return runs;
+        }
+    }
+
+    private VarianceReduction() {
+    }
+
+    /**
+     * commonRandomNumbers: the expected difference in the response of configuration b minus that of
+     * configuration a, from the given number of pairs of runs on common streams.
+     */
+    public static Estimate commonRandomNumbers(Parameters a, Parameters b, Seeding seeding, int replications,
+                                               Response response, double level, int threads) {
+        Parameters first = synchronize(a, 0);
+        Parameters second = synchronize(b, 0);
+        List<Callable<double[]>> runs = new ArrayList<>();
+        for (int k = 0; k < replications; k++) {
+            final int replication = k;
+            runs.add(() -> observe(first, seeding, replication, response));
+            runs.add(() -> observe(second, seeding, replication, response));
+        }
+        List<double[]> results = runAll(runs, threads);
+        Welford ya = new Welford();
+        Welford yb = new Welford();
+        Welford difference = new Welford();
+        for (int k = 0; k < replications; k++) {
+            double va = results.get(2 * k)[0];
+            double vb = results.get(2 * k + 1)[0];
+            ya.add(va);
+            yb.add(vb);
+            difference.add(vb - va);
+        }
+        // independent runs would give the difference a variance of var(a) + var(b)
+        double vrf = (ya.getVariance() + yb.getVariance()) / difference.getVariance();
+        return new Estimate(difference.getMean(), Confidence.halfWidth(difference, level), vrf, 2 * replications);
+    }
+
+    /** antithetic: the expected response, from the given number of antithetic pairs of runs. */
+    public static Estimate antithetic(Parameters params, Seeding seeding, int pairs, Response response,
+                                      double level, int threads) {
+        Parameters first = synchronize(params, 1);
+        Parameters second = synchronize(params, 2);
+        List<Callable<double[]>> runs = new ArrayList<>();
+        for (int k = 0; k < pairs; k++) {
+            final int replication = k;
+            runs.add(() -> observe(first, seeding, replication, response));
+            runs.add(() -> observe(second, seeding, replication, response));
+        }
+        List<double[]> results = runAll(runs, threads);
+        Welford y1 = new Welford();
+        Welford y2 = new Welford();
+        Welford pairAverages = new Welford();
+        for (int k = 0; k < pairs; k++) {
+            double v1 = results.get(2 * k)[0];
+            double v2 = results.get(2 * k + 1)[0];
+            y1.add(v1);
+            y2.add(v2);
+            pairAverages.add((v1 + v2) / 2.0);
+        }
+        // 2n independent runs: variance sigma^2 / 2n; n pairs: var(pair average) / n
+        double sigma2 = (y1.getVariance() + y2.getVariance()) / 2.0;
+        double vrf = sigma2 / (2.0 * pairAverages.getVariance());
+        return new Estimate(pairAverages.getMean(), Confidence.halfWidth(pairAverages, level), vrf, 2 * pairs);
+    }
+
+    /**
+     * controlVariates: the expected response, from the given number of independent runs adjusted by
+     * regression on the controls (ordinary least squares; the estimate is the fitted intercept at the
+     * known control means, with n - 3 degrees of freedom).
+     */
+    public static Estimate controlVariates(Parameters params, Seeding seeding, int replications, Response response,
+                                           double level, int threads) {
+        final int q = CONTROL_MEANS.length;
+        if (replications < q + 2) throw new IllegalArgumentException("control variates need at least " + (q + 2) + " runs");
+        List<Callable<double[]>> runs = new ArrayList<>();
+        for (int k = 0; k < replications; k++) {
+            final int replication = k;
+            runs.add(() -> observe(params, seeding, replication, response));
+        }
+        List<double[]> results = runAll(runs, threads);
+
+        // normal equations of y = b0 + b . (c - mu), with x = (1, c - mu)
+        double[][] xtx = new double[q + 1][q + 1];
+        double[] xty = new double[q + 1];
+        Welford y = new Welford();
+        double[] x = new double[q + 1];
+        for (double[] r : results) {
+            x[0] = 1.0;
+            for (int j = 0; j < q; j++) x[j + 1] = r[j + 1] - CONTROL_MEANS[j];
+            for (int i = 0; i <= q; i++) {
+                for (int j = 0; j <= q; j++) xtx[i][j] += x[i] * x[j];
+                xty[i] += x[i] * r[0];
+            }
+            y.add(r[0]);
+        }
+        double[][] inverse = invert(xtx);
+        double[] beta = new double[q + 1];
+        for (int i = 0; i <= q; i++) {
+            for (int j = 0; j <= q; j++) beta[i] += inverse[i][j] * xty[j];
+        }
+        double residuals = 0.0;
+        for (double[] r : results) {
+            double fitted = beta[0];
+            for (int j = 0; j < q; j++) fitted += beta[j + 1] * (r[j + 1] - CONTROL_MEANS[j]);
+            residuals += (r[0] - fitted) * (r[0] - fitted);
+        }
+        int df = replications - q - 1;
+        double variance = residuals / df * inverse[0][0];
+        double halfWidth = Confidence.tQuantile(0.5 + level / 2.0, df) * Math.sqrt(variance);
+        double vrf = (y.getVariance() / replications) / variance;
+        return new Estimate(beta[0], halfWidth, vrf, replications);
+    }
+
+    /** synchronize: a copy of the parameters with synchronized streams, as the given antithetic member. */
+    private static Parameters synchronize(Parameters params, int antitheticMember) {
+        Parameters p = params.copy();
+        p.synchronizedStreams = true;
+        p.antitheticMember = antitheticMember;
+        return p;
+    }
+
+    /** observe: run one replication silently; return the response and the averages of the controls. */
+    private static double[] observe(Parameters params, Seeding seeding, int replication, Response response) {
+        Simulation sim = new Simulation(params, seeding, replication, null);
+        sim.run();
+        return new double[]{response.of(sim.summary()), sim.interarrivals.mean(), sim.litreDraws.mean()};
+    }
+
+    /** runAll: run the tasks on a pool of the given size; results come back in task order. */
+    private static List<double[]> runAll(List<Callable<double[]>> tasks, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            List<Future<double[]>> pending = new ArrayList<>(tasks.size());
+            for (Callable<double[]> task : tasks) pending.add(pool.submit(task));
+            List<double[]> results = new ArrayList<>(tasks.size());
+            for (Future<double[]> f : pending) results.add(f.get());
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("runs interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("run failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** invert: the inverse of a small symmetric positive definite matrix, by Gauss-Jordan elimination. */
+    private static double[][] invert(double[][] a) {
+        int n = a.length;
+        double[][] m = new double[n][2 * n];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(a[i], 0, m[i], 0, n);
+            m[i][n + i] = 1.0;
+        }
+        for (int col = 0; col < n; col++) {
+            int pivot = col;
+            for (int r = col + 1; r < n; r++) if (Math.abs(m[r][col]) > Math.abs(m[pivot][col])) pivot = r;
+            if (m[pivot][col] == 0.0) throw new IllegalStateException("the controls are collinear");
+            double[] swap = m[col];
+            m[col] = m[pivot];
+            m[pivot] = swap;
+            double p = m[col][col];
+            for (int j = 0; j < 2 * n; j++) m[col][j] /= p;
+            for (int r = 0; r < n; r++) {
+                if (r == col) continue;
+                double f = m[r][col];
+                for (int j = 0; j < 2 * n; j++) m[r][j] -= f * m[col][j];
+            }
+        }
+        double[][] inverse = new double[n][n];
+        for (int i = 0; i < n; i++) System.arraycopy(m[i], n, inverse[i], 0, n);
+        return inverse;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java sim.VarianceReduction crn|antithetic|control replications "
+                    + "[profit|wait|balk] [name=value ...] < input");
+            return;
+        }
+        String method = args[0];
+        int replications = Integer.parseInt(args[1]);
+        Response response = Response.PROFIT;
+        List<String> settings = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].contains("=")) settings.add(args[i]);
+            else response = Response.parse(args[i]);
+        }
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        Parameters params = new Parameters();
+        params.reportInterval = Double.parseDouble(in.readLine().trim());
+        params.endingTime = Double.parseDouble(in.readLine().trim());
+        params.numPumps = Integer.parseInt(in.readLine().trim());
+        long[] seeds = new long[4];
+        for (int i = 0; i < 4; i++) seeds[i] = Integer.parseInt(in.readLine().trim());
+        Seeding seeding = Seeding.fromInput(seeds[0], seeds[1], seeds[2], seeds[3]);
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        Estimate estimate;
+        String what;
+        switch (method) {
+            case "crn":
+                Parameters alternative = params.copy();
+                for (String s : settings) {
+                    int eq = s.indexOf('=');
+                    alternative.set(s.substring(0, eq).trim(), s.substring(eq + 1));
+                }
+                estimate = commonRandomNumbers(params, alternative, seeding, replications, response, CONFIDENCE, threads);
+                what = "Common random numbers: difference in " + response.name().toLowerCase() + " (" + String.join(" ", settings)
+                        + " minus the input scenario)";
+                break;
+            case "antithetic":
+                estimate = antithetic(params, seeding, replications, response, CONFIDENCE, threads);
+                what = "Antithetic variates: " + response.name().toLowerCase();
+                break;
+            case "control":
+                estimate = controlVariates(params, seeding, replications, response, CONFIDENCE, threads);
+                what = "Control variates: " + response.name().toLowerCase();
+                break;
+            default:
+                throw new IllegalArgumentException("unknown method: " + method);
+        }
+        System.out.println(what);
+        System.out.println(String.format(Locale.ROOT, "  %.4f +/- %.4f (%.0f%%) from %d runs; variance reduction factor %.2f",
+                estimate.getValue(), estimate.getHalfWidth(), 100 * CONFIDENCE, estimate.getRuns(),
+                estimate.getVarianceReduction()));
+    }
+}
@@ -0,0 +1,141 @@
+package sim;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Random;
+import java.util.random.RandomGenerator;
+
+/**
+ * VariateBuffer: a block of standardized random variates drawn ahead from one stream.
+ * Event routines take the next value with next(); when the block is used up it is refilled in one
+ * tight loop, so the cost of the generator and of log or the normal transform is paid in bulk
+ * rather than in the middle of event handling.
+ *
+ * The values are drawn in stream order, so a run sees exactly the sequence it would see drawing
+ * one at a time: in legacy mode (java.util.Random) the results stay bit-identical to the unbuffered
+ * model. Other generators use the ziggurat-based nextExponential and nextGaussian of java.util.random.
+ *
+ * The two runs of an antithetic pair (see VarianceReduction) draw the same stream, the second
+ * mirrored: 1 - u for uniforms, -z for normals, and exponentials by inversion of u and 1 - u in
+ * both runs (the ziggurat has no mirror image).
+ */
+final class VariateBuffer {
+
+    /** Pairing: the part a buffer plays in an antithetic pair. */
+    enum Pairing {
+        NONE,   // not paired
+        FIRST,  // the first run of a pair
+        SECOND  // the mirrored second run
+    }
+
+    /** Kind: the standardized distribution held by a buffer. */
+    enum Kind {
+        UNIFORM,     // uniform on [0, 1)
+        EXPONENTIAL, // exponential with mean 1
+        NORMAL       // normal with mean 0 and standard deviation 1
+    }
+
+    private final RandomGenerator stream;
+    private final Kind kind;
+    private final boolean inversion; // exponentials by inversion
+    private final boolean mirrored;  // the second run of an antithetic pair
+    private final double[] values;
+    private int position;   // index of the next value to hand out
+    private double total = 0.0; // sum of all the values drawn into the buffer
+    long refills = 0;       // number of blocks drawn from the stream so far
+
+    VariateBuffer(RandomGenerator stream, Kind kind, int blockSize) {
+        this(stream, kind, blockSize, Pairing.NONE);
+    }
+
+    VariateBuffer(RandomGenerator stream, Kind kind, int blockSize, Pairing pairing) {
+        this.stream = stream;
+        this.kind = kind;
+        this.inversion = stream instanceof Random || pairing != Pairing.NONE;
+        this.mirrored = pairing == Pairing.SECOND;
+        this.values = new double[Math.max(1, blockSize)];
+        this.position = values.length; // empty; the first next() fills it
+    }
+
+    /** next: the next variate of the stream. */
+    double next() {
+        if (position == values.length) refill();
+        return values[position++];
+    }
+
+    /** return the number of variates handed out so far. */
+    long drawn() {
+        return refills * values.length - (values.length - position);
+    }
+
+    /** mean: the average of the variates handed out so far, NaN if there are none (a control variate). */
+    double mean() {
+        double unused = 0.0;
+        for (int i = position; i < values.length; i++) unused += values[i];
+        long n = drawn();
+        return (n > 0) ? (total - unused) / n : Double.NaN;
+    }
+
+    /** save: write the position in the stream to a checkpoint (see Checkpoint). */
+    void save(DataOutput out) throws IOException {
+        out.writeLong(refills);
+        out.writeInt(position);
+    }
+
+    /**
+     * restore: bring this buffer, fresh on a fresh copy of its stream, to the position written by save.
+     * The generators do not expose their state, so the blocks are drawn again; this repeats the
+     * exact calls of the saved run, so the stream (including any cached normal of java.util.Random)
+     * ends up where it was.
+     */
+    void restore(DataInput in) throws IOException {
+        long savedRefills = in.readLong();
+        int savedPosition = in.readInt();
+        if (refills != 0) throw new IOException("variate buffer already in use");
+        if (savedPosition > values.length) throw new IOException("variate block larger than " + values.length);
+        while (refills < savedRefills) refill();
+        position = savedPosition;
+    }
+
+    /** skip: pass over the position written by save, for a run that continues on other streams. */
+    static void skip(DataInput in) throws IOException {
+        in.readLong();
+        in.readInt();
+    }
+
+    private void refill() {
+        final double[] v = values;
+        final RandomGenerator r = stream;
+        double sum = 0.0;
+        switch (kind) {
+            case UNIFORM:
+                if (mirrored) {
+                    for (int i = 0; i < v.length; i++) sum += v[i] = 1.0 - r.nextDouble();
+                } else {
+                    for (int i = 0; i < v.length; i++) sum += v[i] = r.nextDouble();
+                }
+                break;
+            case EXPONENTIAL:
+                if (mirrored) {
+                    for (int i = 0; i < v.length; i++) sum += v[i] = -Math.log(Math.max(1e-12, 1.0 - r.nextDouble()));
+                } else if (inversion) {
+                    // the inversion the model has always used, so seeded runs keep their output
+                    for (int i = 0; i < v.length; i++) sum += v[i] = -Math.log(Math.max(1e-12, r.nextDouble()));
+                } else {
+                    for (int i = 0; i < v.length; i++) sum += v[i] = r.nextExponential();
+                }
+                break;
+            default:
+                if (mirrored) {
+                    for (int i = 0; i < v.length; i++) sum += v[i] = -r.nextGaussian();
+                } else {
+                    for (int i = 0; i < v.length; i++) sum += v[i] = r.nextGaussian();
+                }
+                break;
+        }
+        total += sum;
+        position = 0;
+        refills++;
+    }
+}
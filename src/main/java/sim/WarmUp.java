@@ -0,0 +1,187 @@
+package sim;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * WarmUp: detects the end of the initial transient of a run with MSER-5 (White's marginal standard
+ * error rule on batches of 5 observations), applied to two series: the waiting times of served cars,
+ * and the time-averaged queue length over fixed windows of simulated time. For each series the
+ * truncation point is the number of leading batches whose deletion minimizes the standard error of
+ * the mean of the rest; it is accepted once it falls in the first half of the data. The warm-up ends
+ * at the later of the two points. Until then every observation is kept, five to a batch.
+ */
+public final class WarmUp {
+    static final int BATCH = 5;
+    static final int MIN_BATCHES = 20;
+
+    private final Simulation sim;
+    private final double window;     // length of a queue-length window
+
+    // waiting times: batch means and the time at which each batch was completed
+    private double[] waitMeans = new double[64];
+    private double[] waitEnds = new double[64];
+    private int waitBatches = 0;
+    private double waitSum = 0.0;
+    private int waitCount = 0;
+
+    // queue length: means of 5 windows and the time at which each batch of windows ended
+    private double[] queueMeans = new double[64];
+    private double[] queueEnds = new double[64];
+    private int queueBatches = 0;
+    private double queueSum = 0.0;
+    private int queueCount = 0;
+    private double windowStartArea = 0.0;
+    private int nextCheck = MIN_BATCHES;
+
+    private double truncationTime = Double.NaN;
+
+    WarmUp(Simulation sim, double window) {
+        this.sim = sim;
+        this.window = window;
+    }
+
+    /** return the length of a queue-length window. */
+    double getWindow() {
+        return window;
+    }
+
+    /** return true once the end of the warm-up has been found. */
+    public boolean isDone() {
+        return !Double.isNaN(truncationTime);
+    }
+
+    /** return the end of the warm-up found by MSER-5, or NaN while it is not known yet. */
+    public double getTruncationTime() {
+        return truncationTime;
+    }
+
+    /** save: write the detector's state to a checkpoint (see Checkpoint); once done only the result is kept. */
+    void save(DataOutput out) throws IOException {
+        out.writeDouble(truncationTime);
+        if (isDone()) return;
+        out.writeInt(waitBatches);
+        for (int b = 0; b < waitBatches; b++) {
+            out.writeDouble(waitMeans[b]);
+            out.writeDouble(waitEnds[b]);
+        }
+        out.writeDouble(waitSum);
+        out.writeInt(waitCount);
+        out.writeInt(queueBatches);
+        for (int b = 0; b < queueBatches; b++) {
+            out.writeDouble(queueMeans[b]);
+            out.writeDouble(queueEnds[b]);
+        }
+        out.writeDouble(queueSum);
+        out.writeInt(queueCount);
+        out.writeDouble(windowStartArea);
+        out.writeInt(nextCheck);
+    }
+
+    /** restore: read the state written by save. */
+    void restore(DataInput in) throws IOException {
+        truncationTime = in.readDouble();
+        if (isDone()) {
+            waitMeans = waitEnds = queueMeans = queueEnds = null;
+            return;
+        }
+        waitBatches = in.readInt();
+        waitMeans = new double[Math.max(64, waitBatches)];
+        waitEnds = new double[waitMeans.length];
+        for (int b = 0; b < waitBatches; b++) {
+            waitMeans[b] = in.readDouble();
+            waitEnds[b] = in.readDouble();
+        }
+        waitSum = in.readDouble();
+        waitCount = in.readInt();
+        queueBatches = in.readInt();
+        queueMeans = new double[Math.max(64, queueBatches)];
+        queueEnds = new double[queueMeans.length];
+        for (int b = 0; b < queueBatches; b++) {
+            queueMeans[b] = in.readDouble();
+            queueEnds[b] = in.readDouble();
+        }
+        queueSum = in.readDouble();
+        queueCount = in.readInt();
+        windowStartArea = in.readDouble();
+        nextCheck = in.readInt();
+    }
+
+    /** observeWait: record the waiting time of a car that starts service now. */
+    void observeWait(double wait) {
+        if (isDone()) return;
+        waitSum += wait;
+        if (++waitCount == BATCH) {
+            if (waitBatches == waitMeans.length) {
+                waitMeans = Arrays.copyOf(waitMeans, 2 * waitBatches);
+                waitEnds = Arrays.copyOf(waitEnds, 2 * waitBatches);
+            }
+            waitMeans[waitBatches] = waitSum / BATCH;
+            waitEnds[waitBatches++] = sim.simulationTime;
+            waitSum = 0.0;
+            waitCount = 0;
+        }
+    }
+
+    /**
+     * closeWindow: record the time-averaged queue length over the window that ends now, given the
+     * queue-length integral so far; return true when the warm-up has just been found.
+     */
+    boolean closeWindow(double queueArea) {
+        if (isDone()) return false;
+        queueSum += (queueArea - windowStartArea) / window;
+        windowStartArea = queueArea;
+        if (++queueCount < BATCH) return false;
+        if (queueBatches == queueMeans.length) {
+            queueMeans = Arrays.copyOf(queueMeans, 2 * queueBatches);
+            queueEnds = Arrays.copyOf(queueEnds, 2 * queueBatches);
+        }
+        queueMeans[queueBatches] = queueSum / BATCH;
+        queueEnds[queueBatches++] = sim.simulationTime;
+        queueSum = 0.0;
+        queueCount = 0;
+        if (queueBatches < nextCheck) return false;
+        nextCheck += MIN_BATCHES;
+
+        int dWait = mser(waitMeans, waitBatches);
+        int dQueue = mser(queueMeans, queueBatches);
+        if (dWait < 0 || dQueue < 0) return false;
+        double endWait = (dWait == 0) ? 0.0 : waitEnds[dWait - 1];
+        double endQueue = (dQueue == 0) ? 0.0 : queueEnds[dQueue - 1];
+        truncationTime = Math.max(endWait, endQueue);
+        // the observations are not needed any more
+        waitMeans = waitEnds = queueMeans = queueEnds = null;
+        return true;
+    }
+
+    /**
+     * mser: the MSER truncation point of the first m batch means, i.e. the d in [0, m/2] minimizing
+     * the sum of squared deviations of y[d..m) divided by (m - d)^2; -1 if there are too few batches
+     * or the minimum is at m/2, the end of the search (not enough data yet to see past the transient).
+     * Deeper truncations are not searched: with few batches left the statistic is meaninglessly small.
+     */
+    static int mser(double[] y, int m) {
+        if (m < MIN_BATCHES) return -1;
+        final int limit = m / 2;
+        // suffix sums of y and y^2 give each candidate's statistic in O(1)
+        double sum = 0.0;
+        double sumSq = 0.0;
+        double best = Double.POSITIVE_INFINITY;
+        int bestD = -1;
+        for (int d = m - 1; d >= 0; d--) {
+            sum += y[d];
+            sumSq += y[d] * y[d];
+            if (d > limit) continue;
+            int n = m - d;
+            double ss = Math.max(0.0, sumSq - sum * sum / n);
+            double statistic = ss / ((double) n * n);
+            if (statistic <= best) {
+                best = statistic;
+                bestD = d;
+            }
+        }
+        return (bestD < limit) ? bestD : -1;
+    }
+}
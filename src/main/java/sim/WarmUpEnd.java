@@ -0,0 +1,39 @@
+package sim;
+
+/**
+ * WarmUpEnd: the class representing the events that end the warm-up period: either once, at a
+ * fixed time, or at the end of each queue-length window of MSER-5 detection (see WarmUp) until the
+ * transient has been found. At the end of the warm-up the statistics are cleared.
+ */
+class WarmUpEnd extends Event {
+    private final Simulation sim;
+
+    public WarmUpEnd(Simulation sim, double time) {
+        super(time);
+        this.sim = sim;
+    }
+
+    /** warm-up event routine. */
+    public void makeItHappen() {
+        WarmUp warmUp = sim.warmUp;
+        if (warmUp == null) {
+            // fixed warm-up period
+            sim.resetStatistics();
+            if (sim.report != null) {
+                sim.report.message("Warm-up over: statistics restart at time " + Statistics.fmtDbl(sim.simulationTime, 0, 0));
+            }
+            return;
+        }
+        if (warmUp.closeWindow(sim.stats.getQueueLengthArea())) {
+            sim.resetStatistics();
+            if (sim.report != null) {
+                sim.report.message("Warm-up detected (MSER-5): transient ends at time "
+                        + Statistics.fmtDbl(warmUp.getTruncationTime(), 0, 0) + "; statistics restart at time "
+                        + Statistics.fmtDbl(sim.simulationTime, 0, 0));
+            }
+            return;
+        }
+        setTime(sim.simulationTime + warmUp.getWindow());
+        sim.eventList.insert(this);
+    }
+}
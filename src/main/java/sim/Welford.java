@@ -0,0 +1,117 @@
+package sim;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Welford: running count, mean, variance, minimum and maximum of a stream of observations,
+ * in constant memory (Welford's update; merge uses the pairwise formula of Chan, Golub and LeVeque).
+ */
+public final class Welford {
+    private long count = 0;
+    private double mean = 0.0;
+    private double m2 = 0.0; // sum of squared deviations from the mean
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /** add: record one observation. */
+    public void add(double x) {
+        count++;
+        double delta = x - mean;
+        mean += delta / count;
+        m2 += delta * (x - mean);
+        if (x < min) min = x;
+        if (x > max) max = x;
+    }
+
+    /** merge: fold another set of observations into this one. */
+    public void merge(Welford other) {
+        if (other.count == 0) return;
+        if (count == 0) {
+            count = other.count;
+            mean = other.mean;
+            m2 = other.m2;
+            min = other.min;
+            max = other.max;
+            return;
+        }
+        long n = count + other.count;
+        double delta = other.mean - mean;
+        mean += delta * other.count / n;
+        m2 += other.m2 + delta * delta * ((double) count * other.count / n);
+        count = n;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /** save: write the state to a checkpoint (see Checkpoint). */
+    void save(DataOutput out) throws IOException {
+        out.writeLong(count);
+        out.writeDouble(mean);
+        out.writeDouble(m2);
+        out.writeDouble(min);
+        out.writeDouble(max);
+    }
+
+    /** restore: read the state written by save. */
+    void restore(DataInput in) throws IOException {
+        count = in.readLong();
+        mean = in.readDouble();
+        m2 = in.readDouble();
+        min = in.readDouble();
+        max = in.readDouble();
+    }
+
+    /** copy: return an independent copy. */
+    public Welford copy() {
+        Welford w = new Welford();
+        w.merge(this);
+        return w;
+    }
+
+    /** return the number of observations. */
+    public long getCount() {
+        return count;
+    }
+
+    /** return the mean, or NaN without observations. */
+    public double getMean() {
+        return (count > 0) ? mean : Double.NaN;
+    }
+
+    /** return the sample variance, or NaN with fewer than two observations. */
+    public double getVariance() {
+        return (count > 1) ? m2 / (count - 1) : Double.NaN;
+    }
+
+    /** return the sample standard deviation, or NaN with fewer than two observations. */
+    public double getStdDev() {
+        return Math.sqrt(getVariance());
+    }
+
+    /** return the smallest observation, or NaN without observations. */
+    public double getMin() {
+        return (count > 0) ? min : Double.NaN;
+    }
+
+    /** return the largest observation, or NaN without observations. */
+    public double getMax() {
+        return (count > 0) ? max : Double.NaN;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Welford)) return false;
+        Welford other = (Welford) o;
+        return count == other.count && Double.compare(mean, other.mean) == 0 && Double.compare(m2, other.m2) == 0
+                && Double.compare(min, other.min) == 0 && Double.compare(max, other.max) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(count, mean, m2, min, max);
+    }
+}
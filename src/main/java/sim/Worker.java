@@ -0,0 +1,144 @@
+package sim;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Worker: runs the work units of a Coordinator (see there for the protocol), one at a time per
+ * connection, until the coordinator says BYE. A unit is run with Replications.runOne, so a worker
+ * with -Dsim.cache set answers repeated units from its result cache. A lost connection is opened
+ * again, for up to the reconnect time, before the worker gives up.
+ *
+ * Usage: java sim.Worker host:port [connections]
+ * (connections: the units to run at once, default 1; one per core makes sense on a host of its own).
+ */
+public final class Worker implements Runnable {
+    static final long RECONNECT_MILLIS = 30000;
+
+    private final String host;
+    private final int port;
+    private long units = 0;
+
+    /** Constructor; a worker for the coordinator at the given host and port. */
+    public Worker(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /** return the number of units this worker has run. */
+    public long getUnits() {
+        return units;
+    }
+
+    /** run: connect, and run units until the coordinator says BYE or cannot be reached for RECONNECT_MILLIS. */
+    @Override
+    public void run() {
+        long lastContact = System.currentTimeMillis();
+        while (true) {
+            try (Socket socket = new Socket(host, port)) {
+                lastContact = System.currentTimeMillis();
+                if (serve(socket)) return;
+            } catch (IOException e) {
+                // not up yet, or lost: try again for a while
+            }
+            if (System.currentTimeMillis() - lastContact > RECONNECT_MILLIS) {
+                System.out.println("Error! worker cannot reach the coordinator at " + host + ":" + port);
+                return;
+            }
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /** serve: greet the coordinator and run its units; true once it says BYE or turns this worker away. */
+    private boolean serve(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        socket.setKeepAlive(true);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        out.write("SIMW".getBytes(StandardCharsets.US_ASCII));
+        out.writeInt(Coordinator.VERSION);
+        out.writeUTF(ResultCache.codeVersion());
+        out.flush();
+        int answer = in.readUnsignedByte();
+        if (answer == Coordinator.REJECT) {
+            System.out.println("Error! the coordinator turned this worker away: " + in.readUTF());
+            return true;
+        }
+        if (answer != Coordinator.ACCEPT) throw new IOException("unexpected answer " + answer);
+        while (true) {
+            int message;
+            try {
+                message = in.readUnsignedByte();
+            } catch (EOFException e) {
+                return false;
+            }
+            if (message == Coordinator.BYE) return true;
+            if (message != Coordinator.UNIT) throw new IOException("unexpected message " + message);
+            int id = in.readInt();
+            Parameters params = new Parameters();
+            Seeding seeding;
+            int replication;
+            try {
+                params.restore(in);
+                seeding = Seeding.parse(in.readUTF());
+                replication = in.readInt();
+            } catch (RuntimeException e) {
+                // a unit this worker cannot read fails the study rather than going from worker to worker;
+                // the rest of it is still on the connection, so the connection is dropped
+                out.writeByte(Coordinator.TAKEN);
+                out.writeInt(id);
+                out.writeByte(Coordinator.FAILED);
+                out.writeInt(id);
+                out.writeUTF("cannot read the unit: " + e);
+                out.flush();
+                return false;
+            }
+            out.writeByte(Coordinator.TAKEN);
+            out.writeInt(id);
+            out.flush();
+            Summary summary;
+            try {
+                summary = Replications.runOne(params, seeding, replication);
+            } catch (RuntimeException e) {
+                out.writeByte(Coordinator.FAILED);
+                out.writeInt(id);
+                out.writeUTF(String.valueOf(e));
+                out.flush();
+                continue;
+            }
+            out.writeByte(Coordinator.RESULT);
+            out.writeInt(id);
+            summary.save(out);
+            out.flush();
+            units++;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1 || args[0].lastIndexOf(':') < 0) {
+            System.out.println("Usage: java sim.Worker host:port [connections]");
+            return;
+        }
+        int colon = args[0].lastIndexOf(':');
+        String host = args[0].substring(0, colon);
+        int port = Integer.parseInt(args[0].substring(colon + 1));
+        int connections = (args.length > 1) ? Integer.parseInt(args[1]) : 1;
+        Thread[] threads = new Thread[connections];
+        for (int i = 0; i < connections; i++) {
+            threads[i] = new Thread(new Worker(host, port), "sim-worker-" + i);
+            threads[i].start();
+        }
+        for (Thread t : threads) t.join();
+    }
+}
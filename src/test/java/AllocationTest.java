@@ -0,0 +1,39 @@
+import org.junit.jupiter.api.Test;
+import sim.EventList;
+import sim.Parameters;
+import sim.Simulation;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class AllocationTest {
+
+    @Test
+    void steadyStateEventLoopAllocatesNothing() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        for (EventList.Backend backend : EventList.Backend.values()) {
+            Parameters params = new Parameters();
+            params.numPumps = 4;
+            params.endingTime = 1e12; // no reports, no end within the test
+            params.eventListBackend = backend;
+            Simulation sim = new Simulation(params, 1, 2, 3, 4, null);
+
+            // Warm up: fill the pools and let the JIT compile the loop.
+            sim.runUntil(2e7);
+            threads.getCurrentThreadAllocatedBytes();
+
+            long before = threads.getCurrentThreadAllocatedBytes();
+            long events = sim.runUntil(4e7);
+            long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+            assertTrue(events > 500_000, "too few events measured: " + events);
+            assertEquals(0L, allocated, backend + ": " + allocated + " bytes allocated over " + events + " events");
+        }
+    }
+}
@@ -0,0 +1,121 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sim.ArrivalLog;
+import sim.Checkpoint;
+import sim.Parameters;
+import sim.Simulation;
+import sim.Summary;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ArrivalLogTest {
+    private static final double EPOCH_DAY = 19675 * 86400.0;
+
+    /** a CSV log of n cars from an epoch midnight, with a header, a comment, CRLF lines and odd numbers. */
+    private static List<double[]> writeLog(Path file, int n) throws IOException {
+        SplittableRandom random = new SplittableRandom(5);
+        List<double[]> cars = new ArrayList<>();
+        StringBuilder text = new StringBuilder("timestamp,litres,pump\r\n# from the till\n\n");
+        double t = EPOCH_DAY + 3600.0;
+        for (int i = 0; i < n; i++) {
+            t += -45.0 * Math.log(1.0 - random.nextDouble());
+            double litres = 10.0 + 50.0 * random.nextDouble();
+            String time = (i % 7 == 0) ? Double.toString(t) : String.format(Locale.ROOT, "%.3f", t);
+            String amount = (i % 11 == 0) ? String.format(Locale.ROOT, "%.6e", litres) : String.format(Locale.ROOT, "%.2f", litres);
+            text.append(time).append(i % 3 == 0 ? " , " : ",").append(amount).append(",").append(i % 4)
+                    .append(i % 5 == 0 ? "\r\n" : "\n");
+            cars.add(new double[]{Double.parseDouble(time), Double.parseDouble(amount)});
+        }
+        Files.writeString(file, text.toString());
+        return cars;
+    }
+
+    @Test
+    void csvAndBinaryLogsReadBackExactly(@TempDir Path dir) throws IOException {
+        Path csv = dir.resolve("pos.csv");
+        List<double[]> cars = writeLog(csv, 5000);
+        Path bin = dir.resolve("pos.bin");
+        assertEquals(cars.size(), ArrivalLog.convert(csv, bin));
+        // small windows force lines and records across the window edges
+        for (Path file : new Path[]{csv, bin}) {
+            for (int window : new int[]{64, 100, 4096, 1 << 20}) {
+                try (ArrivalLog log = ArrivalLog.open(file, window)) {
+                    assertEquals(EPOCH_DAY, log.getRebase());
+                    for (double[] car : cars) {
+                        assertTrue(log.next());
+                        assertEquals(car[0] - EPOCH_DAY, log.getTime(), file + " window " + window);
+                        assertEquals(car[1], log.getLitres());
+                    }
+                    assertFalse(log.next());
+                    assertEquals(cars.size(), log.getRecords());
+                }
+            }
+        }
+    }
+
+    @Test
+    void badLinesAreReported(@TempDir Path dir) throws IOException {
+        Path csv = dir.resolve("bad.csv");
+        Files.writeString(csv, "10,20\n30 40\n");
+        try (ArrivalLog log = ArrivalLog.open(csv)) {
+            assertTrue(log.next());
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, log::next);
+            assertTrue(e.getMessage().contains("record 2"));
+        }
+    }
+
+    private static Parameters replay(Path log) {
+        Parameters params = new Parameters();
+        params.numPumps = 2;
+        params.endingTime = 5 * 86400.0;
+        params.arrivalLog = log.toString();
+        return params;
+    }
+
+    @Test
+    void theRunReplaysTheLoggedCars(@TempDir Path dir) throws IOException {
+        Path csv = dir.resolve("pos.csv");
+        List<double[]> cars = writeLog(csv, 5000);
+        double litres = 0.0;
+        for (double[] car : cars) litres += car[1];
+
+        Simulation sim = new Simulation(replay(csv), 1, 2, 3, 4, null);
+        sim.run();
+        Summary s = sim.summary();
+        assertEquals(cars.size(), s.getArrivals());
+        assertEquals(litres, s.getAverageLitres() * s.getArrivals(), 1e-9 * litres); // sold or missed
+
+        // the binary log is the same run
+        Path bin = dir.resolve("pos.bin");
+        ArrivalLog.convert(csv, bin);
+        Simulation again = new Simulation(replay(bin), 1, 2, 3, 4, null);
+        again.run();
+        assertEquals(s, again.summary());
+    }
+
+    @Test
+    void checkpointsRememberWhereTheLogIs(@TempDir Path dir) throws IOException {
+        Path csv = dir.resolve("pos.csv");
+        writeLog(csv, 5000);
+        Simulation straight = new Simulation(replay(csv), 1, 2, 3, 4, null);
+        straight.run();
+
+        Simulation first = new Simulation(replay(csv), 1, 2, 3, 4, null);
+        first.runUntil(100000.0);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Checkpoint.write(first, bytes);
+        Simulation second = Checkpoint.restore(new ByteArrayInputStream(bytes.toByteArray()), null);
+        second.run();
+        assertEquals(straight.summary(), second.summary());
+    }
+}
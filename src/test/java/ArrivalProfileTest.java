@@ -0,0 +1,118 @@
+import org.junit.jupiter.api.Test;
+import sim.ArrivalProfile;
+import sim.Checkpoint;
+import sim.Parameters;
+import sim.Simulation;
+import sim.TimeOfDay;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ArrivalProfileTest {
+    private static final String RUSH_HOURS = "step:0=0.2,6=1,7=2.5,9=1.2,16=2,19=1,22=0.4";
+    private static final String SMOOTH = "linear:3=0.1,8=3,12=1,17=2.5,23=0.2";
+
+    @Test
+    void drawsInvertTheCumulativeRate() {
+        for (String spec : new String[]{RUSH_HOURS, SMOOTH}) {
+            ArrivalProfile profile = ArrivalProfile.parse(spec, 50.0);
+            SplittableRandom random = new SplittableRandom(1);
+            double t = 0.0;
+            for (int i = 0; i < 100000; i++) {
+                double e = -Math.log(1.0 - random.nextDouble());
+                double next = profile.next(t, e);
+                assertTrue(next >= t);
+                assertEquals(e, profile.expected(t, next), 1e-9 * Math.max(1.0, e), spec + " at " + t);
+                t = next;
+            }
+            // a draw from an earlier time than the last one is still right
+            assertEquals(2.0, profile.expected(1000.0, profile.next(1000.0, 2.0)), 1e-9);
+        }
+    }
+
+    @Test
+    void aFlatProfileIsTheStationaryProcess() {
+        ArrivalProfile flat = ArrivalProfile.parse("step:0=1", 50.0);
+        SplittableRandom random = new SplittableRandom(2);
+        double t = 0.0;
+        for (int i = 0; i < 10000; i++) {
+            double e = -Math.log(1.0 - random.nextDouble());
+            double next = flat.next(t, e);
+            assertEquals(t + 50.0 * e, next, 1e-9 * next);
+            t = next;
+        }
+        assertEquals(1.0 / 50.0, flat.getMeanRate(), 1e-15);
+    }
+
+    @Test
+    void quietDaysAreSkipped() {
+        // one arrival a day on average: a draw jumps whole days without walking them
+        ArrivalProfile quiet = ArrivalProfile.parse("linear:0=0,12=2", 86400.0);
+        assertEquals(1.0 / 86400.0, quiet.getMeanRate(), 1e-18);
+        double t = quiet.next(0.0, 1000.5);
+        assertEquals(1000.5, quiet.expected(0.0, t), 1e-6);
+        assertTrue(t > 999 * 86400.0 && t < 1001 * 86400.0);
+        assertEquals(0.0, quiet.rate(0.0));
+        assertEquals(2.0 / 86400.0, quiet.rate(12 * 3600.0), 1e-18);
+    }
+
+    @Test
+    void badProfilesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> ArrivalProfile.parse("step:9=1,7=2", 50.0));
+        assertThrows(IllegalArgumentException.class, () -> ArrivalProfile.parse("cubic:0=1", 50.0));
+        assertThrows(IllegalArgumentException.class, () -> ArrivalProfile.parse("step:0=0,12=0", 50.0));
+        assertThrows(IllegalArgumentException.class, () -> ArrivalProfile.parse("step:24=1", 50.0));
+        assertThrows(IllegalArgumentException.class, () -> new Parameters().set("arrivalProfile", "step:0=-1"));
+    }
+
+    private static Parameters rushHours() {
+        Parameters params = new Parameters();
+        params.numPumps = 3;
+        params.endingTime = 10 * 86400.0;
+        params.arrivalProfile = RUSH_HOURS;
+        return params;
+    }
+
+    @Test
+    void eachHourSeesItsRate() {
+        Simulation sim = new Simulation(rushHours(), 1, 2, 3, 4, null);
+        sim.run();
+        TimeOfDay hours = sim.getTimeOfDay();
+        assertEquals(24, hours.size());
+        ArrivalProfile profile = ArrivalProfile.parse(RUSH_HOURS, 50.0);
+        long arrivals = 0, balks = 0;
+        for (int h = 0; h < 24; h++) {
+            double expected = 10 * profile.expected(h * 3600.0, (h + 1) * 3600.0);
+            assertEquals(expected, hours.getArrivals(h), 5 * Math.sqrt(expected), "hour " + h);
+            arrivals += hours.getArrivals(h);
+            balks += hours.getBalks(h);
+        }
+        assertEquals(sim.summary().getArrivals(), arrivals);
+        assertEquals(sim.summary().getBalkingCustomers(), balks);
+        // the morning rush is busier than the night
+        assertTrue(hours.getAverageWait(8) > 10 * hours.getAverageWait(2));
+        assertNull(new Simulation(new Parameters(), 1, 2, 3, 4, null).getTimeOfDay());
+    }
+
+    @Test
+    void checkpointsCarryTheProfileAndItsBuckets() throws IOException {
+        Simulation straight = new Simulation(rushHours(), 1, 2, 3, 4, null);
+        straight.run();
+
+        Simulation first = new Simulation(rushHours(), 1, 2, 3, 4, null);
+        first.runUntil(4.3 * 86400.0);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Checkpoint.write(first, bytes);
+        Simulation second = Checkpoint.restore(new ByteArrayInputStream(bytes.toByteArray()), null);
+        second.run();
+        assertEquals(straight.summary(), second.summary());
+        for (int h = 0; h < 24; h++) {
+            assertEquals(straight.getTimeOfDay().getArrivals(h), second.getTimeOfDay().getArrivals(h));
+            assertEquals(straight.getTimeOfDay().getAverageWait(h), second.getTimeOfDay().getAverageWait(h));
+        }
+    }
+}
@@ -0,0 +1,44 @@
+import org.junit.jupiter.api.Test;
+import sim.BatchMeans;
+import sim.Parameters;
+import sim.Simulation;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchMeansTest {
+
+    private static Parameters scenario(double precision) {
+        Parameters params = new Parameters();
+        params.numPumps = 3;
+        params.meaninterarrivalTime = 45.0;
+        params.endingTime = 1e8;
+        params.targetPrecision = precision;
+        return params;
+    }
+
+    @Test
+    void runStopsOnceTheTargetsArePrecise() {
+        Simulation sim = new Simulation(scenario(0.05), 1, 2, 3, 4, null);
+        sim.run();
+        assertTrue(sim.isFinished());
+        assertTrue(sim.getSimulationTime() < 1e8, "stopped before the cap");
+        BatchMeans batchMeans = sim.getBatchMeans();
+        for (BatchMeans.Metric m : BatchMeans.Metric.values()) {
+            assertTrue(batchMeans.halfWidth(m, 0.95) <= 0.05 * batchMeans.mean(m), m.name());
+        }
+        assertTrue(batchMeans.getBatches() >= 16);
+        // the batch estimate agrees with the run's own totals over the batched time
+        assertEquals(sim.summary().getAverageWait(), batchMeans.mean(BatchMeans.Metric.WAIT),
+                0.01 * batchMeans.mean(BatchMeans.Metric.WAIT));
+    }
+
+    @Test
+    void endingTimeStaysAHardCap() {
+        Parameters params = scenario(1e-9);
+        params.endingTime = 200000.0;
+        Simulation sim = new Simulation(params, 1, 2, 3, 4, null);
+        sim.run();
+        assertEquals(200000.0, sim.getSimulationTime());
+        assertNull(new Simulation(scenario(0.0), 1, 2, 3, 4, null).getBatchMeans());
+    }
+}
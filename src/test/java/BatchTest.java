@@ -0,0 +1,96 @@
+import org.junit.jupiter.api.Test;
+import sim.Batch;
+import sim.Parameters;
+import sim.ReportSink;
+import sim.Seeding;
+import sim.Simulation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchTest {
+
+    private static final String FILE = String.join("\n",
+            "# shared by every scenario",
+            "endingTime = 50000",
+            "reportInterval = 10000",
+            "seeds = 1, 2, 3, 4",
+            "",
+            "[two pumps]",
+            "numPumps = 2",
+            "[three pumps, dearer]   # a comment after a header",
+            "numPumps = 3",
+            "pumpCost = 30",
+            "eventListBackend = calendar",
+            "[replicated]",
+            "replications = 4",
+            "rng = L64X128MixRandom");
+
+    @Test
+    void scenariosInheritTheDefaults() throws IOException {
+        List<Batch.Scenario> scenarios = Batch.parse(new StringReader(FILE), new Parameters());
+        assertEquals(3, scenarios.size());
+        assertEquals("three pumps, dearer", scenarios.get(1).getName());
+        Parameters p = scenarios.get(1).getParameters();
+        assertEquals(3, p.numPumps);
+        assertEquals(30.0, p.pumpCost);
+        assertEquals(50000.0, p.endingTime);
+        assertEquals(Seeding.legacy(1, 2, 3, 4), scenarios.get(1).getSeeding());
+        // settings of one scenario do not leak into the next
+        assertEquals(1, scenarios.get(2).getParameters().numPumps);
+        assertEquals(20.0, scenarios.get(2).getParameters().pumpCost);
+        assertEquals(4, scenarios.get(2).getReplications());
+        assertEquals("L64X128MixRandom", scenarios.get(2).getSeeding().getAlgorithm());
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> Batch.parse(new StringReader("seeds = 1,2,3,4\n[x]\nnumPumsp = 2\n"), new Parameters()));
+        assertTrue(e.getMessage().startsWith("line 3:"), e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> Batch.parse(new StringReader("[x]\nnumPumps = 2\n"), new Parameters()));
+    }
+
+    @Test
+    void batchReportsWhatSeparateRunsReport() throws IOException {
+        List<Batch.Scenario> scenarios = Batch.parse(new StringReader(FILE), new Parameters());
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        ReportSink report = ReportSink.text(new PrintStream(batch));
+        Batch.run(scenarios, report, false, 2);
+        report.close();
+
+        // a scenario of one replication reports exactly as a run of its own would
+        for (Batch.Scenario scenario : scenarios.subList(0, 2)) {
+            ByteArrayOutputStream alone = new ByteArrayOutputStream();
+            new Simulation(scenario.getParameters(), scenario.getSeeding(), 0, ReportSink.text(new PrintStream(alone))).run();
+            String rows = alone.toString().substring(alone.toString().indexOf("-----"));
+            rows = rows.substring(rows.indexOf('\n') + 1);
+            assertTrue(batch.toString().contains("Scenario " + scenario.getName() + ": "));
+            assertTrue(batch.toString().contains(rows), scenario.getName());
+        }
+        // one header for the whole batch
+        assertEquals(batch.toString().indexOf("Current"), batch.toString().lastIndexOf("Current"));
+    }
+
+    @Test
+    void eachScenarioReachesTheOutputWhenItIsDone() throws Exception {
+        List<Batch.Scenario> scenarios = Batch.parse(new StringReader(String.join("\n",
+                "endingTime = 20000",
+                "reportInterval = 10000",
+                "seeds = 1, 2, 3, 4",
+                "[five]",
+                "numPumps = 5")), new Parameters());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ReportSink report = ReportSink.open(ReportSink.Format.CSV, out, true);
+        Batch.run(scenarios, report, false, 1);
+        // not closed: the few hundred bytes are far short of a chunk, but the scenario is over
+        long deadline = System.currentTimeMillis() + 10000;
+        while (out.size() == 0 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        String text = out.toString();
+        assertTrue(text.contains("# Scenario five: 5 pumps, 1 replication"), text);
+        assertTrue(text.contains(System.lineSeparator() + "20000.0,"), text);
+        report.close();
+    }
+}
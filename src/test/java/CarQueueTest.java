@@ -1,7 +1,8 @@
 import org.junit.jupiter.api.Test;
-import sim.Sim;
 import sim.Car;
 import sim.CarQueue;
+import sim.Parameters;
+import sim.Simulation;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -9,20 +10,45 @@ public class CarQueueTest {
 
     @Test
     void carsComeOutInSameOrder() {
-        Sim.litreStream = new java.util.Random(1);
-        Sim.arrivalStream = new java.util.Random(2);
-        Sim.balkingStream = new java.util.Random(3);
-        Sim.serviceStream = new java.util.Random(4);
+        // seeds for the arrival, litre, balking and service streams
+        Simulation sim = new Simulation(new Parameters(), 2, 1, 3, 4, null);
 
-        CarQueue queue = new CarQueue();
-        Car car1 = new Car();
-        Car car2 = new Car();
+        CarQueue queue = new CarQueue(sim);
+        Car car1 = new Car(sim);
+        Car car2 = new Car(sim);
+
+        car1.setArrivalTime(1.0);
+        car2.setArrivalTime(2.0);
 
         queue.insert(car1);
         queue.insert(car2);
 
-        assertSame(car1, queue.takeFirstCar());
-        assertSame(car2, queue.takeFirstCar());
+        // the queue stores the cars' data, so what comes out is equal rather than the same object
+        Car first = queue.takeFirstCar();
+        assertEquals(car1.getArrivalTime(), first.getArrivalTime());
+        assertEquals(car1.getLitresNeeded(), first.getLitresNeeded());
+        Car second = queue.takeFirstCar();
+        assertEquals(car2.getArrivalTime(), second.getArrivalTime());
+        assertEquals(car2.getLitresNeeded(), second.getLitresNeeded());
+        assertEquals(0, queue.getQueueSize());
+    }
+
+    @Test
+    void orderIsKeptWhileTheBufferWrapsAndGrows() {
+        Simulation sim = new Simulation(new Parameters(), 2, 1, 3, 4, null);
+        CarQueue queue = new CarQueue(sim);
+        double nextIn = 0.0;
+        double nextOut = 0.0;
+        // keep the queue partly full so the buffer wraps around, then let it grow well past its capacity
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < round; i++) queue.insert(nextIn, 10.0 + nextIn++);
+            for (int i = 0; i < round / 2; i++) {
+                Car car = queue.takeFirstCar();
+                assertEquals(nextOut, car.getArrivalTime());
+                assertEquals(10.0 + nextOut++, car.getLitresNeeded());
+            }
+        }
+        assertEquals((int) (nextIn - nextOut), queue.getQueueSize());
     }
 }
 
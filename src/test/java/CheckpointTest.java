@@ -0,0 +1,184 @@
+import org.junit.jupiter.api.Test;
+import sim.Checkpoint;
+import sim.EventList;
+import sim.Parameters;
+import sim.ReportSink;
+import sim.Seeding;
+import sim.Simulation;
+import sim.Summary;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.random.RandomGenerator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CheckpointTest {
+
+    private static Parameters scenario() {
+        Parameters params = new Parameters();
+        params.numPumps = 3;
+        params.meaninterarrivalTime = 30.0;
+        params.endingTime = 400000.0;
+        params.reportInterval = 10000.0;
+        params.detailedReport = true;
+        return params;
+    }
+
+    private static void assertSameSummary(Summary expected, Summary actual) {
+        assertEquals(expected.getSimulationTime(), actual.getSimulationTime());
+        assertEquals(expected.getArrivals(), actual.getArrivals());
+        assertEquals(expected.getBalkingCustomers(), actual.getBalkingCustomers());
+        assertEquals(expected.getNoQueueFraction(), actual.getNoQueueFraction());
+        assertEquals(expected.getTotalProfit(), actual.getTotalProfit());
+        assertEquals(expected.getAverageQueueLength(), actual.getAverageQueueLength());
+        assertEquals(expected.getPumpOccupancy(), actual.getPumpOccupancy());
+        assertEquals(expected.getWaitingTimes(), actual.getWaitingTimes());
+        assertEquals(expected.getServiceTimes(), actual.getServiceTimes());
+        assertEquals(expected.getWaitPercentile(99.0), actual.getWaitPercentile(99.0));
+    }
+
+    private static byte[] checkpoint(Simulation sim) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Checkpoint.write(sim, bytes);
+        return bytes.toByteArray();
+    }
+
+    private static String text(ByteArrayOutputStream bytes) {
+        return bytes.toString();
+    }
+
+    @Test
+    void restoredRunCarriesOnExactly() throws IOException {
+        for (String rng : new String[]{Seeding.LEGACY, "L64X128MixRandom"}) {
+            Seeding seeding = rng.equals(Seeding.LEGACY) ? Seeding.legacy(1, 2, 3, 4) : Seeding.of(rng, 42);
+            ByteArrayOutputStream straight = new ByteArrayOutputStream();
+            Simulation full = new Simulation(scenario(), seeding, 0, ReportSink.text(new PrintStream(straight)));
+            long events = full.run();
+
+            // saving does not disturb the run it is taken from
+            ByteArrayOutputStream interrupted = new ByteArrayOutputStream();
+            Simulation first = new Simulation(scenario(), seeding, 0, ReportSink.text(new PrintStream(interrupted)));
+            long before = first.runUntil(123456.0);
+            byte[] saved = checkpoint(first);
+            assertTrue(saved.length < 16384, "a compact checkpoint: " + saved.length + " bytes");
+            first.run();
+            assertEquals(text(straight), text(interrupted));
+
+            ByteArrayOutputStream resumed = new ByteArrayOutputStream();
+            Simulation second = Checkpoint.restore(new ByteArrayInputStream(saved), ReportSink.text(new PrintStream(resumed)));
+            assertTrue(second.getSimulationTime() < 123456.0);
+            assertEquals(events, before + second.run(), rng);
+            assertSameSummary(full.summary(), second.summary());
+
+            // the resumed reports are the later reports of the straight run, under a new header
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            ReportSink.text(new PrintStream(header)).header(true);
+            assertTrue(text(resumed).startsWith(text(header)));
+            assertTrue(text(straight).endsWith(text(resumed).substring(text(header).length())), rng);
+        }
+    }
+
+    @Test
+    void checkpointCoversBatchMeansAndWarmUp() throws IOException {
+        Parameters params = scenario();
+        params.reportInterval = 0.0;
+        params.targetPrecision = 0.02;
+        params.warmUpDetection = true;
+        Simulation full = new Simulation(params, 1, 2, 3, 4, null);
+        long events = full.run();
+        for (double at : new double[]{5000.0, 60000.0, 150000.0}) {
+            Simulation first = new Simulation(params, 1, 2, 3, 4, null);
+            long before = first.runUntil(at);
+            Simulation second = Checkpoint.restore(new ByteArrayInputStream(checkpoint(first)), null);
+            assertEquals(events, before + second.run(), "checkpoint at " + at);
+            assertSameSummary(full.summary(), second.summary());
+            assertEquals(full.getWarmUp().getTruncationTime(), second.getWarmUp().getTruncationTime());
+            assertEquals(full.getBatchMeans().getBatches(), second.getBatchMeans().getBatches());
+        }
+    }
+
+    @Test
+    void whatIfRunsShareTheFuture() throws IOException {
+        Simulation warmed = new Simulation(scenario(), 1, 2, 3, 4, null);
+        warmed.runUntil(100000.0);
+        byte[] saved = checkpoint(warmed);
+        warmed.run();
+
+        // another event-list backend and a higher pump cost: the same cars, a different profit
+        Parameters costly = scenario();
+        costly.pumpCost = 100.0;
+        costly.eventListBackend = EventList.Backend.CALENDAR;
+        Simulation whatIf = Checkpoint.restore(new ByteArrayInputStream(saved), costly, null);
+        whatIf.run();
+        assertEquals(warmed.summary().getWaitingTimes(), whatIf.summary().getWaitingTimes());
+        assertEquals(warmed.summary().getTotalProfit() - 3 * 80.0, whatIf.summary().getTotalProfit(), 1e-6);
+
+        // a longer run carries on past the old ending time
+        Parameters longer = scenario();
+        longer.endingTime = 500000.0;
+        Simulation extended = Checkpoint.restore(new ByteArrayInputStream(saved), longer, null);
+        extended.run();
+        assertEquals(500000.0, extended.summary().getSimulationTime());
+
+        // the pump count is part of the state
+        Parameters bigger = scenario();
+        bigger.numPumps = 4;
+        assertThrows(IllegalArgumentException.class, () -> Checkpoint.restore(new ByteArrayInputStream(saved), bigger, null));
+    }
+
+    @Test
+    void forksStartTogetherAndThenDiverge() throws IOException {
+        Simulation warmed = new Simulation(scenario(), 1, 2, 3, 4, null);
+        warmed.runUntil(100000.0);
+        byte[] saved = checkpoint(warmed);
+        Summary atFork = warmed.summary();
+
+        Simulation a = Checkpoint.fork(new ByteArrayInputStream(saved), 0, null, null);
+        Simulation b = Checkpoint.fork(new ByteArrayInputStream(saved), 1, null, null);
+        assertSameSummary(atFork, a.summary());
+        assertSameSummary(atFork, b.summary());
+        a.run();
+        b.run();
+        warmed.run();
+        assertNotEquals(a.summary().getWaitingTimes(), b.summary().getWaitingTimes());
+        assertNotEquals(warmed.summary().getWaitingTimes(), a.summary().getWaitingTimes());
+        // a branch is reproducible
+        Simulation again = Checkpoint.fork(new ByteArrayInputStream(saved), 1, null, null);
+        again.run();
+        assertSameSummary(b.summary(), again.summary());
+    }
+
+    @Test
+    void branchesHaveStreamsOfTheirOwn() throws IOException {
+        for (Seeding seeding : new Seeding[]{Seeding.legacy(1, 2, 3, 4), Seeding.of("L64X128MixRandom", 7),
+                Seeding.of("Xoshiro256PlusPlus", 7)}) {
+            Set<Long> firsts = new HashSet<>();
+            for (int r = 0; r < 20; r++) {
+                for (RandomGenerator g : seeding.streams(r)) assertTrue(firsts.add(g.nextLong()), seeding.toString());
+            }
+            for (int r = 0; r < 2; r++) {
+                for (int k = 0; k < 5; k++) {
+                    for (RandomGenerator g : seeding.streams(r, k)) assertTrue(firsts.add(g.nextLong()), seeding + " branch " + k);
+                }
+            }
+            assertEquals(seeding.streams(1, 3)[0].nextLong(), seeding.streams(1, 3)[0].nextLong());
+        }
+
+        // a branch resumes on its own streams, and is not forked again
+        Simulation warmed = new Simulation(scenario(), 1, 2, 3, 4, null);
+        warmed.runUntil(100000.0);
+        Simulation branch = Checkpoint.fork(new ByteArrayInputStream(checkpoint(warmed)), 2, null, null);
+        branch.runUntil(200000.0);
+        byte[] saved = checkpoint(branch);
+        Simulation resumed = Checkpoint.restore(new ByteArrayInputStream(saved), null);
+        branch.run();
+        resumed.run();
+        assertSameSummary(branch.summary(), resumed.summary());
+        assertThrows(IllegalArgumentException.class, () -> Checkpoint.fork(new ByteArrayInputStream(saved), 0, null, null));
+    }
+}
@@ -0,0 +1,159 @@
+import org.junit.jupiter.api.Test;
+import sim.Coordinator;
+import sim.Parameters;
+import sim.Replications;
+import sim.ResultCache;
+import sim.Seeding;
+import sim.Summary;
+import sim.Sweep;
+import sim.Worker;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CoordinatorTest {
+    private static final Seeding SEEDING = Seeding.legacy(1, 2, 3, 4);
+
+    private static List<Parameters> study() {
+        Parameters base = new Parameters();
+        base.endingTime = 20000.0;
+        return Sweep.grid(base, List.of(Sweep.Axis.parse("numPumps=1,3")));
+    }
+
+    private static void assertSameAsOneJvm(List<Parameters> scenarios, int replications, Summary[][] results) {
+        for (int s = 0; s < scenarios.size(); s++) {
+            List<Summary> local = Replications.run(scenarios.get(s), SEEDING, replications, 1);
+            assertEquals(local, List.of(results[s]));
+            assertEquals(Replications.merge(local), Coordinator.merge(results).get(s));
+        }
+    }
+
+    private static Thread startWorker(int port) {
+        Thread t = new Thread(new Worker("localhost", port));
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    /** greet: open a connection as a worker would, and return the coordinator's answer. */
+    private static int greet(Socket socket, String codeVersion) throws IOException {
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        out.write("SIMW".getBytes(StandardCharsets.US_ASCII));
+        out.writeInt(2);
+        out.writeUTF(codeVersion);
+        out.flush();
+        return new DataInputStream(socket.getInputStream()).readUnsignedByte();
+    }
+
+    @Test
+    void resultsDoNotDependOnTheWorkers() throws Exception {
+        List<Parameters> scenarios = study();
+        try (Coordinator coordinator = new Coordinator(0)) {
+            for (int i = 0; i < 3; i++) startWorker(coordinator.getPort());
+            assertSameAsOneJvm(scenarios, 5, coordinator.run(scenarios, SEEDING, 5));
+            // a second study on the same workers
+            assertSameAsOneJvm(scenarios, 2, coordinator.run(scenarios, SEEDING, 2));
+        }
+    }
+
+    @Test
+    void aLostWorkersUnitGoesToAnother() throws Exception {
+        List<Parameters> scenarios = study();
+        try (Coordinator coordinator = new Coordinator(0)) {
+            // a worker that takes a unit and vanishes, then one that works
+            Thread flaky = new Thread(() -> {
+                try (Socket socket = new Socket("localhost", coordinator.getPort())) {
+                    assertEquals(1, greet(socket, ResultCache.codeVersion()));
+                    DataInputStream in = new DataInputStream(socket.getInputStream());
+                    assertEquals(3, in.readUnsignedByte());
+                    DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                    out.writeByte(7);
+                    out.writeInt(in.readInt());
+                    out.flush();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            flaky.start();
+            Thread later = new Thread(() -> {
+                try {
+                    flaky.join();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                startWorker(coordinator.getPort());
+            });
+            later.start();
+            Summary[][] results = coordinator.run(scenarios, SEEDING, 3);
+            assertEquals(1, coordinator.getRetries());
+            assertSameAsOneJvm(scenarios, 3, results);
+        }
+    }
+
+    @Test
+    void connectionsLostBeforeTakingAUnitDoNotCountAsAttempts() throws Exception {
+        List<Parameters> scenarios = study();
+        try (Coordinator coordinator = new Coordinator(0)) {
+            // more dead connections than a unit has attempts, each handed a unit it never takes
+            for (int i = 0; i < 2 * 3; i++) {
+                try (Socket socket = new Socket("localhost", coordinator.getPort())) {
+                    assertEquals(1, greet(socket, ResultCache.codeVersion()));
+                }
+            }
+            startWorker(coordinator.getPort());
+            Summary[][] results = coordinator.run(scenarios, SEEDING, 3);
+            assertEquals(0, coordinator.getRetries());
+            assertSameAsOneJvm(scenarios, 3, results);
+        }
+    }
+
+    @Test
+    void workersWithOtherCodeAreTurnedAway() throws Exception {
+        try (Coordinator coordinator = new Coordinator(0);
+             Socket socket = new Socket("localhost", coordinator.getPort())) {
+            assertEquals(2, greet(socket, "some other build"));
+        }
+    }
+
+    @Test
+    void aFailingRunFailsTheStudy() throws Exception {
+        Parameters bad = new Parameters();
+        bad.endingTime = 1000.0;
+        bad.set("fuelMix", "lpg=1");
+        bad.set("pumpTypes", "petrol: count=2 fuels=petrol");
+        try (Coordinator coordinator = new Coordinator(0)) {
+            startWorker(coordinator.getPort());
+            IllegalStateException e = assertThrows(IllegalStateException.class,
+                    () -> coordinator.run(List.of(bad), SEEDING, 2));
+            assertTrue(e.getMessage().contains("lpg"), e.getMessage());
+        }
+    }
+
+    @Test
+    void aUnitTheWorkersCannotReadFailsTheStudy() throws Exception {
+        Parameters bad = new Parameters();
+        bad.endingTime = 1000.0;
+        bad.pumpPolicy = "cheapest"; // not checked here, but rejected where the worker reads it
+        try (Coordinator coordinator = new Coordinator(0)) {
+            startWorker(coordinator.getPort());
+            IllegalStateException e = assertThrows(IllegalStateException.class,
+                    () -> coordinator.run(List.of(bad), SEEDING, 2));
+            assertTrue(e.getMessage().contains("cheapest"), e.getMessage());
+        }
+    }
+
+    @Test
+    void localWorkerJvms() throws Exception {
+        List<Parameters> scenarios = study();
+        try (Coordinator coordinator = new Coordinator(0)) {
+            coordinator.startLocalWorkers(2);
+            assertSameAsOneJvm(scenarios, 4, coordinator.run(scenarios, SEEDING, 4));
+        }
+    }
+}
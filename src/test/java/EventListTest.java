@@ -1,7 +1,13 @@
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 import sim.Event;
 import sim.EventList;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class EventListTest {
@@ -28,4 +34,53 @@ public class EventListTest {
         EventList list = new EventList();
         assertNull(list.takeNextEvent(), "Empty event list should return null");
     }
+
+    @ParameterizedTest
+    @EnumSource(EventList.Backend.class)
+    void equalTimesComeOutInInsertionOrder(EventList.Backend backend) {
+        EventList list = new EventList(backend);
+        TestEvent a = new TestEvent(5.0);
+        TestEvent b = new TestEvent(5.0);
+        TestEvent c = new TestEvent(1.0);
+        TestEvent d = new TestEvent(5.0);
+        list.insert(a);
+        list.insert(b);
+        list.insert(c);
+        list.insert(d);
+
+        assertSame(c, list.takeNextEvent());
+        assertSame(a, list.takeNextEvent());
+        assertSame(b, list.takeNextEvent());
+        assertSame(d, list.takeNextEvent());
+        assertNull(list.takeNextEvent());
+    }
+
+    @ParameterizedTest
+    @EnumSource(EventList.Backend.class)
+    void backendMatchesSortedListUnderHoldModel(EventList.Backend backend) {
+        // Reschedule events repeatedly, with many exact ties, and compare against the original list.
+        assertEquals(hold(new EventList(EventList.Backend.SORTED_LIST)), hold(new EventList(backend)));
+    }
+
+    // An event that remembers the order in which it was created
+    static class NumberedEvent extends TestEvent {
+        final int number;
+        NumberedEvent(double t, int number) { super(t); this.number = number; }
+    }
+
+    private static List<Integer> hold(EventList list) {
+        Random random = new Random(270);
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < 500; i++) list.insert(new NumberedEvent(random.nextInt(100), i));
+        for (int i = 0; i < 20000; i++) {
+            Event e = list.takeNextEvent();
+            order.add(((NumberedEvent) e).number);
+            // a mix of ties, near-future and far-future reschedules
+            double step = (i % 3 == 0) ? 0.0 : (i % 3 == 1) ? random.nextInt(5) : random.nextDouble() * 1000;
+            e.setTime(e.getTime() + step);
+            list.insert(e);
+        }
+        while (list.size() > 0) order.add(((NumberedEvent) list.takeNextEvent()).number);
+        return order;
+    }
 }
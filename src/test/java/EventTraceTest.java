@@ -0,0 +1,74 @@
+import org.junit.jupiter.api.Test;
+import sim.EventTrace;
+import sim.Parameters;
+import sim.Simulation;
+import sim.Summary;
+import sim.TraceReader;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EventTraceTest {
+
+    private static Parameters scenario() {
+        Parameters params = new Parameters();
+        params.numPumps = 3;
+        params.endingTime = 200000.0;
+        params.meaninterarrivalTime = 40.0;
+        return params;
+    }
+
+    @Test
+    void traceAgreesWithTheStatistics() throws Exception {
+        Path file = Files.createTempFile("sim", ".trace");
+        try {
+            Parameters params = scenario();
+            params.traceFile = file.toString();
+            Simulation traced = new Simulation(params, 1, 2, 3, 4, null);
+            long events = traced.run();
+            Summary s = traced.summary();
+            // tracing does not change the run
+            Simulation plain = new Simulation(scenario(), 1, 2, 3, 4, null);
+            assertEquals(plain.run(), events);
+            assertEquals(plain.summary().getAverageWait(), s.getAverageWait());
+
+            long[] perType = new long[6];
+            double[] totals = new double[2]; // litres sold or missed, waiting time
+            double[] last = {Double.NEGATIVE_INFINITY};
+            long all = TraceReader.scan(file, new TraceReader.Filter(), r -> {
+                perType[r.type]++;
+                if (r.type == EventTrace.DEPARTURE || r.type == EventTrace.BALK) totals[0] += r.litres;
+                if (r.type == EventTrace.SERVICE) totals[1] += r.wait;
+                assertTrue(r.time >= last[0], "records in time order");
+                last[0] = r.time;
+            });
+            assertEquals(s.getArrivals(), perType[EventTrace.ARRIVAL] + perType[EventTrace.BALK]);
+            assertEquals(s.getBalkingCustomers(), perType[EventTrace.BALK]);
+            assertEquals(s.getCustomersServed(), perType[EventTrace.DEPARTURE]);
+            assertEquals(s.getWaitingTimes().getCount(), perType[EventTrace.SERVICE]);
+            assertEquals(1, perType[EventTrace.END]);
+            double litres = s.getAverageLitres() * s.getArrivals();
+            assertEquals(litres, totals[0], 1e-9 * litres);
+            double waiting = s.getWaitingTimes().getMean() * s.getWaitingTimes().getCount();
+            assertEquals(waiting, totals[1], 1e-9 * waiting + 1e-9);
+            assertEquals(Files.size(file), 16 + 40 * all, "file cut to its records");
+
+            // a filter sees exactly the matching records
+            TraceReader.Filter filter = new TraceReader.Filter();
+            filter.type = EventTrace.SERVICE;
+            filter.pump = 2;
+            filter.from = 50000.0;
+            filter.to = 100000.0;
+            long matched = TraceReader.scan(file, filter, r -> {
+                assertEquals(EventTrace.SERVICE, r.type);
+                assertEquals(2, r.pump);
+                assertTrue(r.time >= 50000.0 && r.time <= 100000.0);
+            });
+            assertTrue(matched > 0);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+import org.junit.jupiter.api.Test;
+import sim.Batch;
+import sim.Checkpoint;
+import sim.Parameters;
+import sim.ReportSink;
+import sim.Simulation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HeterogeneousPumpsTest {
+    private static final String MIXED = "fast: count=2 base=60 perLitre=0.3 fuels=petrol+diesel; slow: count=3 fuels=petrol";
+
+    private static Parameters mixed(String policy) {
+        Parameters p = new Parameters();
+        p.endingTime = 100000.0;
+        p.meaninterarrivalTime = 40.0;
+        p.set("pumpTypes", MIXED);
+        p.set("fuelMix", "petrol=0.8,diesel=0.2");
+        p.set("pumpPolicy", policy);
+        return p;
+    }
+
+    private static Simulation run(Parameters p) {
+        Simulation sim = new Simulation(p, 1, 2, 3, 4, null);
+        sim.run();
+        return sim;
+    }
+
+    @Test
+    void identicalPumpTypesRunAsThePlainStation() {
+        Parameters plain = new Parameters();
+        plain.endingTime = 50000.0;
+        plain.numPumps = 3;
+        Parameters typed = plain.copy();
+        typed.set("pumpTypes", "pump: count=3");
+        assertEquals(run(plain).summary(), run(typed).summary());
+    }
+
+    @Test
+    void aFuelMixDrawsFromItsOwnStream() {
+        // every pump dispenses both fuels, so the fuels change nothing unless they shift other draws
+        Parameters plain = new Parameters();
+        plain.endingTime = 50000.0;
+        plain.set("pumpTypes", "pump: count=3 fuels=petrol+diesel");
+        Parameters fuelled = plain.copy();
+        fuelled.set("fuelMix", "petrol=0.5,diesel=0.5");
+        assertEquals(run(plain).summary(), run(fuelled).summary());
+    }
+
+    @Test
+    void aBatchScenarioCountsPumpsOfEveryType() throws IOException {
+        List<Batch.Scenario> scenarios = Batch.parse(new StringReader(String.join("\n",
+                "endingTime = 20000",
+                "seeds = 1, 2, 3, 4",
+                "[mixed]",
+                "pumpTypes = fast: count=2 base=60; slow: count=3")), new Parameters());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ReportSink report = ReportSink.open(ReportSink.Format.CSV, out, false);
+        Batch.run(scenarios, report, false, 1);
+        report.close();
+        assertTrue(out.toString().contains("# Scenario mixed: 5 pumps, 1 replication"), out.toString());
+    }
+
+    @Test
+    void leastUtilisedBalancesThePumps() {
+        double[] u = run(mixed("leastUtilised")).getPumpUtilisation();
+        for (double x : u) assertEquals(u[0], x, 0.02);
+    }
+
+    @Test
+    void fastestPrefersTheFastPumps() {
+        double[] fastest = run(mixed("fastest")).getPumpUtilisation();
+        double[] lifo = run(mixed("lifo")).getPumpUtilisation();
+        assertEquals(5, fastest.length);
+        assertTrue(fastest[0] + fastest[1] > lifo[0] + lifo[1]);
+        // ties go to the lower pump number, so the last slow pump is the one left idle most
+        assertTrue(fastest[0] > fastest[1] && fastest[2] > fastest[3] && fastest[3] > fastest[4]);
+    }
+
+    @Test
+    void matchKeepsTheVersatilePumpsFree() {
+        double[] match = run(mixed("match")).getPumpUtilisation();
+        double[] lifo = run(mixed("lifo")).getPumpUtilisation();
+        assertTrue(match[0] + match[1] < lifo[0] + lifo[1]);
+        assertTrue(match[2] > lifo[2]);
+    }
+
+    @Test
+    void carsOnlyUsePumpsWithTheirFuel() {
+        Parameters p = mixed("lifo");
+        p.set("pumpTypes", "petrol: count=2 fuels=petrol; diesel: count=2 fuels=diesel");
+        p.set("fuelMix", "petrol=1");
+        double[] u = run(p).getPumpUtilisation();
+        assertTrue(u[0] > 0.0 && u[1] > 0.0);
+        assertEquals(0.0, u[2]);
+        assertEquals(0.0, u[3]);
+
+        Parameters bad = mixed("lifo");
+        bad.set("fuelMix", "petrol=0.5,lpg=0.5");
+        assertThrows(IllegalArgumentException.class, () -> new Simulation(bad, 1, 2, 3, 4, null));
+        assertThrows(IllegalArgumentException.class, () -> new Parameters().set("pumpPolicy", "random"));
+    }
+
+    @Test
+    void checkpointCarriesOnExactly() throws IOException {
+        for (String policy : new String[]{"lifo", "fastest", "leastUtilised", "match"}) {
+            Simulation straight = run(mixed(policy));
+            Simulation first = new Simulation(mixed(policy), 1, 2, 3, 4, null);
+            first.runUntil(37000.0);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            Checkpoint.write(first, bytes);
+            Simulation second = Checkpoint.restore(new ByteArrayInputStream(bytes.toByteArray()), null);
+            second.run();
+            assertEquals(straight.summary(), second.summary(), policy);
+            assertArrayEquals(straight.getPumpUtilisation(), second.getPumpUtilisation(), 1e-9, policy);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import sim.Parameters;
+import sim.Simulation;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MonitorTest {
+
+    private static Parameters scenario() {
+        Parameters params = new Parameters();
+        params.numPumps = 2;
+        params.endingTime = 100000.0;
+        params.reportInterval = 10000.0;
+        params.monitor = true;
+        return params;
+    }
+
+    @Test
+    void theRunIsVisibleInJmxWhileItGoesOn() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Simulation sim = new Simulation(scenario(), 1, 2, 3, 4, null);
+        long events = sim.runUntil(50000.0);
+
+        Set<ObjectName> names = server.queryNames(new ObjectName("sim:type=Simulation,*"), null);
+        assertEquals(1, names.size());
+        ObjectName name = names.iterator().next();
+        assertEquals(events, (Long) server.getAttribute(name, "EventsProcessed"));
+        assertEquals(sim.getSimulationTime(), (Double) server.getAttribute(name, "SimulationTime"));
+        int busy = (Integer) server.getAttribute(name, "BusyPumps");
+        assertTrue(busy >= 0 && busy <= 2);
+
+        long total = 0;
+        for (Object row : ((TabularData) server.getAttribute(name, "EventCounts")).values()) {
+            CompositeData entry = (CompositeData) row;
+            long count = (Long) entry.get("value");
+            if (entry.get("key").equals("Report")) assertEquals(4, count); // the one at 50000 is still pending
+            total += count;
+        }
+        assertEquals(events, total);
+
+        sim.run();
+        assertTrue(server.queryNames(new ObjectName("sim:type=Simulation,*"), null).isEmpty());
+    }
+
+    @Test
+    void everyEventIsRecordedByJfr() throws Exception {
+        Path file = Files.createTempFile("sim", ".jfr");
+        try {
+            long events;
+            try (Recording recording = new Recording()) {
+                recording.enable("sim.Event");
+                recording.enable("sim.RunUntil");
+                recording.start();
+                events = new Simulation(scenario(), 1, 2, 3, 4, null).run();
+                recording.stop();
+                recording.dump(file);
+            }
+            long handled = 0, loops = 0, arrivals = 0;
+            for (RecordedEvent e : RecordingFile.readAllEvents(file)) {
+                if (e.getEventType().getName().equals("sim.Event")) {
+                    handled++;
+                    if (e.getString("kind").equals("Arrival")) arrivals++;
+                } else if (e.getEventType().getName().equals("sim.RunUntil")) {
+                    loops++;
+                    assertEquals(events, e.getLong("events"));
+                }
+            }
+            assertEquals(events, handled);
+            assertEquals(1, loops);
+            assertTrue(arrivals > 0);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void instrumentingDoesNotChangeTheRun() {
+        Parameters plain = scenario();
+        plain.monitor = false;
+        Simulation a = new Simulation(plain, 1, 2, 3, 4, null);
+        Simulation b = new Simulation(scenario(), 1, 2, 3, 4, null);
+        assertEquals(a.run(), b.run());
+        assertEquals(a.summary().getTotalProfit(), b.summary().getTotalProfit());
+    }
+
+    @Test
+    void aRunIsRegisteredFromItsFirstStepUntilClosed() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName runs = new ObjectName("sim:type=Simulation,*");
+        Simulation sim = new Simulation(scenario(), 1, 2, 3, 4, null);
+        assertTrue(server.queryNames(runs, null).isEmpty());
+        sim.runUntil(20000.0);
+        assertEquals(1, server.queryNames(runs, null).size());
+        // given up half way: close withdraws it, and it does not come back
+        sim.close();
+        assertTrue(server.queryNames(runs, null).isEmpty());
+        assertEquals(0, sim.runUntil(50000.0));
+        assertTrue(server.queryNames(runs, null).isEmpty());
+        assertTrue(sim.isFinished());
+    }
+}
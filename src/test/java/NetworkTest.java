@@ -0,0 +1,65 @@
+import org.junit.jupiter.api.Test;
+import sim.Network;
+import sim.Parameters;
+import sim.Seeding;
+import sim.Summary;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NetworkTest {
+
+    private static Network run(int threads) {
+        Parameters base = new Parameters();
+        base.numPumps = 2;
+        base.endingTime = 20000.0;
+        Network network = Network.region(24, base, Seeding.fromInput(1, 2, 3, 4), 0, 7L);
+        network.run(threads);
+        return network;
+    }
+
+    @Test
+    void resultsDoNotDependOnTheThreadCount() {
+        Network one = run(1);
+        for (int threads = 2; threads <= 3; threads++) {
+            Network many = run(threads);
+            assertEquals(one.getWindows(), many.getWindows());
+            for (int i = 0; i < one.size(); i++) {
+                Summary a = one.summary(i);
+                Summary b = many.summary(i);
+                assertEquals(a.getArrivals(), b.getArrivals(), "station " + i);
+                assertEquals(a.getCustomersServed(), b.getCustomersServed(), "station " + i);
+                assertEquals(a.getTotalProfit(), b.getTotalProfit(), 0.0, "station " + i);
+                assertEquals(a.getAverageWait(), b.getAverageWait(), 0.0, "station " + i);
+                assertEquals(one.getRoutedOut(i), many.getRoutedOut(i));
+                assertEquals(one.getLost(i), many.getLost(i));
+            }
+        }
+    }
+
+    @Test
+    void balkingCarsDriveOnToNeighbours() {
+        Network network = run(1);
+        long routed = 0, arrived = 0;
+        for (int i = 0; i < network.size(); i++) {
+            routed += network.getRoutedOut(i);
+            arrived += network.getArrivedByRoute(i);
+            Summary s = network.summary(i);
+            // every balking car either drives on or gives up
+            assertEquals(s.getBalkingCustomers(), network.getRoutedOut(i) + network.getLost(i), 0.0);
+        }
+        assertTrue(routed > 0);
+        // cars still on the road at the end never arrive
+        assertTrue(arrived <= routed && arrived > routed / 2);
+        assertTrue(network.getLookahead() >= 60.0);
+    }
+
+    @Test
+    void aNetworkNeedsLinksBetweenItsStations() {
+        Parameters base = new Parameters();
+        assertThrows(IllegalArgumentException.class, () -> Network.region(1, base, Seeding.fromInput(1, 2, 3, 4), 0, 7L));
+        assertThrows(IllegalArgumentException.class, () -> new Network(List.of(base, base), new int[2][0],
+                new double[2][0], Seeding.fromInput(1, 2, 3, 4), 0, 3, 7L));
+    }
+}
@@ -0,0 +1,53 @@
+import org.junit.jupiter.api.Test;
+import sim.Optimisation;
+import sim.Parameters;
+import sim.Seeding;
+import sim.Sweep;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OptimisationTest {
+    private static final Seeding SEEDING = Seeding.legacy(1, 2, 3, 4);
+
+    private static Parameters base() {
+        Parameters p = new Parameters();
+        p.endingTime = 50000.0;
+        return p;
+    }
+
+    @Test
+    void findsTheBestPumpCountAndSpendsLittleOnTheWorst() {
+        Sweep.Axis axis = Sweep.Axis.parse("numPumps=1:8");
+        Optimisation.Result result = Optimisation.run(base(), axis, SEEDING, 0.9, 5, 2000, 0.0, 2);
+        assertTrue(result.reachedTarget());
+        assertTrue(result.getPcs() >= 0.9);
+        // the best has the highest mean, and one pump never gets more than its initial replications
+        for (int i = 0; i < axis.size(); i++) {
+            assertTrue(result.getProfit(i).getMean() <= result.getProfit(result.getBest()).getMean());
+        }
+        assertEquals(5, result.getProfit(0).getCount());
+        assertTrue(result.getProfit(result.getBest()).getCount() > 5);
+        assertTrue(result.getReplications() < 2000);
+    }
+
+    @Test
+    void theAnswerDoesNotDependOnTheThreads() {
+        Sweep.Axis axis = Sweep.Axis.parse("numPumps=3:7");
+        Optimisation.Result one = Optimisation.run(base(), axis, SEEDING, 0.9, 4, 600, 0.0, 1);
+        Optimisation.Result four = Optimisation.run(base(), axis, SEEDING, 0.9, 4, 600, 0.0, 4);
+        assertEquals(one.getBest(), four.getBest());
+        assertEquals(one.getPcs(), four.getPcs());
+        for (int i = 0; i < axis.size(); i++) assertEquals(one.getProfit(i), four.getProfit(i));
+    }
+
+    @Test
+    void aTieStopsOnTheBudgetUnlessIndifferent() {
+        Sweep.Axis axis = new Sweep.Axis("numPumps", "4", "4");
+        Optimisation.Result tie = Optimisation.run(base(), axis, SEEDING, 0.95, 3, 40, 0.0, 1);
+        assertFalse(tie.reachedTarget());
+        assertEquals(40, tie.getReplications());
+        Optimisation.Result indifferent = Optimisation.run(base(), axis, SEEDING, 0.95, 3, 40, 10.0, 1);
+        assertTrue(indifferent.reachedTarget());
+        assertThrows(IllegalArgumentException.class, () -> Optimisation.run(base(), axis, SEEDING, 1.0, 3, 40, 0.0, 1));
+    }
+}
@@ -0,0 +1,56 @@
+import org.junit.jupiter.api.Test;
+import sim.Parameters;
+import sim.Replications;
+import sim.Seeding;
+import sim.Simulation;
+import sim.Summary;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReplicationsTest {
+
+    private static Parameters scenario() {
+        Parameters params = new Parameters();
+        params.numPumps = 2;
+        params.endingTime = 50000.0;
+        return params;
+    }
+
+    @Test
+    void parallelReplicationsMatchSingleThreadedRuns() {
+        Seeding seeds = Seeding.legacy(11, 22, 33, 44);
+        List<Summary> parallel = Replications.run(scenario(), seeds, 8, 4);
+        List<Summary> sequential = Replications.run(scenario(), seeds, 8, 1);
+        assertEquals(sequential, parallel);
+        assertEquals(8, Replications.merge(parallel).getReplications());
+    }
+
+    @Test
+    void replicationZeroIsThePlainRun() {
+        Simulation sim = new Simulation(scenario(), 11, 22, 33, 44, null);
+        sim.run();
+        assertEquals(sim.summary(), Replications.runOne(scenario(), Seeding.legacy(11, 22, 33, 44), 0));
+    }
+
+    @Test
+    void derivedStreamsAreReproducibleAndDistinctPerReplication() {
+        for (String algorithm : new String[]{"L64X128MixRandom", "Xoshiro256PlusPlus"}) {
+            Seeding seeding = Seeding.of(algorithm, 270);
+            List<Summary> first = Replications.run(scenario(), seeding, 4, 2);
+            List<Summary> again = Replications.run(scenario(), Seeding.parse(seeding.toString()), 4, 1);
+            assertEquals(first, again, algorithm);
+            for (int i = 0; i < first.size(); i++) {
+                for (int j = i + 1; j < first.size(); j++) assertNotEquals(first.get(i), first.get(j), algorithm);
+            }
+            // the four streams of one replication are different streams
+            double[] firstDraws = new double[4];
+            RandomGenerator[] streams = seeding.streams(3);
+            for (int s = 0; s < 4; s++) firstDraws[s] = streams[s].nextDouble();
+            assertEquals(4, Arrays.stream(firstDraws).distinct().count(), algorithm);
+        }
+    }
+}
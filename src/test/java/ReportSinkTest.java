@@ -0,0 +1,97 @@
+import org.junit.jupiter.api.Test;
+import sim.BinaryReportSink;
+import sim.Parameters;
+import sim.ReportSink;
+import sim.Sim;
+import sim.Simulation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReportSinkTest {
+
+    private static Parameters scenario() {
+        // thousands of reports, so the background writer cycles through all its buffers
+        Parameters params = new Parameters();
+        params.numPumps = 2;
+        params.endingTime = 500000.0;
+        params.reportInterval = 100.0;
+        params.detailedReport = true;
+        return params;
+    }
+
+    private static byte[] report(ReportSink.Format format, boolean async) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ReportSink report = ReportSink.open(format, bytes, async);
+        new Simulation(scenario(), 1, 2, 3, 4, report).run();
+        report.close();
+        return bytes.toByteArray();
+    }
+
+    @Test
+    void backgroundWriterWritesTheSameBytes() {
+        for (ReportSink.Format format : ReportSink.Format.values()) {
+            assertArrayEquals(report(format, false), report(format, true), format.name());
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream console = new PrintStream(bytes);
+        new Simulation(scenario(), 1, 2, 3, 4, ReportSink.text(console)).run();
+        console.flush();
+        assertArrayEquals(bytes.toByteArray(), report(ReportSink.Format.TEXT, true));
+    }
+
+    @Test
+    void csvAndBinaryCarryTheSameNumbers() throws IOException {
+        String[] csv = new String(report(ReportSink.Format.CSV, true)).split(System.lineSeparator());
+        List<double[]> rows = BinaryReportSink.readRows(new ByteArrayInputStream(report(ReportSink.Format.BINARY, true)));
+        assertEquals(5000, rows.size());
+        assertEquals(csv.length - 1, rows.size());
+        for (int r = 0; r < rows.size(); r += 499) {
+            String[] fields = csv[r + 1].split(",", -1);
+            assertEquals(20, fields.length);
+            for (int c = 0; c < fields.length; c++) {
+                double expected = fields[c].isEmpty() ? Double.NaN : Double.parseDouble(fields[c]);
+                assertEquals(expected, rows.get(r)[c], "row " + r + " column " + c);
+            }
+        }
+        assertEquals(500000.0, rows.get(rows.size() - 1)[0]);
+    }
+
+    /** sim: the output of Sim.main for the given report format on the seven input lines. */
+    private static byte[] sim(String format) throws IOException {
+        InputStream stdin = System.in;
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setProperty("sim.report", format);
+        try {
+            System.setIn(new ByteArrayInputStream("1000\n10000\n3\n1\n2\n3\n4\n".getBytes()));
+            System.setOut(new PrintStream(bytes));
+            Sim.main(new String[0]);
+        } finally {
+            System.setOut(stdout);
+            System.setIn(stdin);
+            System.clearProperty("sim.report");
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    void simWritesWholeCsvAndBinaryReports() throws IOException {
+        List<double[]> rows = BinaryReportSink.readRows(new ByteArrayInputStream(sim("binary")));
+        assertEquals(10, rows.size());
+        String[] csv = new String(sim("csv")).split(System.lineSeparator());
+        assertTrue(csv[0].startsWith("time,arrivals,"), csv[0]);
+        assertEquals("# This simulation run uses 3 pumps and the following random number seeds:", csv[1]);
+        assertEquals(10, csv.length - 2);
+        for (int r = 0; r < rows.size(); r++) {
+            assertEquals(Double.parseDouble(csv[r + 2].split(",", -1)[0]), rows.get(r)[0]);
+        }
+        assertEquals(10000.0, rows.get(rows.size() - 1)[0]);
+    }
+}
@@ -0,0 +1,124 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sim.Parameters;
+import sim.Replications;
+import sim.ResultCache;
+import sim.Seeding;
+import sim.Summary;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResultCacheTest {
+
+    private static Parameters scenario(int pumps) {
+        Parameters params = new Parameters();
+        params.numPumps = pumps;
+        params.endingTime = 20000.0;
+        return params;
+    }
+
+    private static long files(Path dir) throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            return walk.filter(p -> p.toString().endsWith(".result")).count();
+        }
+    }
+
+    @Test
+    void theKeyCoversWhatChangesTheResult() {
+        Seeding seeding = Seeding.legacy(1, 2, 3, 4);
+        String key = ResultCache.key(scenario(2), seeding, 0);
+        assertEquals(key, ResultCache.key(scenario(2), seeding, 0));
+        assertNotEquals(key, ResultCache.key(scenario(3), seeding, 0));
+        assertNotEquals(key, ResultCache.key(scenario(2), seeding, 1));
+        assertNotEquals(key, ResultCache.key(scenario(2), Seeding.legacy(1, 2, 3, 5), 0));
+        assertNotEquals(key, ResultCache.key(scenario(2), Seeding.of("L64X128MixRandom", 1), 0));
+        Parameters detailed = scenario(2);
+        detailed.detailedReport = true;
+        detailed.monitor = true;
+        assertEquals(key, ResultCache.key(detailed, seeding, 0));
+    }
+
+    @Test
+    void hitsComeFromMemoryThenFromDisk(@TempDir Path dir) throws IOException {
+        Seeding seeding = Seeding.legacy(1, 2, 3, 4);
+        Summary direct = Replications.runOne(scenario(2), seeding, 0);
+
+        ResultCache cache = new ResultCache(dir, 1 << 20, 16);
+        assertEquals(direct, cache.run(scenario(2), seeding, 0));
+        assertEquals(1, cache.getMisses());
+        assertEquals(direct, cache.run(scenario(2), seeding, 0));
+        assertEquals(1, cache.getMemoryHits());
+        assertEquals(1, files(dir));
+
+        // another process: the entry is read back from disk, to the last bit
+        ResultCache again = new ResultCache(dir, 1 << 20, 16);
+        Summary cached = again.get(ResultCache.key(scenario(2), seeding, 0));
+        assertEquals(direct, cached);
+        assertEquals(direct.getWaitPercentile(90.0), cached.getWaitPercentile(90.0));
+        assertEquals(1, again.getDiskHits());
+        assertTrue(again.getDiskBytes() > 0);
+    }
+
+    @Test
+    void theDiskTierStaysWithinItsBound(@TempDir Path dir) throws Exception {
+        Seeding seeding = Seeding.legacy(1, 2, 3, 4);
+        ResultCache probe = new ResultCache(dir, 1 << 20, 0);
+        probe.run(scenario(2), seeding, 0);
+        long entry = probe.getDiskBytes();
+        probe.clear();
+
+        ResultCache cache = new ResultCache(dir, 3 * entry + entry / 2, 0);
+        for (int k = 0; k < 6; k++) {
+            cache.run(scenario(2), seeding, k);
+            Thread.sleep(20); // distinct modification times
+        }
+        assertTrue(cache.getDiskBytes() <= 3 * entry + entry / 2);
+        assertTrue(files(dir) >= 2 && files(dir) <= 3);
+        // the newest entry survives, the oldest is gone
+        assertNotNull(cache.get(ResultCache.key(scenario(2), seeding, 5)));
+        assertNull(cache.get(ResultCache.key(scenario(2), seeding, 0)));
+    }
+
+    @Test
+    void aRewrittenArrivalLogIsANewScenario(@TempDir Path dir) throws IOException {
+        Seeding seeding = Seeding.legacy(1, 2, 3, 4);
+        Path log = dir.resolve("pos.csv");
+        Files.writeString(log, "time,litres\n100,30\n200,40\n300,25\n");
+        Parameters replay = scenario(2);
+        replay.arrivalLog = log.toString();
+        ResultCache cache = new ResultCache(dir.resolve("cache"), 1 << 20, 16);
+        Summary first = cache.run(replay, seeding, 0);
+        assertEquals(first, cache.run(replay, seeding, 0));
+        assertEquals(1, cache.getMisses());
+
+        Files.writeString(log, "time,litres\n100,30\n150,35\n200,40\n300,25\n400,50\n");
+        Summary second = cache.run(replay, seeding, 0);
+        assertEquals(2, cache.getMisses());
+        assertEquals(5, second.getArrivals());
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    void writingAKeyAgainReplacesItsEntry(@TempDir Path dir) throws IOException {
+        Seeding seeding = Seeding.legacy(1, 2, 3, 4);
+        ResultCache cache = new ResultCache(dir, 1 << 20, 0);
+        Summary s = cache.run(scenario(2), seeding, 0);
+        long entry = cache.getDiskBytes();
+        String key = ResultCache.key(scenario(2), seeding, 0);
+        cache.put(key, s);
+        cache.put(key, s);
+        assertEquals(entry, cache.getDiskBytes());
+        assertEquals(1, files(dir));
+        // not to be taken for a binary report, which starts with "SIMR"
+        try (Stream<Path> walk = Files.walk(dir)) {
+            Path file = walk.filter(p -> p.toString().endsWith(".result")).findFirst().orElseThrow();
+            assertEquals("SIMK", new String(Files.readAllBytes(file), 0, 4, StandardCharsets.US_ASCII));
+        }
+    }
+}
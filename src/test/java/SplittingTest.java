@@ -0,0 +1,49 @@
+import org.junit.jupiter.api.Test;
+import sim.Parameters;
+import sim.Seeding;
+import sim.Splitting;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SplittingTest {
+    private static final Seeding SEEDING = Seeding.legacy(1, 2, 3, 4);
+
+    private static Parameters threePumps() {
+        Parameters p = new Parameters();
+        p.numPumps = 3;
+        return p;
+    }
+
+    @Test
+    void agreesWithCrudeSimulation() {
+        int[] levels = Splitting.parseLevels("6:9");
+        Splitting.Result r = Splitting.run(threePumps(), SEEDING, Splitting.Target.QUEUE, levels, 0.0, 20000.0,
+                60, 10, 3000, 2);
+        double crude = (double) r.getCrudeHits() / r.getCrudeTrials();
+        double crudeError = Math.sqrt(crude * (1.0 - crude) / r.getCrudeTrials());
+        assertTrue(r.getCrudeHits() > 0);
+        assertTrue(r.getEstimate() > 0.0 && r.getRelativeError() < 0.5);
+        assertEquals(crude, r.getEstimate(), 3.0 * Math.hypot(crudeError, r.getStandardError()));
+        for (int j = 0; j < levels.length; j++) assertTrue(r.getStageProbability(j) > 0.0);
+        assertTrue(r.getSpeedUp() > 1.0);
+    }
+
+    @Test
+    void theEstimateDoesNotDependOnTheThreads() {
+        int[] levels = {20, 30, 40};
+        Parameters p = threePumps();
+        p.numPumps = 2;
+        Splitting.Result one = Splitting.run(p, SEEDING, Splitting.Target.BALKS, levels, 5000.0, 3600.0, 40, 4, 10, 1);
+        Splitting.Result three = Splitting.run(p, SEEDING, Splitting.Target.BALKS, levels, 5000.0, 3600.0, 40, 4, 10, 3);
+        assertEquals(one.getEstimates(), three.getEstimates());
+        assertEquals(one.getEvents(), three.getEvents());
+    }
+
+    @Test
+    void rejectsBadLevels() {
+        assertArrayEquals(new int[]{10, 20, 30}, Splitting.parseLevels("10:30:10"));
+        assertThrows(IllegalArgumentException.class, () -> Splitting.run(threePumps(), SEEDING, Splitting.Target.QUEUE,
+                new int[]{5, 5}, 0.0, 1000.0, 10, 2, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> Splitting.Target.parse("litres"));
+    }
+}
@@ -0,0 +1,74 @@
+import org.junit.jupiter.api.Test;
+import sim.LogHistogram;
+import sim.Parameters;
+import sim.Simulation;
+import sim.Summary;
+import sim.Welford;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamingStatisticsTest {
+
+    @Test
+    void welfordMatchesTwoPassAndMergesExactly() {
+        SplittableRandom random = new SplittableRandom(7);
+        double[] xs = new double[10000];
+        Welford all = new Welford();
+        Welford left = new Welford();
+        Welford right = new Welford();
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = 1e6 + 30.0 * random.nextDouble(); // a large offset defeats the naive sum-of-squares formula
+            all.add(xs[i]);
+            (i < 3000 ? left : right).add(xs[i]);
+        }
+        double mean = Arrays.stream(xs).average().orElseThrow();
+        double ss = 0.0;
+        for (double x : xs) ss += (x - mean) * (x - mean);
+        assertEquals(mean, all.getMean(), 1e-6);
+        assertEquals(ss / (xs.length - 1), all.getVariance(), 1e-6);
+        left.merge(right);
+        assertEquals(all.getCount(), left.getCount());
+        assertEquals(all.getMean(), left.getMean(), 1e-6);
+        assertEquals(all.getVariance(), left.getVariance(), 1e-6);
+        assertTrue(Double.isNaN(new Welford().getMean()));
+    }
+
+    @Test
+    void histogramPercentilesHaveBoundedRelativeError() {
+        SplittableRandom random = new SplittableRandom(11);
+        double[] xs = new double[100000];
+        LogHistogram histogram = new LogHistogram(0.001);
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = -200.0 * Math.log(1.0 - random.nextDouble());
+            histogram.record(xs[i]);
+        }
+        Arrays.sort(xs);
+        for (double p : new double[]{50.0, 95.0, 99.0, 99.9}) {
+            double exact = xs[(int) Math.ceil(p / 100.0 * xs.length) - 1];
+            assertEquals(exact, histogram.percentile(p), exact / 128.0 + 0.001, "p" + p);
+        }
+        assertEquals(xs.length, histogram.getCount());
+    }
+
+    @Test
+    void timeAveragesAreConsistentWithTheTotals() {
+        Parameters params = new Parameters();
+        params.numPumps = 2;
+        params.meaninterarrivalTime = 40.0;
+        params.endingTime = 500000.0;
+        Simulation sim = new Simulation(params, 3, 5, 7, 9, null);
+        sim.run();
+        Summary s = sim.summary();
+        // Little's law: the average queue length is the arrival rate of served cars times their average wait
+        double littles = s.getCustomersServed() / s.getSimulationTime() * s.getAverageWait();
+        assertEquals(littles, s.getAverageQueueLength(), 0.05 * littles);
+        // service times are counted when a service starts, so the two pump measures agree closely
+        assertEquals(s.getPumpUsage(), s.getPumpOccupancy(), 0.01);
+        assertTrue(s.getWaitPercentile(50.0) <= s.getWaitPercentile(95.0));
+        assertTrue(s.getWaitPercentile(95.0) <= s.getWaitPercentile(99.0));
+        assertEquals(30.0, s.getServiceStdDev(), 3.0 + 0.5 * 50.0 / Math.sqrt(12.0));
+    }
+}
@@ -0,0 +1,54 @@
+import org.junit.jupiter.api.Test;
+import sim.Confidence;
+import sim.Parameters;
+import sim.Replications;
+import sim.Seeding;
+import sim.Summary;
+import sim.Sweep;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SweepTest {
+
+    @Test
+    void gridVariesTheLastAxisFastest() {
+        List<Sweep.Axis> axes = List.of(Sweep.Axis.parse("numPumps=1:3"), Sweep.Axis.parse("balkA=30,40"));
+        List<Parameters> grid = Sweep.grid(new Parameters(), axes);
+        assertEquals(6, grid.size());
+        assertEquals(1, grid.get(0).numPumps);
+        assertEquals(30.0, grid.get(0).balkA);
+        assertEquals(40.0, grid.get(1).balkA);
+        assertEquals(3, grid.get(5).numPumps);
+        assertThrows(IllegalArgumentException.class, () -> Sweep.Axis.parse("noSuchParameter=1,2"));
+    }
+
+    @Test
+    void pointsMatchTheirReplicationsWhateverTheThreads() {
+        Parameters base = new Parameters();
+        base.endingTime = 20000.0;
+        List<Sweep.Axis> axes = List.of(Sweep.Axis.parse("numPumps=1,3"), Sweep.Axis.parse("meaninterarrivalTime=30,60"));
+        Seeding seeding = Seeding.legacy(1, 2, 3, 4);
+        List<Sweep.Point> parallel = Sweep.run(base, axes, seeding, 5, 3);
+        List<Sweep.Point> sequential = Sweep.run(base, axes, seeding, 5, 1);
+        assertEquals(4, parallel.size());
+        for (int i = 0; i < parallel.size(); i++) {
+            assertEquals(sequential.get(i).getProfit(), parallel.get(i).getProfit());
+            assertEquals(sequential.get(i).getWait(), parallel.get(i).getWait());
+        }
+        Sweep.Point last = parallel.get(3);
+        Summary pooled = Replications.merge(Replications.run(last.getParameters(), seeding, 5, 1));
+        assertEquals(pooled.getTotalProfit(), last.getProfit().getMean(), 1e-9);
+        assertEquals(5, last.getProfit().getCount());
+    }
+
+    @Test
+    void quantilesMatchTables() {
+        assertEquals(12.706, Confidence.tQuantile(0.975, 1), 1e-3);
+        assertEquals(2.262, Confidence.tQuantile(0.975, 9), 1e-3);
+        assertEquals(2.750, Confidence.tQuantile(0.995, 30), 1e-3);
+        assertEquals(1.959964, Confidence.normalQuantile(0.975), 1e-6);
+        assertEquals(-1.644854, Confidence.normalQuantile(0.05), 1e-6);
+    }
+}
@@ -0,0 +1,78 @@
+import org.junit.jupiter.api.Test;
+import sim.Confidence;
+import sim.Parameters;
+import sim.Replications;
+import sim.Seeding;
+import sim.VarianceReduction;
+import sim.VarianceReduction.Estimate;
+import sim.VarianceReduction.Response;
+import sim.Welford;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VarianceReductionTest {
+
+    private static Parameters scenario(int pumps) {
+        Parameters params = new Parameters();
+        params.numPumps = pumps;
+        params.endingTime = 100000.0;
+        return params;
+    }
+
+    /** plain: the estimate of independent replications, for comparison. */
+    private static Welford plain(Parameters params, Seeding seeding, int first, int n, Response response) {
+        Welford w = new Welford();
+        for (int k = first; k < first + n; k++) w.add(response.of(Replications.runOne(params, seeding, k)));
+        return w;
+    }
+
+    private static void assertAgrees(Estimate estimate, double mean, double halfWidth) {
+        assertTrue(Math.abs(estimate.getValue() - mean) < 2.0 * (estimate.getHalfWidth() + halfWidth),
+                estimate.getValue() + " vs " + mean);
+    }
+
+    @Test
+    void commonRandomNumbersSharpenComparisons() {
+        Seeding seeding = Seeding.legacy(1, 2, 3, 4);
+        Estimate crn = VarianceReduction.commonRandomNumbers(scenario(2), scenario(3), seeding, 20,
+                Response.PROFIT, 0.95, 2);
+        assertEquals(40, crn.getRuns());
+        assertTrue(crn.getVarianceReduction() > 1.5, "factor " + crn.getVarianceReduction());
+
+        // independent runs estimate the same difference, less precisely
+        Welford two = plain(scenario(2), seeding, 100, 20, Response.PROFIT);
+        Welford three = plain(scenario(3), seeding, 200, 20, Response.PROFIT);
+        double hw = Math.hypot(Confidence.halfWidth(two, 0.95), Confidence.halfWidth(three, 0.95));
+        assertAgrees(crn, three.getMean() - two.getMean(), hw);
+        assertTrue(crn.getHalfWidth() < hw);
+    }
+
+    @Test
+    void antitheticPairsAndControlsReduceVariance() {
+        Seeding seeding = Seeding.of("L64X128MixRandom", 7);
+        Welford reference = plain(scenario(2), seeding, 100, 40, Response.WAIT);
+        double hw = Confidence.halfWidth(reference, 0.95);
+
+        Estimate antithetic = VarianceReduction.antithetic(scenario(2), seeding, 20, Response.WAIT, 0.95, 2);
+        assertTrue(antithetic.getVarianceReduction() > 1.2, "factor " + antithetic.getVarianceReduction());
+        assertAgrees(antithetic, reference.getMean(), hw);
+
+        Estimate controlled = VarianceReduction.controlVariates(scenario(2), seeding, 40, Response.PROFIT, 0.95, 2);
+        assertTrue(controlled.getVarianceReduction() > 1.2, "factor " + controlled.getVarianceReduction());
+        Welford profit = plain(scenario(2), seeding, 100, 40, Response.PROFIT);
+        assertAgrees(controlled, profit.getMean(), Confidence.halfWidth(profit, 0.95));
+        assertTrue(controlled.getHalfWidth() < Confidence.halfWidth(profit, 0.95));
+    }
+
+    @Test
+    void synchronizedStreamsLeaveTheModelUnchanged() {
+        // the same model, only the assignment of variates to cars differs: the estimates agree
+        Seeding seeding = Seeding.legacy(5, 6, 7, 8);
+        Parameters synced = scenario(2);
+        synced.synchronizedStreams = true;
+        Welford a = plain(scenario(2), seeding, 0, 30, Response.BALK_FRACTION);
+        Welford b = plain(synced, seeding, 0, 30, Response.BALK_FRACTION);
+        double hw = Confidence.halfWidth(a, 0.95) + Confidence.halfWidth(b, 0.95);
+        assertTrue(Math.abs(a.getMean() - b.getMean()) < 2.0 * hw);
+    }
+}
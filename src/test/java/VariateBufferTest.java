@@ -0,0 +1,29 @@
+import org.junit.jupiter.api.Test;
+import sim.Parameters;
+import sim.Seeding;
+import sim.Simulation;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VariateBufferTest {
+
+    private static Parameters scenario(int variateBlock) {
+        Parameters params = new Parameters();
+        params.numPumps = 3;
+        params.meaninterarrivalTime = 30.0;
+        params.endingTime = 200000.0;
+        params.variateBlock = variateBlock;
+        return params;
+    }
+
+    @Test
+    void blockSizeDoesNotChangeTheRun() {
+        for (Seeding seeding : new Seeding[]{Seeding.legacy(5, 6, 7, 8), Seeding.of("L64X128MixRandom", 9),
+                Seeding.of("Xoroshiro128PlusPlus", 9)}) {
+            Simulation oneAtATime = new Simulation(scenario(1), seeding, 2, null);
+            Simulation blocked = new Simulation(scenario(4096), seeding, 2, null);
+            assertEquals(oneAtATime.run(), blocked.run(), seeding.toString());
+            assertEquals(oneAtATime.summary(), blocked.summary(), seeding.toString());
+        }
+    }
+}
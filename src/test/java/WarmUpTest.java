@@ -0,0 +1,51 @@
+import org.junit.jupiter.api.Test;
+import sim.Parameters;
+import sim.Simulation;
+import sim.Summary;
+import sim.WarmUp;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WarmUpTest {
+
+    private static Parameters busyStation() {
+        // a nearly saturated station fills its queue slowly from empty, so the start is clearly biased
+        Parameters params = new Parameters();
+        params.numPumps = 4;
+        params.meaninterarrivalTime = 44.0;
+        params.endingTime = 2e6;
+        return params;
+    }
+
+    @Test
+    void fixedWarmUpClearsTheStatistics() {
+        Parameters params = busyStation();
+        params.warmUpTime = 5e5;
+        Simulation deleted = new Simulation(params, 1, 2, 3, 4, null);
+        deleted.run();
+        Simulation full = new Simulation(busyStation(), 1, 2, 3, 4, null);
+        full.run();
+        Summary s = deleted.summary();
+        assertEquals(1.5e6, s.getSimulationTime(), 1e-6);
+        assertTrue(s.getArrivals() < full.summary().getArrivals());
+        assertTrue(s.getArrivals() > 0.7 * full.summary().getArrivals());
+    }
+
+    @Test
+    void mserFindsTheEndOfTheTransient() {
+        Parameters params = busyStation();
+        params.warmUpDetection = true;
+        Simulation sim = new Simulation(params, 1, 2, 3, 4, null);
+        sim.run();
+        WarmUp warmUp = sim.getWarmUp();
+        assertTrue(warmUp.isDone());
+        assertTrue(warmUp.getTruncationTime() >= 0.0);
+        double restart = params.endingTime - sim.summary().getSimulationTime();
+        assertTrue(restart >= warmUp.getTruncationTime(), "statistics restart after the transient");
+        assertTrue(restart < 0.5 * params.endingTime);
+        // the steady-state wait is not dragged down by the empty start
+        Simulation full = new Simulation(busyStation(), 1, 2, 3, 4, null);
+        full.run();
+        assertTrue(sim.summary().getAverageWait() >= 0.95 * full.summary().getAverageWait());
+    }
+}